@@ -27,4 +27,10 @@ public interface Connection {
 	void onWriteableEvent();
 	void setWriteRegister(WriteRegister dispatcher);
 	void setReadableEventInterceptor(Connection interceptor);
+	boolean isWritable();
+	long getQueuedBytes();
+	long getBytesWritten();
+	boolean keepAlive();
+	boolean isKeptAlive();
+	void setWritabilityListener(WritabilityListener listener);
 }
\ No newline at end of file
@@ -16,11 +16,13 @@ public class ContextHandler implements Handler {
 	private static final Logger log = Logger.getLogger(ContextHandler.class);
 	private static final String CONNECTION_CLOSED = "Connection closed ";
 	private final Handler httpHandler;
+	private final WebSocketHandler webSocketHandler;
 	final Map<String, Handler> contexts = new HashMap<String, Handler>();
 
 	public ContextHandler(SubscriptionManager subscriptionManager) {
 		httpHandler = new HttpHandler();
-		contexts.put("/streamhubws", new WebSocketHandler(subscriptionManager, httpHandler));
+		webSocketHandler = new WebSocketHandler(subscriptionManager, httpHandler);
+		contexts.put("/streamhubws", webSocketHandler);
 		contexts.put("/streamhub", new HttpCometHandler(subscriptionManager, httpHandler));
 		contexts.put(ROOT_CONTEXT, httpHandler);
 	}
@@ -29,6 +31,14 @@ public class ContextHandler implements Handler {
 		contexts.put(UrlUtils.normalizeContext(context), handler);
 	}
 
+	/**
+	 * Accepts permessage-deflate offers from RFC 6455 clients of this 
+	 * handler's WebSocket context
+	 */
+	public void setWebSocketCompression(boolean isCompressing) {
+		webSocketHandler.setCompression(isCompressing);
+	}
+
 	public void handle(Connection connection) {
 		Request request = null;
 
@@ -38,7 +48,7 @@ public class ContextHandler implements Handler {
 		} catch (Exception e) {
 			log.error("Error handling request for connection " + SocketUtils.toString(connection), e);
 		} finally {
-			if (! request.isKeepAliveConnection() && ! connection.isSelfClosing() && ! request.isWebSocket()) {
+			if (! request.isKeepAliveConnection() && ! connection.isSelfClosing() && ! request.isWebSocket() && ! connection.isKeptAlive()) {
 				connection.close();
 				log.debug(new StringBuilder(CONNECTION_CLOSED).append(SocketUtils.toString(connection)).toString());
 			}
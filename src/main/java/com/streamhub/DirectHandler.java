@@ -7,15 +7,26 @@ import org.apache.log4j.Logger;
 import com.streamhub.api.SubscriptionManager;
 import com.streamhub.client.CannotCreateClientException;
 import com.streamhub.client.IStreamingClient;
+import com.streamhub.handler.BinaryConnection;
 import com.streamhub.handler.Handler;
+import com.streamhub.reader.BinaryFrameListener;
 import com.streamhub.reader.DirectMessageReader;
 import com.streamhub.reader.MessageListener;
 import com.streamhub.request.DirectRequest;
 import com.streamhub.request.Request;
+import com.streamhub.util.BinaryFrames;
 
+/**
+ * Handles Direct clients speaking the <code>@@message@@</code> text 
+ * protocol, or the binary protocol described by {@link BinaryFrames} once 
+ * they have sent {@link #BINARY_NEGOTIATION}.  Framed reads bypass TLS, so 
+ * secure connections are never switched and the negotiation goes 
+ * unanswered.
+ */
 public class DirectHandler implements Handler, MessageListener {
 	public static final String DIRECT_MESSAGE_SEPARATOR = "@@";
 	public static final String MAGIC_DIRECT_CONNECTION_STRING = "@@DIRECT@@";
+	public static final String BINARY_NEGOTIATION = DIRECT_MESSAGE_SEPARATOR + BinaryFrames.NEGOTIATION + DIRECT_MESSAGE_SEPARATOR;
 	private static final Logger log = Logger.getLogger(DirectHandler.class);
 	private final StreamingSubscriptionManager subscriptionManager;
 	private Connection connection;
@@ -34,18 +45,10 @@ public class DirectHandler implements Handler, MessageListener {
 			request = DirectRequest.createFrom(message);
 		}
 		
-		if (request.isResponseConnection()) {
-			connect(request);
-		} else if (request.isDisconnection()) {
-			disconnect(request);
-		} else if (request.isSubscription()) {
-			subscribe(request);
-		} else if (request.isUnSubscribe()) {
-			unsubscribe(request);
-		} else if (request.isPublish()) {
-			publish(request);
-		} else {
+		if (! handle(request, connection)) {
 			log.warn("Un-handled direct request. Message: '" + message + "'. Request: " + request);
+		} else if (request.isResponseConnection() && connection != null) {
+			uid = request.getUid();
 		}
 	}
 
@@ -54,14 +57,61 @@ public class DirectHandler implements Handler, MessageListener {
 		this.uid = connection.getAttachment();
 		MessageListener listener = this;
 		try {
-			String inputSoFar = new String(connection.readBytes());
-			DirectMessageReader.readDirectMessages(listener, inputSoFar, 0);
+			byte[] input = connection.readBytes();
+			int binaryStart = DirectMessageReader.readUntilBinaryNegotiation(listener, input);
+			if (binaryStart >= 0 && connection.isSecure()) {
+				log.warn("Binary frames are not supported over TLS, Client-" + uid + " carries on with text");
+				DirectMessageReader.readDirectMessages(listener, new String(input, binaryStart, input.length - binaryStart));
+			} else if (binaryStart >= 0) {
+				switchToBinary(connection, input, binaryStart);
+			}
 		} catch (IOException e) {
 			log.error("Error reading connection", e);
 		}
 	}
 
-	private void disconnect(Request request) {
+	/**
+	 * Confirms the negotiation, then decodes the rest of the input and every 
+	 * later read as binary frames.  A client which connected before 
+	 * negotiating is sent binary frames from now on.
+	 */
+	private void switchToBinary(Connection connection, byte[] input, int binaryStart) throws IOException {
+		BinaryRequestListener listener = new BinaryRequestListener(uid);
+		BinaryConnection binaryConnection = new BinaryConnection(connection, listener, subscriptionManager.getTopicDictionary());
+		listener.connection = binaryConnection;
+		connection.setReadableEventInterceptor(binaryConnection);
+		connection.write(BINARY_NEGOTIATION);
+
+		if (uid != null) {
+			IStreamingClient client = subscriptionManager.getClientManager().find(uid);
+			if (client != null) {
+				client.setConnection(binaryConnection);
+			}
+		}
+		binaryConnection.decode(input, binaryStart);
+	}
+
+	/**
+	 * Returns <code>false</code> if the request was not understood
+	 */
+	private boolean handle(Request request, Connection connection) {
+		if (request.isResponseConnection()) {
+			connect(request, connection);
+		} else if (request.isDisconnection()) {
+			disconnect(request, connection);
+		} else if (request.isSubscription()) {
+			subscribe(request);
+		} else if (request.isUnSubscribe()) {
+			unsubscribe(request);
+		} else if (request.isPublish()) {
+			publish(request);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private void disconnect(Request request, Connection connection) {
 		IStreamingClient client;
 		
 		try {
@@ -101,17 +151,38 @@ public class DirectHandler implements Handler, MessageListener {
 		}
 	}
 
-	private void connect(Request request) {
+	private void connect(Request request, Connection connection) {
 		try {
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			if (connection != null) {
 				client.setConnection(connection);
-				uid = request.getUid();
-				connection.setAttachment(uid);
+				connection.setAttachment(request.getUid());
 			}
 			client.onConnect();
 		} catch (Exception e) {
 			log.error("Error during connecting client from request: " + request, e);
 		}
 	}
+
+	/**
+	 * Handles the frames of one binary connection, which are read outside 
+	 * {@link DirectHandler#handle(Connection)} and so keep their own state
+	 */
+	private class BinaryRequestListener implements BinaryFrameListener {
+		private Connection connection;
+		private String uid;
+
+		BinaryRequestListener(String uid) {
+			this.uid = uid;
+		}
+
+		public void onFrame(int opcode, String topic, String body) {
+			Request request = DirectRequest.createFrom(opcode, topic, body, uid);
+			if (! handle(request, connection)) {
+				log.warn("Un-handled binary direct frame. Opcode: " + opcode + ", topic: '" + topic + "'");
+			} else if (request.isResponseConnection()) {
+				uid = request.getUid();
+			}
+		}
+	}
 }
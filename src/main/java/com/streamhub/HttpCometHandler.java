@@ -1,7 +1,10 @@
 package com.streamhub;
 
+import java.io.IOException;
+
 import org.apache.log4j.Logger;
 
+import com.streamhub.ResponseFactory.ResponseType;
 import com.streamhub.api.Payload;
 import com.streamhub.api.SubscriptionManager;
 import com.streamhub.client.IStreamingClient;
@@ -31,15 +34,12 @@ public class HttpCometHandler implements Handler {
 		} else if (request.isDisconnection()) {
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			client.disconnect();
-			String response = ResponseFactory.disconnectionResponse(request.getDomain(), request.getBrowser());
-			connection.write(response);
+			writeControlResponse(connection, request, ResponseType.DISCONNECTION);
 		} else if (request.isSubscription()) {
 			subscriptionManager.addSubscription(request);
-			String response = ResponseFactory.subscriptionResponse(request.getDomain(), request.getBrowser());
-			connection.write(response);
+			writeControlResponse(connection, request, ResponseType.SUBSCRIPTION);
 		} else if (request.isPublish()) {
-			String response = ResponseFactory.publishResponse(request.getDomain(), request.getBrowser());
-			connection.write(response);
+			writeControlResponse(connection, request, ResponseType.PUBLISH);
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			Payload payload = request.getPayload();
 			String topic = request.getPublishTopic();
@@ -47,27 +47,43 @@ public class HttpCometHandler implements Handler {
 		} else if (request.isResponseConnection()) {
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			log.info(new StringBuilder(CONNECTING_CLIENT).append(client.getUid()).toString());
-			String response = ResponseFactory.foreverFramePageHeader(request.getDomain(), request.getBrowser());
-			connection.write(response);
+			connection.write(ResponseFactory.template(ResponseType.FOREVER_FRAME, request.getDomain(), request.getBrowser(), false));
+			client.setResponseLength(ResponseFactory.pushResponseLength());
 			client.onConnect();
 		} else if (request.isRequestIFrameConnection()) {
-			connection.write(ResponseFactory.requestResponse(request.getDomain(), request.getBrowser()));
+			connection.write(ResponseFactory.template(ResponseType.REQUEST, request.getDomain(), request.getBrowser(), false));
 		} else if (request.isUnSubscribe()) {
 			subscriptionManager.removeSubscription(request);
-			String response = ResponseFactory.unSubscribeResponse(request.getDomain(), request.getBrowser());
-			connection.write(response);
+			writeControlResponse(connection, request, ResponseType.UNSUBSCRIBE);
 		} else if (request.isPoll()) {
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			log.debug("Poll request from Client-" + client.getUid());
-			connection.write(ResponseFactory.pollResponse(request.getDomain(), request.getBrowser(), client.getQueuedMessages()));
+			writeControlResponse(connection, request, ResponseFactory.pollResponse(request.getDomain(), request.getBrowser(), client.getQueuedMessages()));
 		} else if (request.isCloseResponse()) {
 			IStreamingClient client = subscriptionManager.findOrCreateClient(request);
 			log.debug("Close response channel from Client-" + client.getUid());
 			client.disconnect();
-			connection.write(ResponseFactory.closeResponse(request.getDomain(), request.getBrowser()));
+			writeControlResponse(connection, request, ResponseType.CLOSE_RESPONSE);
 		} else {
 			httpHandler.handle(connection);
 		}
 	}
 
+	private void writeControlResponse(Connection connection, Request request, ResponseType type) throws IOException {
+		boolean keepAlive = request.isPersistentConnection() && ResponseFactory.canKeepAlive() && connection.keepAlive();
+		connection.write(ResponseFactory.template(type, request.getDomain(), request.getBrowser(), keepAlive));
+	}
+
+	private void writeControlResponse(Connection connection, Request request, String response) throws IOException {
+		if (request.isPersistentConnection()) {
+			String keepAliveResponse = ResponseFactory.keepAlive(response);
+			if (keepAliveResponse != null && connection.keepAlive()) {
+				connection.write(keepAliveResponse);
+				return;
+			}
+		}
+		
+		connection.write(response);
+	}
+
 }
@@ -1,15 +1,37 @@
 package com.streamhub;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import com.streamhub.client.IStreamingClient;
 import com.streamhub.request.Request;
 import com.streamhub.util.Browser;
+import com.streamhub.util.ChunkedUtils;
 import com.streamhub.util.WordUtils;
 
 @SuppressWarnings("serial")
 class ResponseFactory {
+	/**
+	 * The responses whose bytes depend only on the browser, the domain and 
+	 * the default headers, and so can be cached by {@link ResponseFactory#template}
+	 */
+	enum ResponseType {
+		SUBSCRIPTION, UNSUBSCRIBE, PUBLISH, REQUEST, DISCONNECTION, CLOSE_RESPONSE, FOREVER_FRAME
+	}
+	
+	private static final int BROWSERS = Browser.values().length;
+	private static final int TEMPLATES_PER_DOMAIN = ResponseType.values().length * BROWSERS * 2;
+	private static final int MAX_TEMPLATE_DOMAINS = 1024;
 	private static final String COLON = ": ";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String CHUNKED_TRANSFER_ENCODING = "Transfer-Encoding: chunked\r\n";
+	private static final String CONNECTION = "Connection";
+	private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+	private static final String KEEP_ALIVE_CONNECTION = "Connection: keep-alive\r\n";
 	private static final String CRLF = "\r\n";
 	private static final String CLOSE_HTML_HEAD_SHORT = "';</script></head>";
 	private static final String CLOSE_HTML_HEAD = "';r=window.parent.r;window.onload=r;</script></head>";
@@ -31,7 +53,6 @@ class ResponseFactory {
 		put("Cache-Control", "no-store, no-cache");
 		put("Pragma", "no-cache");
 		put("Expires", "Thu, 1 Jan 1970 00:00:00 GMT");
-		put("Content-Length", "300000");
 		put("Connection", "close");
 	}};
 	private static final Map<String, String> defaultHttpHeaders = new HashMap<String, String>() {{
@@ -44,7 +65,10 @@ class ResponseFactory {
 	}};
 	private static String noCacheHttpHeader = buildNoCacheHttpHeader();
 	private static String noCachePushHeader = buildNoCachePushHeader();
+	private static long pushResponseLength = buildPushResponseLength();
 	private static String noCacheStaticHeader = buildNoCacheStaticHeader();
+	private static String keepAliveHttpHeaders = buildKeepAliveHttpHeaders();
+	private static volatile ConcurrentMap<String, AtomicReferenceArray<ByteBuffer>> templates = new ConcurrentHashMap<String, AtomicReferenceArray<ByteBuffer>>();
 
 	private static String buildNoCacheStaticHeader() {
 		return noCacheHttpHeader + "<html><head><script>document.domain='";
@@ -166,37 +190,160 @@ class ResponseFactory {
 		return html.toString();
 	}
 
+	/**
+	 * The bytes of a response as a read-only duplicate of a cached template, 
+	 * so the hot path builds no strings and each write has its own position.  
+	 * Templates are built on first use for each domain and browser, and 
+	 * thrown away when the default headers change.  Only the first 
+	 * {@value #MAX_TEMPLATE_DOMAINS} domains are cached, since the domain 
+	 * comes from the request.
+	 * 
+	 * @param keepAlive	whether the response keeps its connection open, 
+	 * 					see {@link #keepAlive(String)}
+	 */
+	public static ByteBuffer template(ResponseType type, String domain, Browser browser, boolean keepAlive) {
+		ConcurrentMap<String, AtomicReferenceArray<ByteBuffer>> cache = templates;
+		String key = String.valueOf(domain);
+		AtomicReferenceArray<ByteBuffer> domainTemplates = cache.get(key);
+		if (domainTemplates == null) {
+			if (cache.size() >= MAX_TEMPLATE_DOMAINS) {
+				return buildTemplate(type, domain, browser, keepAlive);
+			}
+			domainTemplates = new AtomicReferenceArray<ByteBuffer>(TEMPLATES_PER_DOMAIN);
+			AtomicReferenceArray<ByteBuffer> existing = cache.putIfAbsent(key, domainTemplates);
+			if (existing != null) {
+				domainTemplates = existing;
+			}
+		}
+		
+		int index = (type.ordinal() * BROWSERS + browser.ordinal()) * 2 + (keepAlive ? 1 : 0);
+		ByteBuffer template = domainTemplates.get(index);
+		if (template == null) {
+			template = buildTemplate(type, domain, browser, keepAlive);
+			domainTemplates.set(index, template);
+		}
+		return template.duplicate();
+	}
+	
+	/**
+	 * Whether control responses can currently be sent with 
+	 * <code>Connection: keep-alive</code>
+	 */
+	public static boolean canKeepAlive() {
+		return keepAliveHttpHeaders != null;
+	}
+
 	public static String defaultResponse(Request request) {
 		return _404_NOT_FOUND;
 	}
 
+	/**
+	 * The response is chunked unless a Content-Length push header has been 
+	 * set, in which case the page header is sent as the start of a body of 
+	 * that length
+	 */
 	public static String foreverFramePageHeader(String domain, Browser browser) {
 		StringBuilder html = new StringBuilder();
-		html.append(noCachePushHeader);
 		html.append(pushHtmlHeader(domain));
 		html.append(foreverFrameSetupScript(browser));
 		html.append(RESPONSE_OK);
-		return html.toString();
+		
+		if (pushResponseLength == IStreamingClient.CHUNKED_RESPONSE) {
+			return noCachePushHeader + ChunkedUtils.createChunk(html.toString());
+		}
+		return noCachePushHeader + html.toString();
+	}
+
+	/**
+	 * The number of bytes, headers included, a forever frame response may 
+	 * hold, or {@link IStreamingClient#CHUNKED_RESPONSE} if it is chunked
+	 */
+	public static long pushResponseLength() {
+		return pushResponseLength;
+	}
+	
+	/**
+	 * Rewrites a control response so the client can send its next request 
+	 * on the same connection: the Connection header becomes keep-alive and 
+	 * the body is delimited by its Content-Length.  Returns null if the 
+	 * response cannot be kept alive, for instance because the default 
+	 * headers already frame the body.
+	 */
+	public static String keepAlive(String response) {
+		String headers = keepAliveHttpHeaders;
+		String header = noCacheHttpHeader;
+		if (headers == null || ! response.startsWith(header)) {
+			return null;
+		}
+		
+		String body = response.substring(header.length());
+		StringBuilder keepAlive = new StringBuilder(headers);
+		keepAlive.append(CONTENT_LENGTH).append(COLON).append(body.getBytes().length).append(CRLF);
+		keepAlive.append(CRLF);
+		keepAlive.append(body);
+		return keepAlive.toString();
 	}
 	
 	public static void setDefaultPushHeader(String name, String value) {
 
 		if (value == null) {
-			defaultPushHeaders.remove(name);
+			defaultPushHeaders.remove(WordUtils.capitalizeFully(name));
 		} else {
 			defaultPushHeaders.put(WordUtils.capitalizeFully(name), value);
 		}
 		noCachePushHeader = buildNoCachePushHeader();
+		pushResponseLength = buildPushResponseLength();
+		clearTemplates();
 	}
 
 	public static void setDefaultHeader(String name, String value) {
 		if (value == null) {
-			defaultHttpHeaders.remove(name);
+			defaultHttpHeaders.remove(WordUtils.capitalizeFully(name));
 		} else {
 			defaultHttpHeaders.put(WordUtils.capitalizeFully(name), value);
 		}
 		noCacheHttpHeader = buildNoCacheHttpHeader();
 		noCacheStaticHeader = buildNoCacheStaticHeader();
+		keepAliveHttpHeaders = buildKeepAliveHttpHeaders();
+		clearTemplates();
+	}
+
+	private static void clearTemplates() {
+		templates = new ConcurrentHashMap<String, AtomicReferenceArray<ByteBuffer>>();
+	}
+	
+	/**
+	 * A keep-alive template falls back to the closing response if the 
+	 * default headers changed after the caller checked {@link #canKeepAlive()}
+	 */
+	private static ByteBuffer buildTemplate(ResponseType type, String domain, Browser browser, boolean keepAlive) {
+		String response = buildResponse(type, domain, browser);
+		if (keepAlive) {
+			String keepAliveResponse = keepAlive(response);
+			if (keepAliveResponse != null) {
+				response = keepAliveResponse;
+			}
+		}
+		return ByteBuffer.wrap(response.getBytes()).asReadOnlyBuffer();
+	}
+	
+	private static String buildResponse(ResponseType type, String domain, Browser browser) {
+		switch (type) {
+		case SUBSCRIPTION:
+			return subscriptionResponse(domain, browser);
+		case UNSUBSCRIBE:
+			return unSubscribeResponse(domain, browser);
+		case PUBLISH:
+			return publishResponse(domain, browser);
+		case REQUEST:
+			return requestResponse(domain, browser);
+		case DISCONNECTION:
+			return disconnectionResponse(domain, browser);
+		case CLOSE_RESPONSE:
+			return closeResponse(domain, browser);
+		default:
+			return foreverFramePageHeader(domain, browser);
+		}
 	}
 
 	private static String pushHtmlHeader(String domain) {
@@ -225,9 +372,25 @@ class ResponseFactory {
 		for (Map.Entry<String, String> header : defaultPushHeaders.entrySet()) {
 			result.append(header.getKey()).append(COLON).append(header.getValue()).append(CRLF);
 		}
+		if (! defaultPushHeaders.containsKey(CONTENT_LENGTH)) {
+			result.append(CHUNKED_TRANSFER_ENCODING);
+		}
 		return result.toString();
 	}
 
+	private static long buildPushResponseLength() {
+		String contentLength = defaultPushHeaders.get(CONTENT_LENGTH);
+		if (contentLength == null) {
+			return IStreamingClient.CHUNKED_RESPONSE;
+		}
+		
+		try {
+			return noCachePushHeader.getBytes().length + Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
 	private static String buildNoCacheHttpHeaders() {
 		StringBuilder result = new StringBuilder();
 		for (Map.Entry<String, String> header : defaultHttpHeaders.entrySet()) {
@@ -236,6 +399,21 @@ class ResponseFactory {
 		return result.toString();
 	}
 	
+	private static String buildKeepAliveHttpHeaders() {
+		if (defaultHttpHeaders.containsKey(CONTENT_LENGTH) || defaultHttpHeaders.containsKey(TRANSFER_ENCODING)) {
+			return null;
+		}
+		
+		StringBuilder result = new StringBuilder("HTTP/1.1 200 OK\r\n");
+		for (Map.Entry<String, String> header : defaultHttpHeaders.entrySet()) {
+			if (! CONNECTION.equals(header.getKey())) {
+				result.append(header.getKey()).append(COLON).append(header.getValue()).append(CRLF);
+			}
+		}
+		result.append(KEEP_ALIVE_CONNECTION);
+		return result.toString();
+	}
+	
 	private static String buildNoCachePushHeader() {
 		return "HTTP/1.1 200 OK\r\n"
 				+ buildNoCachePushHeaders()
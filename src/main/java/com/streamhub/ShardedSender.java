@@ -0,0 +1,254 @@
+package com.streamhub;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import com.streamhub.client.EncodedPayload;
+import com.streamhub.client.IStreamingClient;
+
+/**
+ * Fans published messages out to subscribers across a fixed number of
+ * shard threads.  Every client has an outbox which is always drained by
+ * the same shard, so per-client ordering is preserved.  An outbox is only
+ * handed to its shard when it goes from empty to non-empty, so a burst of
+ * messages for one client is delivered as a single batch.
+ * <p>
+ * Outboxes are only created by {@link #register(IStreamingClient)}.  A
+ * publish which read its subscribers just before a client was removed 
+ * finds no outbox, or a closed one, and its message is dropped rather 
+ * than bringing the outbox of a dead client back.
+ */
+class ShardedSender {
+	private static final Logger log = Logger.getLogger(ShardedSender.class);
+	private static final int BATCH_SIZE = 64;
+	private final ConcurrentMap<IStreamingClient, ClientOutbox> outboxes = new ConcurrentHashMap<IStreamingClient, ClientOutbox>();
+	private final Shard[] shards;
+	private final ExecutorService shardPool;
+	private volatile boolean isShutdown;
+
+	public ShardedSender(int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("Shard count must be at least 1 but was " + shardCount);
+		}
+		shards = new Shard[shardCount];
+		shardPool = Executors.newFixedThreadPool(shardCount);
+
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i);
+			shardPool.execute(shards[i]);
+		}
+	}
+
+	/**
+	 * Gives <code>client</code> an outbox if it does not have one
+	 */
+	public void register(IStreamingClient client) {
+		if (! outboxes.containsKey(client)) {
+			outboxes.putIfAbsent(client, new ClientOutbox(client, shardFor(client)));
+		}
+	}
+
+	/**
+	 * Registers every client registered with <code>previous</code>
+	 */
+	public void registerAll(ShardedSender previous) {
+		for (IStreamingClient client : previous.outboxes.keySet()) {
+			register(client);
+		}
+	}
+
+	public void send(IStreamingClient client, String topic, EncodedPayload encodedPayload) {
+		ClientOutbox outbox = outboxes.get(client);
+
+		if (outbox == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Client-" + client.getUid() + " has been removed: dropping message on topic '" + topic + "'");
+			}
+		} else if (outbox.offer(topic, encodedPayload)) {
+			outbox.shard.schedule(outbox);
+		}
+	}
+
+	public void remove(IStreamingClient client) {
+		ClientOutbox outbox = outboxes.remove(client);
+		if (outbox != null) {
+			outbox.close();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public boolean isShutdown() {
+		return isShutdown;
+	}
+
+	public void stop() {
+		isShutdown = true;
+		shardPool.shutdownNow();
+		outboxes.clear();
+	}
+
+	/**
+	 * Clients are spread by identity rather than by <code>hashCode()</code>, 
+	 * which some clients derive from their uid with only a few distinct 
+	 * values.  A client keeps the same shard for as long as it is registered.
+	 */
+	int shardIndexFor(IStreamingClient client) {
+		int hash = System.identityHashCode(client);
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % shards.length;
+	}
+
+	private Shard shardFor(IStreamingClient client) {
+		return shards[shardIndexFor(client)];
+	}
+
+	private static class ClientOutbox {
+		private final IStreamingClient client;
+		private final Shard shard;
+		private String[] topics = new String[4];
+		private EncodedPayload[] payloads = new EncodedPayload[4];
+		private int head;
+		private int size;
+		private boolean isScheduled;
+		private boolean isClosed;
+
+		ClientOutbox(IStreamingClient client, Shard shard) {
+			this.client = client;
+			this.shard = shard;
+		}
+
+		/**
+		 * Returns <code>true</code> if the outbox needs scheduling on its 
+		 * shard.  Messages offered once the outbox is closed are dropped.
+		 */
+		synchronized boolean offer(String topic, EncodedPayload encodedPayload) {
+			if (isClosed) {
+				return false;
+			}
+			if (size == topics.length) {
+				grow();
+			}
+			int tail = (head + size) % topics.length;
+			topics[tail] = topic;
+			payloads[tail] = encodedPayload;
+			size++;
+
+			if (isScheduled) {
+				return false;
+			}
+			isScheduled = true;
+			return true;
+		}
+
+		/**
+		 * Moves up to <code>max</code> messages into the given arrays,
+		 * un-scheduling the outbox once it is empty.
+		 */
+		synchronized int drainTo(String[] topicBatch, EncodedPayload[] payloadBatch, int max) {
+			int count = Math.min(size, max);
+
+			for (int i = 0; i < count; i++) {
+				topicBatch[i] = topics[head];
+				payloadBatch[i] = payloads[head];
+				topics[head] = null;
+				payloads[head] = null;
+				head = (head + 1) % topics.length;
+			}
+			size -= count;
+
+			if (count == 0) {
+				isScheduled = false;
+			}
+
+			return count;
+		}
+
+		/**
+		 * Drops every queued message, so a shard which has yet to drain the 
+		 * outbox finds it empty
+		 */
+		synchronized void close() {
+			isClosed = true;
+			for (int i = 0; i < size; i++) {
+				int index = (head + i) % topics.length;
+				topics[index] = null;
+				payloads[index] = null;
+			}
+			size = 0;
+		}
+
+		private void grow() {
+			int capacity = topics.length * 2;
+			String[] newTopics = new String[capacity];
+			EncodedPayload[] newPayloads = new EncodedPayload[capacity];
+
+			for (int i = 0; i < size; i++) {
+				int index = (head + i) % topics.length;
+				newTopics[i] = topics[index];
+				newPayloads[i] = payloads[index];
+			}
+
+			topics = newTopics;
+			payloads = newPayloads;
+			head = 0;
+		}
+	}
+
+	private static class Shard implements Runnable {
+		private final BlockingQueue<ClientOutbox> runQueue = new LinkedBlockingQueue<ClientOutbox>();
+		private final String[] topicBatch = new String[BATCH_SIZE];
+		private final EncodedPayload[] payloadBatch = new EncodedPayload[BATCH_SIZE];
+		private final int index;
+
+		Shard(int index) {
+			this.index = index;
+		}
+
+		void schedule(ClientOutbox outbox) {
+			runQueue.offer(outbox);
+		}
+
+		public void run() {
+			Thread.currentThread().setName("SendShard-" + index);
+
+			try {
+				while (! Thread.currentThread().isInterrupted()) {
+					drain(runQueue.take());
+				}
+			} catch (InterruptedException e) {
+				// Stopped
+			}
+		}
+
+		private void drain(ClientOutbox outbox) {
+			int count;
+
+			while ((count = outbox.drainTo(topicBatch, payloadBatch, BATCH_SIZE)) > 0) {
+				for (int i = 0; i < count; i++) {
+					try {
+						outbox.client.send(topicBatch[i], payloadBatch[i]);
+					} catch (Throwable e) {
+						log.warn("Exception sending to Client-" + outbox.client.getUid(), e);
+					}
+					topicBatch[i] = null;
+					payloadBatch[i] = null;
+				}
+
+				if (count == BATCH_SIZE && ! runQueue.isEmpty()) {
+					// Let other clients on this shard have a turn
+					runQueue.offer(outbox);
+					return;
+				}
+			}
+		}
+	}
+}
@@ -21,18 +21,21 @@ import com.streamhub.api.SubscriptionManager;
 import com.streamhub.client.CannotCreateClientException;
 import com.streamhub.client.ClientConnectionListener;
 import com.streamhub.client.ClientManager;
+import com.streamhub.client.EncodedPayload;
 import com.streamhub.client.IStreamingClient;
 import com.streamhub.client.NullClientManager;
 import com.streamhub.request.Request;
+import com.streamhub.util.TopicDictionary;
 
 public class StreamingSubscriptionManager implements SubscriptionManager, ClientConnectionListener {
 	private static final Logger log = Logger.getLogger(StreamingSubscriptionManager.class);
 	private final List<SubscriptionListener> subscriptionListeners = new ArrayList<SubscriptionListener>();
 	private final List<PublishListener> publishListeners = new ArrayList<PublishListener>();
-	private final Map<String, IStreamingClient[]> topicToClients = new HashMap<String, IStreamingClient[]>();
+	private final TopicDictionary topicDictionary = new TopicDictionary();
+	private final TopicRegistry topicRegistry = new TopicRegistry(topicDictionary);
 	private ClientManager clientManager = new NullClientManager();
-	private final ExecutorService notifyPool = Executors.newFixedThreadPool(2);
-	private final ExecutorService sendPool = Executors.newSingleThreadExecutor();
+	private ExecutorService notifyPool = Executors.newFixedThreadPool(2);
+	private ShardedSender sender = new ShardedSender(Runtime.getRuntime().availableProcessors());
 	private final Map<IStreamingClient, ScheduledFuture<?>> removalTasks = new HashMap<IStreamingClient, ScheduledFuture<?>>();
 	private ScheduledExecutorService removalScheduler = Executors.newSingleThreadScheduledExecutor();
 	private long reconnectionTimeoutMillis = 420000;
@@ -61,22 +64,34 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 		}
 	}
 
+	/**
+	 * Cancels the removal scheduled when the client lost its connection, so 
+	 * that its next loss schedules a fresh one
+	 */
 	public void clientConnected(IStreamingClient client) {
-		ScheduledFuture<?> removalTask = removalTasks.get(client);
+		ScheduledFuture<?> removalTask;
+		synchronized (removalTasks) {
+			removalTask = removalTasks.remove(client);
+		}
 		if (removalTask != null) {
 			removalTask.cancel(false);
 		}
 	}
 
 	public void clientLostConnection(final IStreamingClient client) {
-		if (removalTasks.get(client) == null && !removalScheduler.isShutdown()) {
-			ScheduledFuture<?> removalTask = removalScheduler.schedule(new Runnable() {
-				public void run() {
-					Thread.currentThread().setName("RemovalTask");
-					deleteClient(client);
-				}
-			}, reconnectionTimeoutMillis, TimeUnit.MILLISECONDS);
-			removalTasks.put(client, removalTask);
+		synchronized (removalTasks) {
+			if (removalTasks.get(client) == null && !removalScheduler.isShutdown()) {
+				ScheduledFuture<?> removalTask = removalScheduler.schedule(new Runnable() {
+					public void run() {
+						Thread.currentThread().setName("RemovalTask");
+						synchronized (removalTasks) {
+							removalTasks.remove(client);
+						}
+						deleteClient(client);
+					}
+				}, reconnectionTimeoutMillis, TimeUnit.MILLISECONDS);
+				removalTasks.put(client, removalTask);
+			}
 		}
 	}
 
@@ -88,34 +103,45 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 		this.clientManager = clientManager;
 	}
 
-	public void send(final String topic, final Payload payload) {
-		if (! sendPool.isShutdown()) {
-			synchronized (topicToClients) {
-				final IStreamingClient[] subscribedClients = topicToClients.get(topic);
+	public void send(String topic, Payload payload) {
+		if (! sender.isShutdown()) {
+			int topicId = topicDictionary.find(topic);
 
-				if (subscribedClients == null) {
-					return;
-				}
+			if (topicId == TopicDictionary.NO_TOPIC) {
+				return;
+			}
 
-				try {
-					int size = subscribedClients.length;
-					for (int i = 0; i < size; i++) {
-						final IStreamingClient client = subscribedClients[i];
-						sendPool.execute(new Runnable() {
-							public void run() {
-								client.send(topic, payload);
-							}
-						});
-					}
-				} catch (Throwable e) {
-					log.warn("Exception launching send thread", e);
+			IStreamingClient[] subscribedClients = topicRegistry.subscribers(topicId, topic);
+
+			if (subscribedClients == null) {
+				return;
+			}
+
+			EncodedPayload encodedPayload = new EncodedPayload(topicId, payload);
+
+			try {
+				for (IStreamingClient client : subscribedClients) {
+					sender.send(client, topic, encodedPayload);
 				}
+			} catch (Throwable e) {
+				log.warn("Exception queueing message for send", e);
 			}
 		}
 	}
 
+	public void setSendShards(int shards) {
+		ShardedSender oldSender = sender;
+		sender = new ShardedSender(shards);
+		sender.registerAll(oldSender);
+		oldSender.stop();
+	}
+
+	int getSendShards() {
+		return sender.getShardCount();
+	}
+
 	public void stop() {
-		sendPool.shutdownNow();
+		sender.stop();
 		notifyPool.shutdownNow();
 		removalScheduler.shutdownNow();
 	}
@@ -124,6 +150,13 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 		return clientManager;
 	}
 
+	/**
+	 * The ids of this server's topics, which its binary connections send
+	 */
+	public TopicDictionary getTopicDictionary() {
+		return topicDictionary;
+	}
+
 	void notifyPublishListeners(final IStreamingClient client, final String topic, final Payload payload) {
 		notifyPool.execute(new Runnable() {
 			public void run() {
@@ -166,13 +199,23 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 	}
 
 	Map<String, IStreamingClient[]> getTopicToClients() {
-		return topicToClients;
+		return topicRegistry.asMap();
 	}
 
 	void setReconnectionTimeout(long timeoutMillis) {
 		this.reconnectionTimeoutMillis = timeoutMillis;
 	}
 
+	/**
+	 * Replaces the executor used to notify subscription and publish 
+	 * listeners, shutting down the previous one
+	 */
+	public void setNotifyPool(ExecutorService notifyPool) {
+		ExecutorService oldNotifyPool = this.notifyPool;
+		this.notifyPool = notifyPool;
+		oldNotifyPool.shutdown();
+	}
+
 	void setScheduler(ScheduledExecutorService scheduler) {
 		this.removalScheduler = scheduler;
 	}
@@ -186,63 +229,16 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 	}
 
 	private void addClient(String topic, IStreamingClient client) {
-		synchronized (topicToClients) {
-			IStreamingClient[] clients = topicToClients.get(topic);
-
-			if (clients == null) {
-				topicToClients.put(topic, new IStreamingClient[] { client });
-			} else {
-				int newSize = clients.length + 1;
-				IStreamingClient[] copy = new IStreamingClient[newSize];
-				System.arraycopy(clients, 0, copy, 0, newSize - 1);
-				copy[newSize - 1] = client;
-				topicToClients.put(topic, copy);
-			}
-		}
-
+		sender.register(client);
+		topicRegistry.add(topic, client);
 		client.addSubscription(topic);
 	}
 
 	private void removeClient(String topic, IStreamingClient client) {
-		synchronized (topicToClients) {
-			IStreamingClient[] clients = topicToClients.get(topic);
-
-			if (clients != null) {
-				int count = countSubscribersLeft(client, clients);
-
-				if (count == 0) {
-					topicToClients.remove(topic);
-				} else {
-					IStreamingClient[] copy = createNewSubscribersArray(client, clients, count);
-					topicToClients.put(topic, copy);
-				}
-			}
-		}
+		topicRegistry.remove(topic, client);
 		client.removeSubscription(topic);
 	}
 
-	private IStreamingClient[] createNewSubscribersArray(IStreamingClient client, IStreamingClient[] clients, int count) {
-		IStreamingClient[] copy = new IStreamingClient[count];
-		int index = 0;
-
-		for (IStreamingClient subscriber : clients) {
-			if (subscriber != null && !subscriber.equals(client)) {
-				copy[index++] = subscriber;
-			}
-		}
-		return copy;
-	}
-
-	private int countSubscribersLeft(IStreamingClient client, IStreamingClient[] clients) {
-		int count = 0;
-		for (IStreamingClient subscriber : clients) {
-			if (! subscriber.equals(client)) {
-				count++;
-			}
-		}
-		return count;
-	}
-
 	private void notifyOnSubscribeListeners(final String topic, final IStreamingClient client) {
 		notifyPool.execute(new Runnable() {
 			public void run() {
@@ -278,6 +274,7 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 				notifyOnUnSubscribeListeners(topic, client);
 			}
 
+			sender.remove(client);
 			log.info("Client-" + client.getUid() + " subscriptions removed");
 			client.destroy();
 			client = null;
@@ -285,15 +282,8 @@ public class StreamingSubscriptionManager implements SubscriptionManager, Client
 	}
 
 	private void removeSubscriptions(IStreamingClient client) {
-		synchronized (topicToClients) {
-			for (String topic : client.getSubscriptions()) {
-				IStreamingClient[] clients = topicToClients.get(topic);
-				for (int i = 0; i < clients.length; i++) {
-					if (client.equals(clients[i])) {
-						clients[i] = new NullClient();
-					}
-				}
-			}
+		for (String topic : client.getSubscriptions()) {
+			topicRegistry.remove(topic, client);
 		}
 	}
 }
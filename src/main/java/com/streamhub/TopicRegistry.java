@@ -0,0 +1,216 @@
+package com.streamhub;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.streamhub.client.IStreamingClient;
+import com.streamhub.util.TopicDictionary;
+
+/**
+ * Maps topics to an immutable snapshot of their subscribers.  Publishers
+ * read the current snapshot without locking; subscribe and unsubscribe
+ * build a new array and swap it in with compare-and-set, retrying if
+ * another writer got there first.
+ * <p>
+ * Snapshots are indexed by the id {@link TopicDictionary} gives each topic,
+ * in fixed size chunks which are never replaced once created, so a lookup
+ * by id is two array reads and no hashing.  Only adding a chunk, once every
+ * 1024 ids, takes a lock.  The registry holds a reference to the id of each
+ * topic while it has subscribers, and each slot records its topic, so a
+ * lookup with an id which has since been given to another topic finds
+ * nothing rather than the wrong subscribers.
+ */
+class TopicRegistry {
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final IStreamingClient[] NO_CLIENTS = new IStreamingClient[0];
+	private final TopicDictionary topicDictionary;
+	private final AtomicInteger topicCount = new AtomicInteger();
+	private volatile Chunk[] chunks = new Chunk[0];
+
+	TopicRegistry(TopicDictionary topicDictionary) {
+		this.topicDictionary = topicDictionary;
+	}
+
+	/**
+	 * Looking up a topic nobody has subscribed to does not give it an id
+	 */
+	public IStreamingClient[] subscribers(String topic) {
+		int topicId = topicDictionary.find(topic);
+		return topicId == TopicDictionary.NO_TOPIC ? null : subscribers(topicId, topic);
+	}
+
+	/**
+	 * Returns <code>null</code> if <code>topicId</code> is no longer the id
+	 * of <code>topic</code>
+	 */
+	public IStreamingClient[] subscribers(int topicId, String topic) {
+		Chunk chunk = findChunk(topicId);
+		Subscribers subscribers = chunk == null ? null : chunk.get(topicId & CHUNK_MASK);
+		return subscribers == null || ! subscribers.topic.equals(topic) ? null : subscribers.clients;
+	}
+
+	public void add(String topic, IStreamingClient client) {
+		int topicId = topicDictionary.acquire(topic);
+		Chunk chunk = findOrCreateChunk(topicId);
+		int index = topicId & CHUNK_MASK;
+
+		while (true) {
+			Subscribers subscribers = chunk.get(index);
+
+			if (subscribers == null) {
+				// Keeps the reference for as long as the topic has subscribers
+				if (chunk.compareAndSet(index, null, new Subscribers(topic, new IStreamingClient[] { client }))) {
+					topicCount.incrementAndGet();
+					return;
+				}
+			} else {
+				IStreamingClient[] clients = subscribers.clients;
+				int size = clients.length;
+				IStreamingClient[] copy = new IStreamingClient[size + 1];
+				System.arraycopy(clients, 0, copy, 0, size);
+				copy[size] = client;
+
+				if (chunk.compareAndSet(index, subscribers, new Subscribers(topic, copy))) {
+					topicDictionary.release(topicId);
+					return;
+				}
+			}
+		}
+	}
+
+	public void remove(String topic, IStreamingClient client) {
+		int topicId = topicDictionary.find(topic);
+		Chunk chunk = findChunk(topicId);
+		if (topicId == TopicDictionary.NO_TOPIC || chunk == null) {
+			return;
+		}
+		int index = topicId & CHUNK_MASK;
+
+		while (true) {
+			Subscribers subscribers = chunk.get(index);
+
+			if (subscribers == null || ! subscribers.topic.equals(topic)) {
+				return;
+			}
+
+			IStreamingClient[] remaining = without(client, subscribers.clients);
+
+			if (remaining == subscribers.clients) {
+				return;
+			} else if (remaining.length == 0) {
+				if (chunk.compareAndSet(index, subscribers, null)) {
+					topicCount.decrementAndGet();
+					topicDictionary.release(topicId);
+					return;
+				}
+			} else if (chunk.compareAndSet(index, subscribers, new Subscribers(topic, remaining))) {
+				return;
+			}
+		}
+	}
+
+	public int getTopicCount() {
+		return topicCount.get();
+	}
+
+	/**
+	 * A snapshot of every topic which has subscribers
+	 */
+	Map<String, IStreamingClient[]> asMap() {
+		Map<String, IStreamingClient[]> topicToClients = new HashMap<String, IStreamingClient[]>();
+
+		for (Chunk chunk : chunks) {
+			if (chunk == null) {
+				continue;
+			}
+			for (int index = 0; index < CHUNK_SIZE; index++) {
+				Subscribers subscribers = chunk.get(index);
+				if (subscribers != null) {
+					topicToClients.put(subscribers.topic, subscribers.clients);
+				}
+			}
+		}
+
+		return Collections.unmodifiableMap(topicToClients);
+	}
+
+	private Chunk findChunk(int topicId) {
+		Chunk[] current = chunks;
+		int chunkIndex = topicId >>> CHUNK_BITS;
+		return chunkIndex < current.length ? current[chunkIndex] : null;
+	}
+
+	private Chunk findOrCreateChunk(int topicId) {
+		Chunk chunk = findChunk(topicId);
+		return chunk == null ? createChunk(topicId) : chunk;
+	}
+
+	/**
+	 * Publishes a new array of chunks rather than filling a slot of the
+	 * current one, so readers which do not lock always see whole chunks
+	 */
+	private synchronized Chunk createChunk(int topicId) {
+		Chunk[] current = chunks;
+		int chunkIndex = topicId >>> CHUNK_BITS;
+		if (chunkIndex < current.length && current[chunkIndex] != null) {
+			return current[chunkIndex];
+		}
+
+		Chunk[] grown = new Chunk[Math.max(current.length, chunkIndex + 1)];
+		System.arraycopy(current, 0, grown, 0, current.length);
+		Chunk chunk = new Chunk();
+		grown[chunkIndex] = chunk;
+		chunks = grown;
+		return chunk;
+	}
+
+	private static IStreamingClient[] without(IStreamingClient client, IStreamingClient[] clients) {
+		int count = 0;
+
+		for (IStreamingClient subscriber : clients) {
+			if (! subscriber.equals(client)) {
+				count++;
+			}
+		}
+
+		if (count == clients.length) {
+			return clients;
+		} else if (count == 0) {
+			return NO_CLIENTS;
+		}
+
+		IStreamingClient[] copy = new IStreamingClient[count];
+		int index = 0;
+
+		for (IStreamingClient subscriber : clients) {
+			if (! subscriber.equals(client)) {
+				copy[index++] = subscriber;
+			}
+		}
+
+		return copy;
+	}
+
+	private static class Subscribers {
+		final String topic;
+		final IStreamingClient[] clients;
+
+		Subscribers(String topic, IStreamingClient[] clients) {
+			this.topic = topic;
+			this.clients = clients;
+		}
+	}
+
+	private static class Chunk extends AtomicReferenceArray<Subscribers> {
+		private static final long serialVersionUID = 1L;
+
+		Chunk() {
+			super(CHUNK_SIZE);
+		}
+	}
+}
@@ -2,15 +2,37 @@ package com.streamhub;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import com.streamhub.api.SubscriptionManager;
 import com.streamhub.handler.Handler;
 import com.streamhub.handler.WebSocketConnection;
-import com.streamhub.util.UrlUtils;
+import com.streamhub.request.HttpRequestHead;
+import com.streamhub.util.PerMessageDeflate;
 import com.streamhub.util.WebSocketUtils;
 
+/**
+ * Completes the WebSocket handshake and hands the connection over to a 
+ * {@link WebSocketConnection}.  Clients sending a Sec-WebSocket-Key speak 
+ * RFC 6455; older clients keep the hixie-75 and hixie-76 handshakes and 
+ * framing.  RFC 6455 clients offering permessage-deflate have their 
+ * messages compressed when compression is enabled.
+ */
 public class WebSocketHandler implements Handler {
+	private static final String SEC_KEY = "Sec-WebSocket-Key";
+	private static final String SEC_VERSION = "Sec-WebSocket-Version";
+	private static final String SEC_PROTOCOL = "Sec-WebSocket-Protocol";
+	private static final String SEC_EXTENSIONS = "Sec-WebSocket-Extensions";
+	private static final String STREAMHUB_PROTOCOL = "StreamHubWS";
+	private static final String RFC_6455_HANDSHAKE_START = "HTTP/1.1 101 Switching Protocols\r\n" +
+					"Upgrade: websocket\r\n" +
+					"Connection: Upgrade\r\n" +
+					"Sec-WebSocket-Accept: ";
+	private static final String RFC_6455_PROTOCOL_HEADER = "\r\nSec-WebSocket-Protocol: StreamHubWS";
+	private static final String RFC_6455_EXTENSIONS_HEADER = "\r\nSec-WebSocket-Extensions: ";
+	private static final String UNSUPPORTED_VERSION_RESPONSE = "HTTP/1.1 426 Upgrade Required\r\n" +
+					"Sec-WebSocket-Version: 13\r\n" +
+					"Connection: close\r\n" +
+					"Server: StreamHub\r\n\r\n";
 	private static final String SEC_KEY1 = "Sec-WebSocket-Key1";
 	private static final String SEC_KEY2 = "Sec-WebSocket-Key2";
 	private static final String HANDSHAKE_START = "HTTP/1.1 101 Web Socket Protocol Handshake\r\n" +
@@ -24,30 +46,89 @@ public class WebSocketHandler implements Handler {
 	private static final String SERVER = "\r\nServer: StreamHub";
 	private static final String SECURE_LOCATION_HEADER = "\r\nSec-WebSocket-Location: ws://";
 	private static final String LOCATION_HEADER = "\r\nWebSocket-Location: ws://";
+	private volatile boolean isCompressing;
 	private final StreamingSubscriptionManager subscriptionManager;
-	private WebSocketConnection wsConnection;
 
 	public WebSocketHandler(SubscriptionManager subscriptionManager, Handler httpHandler) {
 		this.subscriptionManager = (StreamingSubscriptionManager) subscriptionManager;
 	}
 
 	public void handle(Connection connection) throws Exception {
-		wsConnection = new WebSocketConnection(connection, new WebSocketMessageHandler(subscriptionManager));
-		wsConnection.setReadableEventInterceptor(wsConnection);
-		wsConnection.write(handshakeResponse(connection));
+		byte[] input = connection.readBytes();
+		HttpRequestHead head = HttpRequestHead.parse(input);
+		String key = head.getHeader(SEC_KEY);
+		WebSocketConnection wsConnection;
+
+		if (key == null) {
+			wsConnection = new WebSocketConnection(connection, new WebSocketMessageHandler(subscriptionManager));
+			wsConnection.setReadableEventInterceptor(wsConnection);
+			wsConnection.write(handshakeResponse(input, head));
+		} else if (isSupportedVersion(head.getHeader(SEC_VERSION))) {
+			boolean isDeflating = isCompressing && PerMessageDeflate.isAcceptableOffer(head.getHeader(SEC_EXTENSIONS));
+			wsConnection = new WebSocketConnection(connection, new WebSocketMessageHandler(subscriptionManager), true, isDeflating);
+			wsConnection.setReadableEventInterceptor(wsConnection);
+			wsConnection.write(rfc6455HandshakeResponse(key, head.getHeader(SEC_PROTOCOL), isDeflating));
+			decodeFramesAfter(wsConnection, input, head.getHeadEnd());
+		} else {
+			connection.write(UNSUPPORTED_VERSION_RESPONSE);
+			connection.close();
+		}
 	}
 
-	private ByteBuffer handshakeResponse(Connection connection) throws IOException {
-		byte[] input = connection.readBytes();
-		String string = new String(input);
-		char[] inputAsCharArray = string.toCharArray();
-		Map<String, String> headers = UrlUtils.getHttpHeaders(string, inputAsCharArray);
-		String requestUrl = UrlUtils.getRequestUrl(string, inputAsCharArray);
-		String origin = headers.get("Origin");
-		String host = headers.get("Host");
+	/**
+	 * Accepts permessage-deflate offers from RFC 6455 clients.  Off by 
+	 * default.
+	 */
+	public void setCompression(boolean isCompressing) {
+		this.isCompressing = isCompressing;
+	}
+
+	/**
+	 * An RFC 6455 client may send its first frames in the same read as the 
+	 * handshake, and they are taken with it
+	 */
+	private void decodeFramesAfter(WebSocketConnection wsConnection, byte[] input, int offset) throws IOException {
+		if (offset < input.length) {
+			wsConnection.decode(input, offset);
+		}
+	}
+
+	/**
+	 * Drafts hybi-07 to hybi-17 frame messages exactly as RFC 6455 does
+	 */
+	private boolean isSupportedVersion(String version) {
+		if (version == null) {
+			return false;
+		}
+		
+		try {
+			int number = Integer.parseInt(version.trim());
+			return number >= 7 && number <= 13;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private ByteBuffer rfc6455HandshakeResponse(String key, String protocols, boolean isDeflating) {
+		StringBuilder response = new StringBuilder(RFC_6455_HANDSHAKE_START)
+							.append(WebSocketUtils.getAcceptKey(key));
+		if (protocols != null && protocols.contains(STREAMHUB_PROTOCOL)) {
+			response.append(RFC_6455_PROTOCOL_HEADER);
+		}
+		if (isDeflating) {
+			response.append(RFC_6455_EXTENSIONS_HEADER).append(PerMessageDeflate.RESPONSE);
+		}
+		response.append(SERVER).append(CRLFx2);
+		return ByteBuffer.wrap(response.toString().getBytes());
+	}
+
+	private ByteBuffer handshakeResponse(byte[] input, HttpRequestHead head) {
+		String requestUrl = head.getUrl();
+		String origin = head.getHeader("Origin");
+		String host = head.getHeader("Host");
 
-		if (headers.keySet().contains(SEC_KEY1)) {
-			return secureHandshakeResponse(requestUrl, origin, host, input, headers);
+		if (head.getHeader(SEC_KEY1) != null) {
+			return secureHandshakeResponse(requestUrl, origin, host, input, head);
 		} 
 		
 		return handshakeResponse(requestUrl, origin, host);
@@ -63,10 +144,10 @@ public class WebSocketHandler implements Handler {
 							.toString().getBytes());
 	}
 
-	private ByteBuffer secureHandshakeResponse(String requestUrl, String origin, String host, byte[] input, Map<String, String> headers) {
+	private ByteBuffer secureHandshakeResponse(String requestUrl, String origin, String host, byte[] input, HttpRequestHead head) {
 		byte[] challengeBytes = WebSocketUtils.getChallengeBytes(input);
-		String key1 = headers.get(SEC_KEY1);
-		String key2 = headers.get(SEC_KEY2);
+		String key1 = head.getHeader(SEC_KEY1);
+		String key2 = head.getHeader(SEC_KEY2);
 		byte[] challengeResponse = WebSocketUtils.getChallengeResponse(key1, key2, challengeBytes);
 		String responseHeaders =  new StringBuilder(HANDSHAKE_START)
 							.append(SERVER)
@@ -0,0 +1,5 @@
+package com.streamhub;
+
+public interface WritabilityListener {
+	void onWritable();
+}
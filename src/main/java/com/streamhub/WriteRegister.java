@@ -3,4 +3,6 @@ package com.streamhub;
 public interface WriteRegister {
 	void registerForWrite(Connection connection);
 	void deregisterForWrite(Connection channel);
+	void suspendReads(Connection connection);
+	void resumeReads(Connection connection);
 }
@@ -0,0 +1,18 @@
+package com.streamhub.api;
+
+/**
+ * The kind of threads the server runs blocking work on: request handlers, 
+ * subscription and publish listener notifications and streaming adapter 
+ * requests.  Selector loops always run on platform threads.
+ */
+public enum ExecutionMode {
+	/**
+	 * Run blocking work on fixed pools of operating system threads
+	 */
+	PLATFORM_THREADS,
+	/**
+	 * Run each piece of blocking work on its own virtual thread.  Needs a 
+	 * Java 21 or later runtime; on older runtimes platform threads are used.
+	 */
+	VIRTUAL_THREADS
+}
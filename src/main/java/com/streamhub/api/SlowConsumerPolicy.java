@@ -0,0 +1,21 @@
+package com.streamhub.api;
+
+/**
+ * What the server does with messages for a client whose connection has 
+ * more unsent data queued than its high watermark allows.
+ */
+public enum SlowConsumerPolicy {
+	/**
+	 * Keep only the latest message for each topic and send them once the 
+	 * connection has drained below its low watermark
+	 */
+	CONFLATE,
+	/**
+	 * Discard messages until the connection has drained below its low watermark
+	 */
+	DROP,
+	/**
+	 * Disconnect the client
+	 */
+	DISCONNECT
+}
@@ -1,21 +1,47 @@
 package com.streamhub.client;
 
+import com.streamhub.api.SlowConsumerPolicy;
 import com.streamhub.request.DirectRequest;
 import com.streamhub.request.HttpRequest;
 import com.streamhub.request.Request;
 
 public class ClientFactory {
+	public static final long DEFAULT_RESPONSE_BUDGET = 10 * 1024 * 1024;
 	private final ClientConnectionListener clientListener;
+	private final boolean isConflating;
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+	private long responseBudget = DEFAULT_RESPONSE_BUDGET;
 
 	public ClientFactory(ClientConnectionListener clientListener) {
+		this(clientListener, false);
+	}
+
+	public ClientFactory(ClientConnectionListener clientListener, boolean isConflating) {
 		this.clientListener = clientListener;
+		this.isConflating = isConflating;
+	}
+
+	public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+		this.slowConsumerPolicy = slowConsumerPolicy;
+	}
+
+	public void setResponseBudget(long responseBudget) {
+		this.responseBudget = responseBudget;
 	}
 
 	public IStreamingClient createFrom(Request request) throws CannotCreateClientException {
+		IStreamingClient client = create(request);
+		((StreamingClient) client).setSlowConsumerPolicy(slowConsumerPolicy);
+		return client;
+	}
+
+	private IStreamingClient create(Request request) throws CannotCreateClientException {
 		if (request.isWebSocket()) {
-			return WebSocketClient.createFrom(request, clientListener);
+			return WebSocketClient.createFrom(request, clientListener, isConflating);
 		} else if (request instanceof HttpRequest) {
-			return CometClient.createFrom(request, clientListener);
+			CometClient client = (CometClient) CometClient.createFrom(request, clientListener, isConflating);
+			client.setResponseBudget(responseBudget);
+			return client;
 		} else if (request instanceof DirectRequest) {
 			return DirectClient.createFrom(request, clientListener);
 		}
@@ -2,30 +2,43 @@ package com.streamhub.client;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.streamhub.api.Payload;
+import com.streamhub.Connection;
 import com.streamhub.request.Request;
 import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.ChunkedUtils;
 
 class CometClient extends StreamingClient {
 	public static final int QUEUE_SIZE = 1000;
+	private static final long UNLIMITED = Long.MAX_VALUE;
+	private static final byte PADDING_BYTE = ' ';
 	private static final byte[] COMMA_BYTES = ",".getBytes();
 	private static final Logger log = Logger.getLogger(CometClient.class);
 	private static final byte[] START_ARRAY_BYTES = "[".getBytes();
 	private static final byte[] END_ARRAY_BYTES = "]".getBytes();
-	private final Queue<Message> queue = new LinkedList<Message>();
+	private final MessageQueue queue;
+	private long responseBudget = ClientFactory.DEFAULT_RESPONSE_BUDGET;
+	private long responseLimit = UNLIMITED;
+	private long responseStart;
+	private boolean isChunked;
 
-	private CometClient(String uid, ClientConnectionListener clientListener) {
+	private CometClient(String uid, ClientConnectionListener clientListener, MessageQueue queue) {
 		super(uid, clientListener);
+		this.queue = queue;
 	}
 
 	public static IStreamingClient createFrom(Request request, ClientConnectionListener clientListener) {
-		return new CometClient(request.getUid(), clientListener);
+		return createFrom(request, clientListener, false);
+	}
+
+	public static IStreamingClient createFrom(Request request, ClientConnectionListener clientListener, boolean isConflating) {
+		MessageQueue queue = isConflating ? new ConflatingMessageQueue() : new FifoMessageQueue();
+		return new CometClient(request.getUid(), clientListener, queue);
 	}
 
 	public synchronized void onConnect() {
@@ -35,27 +48,53 @@ class CometClient extends StreamingClient {
 		super.onConnect();
 	}
 
-	public synchronized void send(String topic, Payload payload) {
+	public synchronized void send(String topic, EncodedPayload encodedPayload) {
 		if (connection == null) {
-			queue(topic, payload);
+			queue(topic, encodedPayload);
 			return;
 		}
 		
 		if (isConnected()) {
-			try {
-				payload.timestamp();
-				connection.write(ByteBuffer.wrap(payload.toCometBytes()));
-			} catch (IOException e) {
-				if (isConnected()) {
-					if (! (e instanceof ClosedChannelException)) {
-						log.error("Error sending to Client-" + uid, e);
-					}
-					lostConnection();
-				}
-			}
+			deliver(topic, encodedPayload);
 		}
 	}
 
+	/**
+	 * Called once the forever frame page header has been written.  A 
+	 * chunked response is ended after the response budget; otherwise the 
+	 * response ends when <code>responseLength</code> bytes have been written.
+	 */
+	@Override
+	public synchronized void setResponseLength(long responseLength) {
+		isChunked = responseLength == CHUNKED_RESPONSE;
+		responseLimit = isChunked ? responseBudget : responseLength;
+		responseStart = connection == null ? 0 : connection.getBytesWritten();
+	}
+
+	void setResponseBudget(long responseBudget) {
+		this.responseBudget = responseBudget;
+	}
+
+	/**
+	 * A message that would take the response past its limit is queued and 
+	 * the response is ended instead, so the browser reconnects and picks it 
+	 * up rather than the message being cut off
+	 */
+	@Override
+	synchronized void deliver(String topic, EncodedPayload encodedPayload) {
+		if (responseLimit != UNLIMITED && ! fitsInResponse(frameFor(encodedPayload).remaining())) {
+			endResponse();
+			queue(topic, encodedPayload);
+		} else {
+			super.deliver(topic, encodedPayload);
+		}
+	}
+
+	@Override
+	ByteBuffer frameFor(EncodedPayload encodedPayload) {
+		return isChunked ? encodedPayload.chunkedCometFrame() : encodedPayload.cometFrame();
+	}
+
 	public String getQueuedMessages() {
 		log.debug("Client-" + uid + " sending queued messages: " + queue);
 		byte[] allBytes = START_ARRAY_BYTES;
@@ -74,29 +113,86 @@ class CometClient extends StreamingClient {
 		return new String(allBytes);
 	}
 	
+	@Override
+	public synchronized long getQueuedBytes() {
+		return queue.getQueuedBytes() + super.getQueuedBytes();
+	}
+	
 	public void destroy() {
 		queue.clear();
 		log.info("Client-" + uid + " deleted");
 	}
 	
-	private synchronized void queue(String topic, Payload payload) {
+	private synchronized void queue(String topic, EncodedPayload encodedPayload) {
 		if (queue.size() == QUEUE_SIZE) {
 			log.info("Client-" + uid + " queue is full - disconnecting");
-			queue.add(new Message(topic, payload));
+			queue.add(messageFor(topic, encodedPayload));
 			lostConnection();
 		} else if (queue.size() < QUEUE_SIZE) {
 			if (log.isDebugEnabled()) {
 				log.debug("Client-" + uid + " response pipe not connected: no outputStream has been set yet: queueing message");
 			}
-			queue.add(new Message(topic, payload));
+			queue.add(messageFor(topic, encodedPayload));
 		}
 	}
 
 	private synchronized void sendQueuedMessages() {
 		log.debug("Client-" + uid + " sending queued messages: " + queue);
+		List<Message> messages = new ArrayList<Message>(queue.size());
 		for (Message message : queue) {
-			send(message.topic, message.payload);
+			messages.add(message);
 		}
 		queue.clear();
+		
+		for (Message message : messages) {
+			send(message.topic, message.encodedPayload);
+		}
+	}
+
+	/**
+	 * The first message on a response is always written, however large, so 
+	 * a message bigger than the limit cannot cause endless reconnects
+	 */
+	private boolean fitsInResponse(int frameLength) {
+		long bytesWritten = connection.getBytesWritten();
+		long trailerLength = isChunked ? ChunkedUtils.LAST_CHUNK.length : 0;
+		return bytesWritten == responseStart || bytesWritten + frameLength + trailerLength <= responseLimit;
+	}
+
+	/**
+	 * Finishes the response and closes its connection once everything has 
+	 * been flushed.  Messages are queued until the browser reconnects; if it 
+	 * never does, the client is removed after the reconnection timeout like 
+	 * any other client that lost its connection.
+	 */
+	private void endResponse() {
+		Connection response = connection;
+		ByteBuffer trailer = isChunked ? ByteBuffer.wrap(ChunkedUtils.LAST_CHUNK) : padding(response);
+		connection = null;
+		isConnected = false;
+		responseLimit = UNLIMITED;
+		if (log.isDebugEnabled()) {
+			log.debug("Client-" + uid + " response complete after " + response.getBytesWritten() + " bytes");
+		}
+		clientListener.clientLostConnection(this);
+		
+		if (trailer.hasRemaining()) {
+			response.setSelfClosing(true);
+			try {
+				response.write(trailer);
+			} catch (IOException e) {
+				response.setSelfClosing(false);
+				response.close();
+			}
+		} else {
+			response.close();
+		}
+	}
+
+	private ByteBuffer padding(Connection response) {
+		long remaining = responseLimit - response.getBytesWritten();
+		byte[] padding = new byte[(int) Math.max(0, Math.min(remaining, Integer.MAX_VALUE))];
+		Arrays.fill(padding, PADDING_BYTE);
+		return ByteBuffer.wrap(padding);
 	}
 }
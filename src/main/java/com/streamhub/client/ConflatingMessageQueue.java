@@ -0,0 +1,47 @@
+package com.streamhub.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps only the latest message for each topic.  A newer message replaces 
+ * the queued one in place, so topics are still delivered in the order they 
+ * first fell behind and the queue never holds more than one message per 
+ * subscribed topic.
+ */
+class ConflatingMessageQueue implements MessageQueue {
+	private final Map<String, Message> latestByTopic = new LinkedHashMap<String, Message>();
+	private long queuedBytes;
+
+	public void add(Message message) {
+		Message replaced = latestByTopic.put(message.topic, message);
+		queuedBytes += message.size;
+		
+		if (replaced != null) {
+			queuedBytes -= replaced.size;
+		}
+	}
+
+	public int size() {
+		return latestByTopic.size();
+	}
+
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	public void clear() {
+		latestByTopic.clear();
+		queuedBytes = 0;
+	}
+
+	public Iterator<Message> iterator() {
+		return latestByTopic.values().iterator();
+	}
+
+	@Override
+	public String toString() {
+		return latestByTopic.values().toString();
+	}
+}
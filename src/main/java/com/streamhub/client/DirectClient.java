@@ -1,16 +1,20 @@
 package com.streamhub.client;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import org.apache.log4j.Logger;
 
-import com.streamhub.api.Payload;
+import com.streamhub.Connection;
+import com.streamhub.handler.BinaryConnection;
 import com.streamhub.reader.StreamReader;
 import com.streamhub.request.Request;
+import com.streamhub.util.BinaryFrames;
 
 class DirectClient extends StreamingClient {
-	private static final int MESSAGE_INSERTION_POINT = 2;
-	private static final String DIRECT_MESSAGE_SEPARATOR_X2 = "@@@@";
 	private static final Logger log = Logger.getLogger(DirectClient.class);
 	private StreamReader streamReader;
+	private boolean isBinary;
 	
 	private DirectClient(Request request, ClientConnectionListener clientListener) {
 		super(request.getUid(), clientListener);
@@ -20,9 +24,42 @@ class DirectClient extends StreamingClient {
 		return new DirectClient(request, clientListener);
 	}
 
-	public void send(String topic, Payload payload) {
-		payload.timestamp();
-		write(new StringBuilder(DIRECT_MESSAGE_SEPARATOR_X2).insert(MESSAGE_INSERTION_POINT, payload.toString()).toString());
+	public void send(String topic, EncodedPayload encodedPayload) {
+		deliver(topic, encodedPayload);
+	}
+
+	@Override
+	public synchronized void setConnection(Connection connection) {
+		super.setConnection(connection);
+		isBinary = connection instanceof BinaryConnection;
+	}
+
+	@Override
+	ByteBuffer frameFor(EncodedPayload encodedPayload) {
+		return encodedPayload.directFrame();
+	}
+
+	/**
+	 * Binary frames are written by the connection, which defines their 
+	 * topic first if it has to.  A message sent only to this client was not 
+	 * given a topic id when it was encoded, so gets one as it is written.
+	 */
+	@Override
+	void write(String topic, EncodedPayload encodedPayload) {
+		if (! isBinary) {
+			super.write(topic, encodedPayload);
+			return;
+		}
+		BinaryConnection binaryConnection = (BinaryConnection) connection;
+		try {
+			if (encodedPayload.getTopicId() == BinaryFrames.NO_TOPIC) {
+				binaryConnection.writeFrame(BinaryFrames.OPCODE_MESSAGE, topic, encodedPayload.getPayload().toString());
+			} else {
+				binaryConnection.writeMessage(encodedPayload.getTopicId(), topic, encodedPayload.binaryFrame());
+			}
+		} catch (IOException e) {
+			writeFailed(e);
+		}
 	}
 
 	public void onConnect() {
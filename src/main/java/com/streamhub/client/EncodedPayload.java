@@ -0,0 +1,117 @@
+package com.streamhub.client;
+
+import java.nio.ByteBuffer;
+
+import com.streamhub.DirectHandler;
+import com.streamhub.api.Payload;
+import com.streamhub.util.BinaryFrames;
+import com.streamhub.util.ChunkedUtils;
+import com.streamhub.util.PerMessageDeflate;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * Wraps a Payload being fanned out to many clients so that each wire format
+ * is only encoded once per publish.  Every client is handed its own
+ * duplicate of a shared read-only buffer so positions do not interfere.
+ */
+public class EncodedPayload {
+	private static final byte[] DIRECT_SEP_BYTES = DirectHandler.DIRECT_MESSAGE_SEPARATOR.getBytes();
+	private final int topicId;
+	private final Payload payload;
+	private ByteBuffer cometFrame;
+	private ByteBuffer chunkedCometFrame;
+	private ByteBuffer webSocketFrame;
+	private ByteBuffer rfc6455Frame;
+	private ByteBuffer deflatedRfc6455Frame;
+	private ByteBuffer directFrame;
+	private ByteBuffer binaryFrame;
+
+	public EncodedPayload(Payload payload) {
+		this(BinaryFrames.NO_TOPIC, payload);
+	}
+
+	/**
+	 * @param topicId	the id {@link com.streamhub.util.TopicDictionary} gave the 
+	 * 					topic when it was published, sent in binary frames
+	 */
+	public EncodedPayload(int topicId, Payload payload) {
+		this.topicId = topicId;
+		this.payload = payload;
+		payload.timestamp();
+	}
+
+	public Payload getPayload() {
+		return payload;
+	}
+
+	public int getTopicId() {
+		return topicId;
+	}
+
+	public synchronized ByteBuffer cometFrame() {
+		if (cometFrame == null) {
+			cometFrame = ByteBuffer.wrap(payload.toCometBytes()).asReadOnlyBuffer();
+		}
+		return cometFrame.duplicate();
+	}
+
+	public synchronized ByteBuffer chunkedCometFrame() {
+		if (chunkedCometFrame == null) {
+			chunkedCometFrame = ByteBuffer.wrap(ChunkedUtils.createChunk(payload.toCometBytes())).asReadOnlyBuffer();
+		}
+		return chunkedCometFrame.duplicate();
+	}
+
+	public synchronized ByteBuffer webSocketFrame() {
+		if (webSocketFrame == null) {
+			webSocketFrame = ByteBuffer.wrap(WebSocketUtils.createMessage(payload.toString())).asReadOnlyBuffer();
+		}
+		return webSocketFrame.duplicate();
+	}
+
+	public synchronized ByteBuffer rfc6455Frame() {
+		if (rfc6455Frame == null) {
+			rfc6455Frame = ByteBuffer.wrap(WebSocketUtils.createFrame(payload.toString())).asReadOnlyBuffer();
+		}
+		return rfc6455Frame.duplicate();
+	}
+
+	/**
+	 * Compressed once per publish for every subscriber that negotiated 
+	 * permessage-deflate.  Sent uncompressed if compressing does not make 
+	 * the message smaller.
+	 */
+	public synchronized ByteBuffer deflatedRfc6455Frame() {
+		if (deflatedRfc6455Frame == null) {
+			byte[] message = WebSocketUtils.toUtf8(payload.toString());
+			byte[] compressed = PerMessageDeflate.getInstance().compress(message);
+			byte[] frame = compressed.length < message.length ? WebSocketUtils.createCompressedFrame(compressed) : WebSocketUtils.createFrame(WebSocketUtils.OPCODE_TEXT, message);
+			deflatedRfc6455Frame = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+		}
+		return deflatedRfc6455Frame.duplicate();
+	}
+
+	public synchronized ByteBuffer directFrame() {
+		if (directFrame == null) {
+			byte[] message = payload.toString().getBytes();
+			ByteBuffer frame = ByteBuffer.allocate(message.length + DIRECT_SEP_BYTES.length * 2);
+			frame.put(DIRECT_SEP_BYTES).put(message).put(DIRECT_SEP_BYTES);
+			frame.flip();
+			directFrame = frame.asReadOnlyBuffer();
+		}
+		return directFrame.duplicate();
+	}
+
+	public synchronized ByteBuffer binaryFrame() {
+		if (binaryFrame == null) {
+			byte[] frame = BinaryFrames.createFrame(BinaryFrames.OPCODE_MESSAGE, topicId, payload.toString());
+			binaryFrame = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+		}
+		return binaryFrame.duplicate();
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(payload);
+	}
+}
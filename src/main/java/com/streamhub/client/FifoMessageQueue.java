@@ -0,0 +1,37 @@
+package com.streamhub.client;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+class FifoMessageQueue implements MessageQueue {
+	private final List<Message> messages = new LinkedList<Message>();
+	private long queuedBytes;
+
+	public void add(Message message) {
+		messages.add(message);
+		queuedBytes += message.size;
+	}
+
+	public int size() {
+		return messages.size();
+	}
+
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	public void clear() {
+		messages.clear();
+		queuedBytes = 0;
+	}
+
+	public Iterator<Message> iterator() {
+		return messages.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return messages.toString();
+	}
+}
@@ -4,10 +4,16 @@ import com.streamhub.Connection;
 import com.streamhub.api.Client;
 
 public interface IStreamingClient extends Client {
+	long CHUNKED_RESPONSE = -1;
+	
 	void addSubscription(String topic);
 	void removeSubscription(String topic);
+	void send(String topic, EncodedPayload encodedPayload);
 	void onConnect();
 	void setConnection(Connection connection);
+	void setResponseLength(long responseLength);
 	String getQueuedMessages();
+	long getQueuedBytes();
+	boolean isWritable();
 	void destroy();
 }
\ No newline at end of file
@@ -2,13 +2,22 @@ package com.streamhub.client;
 
 import com.streamhub.api.Payload;
 
+/**
+ * A message queued for a client.  It keeps the payload as encoded for 
+ * every subscriber, so queueing and replaying it encode nothing again, and 
+ * its size is the length of the frame its client writes.
+ */
 class Message {
 	public final String topic;
+	public final EncodedPayload encodedPayload;
 	public final Payload payload;
+	public final int size;
 
-	public Message(String topic, Payload payload) {
+	public Message(String topic, EncodedPayload encodedPayload, int size) {
 		this.topic = topic;
-		this.payload = payload;
+		this.encodedPayload = encodedPayload;
+		this.payload = encodedPayload.getPayload();
+		this.size = size;
 	}
 	
 	@Override
@@ -0,0 +1,11 @@
+package com.streamhub.client;
+
+/**
+ * Messages held for a client which cannot currently be written to.
+ */
+interface MessageQueue extends Iterable<Message> {
+	void add(Message message);
+	int size();
+	long getQueuedBytes();
+	void clear();
+}
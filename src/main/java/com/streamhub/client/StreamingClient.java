@@ -1,22 +1,30 @@
 package com.streamhub.client;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 import com.streamhub.Connection;
+import com.streamhub.WritabilityListener;
+import com.streamhub.api.Payload;
+import com.streamhub.api.SlowConsumerPolicy;
 import com.streamhub.util.SocketUtils;
 
-abstract class StreamingClient implements IStreamingClient {
+abstract class StreamingClient implements IStreamingClient, WritabilityListener {
 	private static final Logger log = Logger.getLogger(StreamingClient.class);
 	protected ClientConnectionListener clientListener;
 	protected String uid;
 	protected Connection connection;
 	protected boolean isConnected;
 	private final Set<String> topics = new HashSet<String>();
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+	private MessageQueue backlog;
 	
 	protected StreamingClient(String uid, ClientConnectionListener clientListener) {
 		this.uid = uid;
@@ -35,8 +43,11 @@ abstract class StreamingClient implements IStreamingClient {
 		topics.remove(topic);
 	}
 
+	/**
+	 * Returns a copy, so callers may unsubscribe while iterating
+	 */
 	public synchronized Set<String> getSubscriptions() {
-		return topics;
+		return new HashSet<String>(topics);
 	}
 
 	public synchronized void onConnect() {
@@ -55,10 +66,65 @@ abstract class StreamingClient implements IStreamingClient {
 		clientListener.clientLostConnection(this);
 	}
 
+	public void send(String topic, Payload payload) {
+		send(topic, new EncodedPayload(payload));
+	}
+
 	public boolean isConnected() {
 		return isConnected;
 	}
 	
+	public boolean isWritable() {
+		Connection current = connection;
+		return current == null || current.isWritable();
+	}
+	
+	public synchronized long getQueuedBytes() {
+		long queuedBytes = backlog == null ? 0 : backlog.getQueuedBytes();
+		return connection == null ? queuedBytes : queuedBytes + connection.getQueuedBytes();
+	}
+	
+	public synchronized void onWritable() {
+		if (isConnected()) {
+			sendBacklog();
+		}
+	}
+	
+	/**
+	 * Only Comet responses have a length; other clients stream over a 
+	 * connection that lasts as long as the client
+	 */
+	public void setResponseLength(long responseLength) {
+	}
+	
+	void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+		this.slowConsumerPolicy = slowConsumerPolicy;
+	}
+	
+	abstract ByteBuffer frameFor(EncodedPayload encodedPayload);
+	
+	/**
+	 * A message to queue, sized by the frame this client would write for it
+	 */
+	Message messageFor(String topic, EncodedPayload encodedPayload) {
+		return new Message(topic, encodedPayload, frameFor(encodedPayload).remaining());
+	}
+	
+	/**
+	 * Writes the message if the connection can take it, otherwise applies 
+	 * the slow consumer policy
+	 */
+	synchronized void deliver(String topic, EncodedPayload encodedPayload) {
+		if (isWritable()) {
+			if (backlog != null && backlog.size() > 0) {
+				sendBacklog();
+			}
+			write(topic, encodedPayload);
+		} else {
+			fellBehind(topic, encodedPayload);
+		}
+	}
+	
 	public synchronized void setConnection(Connection connection) {
 		log.debug("Client-" + uid + " setConnection to : " + SocketUtils.toString(connection));		
 		this.connection = connection;
@@ -81,10 +147,77 @@ abstract class StreamingClient implements IStreamingClient {
 		}
 	}
 	
+	void write(ByteBuffer buffer) {
+		try {
+			if (connection != null) {
+				connection.write(buffer);
+			}
+		} catch (IOException e) {
+			writeFailed(e);
+		}
+	}
+	
+	/**
+	 * Writes the frame this client's protocol uses for the message
+	 */
+	void write(String topic, EncodedPayload encodedPayload) {
+		write(frameFor(encodedPayload));
+	}
+	
+	void writeFailed(IOException e) {
+		if (isConnected()) {
+			if (! (e instanceof ClosedChannelException)) {
+				log.error("Error sending to Client-" + uid, e);
+			}
+			lostConnection();
+		}
+	}
+	
 	void shutdown() {
 		closeConnection();
 	}
 	
+	private void fellBehind(String topic, EncodedPayload encodedPayload) {
+		switch (slowConsumerPolicy) {
+		case CONFLATE:
+			if (backlog == null) {
+				backlog = new ConflatingMessageQueue();
+			}
+			backlog.add(messageFor(topic, encodedPayload));
+			connection.setWritabilityListener(this);
+			if (connection.isWritable()) {
+				// Drained before the listener was in place
+				sendBacklog();
+			}
+			break;
+		case DROP:
+			if (log.isDebugEnabled()) {
+				log.debug("Client-" + uid + " is not writable: dropping message on topic '" + topic + "'");
+			}
+			break;
+		case DISCONNECT:
+			log.info("Client-" + uid + " is not keeping up - disconnecting");
+			lostConnection();
+			break;
+		}
+	}
+	
+	private void sendBacklog() {
+		if (backlog == null || backlog.size() == 0) {
+			return;
+		}
+		
+		List<Message> messages = new ArrayList<Message>(backlog.size());
+		for (Message message : backlog) {
+			messages.add(message);
+		}
+		backlog.clear();
+		
+		for (Message message : messages) {
+			send(message.topic, message.encodedPayload);
+		}
+	}
+	
 	private void closeConnection() {
 		isConnected = false;
 		if (connection != null) {
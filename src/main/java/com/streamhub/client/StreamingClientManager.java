@@ -83,6 +83,33 @@ public class StreamingClientManager implements ClientManager, StreamingClientMan
 		return clients.size();
 	}
 
+	public long getTotalQueuedBytes() {
+		long totalQueuedBytes = 0;
+		synchronized (clients) {
+			for (IStreamingClient client : clients.values()) {
+				totalQueuedBytes += client.getQueuedBytes();
+			}
+		}
+		return totalQueuedBytes;
+	}
+
+	public int getUnwritableClients() {
+		int unwritableCount = 0;
+		synchronized (clients) {
+			for (IStreamingClient client : clients.values()) {
+				if (! client.isWritable()) {
+					unwritableCount++;
+				}
+			}
+		}
+		return unwritableCount;
+	}
+
+	public long getQueuedBytes(String uid) {
+		IStreamingClient client = clients.get(uid);
+		return client == null ? 0 : client.getQueuedBytes();
+	}
+
 	Map<String, IStreamingClient> getClients() {
 		return clients;
 	}
@@ -4,4 +4,7 @@ public interface StreamingClientManagerMBean {
 	int getConnectedClients();
 	int getTotalClients();
 	int getClientLimit();
+	long getTotalQueuedBytes();
+	long getQueuedBytes(String uid);
+	int getUnwritableClients();
 }
@@ -1,30 +1,39 @@
 package com.streamhub.client;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.streamhub.api.Payload;
+import com.streamhub.Connection;
+import com.streamhub.handler.WebSocketConnection;
 import com.streamhub.request.Request;
-import com.streamhub.util.WebSocketUtils;
 
 public class WebSocketClient extends StreamingClient {
 	private static final Logger log = Logger.getLogger(WebSocketClient.class);
 	
-	private WebSocketClient(String uid, ClientConnectionListener clientListener) {
+	private final MessageQueue pending;
+	private boolean isRfc6455;
+	private boolean isDeflating;
+	
+	private WebSocketClient(String uid, ClientConnectionListener clientListener, MessageQueue pending) {
 		super(uid, clientListener);
+		this.pending = pending;
 	}
 
 	@Override
 	public synchronized void onConnect() {
 		isConnected = true;
 		log.info("Client-" + uid + " connected");
+		sendPendingMessages();
 		super.onConnect();
 	}
 
-	public void destroy() {
+	public synchronized void destroy() {
+		if (pending != null) {
+			pending.clear();
+		}
 		log.info("Client-" + uid + " deleted");
 	}
 
@@ -33,28 +42,66 @@ public class WebSocketClient extends StreamingClient {
 		return "";
 	}
 
-	public synchronized void send(String topic, Payload payload) {
-		sendWebSocketMessage(payload.toString());
+	public synchronized void send(String topic, EncodedPayload encodedPayload) {
+		if (isConnected()) {
+			deliver(topic, encodedPayload);
+		} else if (pending != null) {
+			pending.add(messageFor(topic, encodedPayload));
+		}
 	}
 
-	private void sendWebSocketMessage(String message) {
-		if (isConnected()) {
-			ByteBuffer buffer = ByteBuffer.wrap(WebSocketUtils.createMessage(message));
-			
-			try {
-				connection.write(buffer);
-			} catch (IOException e) {
-				if (isConnected()) {
-					if (! (e instanceof ClosedChannelException)) {
-						log.error("Error sending to Client-" + uid, e);
-					}
-					lostConnection();
-				}
-			}
+	@Override
+	public synchronized long getQueuedBytes() {
+		return pending == null ? super.getQueuedBytes() : pending.getQueuedBytes() + super.getQueuedBytes();
+	}
+
+	@Override
+	public synchronized void setConnection(Connection connection) {
+		super.setConnection(connection);
+		isRfc6455 = connection instanceof WebSocketConnection && ((WebSocketConnection) connection).isRfc6455();
+		isDeflating = isRfc6455 && ((WebSocketConnection) connection).isDeflating();
+	}
+
+	/**
+	 * Each framing is encoded once per publish and shared by every client 
+	 * connected with it
+	 */
+	@Override
+	ByteBuffer frameFor(EncodedPayload encodedPayload) {
+		if (isDeflating) {
+			return encodedPayload.deflatedRfc6455Frame();
 		}
+		return isRfc6455 ? encodedPayload.rfc6455Frame() : encodedPayload.webSocketFrame();
 	}
 
 	public static IStreamingClient createFrom(Request request, ClientConnectionListener clientListener) {
-		return new WebSocketClient(request.getUid(), clientListener);
+		return createFrom(request, clientListener, false);
+	}
+
+	/**
+	 * A conflating WebSocket client keeps the latest message for each topic 
+	 * while it is disconnected and sends them when it reconnects, rather 
+	 * than dropping them.
+	 */
+	public static IStreamingClient createFrom(Request request, ClientConnectionListener clientListener, boolean isConflating) {
+		MessageQueue pending = isConflating ? new ConflatingMessageQueue() : null;
+		return new WebSocketClient(request.getUid(), clientListener, pending);
+	}
+
+	private void sendPendingMessages() {
+		if (pending == null || pending.size() == 0) {
+			return;
+		}
+		
+		log.debug("Client-" + uid + " sending pending messages: " + pending);
+		List<Message> messages = new ArrayList<Message>(pending.size());
+		for (Message message : pending) {
+			messages.add(message);
+		}
+		pending.clear();
+		
+		for (Message message : messages) {
+			send(message.topic, message.encodedPayload);
+		}
 	}
 }
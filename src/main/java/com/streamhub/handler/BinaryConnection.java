@@ -0,0 +1,102 @@
+package com.streamhub.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.streamhub.Connection;
+import com.streamhub.reader.BinaryFrameDecoder;
+import com.streamhub.reader.BinaryFrameListener;
+import com.streamhub.util.BinaryFrames;
+import com.streamhub.util.TopicDictionary;
+
+/**
+ * A Direct client or streaming adapter connection which has switched to
+ * the binary protocol described by {@link BinaryFrames}.  Frames are
+ * handed to the listener as soon as they have been read.  Frames written
+ * refer to topics by the ids the server's {@link TopicDictionary} gave
+ * them, each defined to the other end before the first frame which uses
+ * it, and defined again if the id has since been given to another topic.
+ */
+public class BinaryConnection extends FramedConnection {
+	private final BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+	private final BinaryFrameListener listener;
+	private final TopicDictionary topicDictionary;
+	private final Map<Integer, String> definedTopics = new HashMap<Integer, String>();
+
+	public BinaryConnection(Connection connection, BinaryFrameListener listener, TopicDictionary topicDictionary) {
+		super(connection);
+		this.listener = listener;
+		this.topicDictionary = topicDictionary;
+	}
+
+	/**
+	 * Decodes the bytes which followed the negotiation in the same read
+	 */
+	public synchronized void decode(byte[] input, int offset) throws IOException {
+		decode(ByteBuffer.wrap(input, offset, input.length - offset));
+	}
+
+	@Override
+	protected void decode(ByteBuffer readBuffer) throws IOException {
+		decoder.decode(readBuffer, listener);
+		if (decoder.isClosed()) {
+			close();
+		}
+	}
+
+	/**
+	 * Writes a frame about <code>topic</code>, preceded by its definition if
+	 * need be.  The topic only holds its id while the frame is written, so
+	 * names nobody subscribes to do not stay in the dictionary.
+	 *
+	 * @param topic	the topic, or <code>null</code> if the frame has none
+	 */
+	public void writeFrame(int opcode, String topic, String body) throws IOException {
+		if (topic == null) {
+			connection.write(ByteBuffer.wrap(BinaryFrames.createFrame(opcode, BinaryFrames.NO_TOPIC, body)));
+			return;
+		}
+
+		int topicId = topicDictionary.acquire(topic);
+		try {
+			writeMessage(topicId, topic, ByteBuffer.wrap(BinaryFrames.createFrame(opcode, topicId, body)));
+		} finally {
+			topicDictionary.release(topicId);
+		}
+	}
+
+	/**
+	 * Writes <code>frame</code>, which may be shared by every subscriber to 
+	 * the topic, preceded by the definition of <code>topicId</code> as 
+	 * <code>topic</code> if this connection has not been sent it.  Written 
+	 * under the lock so no frame can overtake the definition of its id.
+	 */
+	public void writeMessage(int topicId, String topic, ByteBuffer frame) throws IOException {
+		synchronized (definedTopics) {
+			byte[] definition = define(topicId, topic);
+			if (definition == null) {
+				connection.write(frame);
+				return;
+			}
+
+			ByteBuffer definedFrame = ByteBuffer.allocate(definition.length + frame.remaining());
+			definedFrame.put(definition).put(frame);
+			definedFrame.flip();
+			connection.write(definedFrame);
+		}
+	}
+
+	/**
+	 * Returns the topic frame to send first, or <code>null</code> if the 
+	 * id is already defined as this topic or there is none
+	 */
+	private byte[] define(int topicId, String topic) {
+		if (topicId == BinaryFrames.NO_TOPIC || topic.equals(definedTopics.get(topicId))) {
+			return null;
+		}
+		definedTopics.put(topicId, topic);
+		return BinaryFrames.createFrame(BinaryFrames.OPCODE_TOPIC, topicId, topic);
+	}
+}
@@ -0,0 +1,150 @@
+package com.streamhub.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.streamhub.Connection;
+import com.streamhub.WritabilityListener;
+import com.streamhub.WriteRegister;
+import com.streamhub.nio.DirectBufferPool;
+import com.streamhub.nio.SSLChannel;
+import com.streamhub.request.Request;
+import com.streamhub.util.SocketUtils;
+
+/**
+ * A connection which has switched from requests to a framed protocol.  It 
+ * intercepts the readable events of the connection it wraps and hands each 
+ * read to {@link #decode(ByteBuffer)}; everything else is passed through.
+ */
+public abstract class FramedConnection implements Connection {
+	private static final DirectBufferPool readBufferPool = DirectBufferPool.readBuffers();
+	protected final Connection connection;
+
+	protected FramedConnection(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Decodes the remaining bytes of <code>readBuffer</code>, all of which 
+	 * must be consumed
+	 */
+	protected abstract void decode(ByteBuffer readBuffer) throws IOException;
+
+	public synchronized void onReadableEvent(Handler handler) {
+		ByteBuffer readBuffer = readBufferPool.borrow();
+		try {
+			readFrames(readBuffer);
+		} catch (IOException e) {
+			this.close();
+		} finally {
+			readBufferPool.release(readBuffer);
+		}
+	}
+
+	public void close() {
+		SocketUtils.closeQuietly(getChannel());
+	}
+
+	public String getAttachment() {
+		return connection.getAttachment();
+	}
+
+	public SocketChannel getChannel() {
+		return connection.getChannel();
+	}
+
+	public Request getRequest() throws IOException {
+		return connection.getRequest();
+	}
+
+	public SSLChannel getSSLChannel() {
+		return connection.getSSLChannel();
+	}
+
+	public boolean isSecure() {
+		return connection.isSecure();
+	}
+
+	public boolean isSelfClosing() {
+		return connection.isSelfClosing();
+	}
+
+	public void onWriteableEvent() {
+		connection.onWriteableEvent();
+	}
+
+	public byte[] readBytes() throws IOException {
+		return connection.readBytes();
+	}
+	
+	public byte[] peekBytes() throws IOException {
+		return connection.peekBytes();
+	}
+
+	public void setAttachment(String attachment) {
+		connection.setAttachment(attachment);
+	}
+
+	public void setReadableEventInterceptor(Connection interceptor) {
+		connection.setReadableEventInterceptor(interceptor);
+	}
+
+	public void setSSLChannel(SSLChannel sslChannel) {
+		connection.setSSLChannel(sslChannel);
+	}
+
+	public void setSelfClosing(boolean selfClosing) {
+		connection.setSelfClosing(selfClosing);
+	}
+
+	public void setWriteRegister(WriteRegister dispatcher) {
+		connection.setWriteRegister(dispatcher);
+	}
+
+	public boolean isWritable() {
+		return connection.isWritable();
+	}
+
+	public long getQueuedBytes() {
+		return connection.getQueuedBytes();
+	}
+
+	public long getBytesWritten() {
+		return connection.getBytesWritten();
+	}
+
+	public boolean keepAlive() {
+		return false;
+	}
+
+	public boolean isKeptAlive() {
+		return false;
+	}
+
+	public void setWritabilityListener(WritabilityListener listener) {
+		connection.setWritabilityListener(listener);
+	}
+
+	public void write(String data) throws IOException {
+		connection.write(data);
+	}
+
+	public void write(ByteBuffer buffer) throws IOException {
+		connection.write(buffer);
+	}
+
+	private void readFrames(ByteBuffer readBuffer) throws IOException {
+		int bytesRead = 0;
+
+		while ((bytesRead = getChannel().read(readBuffer)) > 0) {
+			readBuffer.flip();
+			decode(readBuffer);
+			readBuffer.clear();
+		}
+
+		if (bytesRead < 0) {
+			close();
+		}
+	}
+}
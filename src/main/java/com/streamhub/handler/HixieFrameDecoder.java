@@ -0,0 +1,112 @@
+package com.streamhub.handler;
+
+import java.nio.ByteBuffer;
+
+import com.streamhub.reader.MessageListener;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * Decodes the hixie-76 frames sent by a client as they are read.  Each
+ * message is handed on as soon as its <code>0xff</code> end byte arrives,
+ * bytes are scanned only once and only the unfinished message is kept
+ * between reads.  Bytes outside a frame are skipped.
+ * <p>
+ * The closing handshake, <code>0xff 0x00</code>, or a message longer than
+ * the maximum closes the decoder and any further input is ignored.
+ */
+public class HixieFrameDecoder {
+	public static final int DEFAULT_MAX_MESSAGE_LENGTH = WebSocketFrameDecoder.DEFAULT_MAX_MESSAGE_LENGTH;
+	private static final byte START_BYTE = 0x00;
+	private static final byte END_BYTE = (byte) 0xff;
+	private static final int NO_MESSAGE = -1;
+	private static final byte[] EMPTY = new byte[0];
+	private final int maxMessageLength;
+	private byte[] input = EMPTY;
+	private int inputLength;
+	private int scanned;
+	private int messageStart = NO_MESSAGE;
+	private boolean isClosed;
+
+	public HixieFrameDecoder() {
+		this(DEFAULT_MAX_MESSAGE_LENGTH);
+	}
+
+	public HixieFrameDecoder(int maxMessageLength) {
+		this.maxMessageLength = maxMessageLength;
+	}
+
+	/**
+	 * Hands on every message completed by the remaining bytes of
+	 * <code>source</code>, which are all consumed
+	 */
+	public void decode(ByteBuffer source, MessageListener listener) {
+		if (isClosed) {
+			source.position(source.limit());
+			return;
+		}
+
+		append(source);
+		int i = scanned;
+		while (i < inputLength && ! isClosed) {
+			byte b = input[i];
+			if (messageStart != NO_MESSAGE) {
+				if (b == END_BYTE) {
+					int start = messageStart;
+					messageStart = NO_MESSAGE;
+					listener.onMessage(WebSocketUtils.fromUtf8(input, start, i - start));
+				}
+			} else if (b == START_BYTE) {
+				messageStart = i + 1;
+			} else if (b == END_BYTE) {
+				if (i + 1 == inputLength) {
+					break;
+				}
+				isClosed = input[i + 1] == START_BYTE;
+			}
+			i++;
+		}
+
+		if (isClosed) {
+			input = EMPTY;
+			inputLength = 0;
+			return;
+		}
+		int keepFrom = messageStart == NO_MESSAGE ? i : messageStart;
+		compact(keepFrom);
+		scanned = i - keepFrom;
+		isClosed = messageStart != NO_MESSAGE && inputLength - messageStart > maxMessageLength;
+	}
+
+	/**
+	 * The number of bytes read but not yet decoded
+	 */
+	public int getPendingBytes() {
+		return inputLength;
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	private void append(ByteBuffer source) {
+		int count = source.remaining();
+		if (inputLength + count > input.length) {
+			byte[] grown = new byte[Math.max(inputLength + count, input.length * 2)];
+			System.arraycopy(input, 0, grown, 0, inputLength);
+			input = grown;
+		}
+		source.get(input, inputLength, count);
+		inputLength += count;
+	}
+
+	private void compact(int keepFrom) {
+		if (keepFrom == 0) {
+			return;
+		}
+		System.arraycopy(input, keepFrom, input, 0, inputLength - keepFrom);
+		inputLength -= keepFrom;
+		if (messageStart != NO_MESSAGE) {
+			messageStart -= keepFrom;
+		}
+	}
+}
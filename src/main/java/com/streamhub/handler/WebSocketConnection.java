@@ -2,156 +2,123 @@ package com.streamhub.handler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.streamhub.Connection;
 import com.streamhub.WebSocketMessageHandler;
-import com.streamhub.WriteRegister;
-import com.streamhub.nio.SSLChannel;
-import com.streamhub.request.Request;
-import com.streamhub.util.ArrayUtils;
-import com.streamhub.util.SocketUtils;
-
-public class WebSocketConnection implements Connection {
-	private static final byte START_BYTE = 0x00;
-	private static final byte END_BYTE = (byte) 0xff;
-	protected ByteBuffer readBuffer = ByteBuffer.allocateDirect(1024);
-	private byte[] inputSoFar = new byte[0];
-	private final Connection connection;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * A WebSocket connection speaking either the hixie-76 framing, where each 
+ * text message is wrapped in <code>0x00</code> and <code>0xff</code> and 
+ * decoded by a {@link HixieFrameDecoder}, or RFC 6455 framing, which is 
+ * decoded by a {@link WebSocketFrameDecoder}.  The framing is chosen by the 
+ * handshake.  Either way each message is handled as soon as it has been 
+ * read.
+ */
+public class WebSocketConnection extends FramedConnection {
+	private static final byte[] HIXIE_CLOSE = new byte[] { (byte) 0xff, 0x00 };
 	private String uid;
 	private WebSocketMessageHandler messageHandler;
+	private final WebSocketFrameDecoder frameDecoder;
+	private final HixieFrameDecoder hixieDecoder;
+	private final WebSocketFrameListener frameListener = new FrameListener();
+	private final boolean isDeflating;
 
 	public WebSocketConnection(Connection connection, WebSocketMessageHandler messageHandler) {
-		this.connection = connection;
-		this.messageHandler = messageHandler;
-	}
-
-	public void close() {
-		SocketUtils.closeQuietly(getChannel());
-	}
-
-	public String getAttachment() {
-		return connection.getAttachment();
+		this(connection, messageHandler, false);
 	}
 
-	public SocketChannel getChannel() {
-		return connection.getChannel();
+	public WebSocketConnection(Connection connection, WebSocketMessageHandler messageHandler, boolean isRfc6455) {
+		this(connection, messageHandler, isRfc6455, false);
 	}
 
-	public Request getRequest() throws IOException {
-		return connection.getRequest();
+	public WebSocketConnection(Connection connection, WebSocketMessageHandler messageHandler, boolean isRfc6455, boolean isDeflating) {
+		super(connection);
+		this.messageHandler = messageHandler;
+		this.frameDecoder = isRfc6455 ? new WebSocketFrameDecoder(WebSocketFrameDecoder.DEFAULT_MAX_MESSAGE_LENGTH, isDeflating) : null;
+		this.hixieDecoder = isRfc6455 ? null : new HixieFrameDecoder();
+		this.isDeflating = isRfc6455 && isDeflating;
 	}
 
-	public SSLChannel getSSLChannel() {
-		return connection.getSSLChannel();
+	/**
+	 * Whether messages to this connection must be sent as RFC 6455 frames
+	 */
+	public boolean isRfc6455() {
+		return frameDecoder != null;
 	}
 
-	public boolean isSecure() {
-		return connection.isSecure();
+	/**
+	 * Whether permessage-deflate was negotiated, so messages to this 
+	 * connection may be sent compressed
+	 */
+	public boolean isDeflating() {
+		return isDeflating;
 	}
 
-	public boolean isSelfClosing() {
-		return connection.isSelfClosing();
+	/**
+	 * Decodes frames which arrived in the same read as the handshake, from 
+	 * <code>offset</code> onwards
+	 */
+	public synchronized void decode(byte[] input, int offset) throws IOException {
+		decode(ByteBuffer.wrap(input, offset, input.length - offset));
 	}
 
-	public synchronized void onReadableEvent(Handler handler) {
-		try {
-			this.readAsMuchAsPossible();
-		} catch (IOException e) {
-			this.close();
+	private void handleMessage(String message) {
+		if (message.startsWith("uid=")) {
+			this.uid = message.split("=")[1];
 		}
 
-		if (inputSoFar.length > 0 && inputSoFar[inputSoFar.length - 1] == END_BYTE) {
-			List<String> messages = parseMessages(inputSoFar);
-			for (String message : messages) {
-				if (message.startsWith("uid=")) {
-					this.uid = message.split("=")[1];
-				}
-
-				messageHandler.handleMessage(message, uid, this);
-
-			}
-			inputSoFar = new byte[0];
-		}
-	}
-
-	public void onWriteableEvent() {
-		connection.onWriteableEvent();
-	}
-
-	public byte[] readBytes() throws IOException {
-		return connection.readBytes();
-	}
-	
-	public byte[] peekBytes() throws IOException {
-		return connection.peekBytes();
-	}
-
-	public void setAttachment(String attachment) {
-		connection.setAttachment(attachment);
-	}
-
-	public void setReadableEventInterceptor(Connection interceptor) {
-		connection.setReadableEventInterceptor(interceptor);
-	}
-
-	public void setSSLChannel(SSLChannel sslChannel) {
-		connection.setSSLChannel(sslChannel);
+		messageHandler.handleMessage(message, uid, this);
 	}
 
-	public void setSelfClosing(boolean selfClosing) {
-		connection.setSelfClosing(selfClosing);
-	}
-
-	public void setWriteRegister(WriteRegister dispatcher) {
-		connection.setWriteRegister(dispatcher);
+	@Override
+	protected void decode(ByteBuffer readBuffer) throws IOException {
+		if (frameDecoder != null) {
+			frameDecoder.decode(readBuffer, frameListener);
+		} else {
+			decodeHixie(readBuffer);
+		}
 	}
 
-	public void write(String data) throws IOException {
-		connection.write(data);
+	/**
+	 * Answers the hixie-76 closing handshake, or a message too long to 
+	 * buffer, with a closing handshake of our own
+	 */
+	private void decodeHixie(ByteBuffer readBuffer) throws IOException {
+		hixieDecoder.decode(readBuffer, frameListener);
+		if (hixieDecoder.isClosed()) {
+			connection.write(ByteBuffer.wrap(HIXIE_CLOSE));
+			connection.close();
+		}
 	}
 
-	public void write(ByteBuffer buffer) throws IOException {
-		connection.write(buffer);
+	private void writeControlFrame(int opcode, byte[] payload) {
+		try {
+			connection.write(ByteBuffer.wrap(WebSocketUtils.createFrame(opcode, payload)));
+		} catch (IOException e) {
+			close();
+		}
 	}
 
-	protected void readAsMuchAsPossible() throws IOException {
-		int bytesRead = 0;
-
-		while ((bytesRead = getChannel().read(readBuffer)) > 0) {
-			readBuffer.rewind();
-			byte[] bytes = new byte[bytesRead];
-			readBuffer.get(bytes, 0, bytesRead);
-			inputSoFar = ArrayUtils.concat(inputSoFar, bytes);
-			readBuffer.rewind();
+	private class FrameListener implements WebSocketFrameListener {
+		public void onMessage(String message) {
+			handleMessage(message);
 		}
 
-		if (bytesRead < 0) {
-			close();
+		public void onPing(byte[] payload) {
+			writeControlFrame(WebSocketUtils.OPCODE_PONG, payload);
 		}
-	}
 
-	List<String> parseMessages(byte[] rawMessage) {
-		List<String> messages = new ArrayList<String>();
-		int start = -1;
-		int end = -1;
-
-		for (int i = 0; i < rawMessage.length; i++) {
-			if (rawMessage[i] == START_BYTE) {
-				start = i + 1;
-			} else if (rawMessage[i] == END_BYTE) {
-				end = i;
-			}
-
-			if (end > -1 && start > -1) {
-				messages.add(new String(rawMessage, start, end - start));
-				start = -1;
-				end = -1;
-			}
+		public void onPong(byte[] payload) {
 		}
 
-		return messages;
+		/**
+		 * Answers with a close frame carrying the same status before closing, 
+		 * as the closing handshake requires
+		 */
+		public void onClose(int statusCode) {
+			writeControlFrame(WebSocketUtils.OPCODE_CLOSE, new byte[] { (byte) (statusCode >> 8), (byte) statusCode });
+			connection.close();
+		}
 	}
 }
@@ -0,0 +1,256 @@
+package com.streamhub.handler;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.streamhub.util.PerMessageDeflate;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * Decodes the RFC 6455 frames sent by a client as they are read.  Only the 
+ * bytes of a frame which has not fully arrived are kept between reads, 
+ * payloads are unmasked in place and fragmented messages are reassembled 
+ * before they are handed on.  Binary messages are handed on as UTF-8 text 
+ * like text messages, since every StreamHub message is text.
+ * <p>
+ * When permessage-deflate has been negotiated, messages whose first frame 
+ * has the RSV1 bit set are inflated once they are complete.
+ * <p>
+ * Once a close frame has been decoded, or the client has broken the 
+ * protocol, any further input is ignored.
+ */
+public class WebSocketFrameDecoder {
+	public static final int CLOSE_NORMAL = 1000;
+	public static final int CLOSE_PROTOCOL_ERROR = 1002;
+	public static final int CLOSE_INVALID_DATA = 1007;
+	public static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+	public static final int DEFAULT_MAX_MESSAGE_LENGTH = 1024 * 1024;
+	private static final int NO_MESSAGE = -1;
+	private static final int MASK_LENGTH = 4;
+	private static final int RSV1 = 0x40;
+	private static final byte[] EMPTY = new byte[0];
+	private final int maxMessageLength;
+	private final Inflater inflater;
+	private byte[] input = EMPTY;
+	private int inputLength;
+	private byte[] message = EMPTY;
+	private int messageLength;
+	private int messageOpcode = NO_MESSAGE;
+	private boolean isMessageCompressed;
+	private boolean isClosed;
+
+	public WebSocketFrameDecoder() {
+		this(DEFAULT_MAX_MESSAGE_LENGTH);
+	}
+
+	public WebSocketFrameDecoder(int maxMessageLength) {
+		this(maxMessageLength, false);
+	}
+
+	public WebSocketFrameDecoder(int maxMessageLength, boolean isDeflating) {
+		this.maxMessageLength = maxMessageLength;
+		this.inflater = isDeflating ? new Inflater(true) : null;
+	}
+
+	/**
+	 * Decodes every frame completed by the remaining bytes of 
+	 * <code>source</code>, which are all consumed
+	 */
+	public void decode(ByteBuffer source, WebSocketFrameListener listener) {
+		if (isClosed) {
+			source.position(source.limit());
+			return;
+		}
+
+		append(source);
+		int offset = 0;
+		int frameLength;
+		while (! isClosed && (frameLength = decodeFrame(offset, listener)) > 0) {
+			offset += frameLength;
+		}
+
+		if (isClosed) {
+			input = EMPTY;
+			inputLength = 0;
+		} else if (offset > 0) {
+			System.arraycopy(input, offset, input, 0, inputLength - offset);
+			inputLength -= offset;
+		}
+	}
+
+	/**
+	 * The number of bytes read but not yet decoded
+	 */
+	public int getPendingBytes() {
+		return inputLength;
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	private void append(ByteBuffer source) {
+		int count = source.remaining();
+		if (inputLength + count > input.length) {
+			byte[] grown = new byte[Math.max(inputLength + count, input.length * 2)];
+			System.arraycopy(input, 0, grown, 0, inputLength);
+			input = grown;
+		}
+		source.get(input, inputLength, count);
+		inputLength += count;
+	}
+
+	/**
+	 * Returns the length of the frame at <code>offset</code> once it has 
+	 * been handled, or 0 if it has not all arrived
+	 */
+	private int decodeFrame(int offset, WebSocketFrameListener listener) {
+		int available = inputLength - offset;
+		if (available < 2) {
+			return 0;
+		}
+
+		int first = input[offset] & 0xff;
+		int second = input[offset + 1] & 0xff;
+		boolean isFinal = (first & 0x80) != 0;
+		int opcode = first & 0x0f;
+		boolean isControl = (opcode & 0x08) != 0;
+		int headerLength = 2;
+		long payloadLength = second & 0x7f;
+
+		if (payloadLength == 126) {
+			if (available < 4) {
+				return 0;
+			}
+			payloadLength = ((input[offset + 2] & 0xff) << 8) | (input[offset + 3] & 0xff);
+			headerLength = 4;
+		} else if (payloadLength == 127) {
+			if (available < 10) {
+				return 0;
+			}
+			payloadLength = 0;
+			for (int i = 2; i < 10; i++) {
+				payloadLength = (payloadLength << 8) | (input[offset + i] & 0xff);
+			}
+			headerLength = 10;
+		}
+
+		boolean isCompressed = (first & RSV1) != 0;
+		if ((first & 0x30) != 0 || (second & 0x80) == 0 || (isControl && (! isFinal || payloadLength > 125))) {
+			return fail(CLOSE_PROTOCOL_ERROR, listener);
+		}
+		if (isCompressed && (inflater == null || isControl || opcode == WebSocketUtils.OPCODE_CONTINUATION)) {
+			return fail(CLOSE_PROTOCOL_ERROR, listener);
+		}
+		if (payloadLength < 0 || messageLength + payloadLength > maxMessageLength) {
+			return fail(CLOSE_MESSAGE_TOO_BIG, listener);
+		}
+
+		int frameLength = headerLength + MASK_LENGTH + (int) payloadLength;
+		if (available < frameLength) {
+			return 0;
+		}
+
+		int payloadStart = offset + headerLength + MASK_LENGTH;
+		unmask(offset + headerLength, payloadStart, (int) payloadLength);
+
+		switch (opcode) {
+		case WebSocketUtils.OPCODE_CONTINUATION:
+			if (messageOpcode == NO_MESSAGE) {
+				return fail(CLOSE_PROTOCOL_ERROR, listener);
+			}
+			addFragment(payloadStart, (int) payloadLength, isFinal, listener);
+			break;
+		case WebSocketUtils.OPCODE_TEXT:
+		case WebSocketUtils.OPCODE_BINARY:
+			if (messageOpcode != NO_MESSAGE) {
+				return fail(CLOSE_PROTOCOL_ERROR, listener);
+			}
+			messageOpcode = opcode;
+			isMessageCompressed = isCompressed;
+			addFragment(payloadStart, (int) payloadLength, isFinal, listener);
+			break;
+		case WebSocketUtils.OPCODE_CLOSE:
+			int statusCode = payloadLength >= 2 ? ((input[payloadStart] & 0xff) << 8) | (input[payloadStart + 1] & 0xff) : CLOSE_NORMAL;
+			isClosed = true;
+			listener.onClose(statusCode);
+			break;
+		case WebSocketUtils.OPCODE_PING:
+			listener.onPing(copy(payloadStart, (int) payloadLength));
+			break;
+		case WebSocketUtils.OPCODE_PONG:
+			listener.onPong(copy(payloadStart, (int) payloadLength));
+			break;
+		default:
+			return fail(CLOSE_PROTOCOL_ERROR, listener);
+		}
+
+		return frameLength;
+	}
+
+	private void unmask(int maskStart, int payloadStart, int payloadLength) {
+		for (int i = 0; i < payloadLength; i++) {
+			input[payloadStart + i] ^= input[maskStart + (i & 3)];
+		}
+	}
+
+	/**
+	 * An unfragmented message is decoded straight from the input; fragments 
+	 * are gathered until the final one arrives
+	 */
+	private void addFragment(int start, int length, boolean isFinal, WebSocketFrameListener listener) {
+		if (isFinal && messageLength == 0) {
+			messageOpcode = NO_MESSAGE;
+			deliver(input, start, length, listener);
+			return;
+		}
+
+		if (messageLength + length > message.length) {
+			byte[] grown = new byte[Math.max(messageLength + length, message.length * 2)];
+			System.arraycopy(message, 0, grown, 0, messageLength);
+			message = grown;
+		}
+		System.arraycopy(input, start, message, messageLength, length);
+		messageLength += length;
+
+		if (isFinal) {
+			byte[] complete = message;
+			int completeLength = messageLength;
+			message = EMPTY;
+			messageLength = 0;
+			messageOpcode = NO_MESSAGE;
+			deliver(complete, 0, completeLength, listener);
+		}
+	}
+
+	private void deliver(byte[] bytes, int start, int length, WebSocketFrameListener listener) {
+		if (! isMessageCompressed) {
+			listener.onMessage(WebSocketUtils.fromUtf8(bytes, start, length));
+			return;
+		}
+
+		try {
+			byte[] inflated = PerMessageDeflate.getInstance().inflate(inflater, bytes, start, length, maxMessageLength);
+			if (inflated == null) {
+				fail(CLOSE_MESSAGE_TOO_BIG, listener);
+			} else {
+				listener.onMessage(WebSocketUtils.fromUtf8(inflated, 0, inflated.length));
+			}
+		} catch (DataFormatException e) {
+			fail(CLOSE_INVALID_DATA, listener);
+		}
+	}
+
+	private byte[] copy(int start, int length) {
+		byte[] payload = new byte[length];
+		System.arraycopy(input, start, payload, 0, length);
+		return payload;
+	}
+
+	private int fail(int statusCode, WebSocketFrameListener listener) {
+		isClosed = true;
+		listener.onClose(statusCode);
+		return 0;
+	}
+}
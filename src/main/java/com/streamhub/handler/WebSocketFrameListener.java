@@ -0,0 +1,18 @@
+package com.streamhub.handler;
+
+import com.streamhub.reader.MessageListener;
+
+/**
+ * Receives what a {@link WebSocketFrameDecoder} decodes: whole messages, 
+ * control frames and the reason decoding stopped
+ */
+public interface WebSocketFrameListener extends MessageListener {
+	void onPing(byte[] payload);
+	void onPong(byte[] payload);
+
+	/**
+	 * The client sent a close frame, or broke the protocol in which case 
+	 * <code>statusCode</code> says how
+	 */
+	void onClose(int statusCode);
+}
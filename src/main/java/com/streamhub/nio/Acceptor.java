@@ -4,8 +4,15 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 
@@ -14,15 +21,27 @@ import com.streamhub.UnrecoverableStartupException;
 import com.streamhub.handler.Handler;
 import com.streamhub.util.SocketUtils;
 
+/**
+ * Accepts connections and hands each one to the least loaded
+ * {@link Dispatcher}.  The listening channel is non-blocking and shared by
+ * one or more acceptor threads, each with its own selector; every wakeup
+ * accepts until the backlog is empty rather than one connection per select.
+ */
 class Acceptor implements Runnable {
 	protected static final Logger log = Logger.getLogger(Acceptor.class);
+	static final int DEFAULT_BACKLOG = 0;
 	protected final Handler handler;
-	protected boolean isRunning;
+	protected volatile boolean isRunning;
 	protected DispatcherPool dispatcherPool;
 	protected ServerSocketChannel serverChannel;
 	private final ConnectionFactory connectionFactory;
 	private final int serverPort;
 	private final InetAddress inetAddress;
+	private final List<Selector> acceptSelectors = new CopyOnWriteArrayList<Selector>();
+	private ExecutorService acceptorPool;
+	private int acceptorThreads = 1;
+	protected int dispatchers = Runtime.getRuntime().availableProcessors();
+	private int backlog = DEFAULT_BACKLOG;
 
 	public Acceptor(int serverPort, Handler handler, ConnectionFactory connectionFactory) {
 		this(null, serverPort, handler, connectionFactory);
@@ -37,44 +56,76 @@ class Acceptor implements Runnable {
 
 	public void run() {
 		Thread.currentThread().setName("Acceptor");
-		this.dispatcherPool = new DispatcherPool(handler, 10);
+		this.dispatcherPool = new DispatcherPool(handler, dispatchers);
 		bind();
 
+		try {
+			serverChannel.configureBlocking(false);
+		} catch (Exception e) {
+			throw new UnrecoverableStartupException("Could not make server channel non-blocking", e);
+		}
+
 		isRunning = true;
-		
-		while (isRunning) {
-			try {
-				SocketChannel channel = serverChannel.accept();
-				Connection con = createConnection(channel);
-				dispatcherPool.nextDispatcher().register(con);
-			} catch (Exception e) {
-				if (isRunning) {
-					log.error("Error accepting connections", e);
-					
-					if (e instanceof ClosedChannelException) {
-						throw new UnrecoverableStartupException("Closed channel - cannot continue", e);
+
+		if (acceptorThreads > 1) {
+			acceptorPool = Executors.newFixedThreadPool(acceptorThreads - 1);
+			for (int i = 1; i < acceptorThreads; i++) {
+				final int index = i;
+				acceptorPool.execute(new Runnable() {
+					public void run() {
+						Thread.currentThread().setName("Acceptor-" + index);
+						acceptLoop();
 					}
-				}
+				});
 			}
 		}
+
+		acceptLoop();
 	}
-	
+
 	public void stop() throws IOException {
 		isRunning = false;
+		for (Selector selector : acceptSelectors) {
+			SocketUtils.closeQuietly(selector);
+		}
 		SocketUtils.closeQuietly(serverChannel);
+		if (acceptorPool != null) {
+			acceptorPool.shutdownNow();
+		}
 		if (dispatcherPool != null) {
 			dispatcherPool.stop();
 		}
 	}
 
+	void setAcceptorThreads(int acceptorThreads) {
+		if (acceptorThreads < 1) {
+			throw new IllegalArgumentException("Acceptor threads must be at least 1 but was " + acceptorThreads);
+		}
+		this.acceptorThreads = acceptorThreads;
+	}
+
+	void setDispatchers(int dispatchers) {
+		if (dispatchers < 1) {
+			throw new IllegalArgumentException("Dispatchers must be at least 1 but was " + dispatchers);
+		}
+		this.dispatchers = dispatchers;
+	}
+
+	void setBacklog(int backlog) {
+		if (backlog < 0) {
+			throw new IllegalArgumentException("Backlog cannot be negative but was " + backlog);
+		}
+		this.backlog = backlog;
+	}
+
 	void bind() {
 		try {
 			serverChannel = ServerSocketChannel.open();
 			serverChannel.configureBlocking(true);
 			if (inetAddress != null) {
-				serverChannel.socket().bind(new InetSocketAddress(inetAddress, serverPort));
+				serverChannel.socket().bind(new InetSocketAddress(inetAddress, serverPort), backlog);
 			} else {
-				serverChannel.socket().bind(new InetSocketAddress(serverPort));
+				serverChannel.socket().bind(new InetSocketAddress(serverPort), backlog);
 			}
 		} catch (Throwable t) {
 			log.error("Error binding socket", t);
@@ -84,4 +135,53 @@ class Acceptor implements Runnable {
 	Connection createConnection(SocketChannel channel) {
 		return connectionFactory.createConnection(channel);
 	}
+
+	private void acceptLoop() {
+		Selector selector = null;
+
+		try {
+			selector = Selector.open();
+			acceptSelectors.add(selector);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (Exception e) {
+			SocketUtils.closeQuietly(selector);
+			if (isRunning) {
+				log.error("Error accepting connections", e);
+				throw new UnrecoverableStartupException("Could not register for accepts - cannot continue", e);
+			}
+			return;
+		}
+
+		while (isRunning) {
+			try {
+				selector.select();
+				selector.selectedKeys().clear();
+				acceptPending();
+			} catch (ClosedSelectorException e) {
+				return;
+			} catch (Exception e) {
+				if (isRunning) {
+					log.error("Error accepting connections", e);
+
+					if (e instanceof ClosedChannelException) {
+						throw new UnrecoverableStartupException("Closed channel - cannot continue", e);
+					}
+				}
+			}
+		}
+	}
+
+	private void acceptPending() throws IOException {
+		SocketChannel channel;
+
+		while (isRunning && (channel = serverChannel.accept()) != null) {
+			try {
+				Connection con = createConnection(channel);
+				dispatcherPool.nextDispatcher().register(con);
+			} catch (Exception e) {
+				log.warn("Could not register accepted connection", e);
+				SocketUtils.closeQuietly(channel);
+			}
+		}
+	}
 }
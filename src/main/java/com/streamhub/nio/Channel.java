@@ -33,4 +33,8 @@ abstract class Channel implements ReadWriteSelectorHandler {
 	public SocketChannel getSocketChannel() {
 		return sc;
 	}
+
+	public SelectorThread getSelectorThread() {
+		return st;
+	}
 }
@@ -5,8 +5,12 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
 class CommandLine {
+	private static final String DISPATCHERS_OPTION = "--dispatchers=";
+
 	public static Options parse(String[] args) {
 		Options options = new Options();
 		
@@ -20,8 +24,22 @@ class CommandLine {
 		return options;
 	}
 
-	private static Options parseArgs(String[] args) throws UnknownHostException, MalformedURLException {
+	private static Options parseArgs(String[] allArgs) throws UnknownHostException, MalformedURLException {
 		Options options = new Options();
+		List<String> positionalArgs = new ArrayList<String>();
+		
+		for (String arg : allArgs) {
+			if (arg.startsWith(DISPATCHERS_OPTION)) {
+				options.dispatchers = Integer.parseInt(arg.substring(DISPATCHERS_OPTION.length()));
+				if (options.dispatchers < 1) {
+					throw new IllegalArgumentException("Dispatchers must be at least 1");
+				}
+			} else {
+				positionalArgs.add(arg);
+			}
+		}
+		
+		String[] args = positionalArgs.toArray(new String[positionalArgs.size()]);
 		
 		if (args.length == 0) {
 			System.out.println(usage());
@@ -56,19 +74,21 @@ class CommandLine {
 	}
 	
 	public static String usage() {
-		return "Usage: NIOServer <serverAddress> [streamingAdapterAddress] [<loggingUrl>]\n" + 
+		return "Usage: NIOServer [--dispatchers=<count>] <serverAddress> [streamingAdapterAddress] [<loggingUrl>]\n" + 
 				"Examples:\n" + 
 				"\tNIOServer 80\n" +
 				"\tNIOServer 10.4.33.1:80\n" +
 				"\tNIOServer 7979 6969\n" +
 				"\tNIOServer 192.168.1.6:7979 192.168.1.5:6969\n" +
 				"\tNIOServer 80 8484 http://data.intra/conf/prod.log4j.xml\n" +
-				"\tNIOServer 10.4.33.1:80 10.4.33.2:8484 file:///etc/streamhub/prod/log4j.xml\n";
+				"\tNIOServer 10.4.33.1:80 10.4.33.2:8484 file:///etc/streamhub/prod/log4j.xml\n" +
+				"\tNIOServer --dispatchers=32 80\n";
 	}
 	
 	public static class Options {
 		public InetSocketAddress serverAddress;
 		public InetSocketAddress streamingAdapterAddress;
 		public URL loggingUrl;
+		public int dispatchers = Runtime.getRuntime().availableProcessors();
 	}
 }
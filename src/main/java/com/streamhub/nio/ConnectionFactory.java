@@ -6,4 +6,8 @@ import com.streamhub.Connection;
 
 interface ConnectionFactory {
 	public Connection createConnection(SocketChannel channel);
+	public void setWriteWatermarks(int lowWatermark, int highWatermark);
+	public void setKeepAlive(int maxRequests, int idleTimeoutMillis);
+	public void setMaxRequestLengths(int maxHeadLength, int maxBodyLength);
+	public void setWorkerStage(WorkerStage workerStage);
 }
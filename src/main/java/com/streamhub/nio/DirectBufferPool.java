@@ -0,0 +1,129 @@
+package com.streamhub.nio;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of direct buffers which connections borrow for the duration of a 
+ * single read event.  Only as many buffers as there are concurrent reads are 
+ * ever needed, rather than one per connection.  When the pool is empty a new 
+ * buffer is allocated and counted as a miss; buffers returned to a full pool 
+ * are left for the garbage collector.
+ */
+public class DirectBufferPool implements DirectBufferPoolMBean {
+	private static final Logger log = Logger.getLogger(DirectBufferPool.class);
+	private static final DirectBufferPool READ_BUFFERS = new DirectBufferPool(8192, 64);
+	private static final int MAX_POOLED_ENGINE_BUFFERS = 256;
+	private static final ConcurrentMap<Integer, DirectBufferPool> ENGINE_BUFFERS = new ConcurrentHashMap<Integer, DirectBufferPool>();
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger pooledBuffers = new AtomicInteger();
+	private final AtomicInteger buffersInUse = new AtomicInteger();
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final int bufferSize;
+	private final int maxPooledBuffers;
+
+	static {
+		READ_BUFFERS.registerAsMBean("com.streamhub.nio:type=DirectBufferPool,name=ReadBuffers");
+	}
+
+	public DirectBufferPool(int bufferSize, int maxPooledBuffers) {
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	/**
+	 * The pool shared by every connection for reading from its channel
+	 */
+	public static DirectBufferPool readBuffers() {
+		return READ_BUFFERS;
+	}
+
+	/**
+	 * The pool of <code>bufferSize</code> buffers shared by every TLS 
+	 * channel for its engine's network and application data.  Each channel 
+	 * holds its buffers until it is closed.
+	 */
+	public static DirectBufferPool engineBuffers(int bufferSize) {
+		DirectBufferPool pool = ENGINE_BUFFERS.get(bufferSize);
+
+		if (pool == null) {
+			DirectBufferPool newPool = new DirectBufferPool(bufferSize, MAX_POOLED_ENGINE_BUFFERS);
+			pool = ENGINE_BUFFERS.putIfAbsent(bufferSize, newPool);
+			if (pool == null) {
+				pool = newPool;
+				pool.registerAsMBean("com.streamhub.nio:type=DirectBufferPool,name=EngineBuffers-" + bufferSize);
+			}
+		}
+
+		return pool;
+	}
+
+	public ByteBuffer borrow() {
+		borrows.incrementAndGet();
+		buffersInUse.incrementAndGet();
+		ByteBuffer buffer = buffers.poll();
+
+		if (buffer == null) {
+			misses.incrementAndGet();
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+
+		pooledBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	public void release(ByteBuffer buffer) {
+		buffersInUse.decrementAndGet();
+
+		if (pooledBuffers.get() < maxPooledBuffers) {
+			buffer.clear();
+			pooledBuffers.incrementAndGet();
+			buffers.offer(buffer);
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getMaxPooledBuffers() {
+		return maxPooledBuffers;
+	}
+
+	public int getPooledBuffers() {
+		return pooledBuffers.get();
+	}
+
+	public int getBuffersInUse() {
+		return buffersInUse.get();
+	}
+
+	public long getBorrows() {
+		return borrows.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private void registerAsMBean(String name) {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			mbs.registerMBean(this, new ObjectName(name));
+		} catch (Exception e) {
+			log.warn("Could not register MBean", e);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.streamhub.nio;
+
+public interface DirectBufferPoolMBean {
+	int getBufferSize();
+	int getMaxPooledBuffers();
+	int getPooledBuffers();
+	int getBuffersInUse();
+	long getBorrows();
+	long getMisses();
+}
@@ -1,11 +1,23 @@
 package com.streamhub.nio;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.log4j.Logger;
 
@@ -14,57 +26,77 @@ import com.streamhub.WriteRegister;
 import com.streamhub.handler.Handler;
 import com.streamhub.util.SocketUtils;
 
-class Dispatcher implements Runnable, WriteRegister {
+/**
+ * Runs the select loop for a share of the connections.  Other threads never
+ * touch the selector directly: new registrations and interest changes are
+ * queued and applied by the dispatcher thread once per loop.  Statistics are
+ * only written by the dispatcher thread and are exported over JMX, one MBean
+ * per dispatcher, so the dispatcher count can be sized from what each loop is
+ * actually doing.
+ */
+class Dispatcher implements Runnable, WriteRegister, DispatcherMBean {
 	private static final Logger log = Logger.getLogger(Dispatcher.class);
-	public static int dispatcherCount = 0;
-	private Object guard = new Object();
+	private static final AtomicInteger dispatcherCount = new AtomicInteger();
+	private static final int KEEP_WRITE_INTEREST = -1;
 	private Selector selector;
-	private boolean isRunning;
+	private volatile boolean isRunning;
 	private final Handler handler;
+	private final String name;
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<Connection>();
+	private final ConcurrentMap<Connection, Integer> pendingInterestOps = new ConcurrentHashMap<Connection, Integer>();
+	private final ConcurrentMap<Connection, Boolean> suspendedReads = new ConcurrentHashMap<Connection, Boolean>();
+	private final AtomicBoolean isSelecting = new AtomicBoolean();
+	private final AtomicLong wakeups = new AtomicLong();
+	private volatile Thread dispatcherThread;
+	private ObjectName objectName;
+	private volatile long loops;
+	private volatile long selectedKeys;
+	private volatile long loopNanos;
+	private volatile long maxLoopNanos;
+	private volatile long handlerNanos;
 
 	public Dispatcher(Handler handler) {
 		this.handler = handler;
+		this.name = "Dispatcher-" + dispatcherCount.getAndIncrement();
 
 		try {
 			selector = Selector.open();
 		} catch (IOException e) {
 			log.error("Error opening Selector", e);
 		}
+
+		registerSelfAsMBean();
 	}
 
 	void register(Connection con) throws IOException {
-		// retrieve the guard lock and wake up the dispatcher thread
-		// to register the connection's channel
-		synchronized (guard) {
-			selector.wakeup();
-			SocketChannel channel = con.getChannel();
-			con.setWriteRegister(this);
-			channel.configureBlocking(false);
-			channel.register(selector, SelectionKey.OP_READ, con);
-		}
-
-		// notify the application EventHandler about the new connection
+		con.setWriteRegister(this);
+		con.getChannel().configureBlocking(false);
+		connectionCount.incrementAndGet();
+		pendingRegistrations.offer(con);
+		wakeupIfSelecting();
 	}
 
 	public void run() {
-		Thread.currentThread().setName("Dispatcher-" + dispatcherCount++);
+		dispatcherThread = Thread.currentThread();
+		dispatcherThread.setName(name);
 		isRunning = true;
 
 		while (isRunning) {
-			synchronized (guard) {
-				// suspend the dispatcher thead if guard is locked
-			}
-
-			try {
-				selector.select();
-			} catch (Throwable e) {
-				log.error("Error waiting for events", e);
-			}
+			select();
 
 			if (!isRunning || selector == null) {
 				return;
 			}
 
+			long loopStart = System.nanoTime();
+			long timeInHandlers = 0;
+			int selected = 0;
+
+			applyPendingChanges();
+			// closed channels have had their keys removed by the select
+			connectionCount.set(selector.keys().size() + pendingRegistrations.size());
+
 			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
 			while (it.hasNext()) {
 				SelectionKey key = it.next();
@@ -72,43 +104,233 @@ class Dispatcher implements Runnable, WriteRegister {
 
 				if (key.isValid()) {
 					Connection con = (Connection) key.attachment();
+					long handlerStart = System.nanoTime();
 
 					if (key.isReadable()) {
 						con.onReadableEvent(handler);
 					} else if (key.isWritable()) {
 						con.onWriteableEvent();
 					}
+
+					timeInHandlers += System.nanoTime() - handlerStart;
+					selected++;
 				}
 			}
+
+			recordLoop(selected, System.nanoTime() - loopStart, timeInHandlers);
 		}
 	}
 
 	public void stop() {
 		isRunning = false;
 		SocketUtils.closeQuietly(selector);
+		unregisterSelfAsMBean();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The number of channels registered with this dispatcher, as of its
+	 * last wakeup plus any registered since
+	 */
+	public int getRegisteredChannels() {
+		return connectionCount.get();
+	}
+
+	public long getLoops() {
+		return loops;
+	}
+
+	public long getSelectedKeys() {
+		return selectedKeys;
+	}
+
+	public double getAverageSelectedKeysPerLoop() {
+		long loopCount = loops;
+		return loopCount == 0 ? 0 : (double) selectedKeys / loopCount;
+	}
+
+	public double getAverageLoopMicros() {
+		long loopCount = loops;
+		return loopCount == 0 ? 0 : loopNanos / 1000.0 / loopCount;
+	}
+
+	public long getMaxLoopMicros() {
+		return maxLoopNanos / 1000;
+	}
+
+	public long getHandlerMillis() {
+		return handlerNanos / 1000000;
+	}
+
+	public double getAverageHandlerMicros() {
+		long keyCount = selectedKeys;
+		return keyCount == 0 ? 0 : handlerNanos / 1000.0 / keyCount;
+	}
+
+	public long getWakeups() {
+		return wakeups.get();
+	}
+
+	public void resetStatistics() {
+		loops = 0;
+		selectedKeys = 0;
+		loopNanos = 0;
+		maxLoopNanos = 0;
+		handlerNanos = 0;
+		wakeups.set(0);
 	}
 
 	public void deregisterForWrite(Connection connection) {
-		synchronized (guard) {
+		changeInterestOps(connection, 0);
+	}
+
+	public void registerForWrite(Connection connection) {
+		changeInterestOps(connection, SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * A connection with suspended reads is not selected for reading, 
+	 * whatever its write interest, until its reads are resumed
+	 */
+	public void suspendReads(Connection connection) {
+		suspendedReads.put(connection, Boolean.TRUE);
+		changeReadInterest(connection);
+	}
+
+	public void resumeReads(Connection connection) {
+		if (suspendedReads.remove(connection) != null) {
+			changeReadInterest(connection);
+		}
+	}
+
+	/**
+	 * Changes made on the dispatcher thread are applied straight away.  Any
+	 * other thread records the write interest it wants, replacing any change 
+	 * still waiting for the same connection, and the dispatcher applies the 
+	 * latest one on its next loop.  Read interest is worked out when the 
+	 * change is applied.
+	 */
+	private void changeInterestOps(Connection connection, int writeInterest) {
+		if (Thread.currentThread() == dispatcherThread) {
+			pendingInterestOps.remove(connection);
+			applyInterestOps(connection, writeInterest);
+		} else {
+			pendingInterestOps.put(connection, writeInterest);
+			wakeupIfSelecting();
+		}
+	}
+
+	/**
+	 * A write interest change still waiting to be applied picks up the new 
+	 * read interest, so it is not replaced
+	 */
+	private void changeReadInterest(Connection connection) {
+		if (Thread.currentThread() == dispatcherThread) {
+			applyInterestOps(connection, KEEP_WRITE_INTEREST);
+		} else {
+			pendingInterestOps.putIfAbsent(connection, KEEP_WRITE_INTEREST);
+			wakeupIfSelecting();
+		}
+	}
+
+	/**
+	 * Only the first change while the dispatcher is blocked in select pays 
+	 * for a wakeup.  Changes made while it is busy are picked up before it
+	 * next blocks.
+	 */
+	private void wakeupIfSelecting() {
+		if (isSelecting.compareAndSet(true, false)) {
+			wakeups.incrementAndGet();
 			selector.wakeup();
-			SocketChannel channel = connection.getChannel();
-			try {
-				channel.register(selector, SelectionKey.OP_READ, connection);
-			} catch (Exception e) {
-				log.debug("Could not deregister for writes", e);
+		}
+	}
+
+	private void select() {
+		try {
+			isSelecting.set(true);
+			if (pendingRegistrations.isEmpty() && pendingInterestOps.isEmpty()) {
+				selector.select();
+			} else {
+				selector.selectNow();
 			}
+		} catch (Throwable e) {
+			if (isRunning) {
+				log.error("Error waiting for events", e);
+			}
+		} finally {
+			isSelecting.set(false);
 		}
 	}
 
-	public void registerForWrite(Connection connection) {
-		synchronized (guard) {
-			selector.wakeup();
-			SocketChannel channel = connection.getChannel();
+	private void applyPendingChanges() {
+		Connection con;
+		while ((con = pendingRegistrations.poll()) != null) {
 			try {
-				channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, connection);
+				con.getChannel().register(selector, SelectionKey.OP_READ, con);
 			} catch (ClosedChannelException e) {
-				log.debug("Could not register for writes", e);
+				log.debug("Could not register closed channel", e);
+			}
+		}
+
+		if (pendingInterestOps.isEmpty()) {
+			return;
+		}
+
+		for (Map.Entry<Connection, Integer> change : pendingInterestOps.entrySet()) {
+			if (pendingInterestOps.remove(change.getKey(), change.getValue())) {
+				applyInterestOps(change.getKey(), change.getValue());
+			}
+		}
+	}
+
+	private void applyInterestOps(Connection connection, int writeInterest) {
+		SelectionKey key = connection.getChannel().keyFor(selector);
+		try {
+			if (key != null && key.isValid()) {
+				if (writeInterest == KEEP_WRITE_INTEREST) {
+					writeInterest = key.interestOps() & SelectionKey.OP_WRITE;
+				}
+				int readInterest = suspendedReads.containsKey(connection) ? 0 : SelectionKey.OP_READ;
+				key.interestOps(readInterest | writeInterest);
+			} else {
+				suspendedReads.remove(connection);
+			}
+		} catch (CancelledKeyException e) {
+			suspendedReads.remove(connection);
+			log.debug("Could not change interest in a closed channel", e);
+		}
+	}
+
+	private void recordLoop(int selected, long elapsedNanos, long timeInHandlers) {
+		loops++;
+		selectedKeys += selected;
+		loopNanos += elapsedNanos;
+		handlerNanos += timeInHandlers;
+		if (elapsedNanos > maxLoopNanos) {
+			maxLoopNanos = elapsedNanos;
+		}
+	}
+
+	private void registerSelfAsMBean() {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("com.streamhub.nio:type=Dispatcher,name=" + name);
+			mbs.registerMBean(this, objectName);
+		} catch (Exception e) {
+			log.warn("Could not register MBean", e);
+		}
+	}
+
+	private void unregisterSelfAsMBean() {
+		try {
+			if (objectName != null) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
 			}
+		} catch (Exception e) {
+			log.debug("Could not unregister MBean", e);
 		}
 	}
 }
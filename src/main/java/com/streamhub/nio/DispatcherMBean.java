@@ -0,0 +1,15 @@
+package com.streamhub.nio;
+
+public interface DispatcherMBean {
+	String getName();
+	int getRegisteredChannels();
+	long getLoops();
+	long getSelectedKeys();
+	double getAverageSelectedKeysPerLoop();
+	double getAverageLoopMicros();
+	long getMaxLoopMicros();
+	long getHandlerMillis();
+	double getAverageHandlerMicros();
+	long getWakeups();
+	void resetStatistics();
+}
@@ -2,12 +2,13 @@ package com.streamhub.nio;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.streamhub.handler.Handler;
 
 class DispatcherPool {
 	private final Dispatcher[] dispatchers;
-	private int index = 0;
+	private final AtomicInteger index = new AtomicInteger();
 	private final int size;
 	private final ExecutorService threadPool = Executors.newCachedThreadPool();
 
@@ -21,8 +22,34 @@ class DispatcherPool {
 		}
 	}
 	
-	public synchronized Dispatcher nextDispatcher() {
-		return dispatchers[(index++) % size];
+	/**
+	 * Returns the dispatcher with the fewest connections.  The search starts
+	 * from a different dispatcher each time so ties, and concurrent callers
+	 * seeing the same counts, are spread across the pool.
+	 */
+	public Dispatcher nextDispatcher() {
+		int start = (index.getAndIncrement() & 0x7fffffff) % size;
+		Dispatcher leastLoaded = dispatchers[start];
+		int fewestConnections = leastLoaded.getRegisteredChannels();
+
+		for (int i = 1; i < size && fewestConnections > 0; i++) {
+			Dispatcher dispatcher = dispatchers[(start + i) % size];
+			int connections = dispatcher.getRegisteredChannels();
+			if (connections < fewestConnections) {
+				leastLoaded = dispatcher;
+				fewestConnections = connections;
+			}
+		}
+
+		return leastLoaded;
+	}
+
+	public int getConnectionCount() {
+		int connections = 0;
+		for (Dispatcher dispatcher : dispatchers) {
+			connections += dispatcher.getRegisteredChannels();
+		}
+		return connections;
 	}
 	
 	public void stop() {
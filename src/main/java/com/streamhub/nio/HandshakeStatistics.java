@@ -0,0 +1,157 @@
+package com.streamhub.nio;
+
+import java.lang.management.ManagementFactory;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counts completed TLS handshakes, split into full handshakes and those 
+ * which resumed a cached session, along with a histogram of how long they 
+ * took from accepting the connection to the handshake finishing.  Also 
+ * reports the state of the server's session cache.
+ */
+class HandshakeStatistics implements HandshakeStatisticsMBean {
+	private static final Logger log = Logger.getLogger(HandshakeStatistics.class);
+	private static final String OBJECT_NAME = "com.streamhub.nio:type=HandshakeStatistics";
+	private static final long[] BUCKETS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+	private final SSLSessionContext sessionContext;
+	private final AtomicLong fullHandshakes = new AtomicLong();
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+	private final AtomicLong failedHandshakes = new AtomicLong();
+	private final AtomicLong handshakeNanos = new AtomicLong();
+	private final AtomicLong maxHandshakeNanos = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS_MILLIS.length + 1);
+	private ObjectName objectName;
+
+	public HandshakeStatistics(SSLSessionContext sessionContext) {
+		this.sessionContext = sessionContext;
+	}
+
+	void recordHandshake(boolean isResumed, long elapsedNanos) {
+		if (isResumed) {
+			resumedHandshakes.incrementAndGet();
+		} else {
+			fullHandshakes.incrementAndGet();
+		}
+		handshakeNanos.addAndGet(elapsedNanos);
+		histogram.incrementAndGet(bucketFor(elapsedNanos / 1000000));
+
+		long max;
+		while (elapsedNanos > (max = maxHandshakeNanos.get())) {
+			if (maxHandshakeNanos.compareAndSet(max, elapsedNanos)) {
+				return;
+			}
+		}
+	}
+
+	void recordFailure() {
+		failedHandshakes.incrementAndGet();
+	}
+
+	public long getFullHandshakes() {
+		return fullHandshakes.get();
+	}
+
+	public long getResumedHandshakes() {
+		return resumedHandshakes.get();
+	}
+
+	public long getFailedHandshakes() {
+		return failedHandshakes.get();
+	}
+
+	public double getResumedPercentage() {
+		long resumed = resumedHandshakes.get();
+		long total = resumed + fullHandshakes.get();
+		return total == 0 ? 0 : resumed * 100.0 / total;
+	}
+
+	public double getAverageHandshakeMillis() {
+		long handshakes = fullHandshakes.get() + resumedHandshakes.get();
+		return handshakes == 0 ? 0 : handshakeNanos.get() / 1000000.0 / handshakes;
+	}
+
+	public long getMaxHandshakeMillis() {
+		return maxHandshakeNanos.get() / 1000000;
+	}
+
+	/**
+	 * The upper bound of each histogram bucket except the last, which 
+	 * counts every handshake slower than the final bound
+	 */
+	public long[] getHandshakeMillisBuckets() {
+		return BUCKETS_MILLIS.clone();
+	}
+
+	public long[] getHandshakeMillisHistogram() {
+		long[] counts = new long[histogram.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histogram.get(i);
+		}
+		return counts;
+	}
+
+	public int getSessionCacheSize() {
+		return sessionContext.getSessionCacheSize();
+	}
+
+	public int getSessionTimeoutSeconds() {
+		return sessionContext.getSessionTimeout();
+	}
+
+	public int getCachedSessions() {
+		int sessions = 0;
+		for (Enumeration<byte[]> ids = sessionContext.getIds(); ids.hasMoreElements(); ids.nextElement()) {
+			sessions++;
+		}
+		return sessions;
+	}
+
+	public void resetStatistics() {
+		fullHandshakes.set(0);
+		resumedHandshakes.set(0);
+		failedHandshakes.set(0);
+		handshakeNanos.set(0);
+		maxHandshakeNanos.set(0);
+		for (int i = 0; i < histogram.length(); i++) {
+			histogram.set(i, 0);
+		}
+	}
+
+	void registerSelfAsMBean() {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName(OBJECT_NAME);
+			mbs.registerMBean(this, objectName);
+		} catch (Exception e) {
+			objectName = null;
+			log.warn("Could not register MBean", e);
+		}
+	}
+
+	void unregisterSelfAsMBean() {
+		try {
+			if (objectName != null) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			log.debug("Could not unregister MBean", e);
+		}
+	}
+
+	private static int bucketFor(long elapsedMillis) {
+		for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+			if (elapsedMillis < BUCKETS_MILLIS[i]) {
+				return i;
+			}
+		}
+		return BUCKETS_MILLIS.length;
+	}
+}
@@ -0,0 +1,16 @@
+package com.streamhub.nio;
+
+public interface HandshakeStatisticsMBean {
+	long getFullHandshakes();
+	long getResumedHandshakes();
+	long getFailedHandshakes();
+	double getResumedPercentage();
+	double getAverageHandshakeMillis();
+	long getMaxHandshakeMillis();
+	long[] getHandshakeMillisBuckets();
+	long[] getHandshakeMillisHistogram();
+	int getSessionCacheSize();
+	int getSessionTimeoutSeconds();
+	int getCachedSessions();
+	void resetStatistics();
+}
@@ -0,0 +1,134 @@
+package com.streamhub.nio;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Closes persistent HTTP connections which have waited longer than their
+ * idle timeout for another request.  A connection is only tracked between
+ * finishing one response and reading the next request, so streaming
+ * connections are never timed out.  One daemon thread checks every
+ * connection in the JVM once a second.
+ */
+class KeepAliveMonitor implements KeepAliveMonitorMBean {
+	private static final Logger log = Logger.getLogger(KeepAliveMonitor.class);
+	private static final long CHECK_INTERVAL_MILLIS = 1000;
+	private static final KeepAliveMonitor INSTANCE = new KeepAliveMonitor();
+	private final ConcurrentMap<NIOConnection, Long> idleDeadlines = new ConcurrentHashMap<NIOConnection, Long>();
+	private final AtomicLong keptAliveResponses = new AtomicLong();
+	private final AtomicLong reusedConnectionRequests = new AtomicLong();
+	private final AtomicLong idleTimeouts = new AtomicLong();
+	private ScheduledExecutorService scheduler;
+
+	static {
+		INSTANCE.registerAsMBean("com.streamhub.nio:type=KeepAliveMonitor");
+	}
+
+	/**
+	 * The monitor shared by every connection
+	 */
+	static KeepAliveMonitor getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts timing out <code>connection</code> if no request arrives
+	 * within <code>idleTimeoutMillis</code>
+	 */
+	void idle(NIOConnection connection, long idleTimeoutMillis) {
+		keptAliveResponses.incrementAndGet();
+		idleDeadlines.put(connection, System.currentTimeMillis() + idleTimeoutMillis);
+		startIfNecessary();
+	}
+
+	/**
+	 * Stops timing out <code>connection</code> because its next request has
+	 * arrived
+	 */
+	void busy(NIOConnection connection) {
+		if (idleDeadlines.remove(connection) != null) {
+			reusedConnectionRequests.incrementAndGet();
+		}
+	}
+
+	void closed(NIOConnection connection) {
+		idleDeadlines.remove(connection);
+	}
+
+	void closeExpired(long now) {
+		for (Map.Entry<NIOConnection, Long> idle : idleDeadlines.entrySet()) {
+			if (idle.getValue() <= now && idleDeadlines.remove(idle.getKey(), idle.getValue())) {
+				idleTimeouts.incrementAndGet();
+				idle.getKey().close();
+			}
+		}
+	}
+
+	public int getIdleConnections() {
+		return idleDeadlines.size();
+	}
+
+	public long getKeptAliveResponses() {
+		return keptAliveResponses.get();
+	}
+
+	public long getReusedConnectionRequests() {
+		return reusedConnectionRequests.get();
+	}
+
+	public long getIdleTimeouts() {
+		return idleTimeouts.get();
+	}
+
+	public void resetStatistics() {
+		keptAliveResponses.set(0);
+		reusedConnectionRequests.set(0);
+		idleTimeouts.set(0);
+	}
+
+	private synchronized void startIfNecessary() {
+		if (scheduler != null) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new KeepAliveThreadFactory());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					closeExpired(System.currentTimeMillis());
+				} catch (Exception e) {
+					log.error("Error closing idle connections", e);
+				}
+			}
+		}, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void registerAsMBean(String name) {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			mbs.registerMBean(this, new ObjectName(name));
+		} catch (Exception e) {
+			log.warn("Could not register MBean", e);
+		}
+	}
+
+	private static class KeepAliveThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "KeepAliveMonitor");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package com.streamhub.nio;
+
+public interface KeepAliveMonitorMBean {
+	int getIdleConnections();
+	long getKeptAliveResponses();
+	long getReusedConnectionRequests();
+	long getIdleTimeouts();
+	void resetStatistics();
+}
@@ -3,35 +3,53 @@ package com.streamhub.nio;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.streamhub.Connection;
+import com.streamhub.WritabilityListener;
 import com.streamhub.WriteRegister;
 import com.streamhub.handler.Handler;
 import com.streamhub.request.HttpRequest;
+import com.streamhub.request.HttpRequestHead;
 import com.streamhub.request.Request;
-import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.ByteBufferQueue;
 import com.streamhub.util.SocketUtils;
 
 class NIOConnection implements Connection {
-	private static final String CRLFx2 = "\r\n\r\n";
-	private static final String DIRECT_SEP = "@@";
-	
-	protected ByteBuffer readBuffer = ByteBuffer.allocateDirect(1024);
+	static final int UNBOUNDED = -1;
+	static final int DEFAULT_MAX_KEEP_ALIVE_REQUESTS = 100;
+	static final int DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS = 15000;
+	private static final DirectBufferPool readBufferPool = DirectBufferPool.readBuffers();
+	private static final KeepAliveMonitor keepAliveMonitor = KeepAliveMonitor.getInstance();
+	private ByteBuffer readBufferForTesting;
 	protected boolean selfClosing = false;
-	protected byte[] readBytes = new byte[0];
-	protected byte[] inputSoFar = new byte[0];
+	protected volatile byte[] readBytes = new byte[0];
+	protected ReadAccumulator inputSoFar = new ReadAccumulator();
 	private final SocketChannel channel;
-	private final List<ByteBuffer> writeBuffers = new ArrayList<ByteBuffer>();
+	private final ByteBufferQueue writeBuffers = new ByteBufferQueue();
 	private String attachment;
-	private ByteBuffer currentBuffer;
 	private IOException exception;
 	private WriteRegister writeRegister;
 	private Request request;
+	private volatile HttpRequestHead requestHead;
 	private Connection interceptor;
 	private boolean writeInterestSet = false;
+	private int lowWatermark = UNBOUNDED;
+	private int highWatermark = UNBOUNDED;
+	private long queuedBytes;
+	private long bytesWritten;
+	private volatile boolean isWritable = true;
+	private boolean becameWritable;
+	private volatile WritabilityListener writabilityListener;
+	private WorkerStage workerStage;
+	private final AtomicBoolean isHandling = new AtomicBoolean();
+	private volatile boolean isReadSuspended;
+	private int maxKeepAliveRequests = DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+	private int keepAliveTimeoutMillis = DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS;
+	private int requestCount;
+	private volatile boolean isKeptAlive;
 
 	public NIOConnection(Channel channel) {
 		this.channel = (SocketChannel) channel;
@@ -45,23 +63,22 @@ class NIOConnection implements Connection {
 		return readBytes;
 	}
 
-	protected byte[] readAsMuchAsPossible() throws IOException {
+	protected void readAsMuchAsPossible(ByteBuffer readBuffer) throws IOException {
 		int bytesRead = 0;
-		byte[] input = new byte[0];
 		
 		while ((bytesRead = channel.read(readBuffer)) > 0) {
 			readBuffer.rewind();
-			byte[] bytes = new byte[bytesRead];
-			readBuffer.get(bytes, 0, bytesRead);
-			input = ArrayUtils.concat(input, bytes);
+			inputSoFar.append(readBuffer, bytesRead);
 			readBuffer.rewind();
+			if (inputSoFar.exceedsMaxHeadLength() || inputSoFar.exceedsMaxBodyLength()) {
+				close();
+				return;
+			}
 		}
 
 		if (bytesRead < 0) {
 			close();
 		}
-
-		return input;
 	}
 	
 	public byte[] peekBytes() throws IOException {
@@ -87,9 +104,104 @@ class NIOConnection implements Connection {
 		writeAll(buffer);
 	}
 
+	public boolean isWritable() {
+		return isWritable;
+	}
+
+	public long getQueuedBytes() {
+		synchronized (writeBuffers) {
+			return queuedBytes;
+		}
+	}
+
+	/**
+	 * The total bytes handed to this connection to write, including any 
+	 * still queued.  A Comet response is one connection, so this is also 
+	 * the size of the response so far.
+	 */
+	public long getBytesWritten() {
+		synchronized (writeBuffers) {
+			return bytesWritten;
+		}
+	}
+
+	public void setWritabilityListener(WritabilityListener listener) {
+		this.writabilityListener = listener;
+	}
+
+	/**
+	 * Once more than <code>highWatermark</code> bytes are waiting to be 
+	 * written the connection reports itself as not writable, until the 
+	 * queue drains to <code>lowWatermark</code> bytes or fewer.
+	 */
+	void setWriteWatermarks(int lowWatermark, int highWatermark) {
+		checkWatermarks(lowWatermark, highWatermark);
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	static void checkWatermarks(int lowWatermark, int highWatermark) {
+		if (highWatermark == UNBOUNDED && lowWatermark == UNBOUNDED) {
+			return;
+		}
+		if (lowWatermark < 0 || highWatermark < lowWatermark) {
+			throw new IllegalArgumentException("Watermarks must satisfy 0 <= low <= high but low was " + lowWatermark + " and high was " + highWatermark);
+		}
+	}
+
+	/**
+	 * A connection carries at most <code>maxRequests</code> requests and is 
+	 * closed if it waits more than <code>idleTimeoutMillis</code> for the 
+	 * next one.  A maximum of 1 turns keep-alive off.
+	 */
+	void setKeepAlive(int maxRequests, int idleTimeoutMillis) {
+		checkKeepAlive(maxRequests, idleTimeoutMillis);
+		this.maxKeepAliveRequests = maxRequests;
+		this.keepAliveTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * Must be called before anything has been read
+	 */
+	void setMaxRequestLengths(int maxHeadLength, int maxBodyLength) {
+		checkMaxRequestLengths(maxHeadLength, maxBodyLength);
+		this.inputSoFar = new ReadAccumulator(maxHeadLength, maxBodyLength);
+	}
+
+	static void checkMaxRequestLengths(int maxHeadLength, int maxBodyLength) {
+		if (maxHeadLength < 1) {
+			throw new IllegalArgumentException("Max head length must be at least 1 but was " + maxHeadLength);
+		}
+		if (maxBodyLength < 0) {
+			throw new IllegalArgumentException("Max body length must be at least 0 but was " + maxBodyLength);
+		}
+	}
+
+	static void checkKeepAlive(int maxRequests, int idleTimeoutMillis) {
+		if (maxRequests < 1) {
+			throw new IllegalArgumentException("Max keep-alive requests must be at least 1 but was " + maxRequests);
+		}
+		if (idleTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Keep-alive timeout must be at least 1 but was " + idleTimeoutMillis);
+		}
+	}
+
+	public boolean keepAlive() {
+		if (requestCount >= maxKeepAliveRequests) {
+			return false;
+		}
+		isKeptAlive = true;
+		return true;
+	}
+
+	public boolean isKeptAlive() {
+		return isKeptAlive;
+	}
+
 	public Request getRequest() throws IOException {
 		if (request == null) {
-			request = HttpRequest.createFrom(this);
+			HttpRequestHead head = requestHead;
+			request = head == null ? HttpRequest.createFrom(this) : HttpRequest.createFrom(this, head);
 		}
 		return request;
 	}
@@ -101,7 +213,7 @@ class NIOConnection implements Connection {
 	}
 
 	public void setReadBufferForTesting(ByteBuffer readBuffer) {
-		this.readBuffer = readBuffer;
+		this.readBufferForTesting = readBuffer;
 	}
 
 	public String getAttachment() {
@@ -128,56 +240,194 @@ class NIOConnection implements Connection {
 		if (interceptor != null) {
 			interceptor.onReadableEvent(handler);
 		} else {
+			ByteBuffer readBuffer = borrowReadBuffer();
 			try {
-				inputSoFar = ArrayUtils.concat(inputSoFar, this.readAsMuchAsPossible());
+				this.readAsMuchAsPossible(readBuffer);
 			} catch (IOException e) {
 				this.close();
+			} finally {
+				releaseReadBuffer(readBuffer);
 			}
 	
-			if (isEndOfStream(inputSoFar)) {
-				readBytes = new byte[inputSoFar.length];
-				System.arraycopy(inputSoFar, 0, readBytes, 0, inputSoFar.length);
-				inputSoFar = new byte[0];
-				try {
-					handler.handle(this);
-				} catch (Exception e) {
+			if (workerStage == null) {
+				handleInline(handler);
+			} else {
+				handleOnWorkerStage(handler);
+			}
+		}
+	}
+
+	void setWorkerStage(WorkerStage workerStage) {
+		this.workerStage = workerStage;
+	}
+
+	/**
+	 * Handles every complete request read so far, so pipelined requests are 
+	 * answered in order
+	 */
+	private void handleInline(Handler handler) {
+		while (inputSoFar.isComplete()) {
+			readBytes = takeRequest();
+			try {
+				handler.handle(this);
+			} catch (Exception e) {
+			} finally {
+				finishRequest();
+			}
+
+			if (isClosing()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hands each complete request to the worker stage, one at a time per 
+	 * connection so requests are handled in the order they arrived.  Input 
+	 * that completes while a request is being handled waits in 
+	 * <code>inputSoFar</code> until the worker finishes.  When the stage is 
+	 * full the connection stops reading, so the dispatcher never runs the 
+	 * handler itself, and carries on once the stage has room.  WebSocket 
+	 * upgrades are still handled here because the handler switches the 
+	 * connection to framed reads, which must be in place before the next 
+	 * read event.
+	 */
+	private void handleOnWorkerStage(final Handler handler) {
+		while (inputSoFar.isComplete() && isHandling.compareAndSet(false, true)) {
+			if (! inputSoFar.isComplete()) {
+				isHandling.set(false);
+				continue;
+			}
+
+			if (inputSoFar.isUpgradeRequest()) {
+				readBytes = takeRequest();
+				handleTakenInput(handler);
+				continue;
+			}
+
+			boolean isAdmitted = workerStage.execute(new Runnable() {
+				public void run() {
+					readBytes = takeRequest();
+					handleTakenInput(handler);
+					if (! isClosing()) {
+						handleOnWorkerStage(handler);
+					}
+				}
+			});
+
+			if (! isAdmitted) {
+				parkUntilWorkerStageHasRoom(handler);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * The refused request stays in <code>inputSoFar</code> and is offered to 
+	 * the stage again before reads resume, so an upgrade behind it is still 
+	 * handled before any framed input is read
+	 */
+	private void parkUntilWorkerStageHasRoom(final Handler handler) {
+		isReadSuspended = true;
+		writeRegister.suspendReads(this);
+		isHandling.set(false);
+		workerStage.park(new Runnable() {
+			public void run() {
+				if (isClosing()) {
+					resumeReadsIfSuspended();
+					return;
+				}
+				isReadSuspended = false;
+				handleOnWorkerStage(handler);
+				if (! isReadSuspended) {
+					writeRegister.resumeReads(NIOConnection.this);
 				}
 			}
+		});
+	}
+
+	private void handleTakenInput(Handler handler) {
+		try {
+			handler.handle(this);
+		} catch (Exception e) {
+		} finally {
+			finishRequest();
+			isHandling.set(false);
+		}
+	}
+
+	private byte[] takeRequest() {
+		requestCount++;
+		request = null;
+		isKeptAlive = false;
+		keepAliveMonitor.busy(this);
+		requestHead = inputSoFar.getHead();
+		return inputSoFar.take();
+	}
+
+	/**
+	 * A connection kept alive for another request is timed out from when 
+	 * its response has been handed over
+	 */
+	private void finishRequest() {
+		if (isKeptAlive) {
+			keepAliveMonitor.idle(this, keepAliveTimeoutMillis);
+			awaitNextRequest();
 		}
 	}
+
+	/**
+	 * Called once a persistent connection is ready for its next request
+	 */
+	protected void awaitNextRequest() {
+	}
+
+	/**
+	 * Whether the connection has been or is about to be closed, after which 
+	 * any pipelined requests still to be handled are ignored
+	 */
+	protected boolean isClosing() {
+		return ! channel.isOpen();
+	}
 	
 	public void setWriteRegister(WriteRegister writeRegister) {
 		this.writeRegister = writeRegister;
 	}
 
+	/**
+	 * Writability is only reported from here, never from a writer, so the 
+	 * listener never runs while a writer holds its locks.  A writer which 
+	 * drains the queue below the low watermark leaves write interest set 
+	 * until this has told the listener.
+	 */
 	public void onWriteableEvent() {
-		if (exception == null) {
-			do {
-				if (currentBuffer == null || !currentBuffer.hasRemaining()) {
-					synchronized (writeBuffers) {
-						if (writeBuffers.size() == 0) {
-							deregisterWriteInterest();
-							return;
-						}
-						currentBuffer = writeBuffers.remove(0);
-					}
-				}
-
-				int bytesWritten = 1;
+		drainWriteBuffers();
+		notifyIfBecameWritable();
+		deregisterIfDrained();
+	}
 
-				while (currentBuffer.hasRemaining() && bytesWritten > 0) {
-					try {
-						bytesWritten = channel.write(currentBuffer);
-					} catch (IOException e) {
-						exception = e;
-						return;
-					}
-				}
-			} while (!currentBuffer.hasRemaining());
+	private void drainWriteBuffers() {
+		synchronized (writeBuffers) {
+			if (exception != null) {
+				return;
+			}
+			
+			try {
+				onBytesWritten(writeBuffers.writeTo(getWriteChannel()));
+			} catch (IOException e) {
+				exception = e;
+				return;
+			}
+			
+			if (writeBuffers.isEmpty() && ! becameWritable) {
+				deregisterWriteInterest();
+			}
 		}
-		
+	}
+
+	private void deregisterIfDrained() {
 		synchronized (writeBuffers) {
-			if (!currentBuffer.hasRemaining() && writeBuffers.size() == 0) {
+			if (writeInterestSet && writeBuffers.isEmpty() && ! becameWritable) {
 				deregisterWriteInterest();
 			}
 		}
@@ -195,32 +445,38 @@ class NIOConnection implements Connection {
 		this.interceptor = interceptor;
 	}
 	
-	protected boolean isEndOfStream(byte[] bytes) {
-		if (bytes.length < 4) {
-			return false;
-		}
-		
-		byte[] lastFourBytes =  new byte[4];
-		System.arraycopy(bytes, bytes.length-4, lastFourBytes, 0, 4);
-		String firstTwo = new String(bytes, 0, 2);
-		String lastFour = new String(lastFourBytes);
-		
-		if (CRLFx2.equals(lastFour)) {
-			return true;
-		} else if (firstTwo.startsWith(DIRECT_SEP)) {
-			return lastFour.endsWith(DIRECT_SEP);
-		} else {
-			String string = new String(bytes);
-			if (string.contains("WebSocket") && string.contains(CRLFx2)) {
-				return true;
-			}
+	protected void closeChannel() {
+		keepAliveMonitor.closed(this);
+		SocketUtils.closeQuietly(channel);
+		resumeReadsIfSuspended();
+	}
+
+	/**
+	 * A parked connection which closes is forgotten by the dispatcher, 
+	 * which would otherwise keep it in its suspended reads
+	 */
+	private void resumeReadsIfSuspended() {
+		if (isReadSuspended) {
+			isReadSuspended = false;
+			writeRegister.resumeReads(this);
 		}
+	}
 
-		return false;
+	/**
+	 * The channel queued writes are drained to
+	 */
+	protected GatheringByteChannel getWriteChannel() {
+		return channel;
 	}
-	
-	protected void closeChannel() {
-		SocketUtils.closeQuietly(channel);
+
+	private ByteBuffer borrowReadBuffer() {
+		return readBufferForTesting == null ? readBufferPool.borrow() : readBufferForTesting;
+	}
+
+	private void releaseReadBuffer(ByteBuffer readBuffer) {
+		if (readBuffer != readBufferForTesting) {
+			readBufferPool.release(readBuffer);
+		}
 	}
 
 	private void deregisterWriteInterest() {
@@ -231,16 +487,54 @@ class NIOConnection implements Connection {
 		}
 	}
 
+	private void onBytesWritten(long bytesWritten) {
+		queuedBytes -= bytesWritten;
+		if (! isWritable && queuedBytes <= lowWatermark) {
+			isWritable = true;
+			becameWritable = true;
+		}
+	}
+
+	private void notifyIfBecameWritable() {
+		synchronized (writeBuffers) {
+			if (! becameWritable) {
+				return;
+			}
+			becameWritable = false;
+		}
+		
+		WritabilityListener listener = writabilityListener;
+		if (listener != null) {
+			listener.onWritable();
+		}
+	}
+
 	private void writeAll(ByteBuffer buffer) throws IOException {
 		synchronized (writeBuffers) {
 			writeBuffers.add(buffer);
+			queuedBytes += buffer.remaining();
+			bytesWritten += buffer.remaining();
+			if (isWritable && highWatermark != UNBOUNDED && queuedBytes > highWatermark) {
+				isWritable = false;
+			}
 		}
 		writeAsMuchAsPossible();
-		if (buffer.hasRemaining() && !writeInterestSet) {
-			setWriteInterest();
-		}
+		registerIfUndrained(buffer);
 	}
 	
+	/**
+	 * Write interest is only read and changed under the queue's lock, so a 
+	 * drain on the dispatcher cannot slip between the check and the 
+	 * registration
+	 */
+	private void registerIfUndrained(ByteBuffer buffer) {
+		synchronized (writeBuffers) {
+			if ((buffer.hasRemaining() || becameWritable) && ! writeInterestSet) {
+				setWriteInterest();
+			}
+		}
+	}
+
 	private void setWriteInterest() {
 		writeRegister.registerForWrite(this);
 		writeInterestSet = true;
@@ -252,7 +546,7 @@ class NIOConnection implements Connection {
 		}
 	}
 
-	private void writeAsMuchAsPossible() throws IOException {
-		onWriteableEvent();
+	protected void writeAsMuchAsPossible() throws IOException {
+		drainWriteBuffers();
 	}
 }
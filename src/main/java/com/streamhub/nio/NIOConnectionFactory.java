@@ -4,10 +4,52 @@ import java.nio.channels.SocketChannel;
 
 import com.streamhub.Connection;
 
+/**
+ * Creates plain connections and holds the settings every connection it 
+ * creates is given.  {@link SecureNIOConnectionFactory} shares the settings 
+ * and only changes the kind of connection.
+ */
 class NIOConnectionFactory implements ConnectionFactory {
+	private int lowWatermark = NIOConnection.UNBOUNDED;
+	private int highWatermark = NIOConnection.UNBOUNDED;
+	private int maxKeepAliveRequests = NIOConnection.DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+	private int keepAliveTimeoutMillis = NIOConnection.DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS;
+	private int maxHeadLength = ReadAccumulator.DEFAULT_MAX_HEAD_LENGTH;
+	private int maxBodyLength = ReadAccumulator.DEFAULT_MAX_BODY_LENGTH;
+	private WorkerStage workerStage;
 
 	public Connection createConnection(SocketChannel channel) {
+		NIOConnection connection = newConnection(channel);
+		connection.setWriteWatermarks(lowWatermark, highWatermark);
+		connection.setKeepAlive(maxKeepAliveRequests, keepAliveTimeoutMillis);
+		connection.setMaxRequestLengths(maxHeadLength, maxBodyLength);
+		connection.setWorkerStage(workerStage);
+		return connection;
+	}
+
+	NIOConnection newConnection(SocketChannel channel) {
 		return new NIOConnection(channel);
 	}
 
+	public void setWriteWatermarks(int lowWatermark, int highWatermark) {
+		NIOConnection.checkWatermarks(lowWatermark, highWatermark);
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	public void setKeepAlive(int maxRequests, int idleTimeoutMillis) {
+		NIOConnection.checkKeepAlive(maxRequests, idleTimeoutMillis);
+		this.maxKeepAliveRequests = maxRequests;
+		this.keepAliveTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public void setMaxRequestLengths(int maxHeadLength, int maxBodyLength) {
+		NIOConnection.checkMaxRequestLengths(maxHeadLength, maxBodyLength);
+		this.maxHeadLength = maxHeadLength;
+		this.maxBodyLength = maxBodyLength;
+	}
+
+	public void setWorkerStage(WorkerStage workerStage) {
+		this.workerStage = workerStage;
+	}
 }
@@ -14,8 +14,10 @@ import com.streamhub.ContextHandler;
 import com.streamhub.DirectHandler;
 import com.streamhub.HttpHandler;
 import com.streamhub.StreamingSubscriptionManager;
+import com.streamhub.api.ExecutionMode;
 import com.streamhub.api.Payload;
 import com.streamhub.api.PushServer;
+import com.streamhub.api.SlowConsumerPolicy;
 import com.streamhub.api.SubscriptionManager;
 import com.streamhub.client.ClientFactory;
 import com.streamhub.client.ClientManager;
@@ -24,6 +26,7 @@ import com.streamhub.handler.Handler;
 import com.streamhub.handler.RawHandler;
 import com.streamhub.nio.CommandLine.Options;
 import com.streamhub.request.StreamingAdapterHandler;
+import com.streamhub.util.VirtualThreads;
 
 /**
  * The main Comet and HTTP Push server to which connections are made by all clients.
@@ -62,6 +65,7 @@ import com.streamhub.request.StreamingAdapterHandler;
 public class NIOServer implements PushServer {
 	private static final String DEFAULT_LOG4J_CONF_LOCATION = "conf/log4j.xml";
 	private static final Logger log = Logger.getLogger(NIOServer.class);
+	static final int DEFAULT_MAX_VIRTUAL_TASKS = 10000;
 	
 	protected final int port;
 	protected final InetSocketAddress address;
@@ -74,13 +78,21 @@ public class NIOServer implements PushServer {
 	private StreamingClientManager streamingClientManager;
 	private boolean isStarted;
 	private int userLimit = 1;
+	private boolean isConflating;
+	private boolean isWebSocketCompressing;
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+	private long responseBudget = ClientFactory.DEFAULT_RESPONSE_BUDGET;
 	private Acceptor streamingAdapterAcceptor;
 	private URL log4jConfigurationUrl;
 	private ConnectionFactory connectionFactory = new NIOConnectionFactory();
+	private WorkerStage workerStage;
+	private int workerThreads;
+	private int workerQueueCapacity;
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
 
 	public static void main(String[] args) throws Exception {
 		Options options = CommandLine.parse(args);
-		PushServer server = null;
+		NIOServer server = null;
 		
 		if (options.loggingUrl == null) {
 			server = new NIOServer(options.serverAddress, options.streamingAdapterAddress);
@@ -88,6 +100,7 @@ public class NIOServer implements PushServer {
 			server = new NIOServer(options.serverAddress, options.streamingAdapterAddress, options.loggingUrl);
 		}
 		
+		server.setDispatchers(options.dispatchers);
 		server.start();
 		System.out.println("Press any key to stop...");
 		System.in.read();
@@ -174,6 +187,9 @@ public class NIOServer implements PushServer {
 		}
 		threadPool.shutdownNow();
 		adapterThreadPool.shutdownNow();
+		if (workerStage != null) {
+			workerStage.stop();
+		}
 		isStarted = false;
 		subscriptionManager.stop();
         log.info("Server stopped");
@@ -184,8 +200,13 @@ public class NIOServer implements PushServer {
 	 */
 	public void start() {
 		startLogging();
+		startWorkerStage();
+		applyWebSocketCompression(isWebSocketCompressing);
 		threadPool.execute(clientAcceptor);
-		streamingClientManager = new StreamingClientManager(new ClientFactory(subscriptionManager), userLimit);
+		ClientFactory clientFactory = new ClientFactory(subscriptionManager, isConflating);
+		clientFactory.setSlowConsumerPolicy(slowConsumerPolicy);
+		clientFactory.setResponseBudget(responseBudget);
+		streamingClientManager = new StreamingClientManager(clientFactory, userLimit);
 		subscriptionManager.start(streamingClientManager);
 		isStarted = true;
         log.info("StreamHub Server " + this.getClass().getPackage().getImplementationVersion() + " started on port " + port);
@@ -254,10 +275,229 @@ public class NIOServer implements PushServer {
 		((ContextHandler)cometHandler).addContext(context, handler);
 	}
 
+	/**
+	 * Sets the number of threads used to fan published messages out to 
+	 * subscribers.  Each client is always served by the same thread so 
+	 * messages arrive in the order they were published.  Defaults to the 
+	 * number of available processors.  Must be called before {@link #start()}.
+	 * 
+	 * @param shards	the number of fan-out threads
+	 */
+	public void setSendShards(int shards) {
+		subscriptionManager.setSendShards(shards);
+	}
+
+	/**
+	 * Enables conflation for Comet and WebSocket clients.  While a client 
+	 * cannot be written to, only the latest message for each topic is kept 
+	 * and a newer message replaces the queued one, so a slow consumer holds 
+	 * at most one message per subscribed topic.  Off by default, in which 
+	 * case every message is queued.  Must be called before {@link #start()}.
+	 * 
+	 * @param isConflating	<code>true</code> to keep only the latest message per topic
+	 */
+	public void setConflation(boolean isConflating) {
+		this.isConflating = isConflating;
+	}
+
+	/**
+	 * Bounds how much unsent data each connection may hold.  When more than 
+	 * <code>highWatermark</code> bytes are queued for a client its connection 
+	 * stops accepting messages and the {@link SlowConsumerPolicy} is applied 
+	 * until the queue has drained to <code>lowWatermark</code> bytes.  By 
+	 * default connections are unbounded.  Must be called before {@link #start()}.
+	 * 
+	 * @param lowWatermark	the queued bytes at or below which a connection is writable again
+	 * @param highWatermark	the queued bytes above which a connection is no longer writable
+	 */
+	public void setWriteWatermarks(int lowWatermark, int highWatermark) {
+		connectionFactory.setWriteWatermarks(lowWatermark, highWatermark);
+	}
+
+	/**
+	 * Lets clients reuse a connection for subscribe, unsubscribe, publish, 
+	 * poll and disconnect requests, including several pipelined in one 
+	 * read.  A connection carries at most <code>maxRequests</code> requests 
+	 * and is closed once it has waited <code>idleTimeoutMillis</code> for 
+	 * the next one.  Forever frame responses always close their connection.
+	 * Defaults to 100 requests and 15 seconds; a maximum of 1 turns 
+	 * keep-alive off.  Must be called before {@link #start()}.
+	 * 
+	 * @param maxRequests			the most requests served on one connection
+	 * @param idleTimeoutMillis		how long an idle connection is kept open
+	 */
+	public void setKeepAlive(int maxRequests, int idleTimeoutMillis) {
+		connectionFactory.setKeepAlive(maxRequests, idleTimeoutMillis);
+	}
+
+	/**
+	 * Bounds the size of HTTP requests.  A connection is closed without a 
+	 * response when its request head grows past <code>maxHeadLength</code> 
+	 * bytes, or when the head announces a Content-Length above 
+	 * <code>maxBodyLength</code>.  Defaults to 64KB and 1MB.  Must be called 
+	 * before {@link #start()}.
+	 * 
+	 * @param maxHeadLength	the most bytes read while waiting for the end of a request head
+	 * @param maxBodyLength	the longest request body accepted
+	 */
+	public void setMaxRequestLengths(int maxHeadLength, int maxBodyLength) {
+		connectionFactory.setMaxRequestLengths(maxHeadLength, maxBodyLength);
+	}
+
+	/**
+	 * Compresses messages to RFC 6455 WebSocket clients offering the 
+	 * permessage-deflate extension.  Each published message is compressed 
+	 * once and the same frame is sent to every such subscriber, without 
+	 * context takeover between messages.  Messages which do not get smaller 
+	 * are sent uncompressed.  Off by default.  Must be called before 
+	 * {@link #start()}.
+	 * 
+	 * @param isCompressing	<code>true</code> to accept permessage-deflate
+	 */
+	public void setWebSocketCompression(boolean isCompressing) {
+		this.isWebSocketCompressing = isCompressing;
+	}
+
+	/**
+	 * Sets what happens to messages for a client whose connection is above 
+	 * its high watermark.  Defaults to {@link SlowConsumerPolicy#DISCONNECT}.
+	 * Must be called before {@link #start()}.
+	 * 
+	 * @param slowConsumerPolicy	the policy to apply to slow clients
+	 * @see #setWriteWatermarks(int, int)
+	 */
+	public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+		this.slowConsumerPolicy = slowConsumerPolicy;
+	}
+
+	/**
+	 * Sets how many bytes a Comet response carries before the server ends 
+	 * it and the browser reconnects.  Responses are chunked, so this only 
+	 * bounds how much the browser's forever frame accumulates.  When a 
+	 * <code>Content-Length</code> push header is set responses end at that 
+	 * length instead.  Defaults to 10MB.  Must be called before {@link #start()}.
+	 * 
+	 * @param responseBudget	the bytes written to a Comet response before it is ended
+	 * @see #setDefaultPushHeader(String, String)
+	 */
+	public void setResponseBudget(long responseBudget) {
+		if (responseBudget < 1) {
+			throw new IllegalArgumentException("Response budget must be at least 1 but was " + responseBudget);
+		}
+		this.responseBudget = responseBudget;
+	}
+
+	/**
+	 * Sets the number of threads accepting new connections.  Each thread
+	 * accepts every pending connection when it wakes, so more than one is
+	 * only worthwhile when large numbers of clients connect at once, such
+	 * as everyone reconnecting after a restart.  Defaults to 1.  Must be
+	 * called before {@link #start()}.
+	 *
+	 * @param acceptorThreads	the number of accepting threads
+	 */
+	public void setAcceptorThreads(int acceptorThreads) {
+		clientAcceptor.setAcceptorThreads(acceptorThreads);
+	}
+
+	/**
+	 * Sets the number of dispatcher threads, each running a select loop 
+	 * for its share of the connections.  New connections go to the 
+	 * dispatcher with the fewest.  Each dispatcher's statistics are 
+	 * available over JMX as <code>com.streamhub.nio:type=Dispatcher</code>.  
+	 * Defaults to the number of available processors.  Must be called 
+	 * before {@link #start()}.
+	 *
+	 * @param dispatchers	the number of dispatcher threads
+	 */
+	public void setDispatchers(int dispatchers) {
+		clientAcceptor.setDispatchers(dispatchers);
+	}
+
+	/**
+	 * Sets the maximum number of connections the operating system will
+	 * queue while waiting for them to be accepted.  Defaults to 0, which
+	 * uses the platform default.  Must be called before {@link #start()}.
+	 *
+	 * @param backlog	the listen backlog
+	 */
+	public void setAcceptBacklog(int backlog) {
+		clientAcceptor.setBacklog(backlog);
+	}
+
+	/**
+	 * Runs request handlers, including any added with 
+	 * {@link #addContext(String, Handler)}, on a pool of worker threads 
+	 * instead of the dispatcher threads, so a slow handler cannot hold up 
+	 * reads and writes for other connections.  At most 
+	 * <code>queueCapacity</code> requests wait for a worker; beyond that a 
+	 * connection with a new request stops reading until a worker finishes 
+	 * one.  Queue depth and latency are available over JMX as 
+	 * <code>com.streamhub.nio:type=WorkerStage,name=</code><i>port</i>.  
+	 * By default handlers run on the dispatcher threads.  Must be called 
+	 * before {@link #start()}.
+	 * 
+	 * @param workerThreads	the number of worker threads
+	 * @param queueCapacity	the number of requests that may wait for a worker
+	 */
+	public void setWorkerStage(int workerThreads, int queueCapacity) {
+		if (workerThreads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Worker threads and queue capacity must be at least 1 but were " + workerThreads + " and " + queueCapacity);
+		}
+		this.workerThreads = workerThreads;
+		this.workerQueueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Chooses whether blocking work runs on platform or virtual threads.  
+	 * With {@link ExecutionMode#VIRTUAL_THREADS} every request handler, 
+	 * including those for streaming adapters and any added with 
+	 * {@link #addContext(String, Handler)}, runs on its own virtual thread, 
+	 * as do subscription and publish listener notifications.  Selector 
+	 * loops stay on platform threads.  At most <code>workerThreads + 
+	 * queueCapacity</code> requests from {@link #setWorkerStage(int, int)}, 
+	 * or 10,000 if it was not called, are handled at once.  Virtual threads 
+	 * need a Java 21 or later runtime; on older runtimes a warning is logged 
+	 * and platform threads are used.  Defaults to 
+	 * {@link ExecutionMode#PLATFORM_THREADS}.  Must be called before 
+	 * {@link #start()}.
+	 * 
+	 * @param executionMode	the kind of threads to run blocking work on
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		if (executionMode == ExecutionMode.VIRTUAL_THREADS && ! VirtualThreads.isSupported()) {
+			log.warn("Virtual threads are not supported by Java " + System.getProperty("java.version") + ", using platform threads");
+			return;
+		}
+		this.executionMode = executionMode;
+	}
+
+	void applyWorkerStage(WorkerStage workerStage) {
+		connectionFactory.setWorkerStage(workerStage);
+	}
+
+	void applyWebSocketCompression(boolean isCompressing) {
+		((ContextHandler) cometHandler).setWebSocketCompression(isCompressing);
+	}
+
 	ClientManager getClientManager() {
 		return streamingClientManager;
 	}
 
+	private void startWorkerStage() {
+		if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+			int maxTasks = workerThreads > 0 ? workerThreads + workerQueueCapacity : DEFAULT_MAX_VIRTUAL_TASKS;
+			workerStage = WorkerStage.withVirtualThreads(String.valueOf(port), maxTasks);
+			subscriptionManager.setNotifyPool(VirtualThreads.newThreadPerTaskExecutor("Notifier-"));
+		} else if (workerThreads > 0) {
+			workerStage = new WorkerStage(String.valueOf(port), workerThreads, workerQueueCapacity);
+		}
+
+		if (workerStage != null) {
+			applyWorkerStage(workerStage);
+		}
+	}
+
 	private void startLogging() {
 		if (log4jConfigurationUrl == null) {
 			DOMConfigurator.configure(DEFAULT_LOG4J_CONF_LOCATION);
@@ -0,0 +1,220 @@
+package com.streamhub.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.streamhub.DirectHandler;
+import com.streamhub.request.HttpRequestHead;
+import com.streamhub.request.HttpRequestParser;
+import com.streamhub.util.ArrayUtils;
+
+/**
+ * Collects the bytes of a request as they are read and decides when a whole 
+ * request has arrived.  The backing array grows geometrically and HTTP input 
+ * is scanned incrementally, so fragmented requests cost linear time.  The 
+ * head of an HTTP request is parsed once, when its end has been found, and 
+ * handed on with the request.  A peer which sends more than the maximum 
+ * head length without ending the head, or whose head announces a body 
+ * longer than the maximum body length, is treated as broken.
+ * <p>
+ * Synchronized because with a {@link WorkerStage} requests are taken by a 
+ * worker while the dispatcher may still be appending.
+ */
+class ReadAccumulator {
+	private static final byte[] EMPTY = new byte[0];
+	private static final byte[] DIRECT_SEP = DirectHandler.DIRECT_MESSAGE_SEPARATOR.getBytes();
+	private static final byte[] BINARY_NEGOTIATION = DirectHandler.BINARY_NEGOTIATION.getBytes();
+	private static final String SEC_KEY1 = "Sec-WebSocket-Key1";
+	private static final String UPGRADE = "Upgrade";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final int CHALLENGE_LENGTH = 8;
+	static final int DEFAULT_MAX_HEAD_LENGTH = 64 * 1024;
+	static final int DEFAULT_MAX_BODY_LENGTH = 1024 * 1024;
+	private final HttpRequestParser parser = new HttpRequestParser();
+	private final int maxHeadLength;
+	private final int maxBodyLength;
+	private byte[] bytes = EMPTY;
+	private int length;
+	private HttpRequestHead head;
+
+	ReadAccumulator() {
+		this(DEFAULT_MAX_HEAD_LENGTH, DEFAULT_MAX_BODY_LENGTH);
+	}
+
+	ReadAccumulator(int maxHeadLength, int maxBodyLength) {
+		this.maxHeadLength = maxHeadLength;
+		this.maxBodyLength = maxBodyLength;
+	}
+
+	/**
+	 * Appends <code>count</code> bytes from the source buffer's position
+	 */
+	synchronized void append(ByteBuffer source, int count) {
+		if (length + count > bytes.length) {
+			byte[] grown = new byte[Math.max(length + count, bytes.length * 2)];
+			System.arraycopy(bytes, 0, grown, 0, length);
+			bytes = grown;
+		}
+		source.get(bytes, length, count);
+		length += count;
+	}
+
+	synchronized int length() {
+		return length;
+	}
+
+	synchronized boolean isComplete() {
+		if (length < 4) {
+			return false;
+		}
+
+		if (startsWith(DIRECT_SEP)) {
+			return endsWith(DIRECT_SEP) || isBinaryNegotiation();
+		}
+
+		if (head() == null) {
+			return false;
+		}
+
+		int headEnd = parser.getHeadEnd();
+		if (head.getHeader(SEC_KEY1) != null) {
+			// A draft-76 WebSocket handshake sends its challenge after the headers
+			return length >= headEnd + CHALLENGE_LENGTH;
+		}
+
+		long bodyLength = bodyLength(head);
+		return bodyLength < 0 || bodyLength <= length - headEnd;
+	}
+
+	/**
+	 * Returns the first complete request and keeps anything read after it, 
+	 * which is the start of the next request on a persistent connection.  
+	 * Streaming adapter messages and protocol upgrades are returned with 
+	 * everything read so far, as before.
+	 */
+	synchronized byte[] take() {
+		int requestLength = requestLength();
+		byte[] input = new byte[requestLength];
+		System.arraycopy(bytes, 0, input, 0, requestLength);
+
+		if (requestLength == length) {
+			bytes = EMPTY;
+		} else {
+			System.arraycopy(bytes, requestLength, bytes, 0, length - requestLength);
+		}
+		length -= requestLength;
+		parser.reset();
+		head = null;
+		return input;
+	}
+
+	/**
+	 * The parsed head of the first HTTP request, or <code>null</code> if the 
+	 * input is not HTTP or the head has not all arrived
+	 */
+	synchronized HttpRequestHead getHead() {
+		if (length < 4 || startsWith(DIRECT_SEP)) {
+			return null;
+		}
+		return head();
+	}
+
+	/**
+	 * Whether more than the maximum head length has been read without the 
+	 * end of an HTTP request head
+	 */
+	synchronized boolean exceedsMaxHeadLength() {
+		return length > maxHeadLength && ! startsWith(DIRECT_SEP) && head() == null;
+	}
+
+	/**
+	 * Whether the head of the first HTTP request announces a body longer 
+	 * than the maximum body length, which is never waited for
+	 */
+	synchronized boolean exceedsMaxBodyLength() {
+		if (getHead() == null || head.getHeader(UPGRADE) != null || head.getHeader(SEC_KEY1) != null) {
+			return false;
+		}
+		return bodyLength(head) > maxBodyLength;
+	}
+
+	/**
+	 * Whether the complete HTTP request read so far asks to switch protocols, 
+	 * or Direct input asks to switch to binary frames, which may follow the 
+	 * negotiation in the same read
+	 */
+	synchronized boolean isUpgradeRequest() {
+		if (startsWith(DIRECT_SEP)) {
+			return isBinaryNegotiation();
+		}
+		return head() != null && head.getHeader(UPGRADE) != null;
+	}
+
+	/**
+	 * Scans only the bytes read since the last call and parses the head over 
+	 * its own copy once its end is found, so it stays valid after the 
+	 * request is taken
+	 */
+	private HttpRequestHead head() {
+		if (head == null && parser.parse(bytes, length)) {
+			head = HttpRequestHead.parse(Arrays.copyOf(bytes, parser.getHeadEnd()));
+		}
+		return head;
+	}
+
+	private int requestLength() {
+		if (startsWith(DIRECT_SEP) || head() == null) {
+			return length;
+		}
+
+		int headEnd = parser.getHeadEnd();
+		if (head.getHeader(UPGRADE) != null || head.getHeader(SEC_KEY1) != null) {
+			return length;
+		}
+
+		long bodyLength = bodyLength(head);
+		return bodyLength < 0 || bodyLength > length - headEnd ? length : headEnd + (int) bodyLength;
+	}
+
+	/**
+	 * The Content-Length of the request, 0 if it has none, or -1 if it is
+	 * not a number, in which case everything read so far is taken as the 
+	 * request.  Kept as a long so that a huge length cannot overflow before 
+	 * it is checked against the maximum body length.
+	 */
+	private long bodyLength(HttpRequestHead head) {
+		String contentLength = head.getHeader(CONTENT_LENGTH);
+		if (contentLength == null) {
+			return 0;
+		}
+
+		try {
+			return Long.parseLong(contentLength.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private boolean isBinaryNegotiation() {
+		return ArrayUtils.indexOf(BINARY_NEGOTIATION, bytes, length) >= 0;
+	}
+
+	private boolean startsWith(byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean endsWith(byte[] suffix) {
+		int offset = length - suffix.length;
+		for (int i = 0; i < suffix.length; i++) {
+			if (bytes[offset + i] != suffix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -3,8 +3,10 @@ package com.streamhub.nio;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
@@ -16,13 +18,16 @@ import org.apache.log4j.Logger;
 
 import com.streamhub.util.SocketUtils;
 
-public final class SSLChannel extends Channel {
+public final class SSLChannel extends Channel implements GatheringByteChannel {
 	private final static Logger log = Logger.getLogger(SSLChannel.class);
 	private final SSLSession session;
 	private final SSLEngine engine;
 	private final ByteBuffer peerAppData;
 	private final ByteBuffer peerNetData;
 	private final ByteBuffer netData;
+	private final DirectBufferPool packetBuffers;
+	private final DirectBufferPool applicationBuffers;
+	private boolean buffersReleased = false;
 	private boolean appReadInterestSet = false;
 	private boolean appWriteInterestSet = false;
 	private boolean channelReadInterestSet = false;
@@ -35,19 +40,42 @@ public final class SSLChannel extends Channel {
 	private SSLEngineResult.Status status = null;
 	private IOException asynchException = null;
 	private boolean shouldHandleReadAfterHandShake;
+	private final Executor handshakeExecutor;
+	private final HandshakeStatistics handshakeStatistics;
+	private final long handshakeStartNanos = System.nanoTime();
+	private final long handshakeStartMillis = System.currentTimeMillis();
+	private boolean tasksRunning = false;
+	private boolean handshakeFailed = false;
 
 	public SSLChannel(SelectorThread st, SocketChannel sc, ChannelListener listener, SSLEngine engine) throws Exception {
+		this(st, sc, listener, engine, null, null);
+	}
+
+	/**
+	 * Creates a channel whose delegated handshake tasks run on
+	 * <code>handshakeExecutor</code> rather than on the selector thread, so
+	 * expensive key exchanges do not hold up the other channels on that 
+	 * thread.  Passing <code>null</code> runs the tasks inline.  The outcome 
+	 * of the initial handshake is recorded in <code>handshakeStatistics</code> 
+	 * unless it is <code>null</code>.
+	 */
+	public SSLChannel(SelectorThread st, SocketChannel sc, ChannelListener listener, SSLEngine engine, 
+			Executor handshakeExecutor, HandshakeStatistics handshakeStatistics) throws Exception {
 		super(st, sc, listener);
 
 		this.engine = engine;
+		this.handshakeExecutor = handshakeExecutor;
+		this.handshakeStatistics = handshakeStatistics;
 
 		session = engine.getSession();
-		peerNetData = ByteBuffer.allocate(session.getPacketBufferSize());
-		peerAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-		netData = ByteBuffer.allocate(session.getPacketBufferSize());
+		st.registerChannelNow(sc, 0, this);
+		packetBuffers = DirectBufferPool.engineBuffers(session.getPacketBufferSize());
+		applicationBuffers = DirectBufferPool.engineBuffers(session.getApplicationBufferSize());
+		peerNetData = packetBuffers.borrow();
+		peerAppData = applicationBuffers.borrow();
+		netData = packetBuffers.borrow();
 		peerAppData.position(peerAppData.limit());
 		netData.position(netData.limit());
-		st.registerChannelNow(sc, 0, this);
 		log.debug("Starting SSL handshake");
 		engine.beginHandshake();
 		hsStatus = engine.getHandshakeStatus();
@@ -85,15 +113,22 @@ public final class SSLChannel extends Channel {
 
 		int limit = Math.min(peerAppData.remaining(), dst.remaining());
 
-		for (int i = 0; i < limit; i++) {
-			dst.put(peerAppData.get());
+		if (limit == peerAppData.remaining()) {
+			dst.put(peerAppData);
+		} else {
+			int appDataLimit = peerAppData.limit();
+			peerAppData.limit(peerAppData.position() + limit);
+			dst.put(peerAppData);
+			peerAppData.limit(appDataLimit);
 		}
 		return limit;
 	}
 
 	private int readAndUnwrap() throws IOException {
 		int bytesRead = sc.read(peerNetData);
-		log.debug("Read " + bytesRead + " bytes");
+		if (log.isDebugEnabled()) {
+			log.debug("Read " + bytesRead + " bytes");
+		}
 		if (bytesRead == -1) {
 			try {
 				engine.closeInbound();
@@ -110,7 +145,9 @@ public final class SSLChannel extends Channel {
 		SSLEngineResult res;
 		do {
 			res = engine.unwrap(peerNetData, peerAppData);
-			log.debug("Unwrapping:\n" + res);
+			if (log.isDebugEnabled()) {
+				log.debug("Unwrapping:\n" + res);
+			}
 		} while (res.getStatus() == SSLEngineResult.Status.OK
 				&& res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP && res.bytesProduced() == 0);
 		if (res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
@@ -119,7 +156,9 @@ public final class SSLChannel extends Channel {
 
 		if (peerAppData.position() == 0 && res.getStatus() == SSLEngineResult.Status.OK && peerNetData.hasRemaining()) {
 			res = engine.unwrap(peerNetData, peerAppData);
-			log.debug("Unwrapping1:\n" + res);
+			if (log.isDebugEnabled()) {
+				log.debug("Unwrapping1:\n" + res);
+			}
 			if (res.bytesConsumed() > 0) {
 				shouldHandleReadAfterHandShake = true;
 			}
@@ -147,24 +186,61 @@ public final class SSLChannel extends Channel {
 	}
 
 	public int write(ByteBuffer src) throws IOException {
+		return (int) write(new ByteBuffer[] { src }, 0, 1);
+	}
+
+	/**
+	 * Wraps as much of <code>srcs</code> as possible, a full TLS record at 
+	 * a time, for as long as each record can be written to the socket 
+	 * straight away.  Returns 0 without consuming anything while an earlier 
+	 * record is still waiting to be written.  Must be called on the 
+	 * selector thread.
+	 */
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
 		checkChannelStillValid();
 		if (initialHandshake) {
-			log.warn("Writing not possible during handshake");
 			return 0;
 		}
-		log.debug("Trying to write");
 
-		if (netData.hasRemaining()) {
-			return 0;
+		long bytesConsumed = 0;
+
+		while (! netData.hasRemaining() && hasRemaining(srcs, offset, length)) {
+			netData.clear();
+			SSLEngineResult res = engine.wrap(srcs, offset, length, netData);
+			netData.flip();
+			bytesConsumed += res.bytesConsumed();
+
+			if (res.getStatus() != SSLEngineResult.Status.OK || ! flushData()) {
+				break;
+			}
 		}
 
-		netData.clear();
-		SSLEngineResult res = engine.wrap(src, netData);
-		log.debug("Wrapping1:\n" + res);
-		netData.flip();
-		flushData();
+		return bytesConsumed;
+	}
 
-		return res.bytesConsumed();
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	public boolean isOpen() {
+		return ! closed && sc.isOpen();
+	}
+
+	/**
+	 * Whether a wrapped record is still waiting for the socket to become 
+	 * writable
+	 */
+	boolean hasUnflushedData() {
+		return ! buffersReleased && netData.hasRemaining();
+	}
+
+	private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (srcs[i].hasRemaining()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public void registerForRead() throws IOException {
@@ -231,22 +307,18 @@ public final class SSLChannel extends Channel {
 	private void doShutdown() throws IOException {
 		if (asynchException != null || engine.isOutboundDone()) {
 			log.debug("Outbound is finished - closing socket");
-			try {
-				sc.close();
-			} catch (IOException e) { 
-			}
+			closeSocket();
 			return;
 		}
 		netData.clear();
 		try {
 			SSLEngineResult res = engine.wrap(dummy, netData);
-			log.debug("Wrapping2:\n" + res);
+			if (log.isDebugEnabled()) {
+				log.debug("Wrapping2:\n" + res);
+			}
 		} catch (SSLException e1) {
 			log.error("Error during shutdown", e1);
-			try {
-				sc.close();
-			} catch (IOException e) { /* Ignore. */
-			}
+			closeSocket();
 			return;
 		}
 		netData.flip();
@@ -267,10 +339,43 @@ public final class SSLChannel extends Channel {
 		} else {
 			doShutdown();
 		}
+		closeSocket();
+	}
+
+	/**
+	 * Closes the socket and hands the engine buffers back to their pools.  
+	 * The channel is marked closed straight away, so the application can no 
+	 * longer read or write, but the buffers are only released on a later 
+	 * pass of the selector thread.  By then any read or write event selected 
+	 * alongside the close has been handled, and every later event sees 
+	 * <code>buffersReleased</code> and leaves the buffers alone.
+	 */
+	private void closeSocket() {
+		closed = true;
 		SocketUtils.closeQuietly(sc);
+		st.invokeLater(new Runnable() {
+			public void run() {
+				releaseBuffers();
+			}
+		});
+	}
+
+	private void releaseBuffers() {
+		if (buffersReleased) {
+			return;
+		}
+		buffersReleased = true;
+		packetBuffers.release(peerNetData);
+		applicationBuffers.release(peerAppData);
+		packetBuffers.release(netData);
 	}
 
 	private void finishInitialHandshake() throws IOException {
+		if (initialHandshake && handshakeStatistics != null) {
+			// A resumed handshake reuses a session created before this one began
+			boolean isResumed = engine.getSession().getCreationTime() < handshakeStartMillis;
+			handshakeStatistics.recordHandshake(isResumed, System.nanoTime() - handshakeStartNanos);
+		}
 		initialHandshake = false;
 		if (appReadInterestSet) {
 			selectorRegisterForRead();
@@ -281,7 +386,7 @@ public final class SSLChannel extends Channel {
 	}
 
 	private void doHandshake() throws IOException {
-		while (true) {
+		while (! tasksRunning) {
 			SSLEngineResult res;
 			switch (hsStatus) {
 			case FINISHED:
@@ -307,7 +412,9 @@ public final class SSLChannel extends Channel {
 				}
 				netData.clear();
 				res = engine.wrap(dummy, netData);
-				log.debug("Wrapping3:\n" + res);
+				if (log.isDebugEnabled()) {
+					log.debug("Wrapping3:\n" + res);
+				}
 				hsStatus = res.getHandshakeStatus();
 				netData.flip();
 
@@ -322,18 +429,25 @@ public final class SSLChannel extends Channel {
 		}
 	}
 
+	private void continueInitialHandshake() throws IOException {
+		doHandshake();
+		HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+		if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) {
+			if (shouldHandleReadAfterHandShake) {
+				shouldHandleReadAfterHandShake = false;
+				listener.handleRead();
+			}
+		}
+	}
+
 	public void handleRead() {
 		channelReadInterestSet = false;
+		if (buffersReleased) {
+			return;
+		}
 		try {
 			if (initialHandshake) {
-				doHandshake();
-				HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
-				if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) {
-					if (shouldHandleReadAfterHandShake) {
-						shouldHandleReadAfterHandShake = false;
-						listener.handleRead();
-					}
-				}
+				continueInitialHandshake();
 			} else if (shutdown) {
 				doShutdown();
 
@@ -348,8 +462,16 @@ public final class SSLChannel extends Channel {
 				}
 			}
 		} catch (IOException e) {
-			log.warn("Exception during secure conversation", e);
+			onSecureConversationException(e);
+		}
+	}
+
+	private void onSecureConversationException(IOException e) {
+		if (initialHandshake && ! handshakeFailed && handshakeStatistics != null) {
+			handshakeFailed = true;
+			handshakeStatistics.recordFailure();
 		}
+		log.warn("Exception during secure conversation", e);
 	}
 
 	private boolean flushData() throws IOException {
@@ -364,7 +486,9 @@ public final class SSLChannel extends Channel {
 			netData.position(netData.limit());
 			throw ioe;
 		}
-		log.debug("Written to socket: " + written);
+		if (log.isDebugEnabled()) {
+			log.debug("Written to socket: " + written);
+		}
 		if (netData.hasRemaining()) {
 			selectorRegisterForWrite();
 			return false;
@@ -375,6 +499,9 @@ public final class SSLChannel extends Channel {
 
 	public void handleWrite() {
 		channelWriteInterestSet = false;
+		if (buffersReleased) {
+			return;
+		}
 		try {
 			if (flushData()) {
 				if (initialHandshake) {
@@ -420,10 +547,49 @@ public final class SSLChannel extends Channel {
 	}
 
 	private void doTasks() {
+		if (handshakeExecutor == null) {
+			runTasks();
+			hsStatus = engine.getHandshakeStatus();
+			return;
+		}
+
+		tasksRunning = true;
+		handshakeExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					runTasks();
+				} finally {
+					st.invokeLater(new Runnable() {
+						public void run() {
+							resumeHandshake();
+						}
+					});
+				}
+			}
+		});
+	}
+
+	private void runTasks() {
 		Runnable task;
 		while ((task = engine.getDelegatedTask()) != null) {
 			task.run();
 		}
+	}
+
+	private void resumeHandshake() {
+		tasksRunning = false;
+		if (closed) {
+			return;
+		}
 		hsStatus = engine.getHandshakeStatus();
+		try {
+			if (initialHandshake) {
+				continueInitialHandshake();
+			} else {
+				doHandshake();
+			}
+		} catch (IOException e) {
+			onSecureConversationException(e);
+		}
 	}
 }
\ No newline at end of file
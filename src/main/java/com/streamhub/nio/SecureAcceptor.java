@@ -2,9 +2,12 @@ package com.streamhub.nio;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.Socket;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -12,10 +15,21 @@ import javax.net.ssl.SSLEngine;
 import com.streamhub.Connection;
 import com.streamhub.handler.Handler;
 
+/**
+ * Accepts HTTPS connections and spreads them over a pool of 
+ * {@link SelectorThread}s, one per dispatcher, each doing the TLS work for 
+ * its own share of the channels.  Delegated handshake tasks run on a 
+ * separate pool so a burst of key exchanges does not stall streaming to 
+ * connections that are already established.
+ */
 class SecureAcceptor extends Acceptor {
 
 	private final SSLContext context;
-	private SelectorThread selectorThread = new SelectorThread();
+	private final AtomicInteger index = new AtomicInteger();
+	protected SelectorThread[] selectorThreads;
+	private ExecutorService handshakePool;
+	private HandshakeStatistics handshakeStatistics;
+	private int handshakeThreads = Runtime.getRuntime().availableProcessors();
 	private final ExecutorService dispatchPool = Executors.newFixedThreadPool(5);
 
 	public SecureAcceptor(InetAddress inetAddress, int serverPort, Handler handler,
@@ -34,9 +48,23 @@ class SecureAcceptor extends Acceptor {
 		return super.createConnection(channel);
 	}
 
+	void setHandshakeThreads(int handshakeThreads) {
+		if (handshakeThreads < 1) {
+			throw new IllegalArgumentException("Handshake threads must be at least 1 but was " + handshakeThreads);
+		}
+		this.handshakeThreads = handshakeThreads;
+	}
+
 	@Override
 	public void run() {
 		Thread.currentThread().setName("SecureAcceptor");
+		handshakePool = Executors.newFixedThreadPool(handshakeThreads, new HandshakeThreadFactory());
+		handshakeStatistics = new HandshakeStatistics(context.getServerSessionContext());
+		handshakeStatistics.registerSelfAsMBean();
+		selectorThreads = new SelectorThread[dispatchers];
+		for (int i = 0; i < dispatchers; i++) {
+			selectorThreads[i] = new SelectorThread("SecureSelector-" + i);
+		}
 		bind();
 
 		isRunning = true;
@@ -48,15 +76,17 @@ class SecureAcceptor extends Acceptor {
 					public void run() {
 						final Connection con = createConnection(channel);
 						final ChannelEventHandler channelEventHandler = new ChannelEventHandler(con);
+						final SelectorThread selectorThread = nextSelectorThread();
 
 						selectorThread.invokeLater(new Runnable() {
 
 							public void run() {
 								SSLChannel sslChannel;
 								try {
-									SSLEngine engine = context.createSSLEngine();
+									Socket socket = channel.socket();
+									SSLEngine engine = context.createSSLEngine(socket.getInetAddress().getHostAddress(), socket.getPort());
 									engine.setUseClientMode(false);
-									sslChannel = new SSLChannel(selectorThread, channel, channelEventHandler, engine);
+									sslChannel = new SSLChannel(selectorThread, channel, channelEventHandler, engine, handshakePool, handshakeStatistics);
 									con.setSSLChannel(sslChannel);
 									sslChannel.registerForRead();
 									//sslChannel.registerForWrite();
@@ -77,11 +107,52 @@ class SecureAcceptor extends Acceptor {
 
 	@Override
 	public void stop() throws IOException {
-		selectorThread.requestClose();
+		if (selectorThreads != null) {
+			for (SelectorThread selectorThread : selectorThreads) {
+				selectorThread.requestClose();
+			}
+		}
+		if (handshakePool != null) {
+			handshakePool.shutdownNow();
+		}
+		if (handshakeStatistics != null) {
+			handshakeStatistics.unregisterSelfAsMBean();
+		}
 		dispatchPool.shutdownNow();
 		super.stop();
 	}
 
+	/**
+	 * Returns the selector thread with the fewest channels, starting the 
+	 * search from a different thread each time as {@link DispatcherPool} does.
+	 */
+	SelectorThread nextSelectorThread() {
+		int start = (index.getAndIncrement() & 0x7fffffff) % selectorThreads.length;
+		SelectorThread leastLoaded = selectorThreads[start];
+		int fewestChannels = leastLoaded.getRegisteredChannels();
+
+		for (int i = 1; i < selectorThreads.length && fewestChannels > 0; i++) {
+			SelectorThread selectorThread = selectorThreads[(start + i) % selectorThreads.length];
+			int channels = selectorThread.getRegisteredChannels();
+			if (channels < fewestChannels) {
+				leastLoaded = selectorThread;
+				fewestChannels = channels;
+			}
+		}
+
+		return leastLoaded;
+	}
+
+	private static class HandshakeThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Handshake-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	private class ChannelEventHandler implements ChannelListener {
 		private final Connection connection;
 		private boolean hasRead = false;
@@ -91,13 +162,14 @@ class SecureAcceptor extends Acceptor {
 		}
 
 		public void handleRead() {
-			if (!hasRead) {
+			if (!hasRead || connection.isKeptAlive()) {
 				hasRead = true;
 				connection.onReadableEvent(handler);
 			}
 		}
 
 		public void handleWrite() {
+			connection.onWriteableEvent();
 		}
 	}
 
@@ -3,10 +3,21 @@ package com.streamhub.nio;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.streamhub.util.ArrayUtils;
+import com.streamhub.Connection;
+import com.streamhub.WriteRegister;
 
+/**
+ * A connection whose writes are queued and wrapped on the selector thread 
+ * that owns its {@link SSLChannel}.  Writers only add to the queue and ask 
+ * for a flush, so a slow client never blocks or spins the writing thread; 
+ * anything the socket will not take is written when it becomes writable.
+ */
 class SecureNIOConnection extends NIOConnection {
+	private final AtomicBoolean isFlushPending = new AtomicBoolean();
+	private volatile boolean isCloseRequested;
 	private SSLChannel sslChannel;
 
 	public SecureNIOConnection(Channel channel) {
@@ -19,32 +30,49 @@ class SecureNIOConnection extends NIOConnection {
 
 	public void setSSLChannel(SSLChannel sslChannel) {
 		this.sslChannel = sslChannel;
+		setWriteRegister(new WriteRegister() {
+			public void registerForWrite(Connection connection) {
+				requestFlush();
+			}
+
+			public void deregisterForWrite(Connection connection) {
+			}
+
+			// Application reads are only requested once a request has been handled
+			public void suspendReads(Connection connection) {
+			}
+
+			public void resumeReads(Connection connection) {
+			}
+		});
 	}
 
+	/**
+	 * Closes the channel once everything already written has been flushed
+	 */
 	@Override
 	public void close() {
-		closeChannel();
+		isCloseRequested = true;
+		requestFlush();
 	}
 
+	/**
+	 * Wraps and writes as much of the queue as the socket will take, then 
+	 * either waits for the socket to become writable again or carries out 
+	 * a requested close.  Runs on the selector thread.
+	 */
 	@Override
-	public synchronized void write(String data) throws IOException {
-		if (data != null) {
-			ByteBuffer buffer = ByteBuffer.wrap(data.getBytes());
-			while(buffer.hasRemaining()) {
-				sslChannel.write(buffer);
-			}
-			if (selfClosing) {
+	public void onWriteableEvent() {
+		isFlushPending.set(false);
+		super.onWriteableEvent();
+
+		if (getQueuedBytes() > 0 && sslChannel.hasUnflushedData()) {
+			try {
+				sslChannel.registerForWrite();
+			} catch (IOException e) {
 				closeChannel();
 			}
-		}
-	}
-	
-	@Override
-	public synchronized void write(ByteBuffer buffer) throws IOException {
-		while(buffer.hasRemaining()) {
-			sslChannel.write(buffer);
-		}
-		if (selfClosing) {
+		} else if (isCloseRequested) {
 			closeChannel();
 		}
 	}
@@ -54,30 +82,73 @@ class SecureNIOConnection extends NIOConnection {
 		return true;
 	}
 	
-	protected byte[] readAsMuchAsPossible() throws IOException {
+	@Override
+	protected void readAsMuchAsPossible(ByteBuffer readBuffer) throws IOException {
 		int bytesRead = 0;
-		byte[] input = new byte[0];
 		
 		while ((bytesRead = sslChannel.read(readBuffer)) > 0) {
 			readBuffer.rewind();
-			byte[] bytes = new byte[bytesRead];
-			readBuffer.get(bytes, 0, bytesRead);
-			input = ArrayUtils.concat(input, bytes);
+			inputSoFar.append(readBuffer, bytesRead);
 			readBuffer.rewind();
+			if (inputSoFar.exceedsMaxHeadLength() || inputSoFar.exceedsMaxBodyLength()) {
+				close();
+				return;
+			}
 		}
 
 		if (bytesRead < 0) {
 			close();
 		}
+	}
+
+	@Override
+	protected GatheringByteChannel getWriteChannel() {
+		return sslChannel;
+	}
 
-		return input;
+	@Override
+	protected void writeAsMuchAsPossible() {
+		requestFlush();
 	}
 	
+	/**
+	 * Application reads are requested one at a time, so a connection kept 
+	 * alive asks for the read carrying its next request
+	 */
+	@Override
+	protected void awaitNextRequest() {
+		sslChannel.getSelectorThread().invokeLater(new Runnable() {
+			public void run() {
+				try {
+					sslChannel.registerForRead();
+				} catch (IOException e) {
+					closeChannel();
+				}
+			}
+		});
+	}
+
+	@Override
+	protected boolean isClosing() {
+		return isCloseRequested || ! sslChannel.isOpen();
+	}
+
 	@Override
 	protected void closeChannel() {
+		KeepAliveMonitor.getInstance().closed(this);
 		try {
 			sslChannel.close();
 		} catch (IOException e) {
 		}
 	}
+
+	private void requestFlush() {
+		if (isFlushPending.compareAndSet(false, true)) {
+			sslChannel.getSelectorThread().invokeLater(new Runnable() {
+				public void run() {
+					onWriteableEvent();
+				}
+			});
+		}
+	}
 }
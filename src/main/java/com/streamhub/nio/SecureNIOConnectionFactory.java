@@ -2,10 +2,9 @@ package com.streamhub.nio;
 
 import java.nio.channels.SocketChannel;
 
-import com.streamhub.Connection;
-
-class SecureNIOConnectionFactory implements ConnectionFactory  {
-	public Connection createConnection(SocketChannel channel) {
+class SecureNIOConnectionFactory extends NIOConnectionFactory {
+	@Override
+	NIOConnection newConnection(SocketChannel channel) {
 		return new SecureNIOConnection(channel);
 	}
 }
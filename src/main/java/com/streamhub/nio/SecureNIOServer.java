@@ -54,6 +54,8 @@ import com.streamhub.handler.RawHandler;
 public class SecureNIOServer extends NIOServer implements PushServer {
 	private static final Logger log = Logger.getLogger(SecureNIOServer.class);
 	private SecureNIOConnectionFactory connectionFactory;
+	private SecureAcceptor secureAcceptor;
+	private ContextHandler secureCometHandler;
 	private final SSLContext sslContext;
 	
 	/**
@@ -129,13 +131,99 @@ public class SecureNIOServer extends NIOServer implements PushServer {
 		init();
 	}
 
+	@Override
+	public void setWriteWatermarks(int lowWatermark, int highWatermark) {
+		super.setWriteWatermarks(lowWatermark, highWatermark);
+		connectionFactory.setWriteWatermarks(lowWatermark, highWatermark);
+	}
+
+	@Override
+	public void setKeepAlive(int maxRequests, int idleTimeoutMillis) {
+		super.setKeepAlive(maxRequests, idleTimeoutMillis);
+		connectionFactory.setKeepAlive(maxRequests, idleTimeoutMillis);
+	}
+
+	@Override
+	public void setMaxRequestLengths(int maxHeadLength, int maxBodyLength) {
+		super.setMaxRequestLengths(maxHeadLength, maxBodyLength);
+		connectionFactory.setMaxRequestLengths(maxHeadLength, maxBodyLength);
+	}
+
+	/**
+	 * Sets the number of selector threads doing TLS work, each handling 
+	 * its share of the connections.  New connections go to the thread with 
+	 * the fewest.  Defaults to the number of available processors.  Must be 
+	 * called before {@link #start()}.
+	 *
+	 * @param dispatchers	the number of selector threads
+	 */
+	@Override
+	public void setDispatchers(int dispatchers) {
+		super.setDispatchers(dispatchers);
+	}
+
+	/**
+	 * Sets the number of threads running the delegated tasks of TLS 
+	 * handshakes, such as key exchange, away from the selector threads.  
+	 * Defaults to the number of available processors.  Must be called 
+	 * before {@link #start()}.
+	 *
+	 * @param handshakeThreads	the number of handshake threads
+	 */
+	public void setHandshakeThreads(int handshakeThreads) {
+		secureAcceptor.setHandshakeThreads(handshakeThreads);
+	}
+
+	/**
+	 * Sets the maximum number of TLS sessions cached for resumption.  A 
+	 * client reconnecting with a cached session skips the full handshake.  
+	 * 0 removes the limit.  Defaults to the limit of the {@link SSLContext}.
+	 *
+	 * @param sessionCacheSize	the maximum number of cached sessions
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		if (sessionCacheSize < 0) {
+			throw new IllegalArgumentException("Session cache size cannot be negative but was " + sessionCacheSize);
+		}
+		sslContext.getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+	}
+
+	/**
+	 * Sets how long a cached TLS session can be resumed for.  0 means 
+	 * sessions never expire.  Defaults to the timeout of the 
+	 * {@link SSLContext}.  Handshake counts and timings, along with the 
+	 * cache settings, are available over JMX as 
+	 * <code>com.streamhub.nio:type=HandshakeStatistics</code>.
+	 *
+	 * @param sessionTimeoutSeconds	the session lifetime in seconds
+	 */
+	public void setSessionTimeout(int sessionTimeoutSeconds) {
+		if (sessionTimeoutSeconds < 0) {
+			throw new IllegalArgumentException("Session timeout cannot be negative but was " + sessionTimeoutSeconds);
+		}
+		sslContext.getServerSessionContext().setSessionTimeout(sessionTimeoutSeconds);
+	}
+
+	@Override
+	void applyWorkerStage(WorkerStage workerStage) {
+		super.applyWorkerStage(workerStage);
+		connectionFactory.setWorkerStage(workerStage);
+	}
+
+	@Override
+	void applyWebSocketCompression(boolean isCompressing) {
+		super.applyWebSocketCompression(isCompressing);
+		secureCometHandler.setWebSocketCompression(isCompressing);
+	}
+
 	private void init() {
 		try {
 			connectionFactory = new SecureNIOConnectionFactory();
-			Handler cometHandler = new ContextHandler(subscriptionManager);
+			secureCometHandler = new ContextHandler(subscriptionManager);
 			Handler directHandler = new DirectHandler(subscriptionManager);
-			Handler handler = new RawHandler(cometHandler, directHandler);
-			clientAcceptor = new SecureAcceptor(address.getAddress(), port, handler, connectionFactory, sslContext);
+			Handler handler = new RawHandler(secureCometHandler, directHandler);
+			secureAcceptor = new SecureAcceptor(address.getAddress(), port, handler, connectionFactory, sslContext);
+			clientAcceptor = secureAcceptor;
 		} catch (Exception e) {
 			log.error("Error starting SecureAcceptor", e);
 		}
@@ -25,15 +25,26 @@ final class SelectorThread implements Runnable {
 	private final SSLChannelManager sscManager = new SSLChannelManager();
 
 	public SelectorThread() {
+		this("SelectorThread");
+	}
+
+	public SelectorThread(String name) {
 		try {
 			selector = Selector.open();
 		} catch (IOException e) {
 			log.error("Error opening selector", e);
 		}
-		selectorThread = new Thread(this);
+		selectorThread = new Thread(this, name);
 		selectorThread.start();
 	}
 
+	/**
+	 * The number of channels currently registered with this thread's selector
+	 */
+	public int getRegisteredChannels() {
+		return selector.keys().size();
+	}
+
 	public void requestClose() {
 		closeRequested = true;
 		selector.wakeup();
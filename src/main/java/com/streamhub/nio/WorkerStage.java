@@ -0,0 +1,258 @@
+package com.streamhub.nio;
+
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.streamhub.util.VirtualThreads;
+
+/**
+ * Runs request handlers on worker threads so dispatchers only read and 
+ * frame requests.  Workers are either a fixed pool of platform threads or 
+ * a virtual thread per request.  Either way the number of requests 
+ * admitted to the stage is bounded: when it is full a request is refused 
+ * and its connection stops reading, and connections are resumed one at a 
+ * time as requests complete.  The dispatcher never runs a handler itself, 
+ * so a full stage cannot stall the other connections on its selector.
+ */
+class WorkerStage implements WorkerStageMBean {
+	private static final Logger log = Logger.getLogger(WorkerStage.class);
+	private static final String OBJECT_NAME = "com.streamhub.nio:type=WorkerStage,name=";
+	private final String name;
+	private final ExecutorService workers;
+	private final int workerThreads;
+	private final int maxTasks;
+	private final boolean isVirtualThreads;
+	private final Semaphore admissions;
+	private final Queue<Runnable> parked = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger runningTasks = new AtomicInteger();
+	private final AtomicLong completedTasks = new AtomicLong();
+	private final AtomicLong refusals = new AtomicLong();
+	private final AtomicLong queueWaitNanos = new AtomicLong();
+	private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+	private final AtomicLong handlerNanos = new AtomicLong();
+	private ObjectName objectName;
+
+	/**
+	 * @param name	distinguishes this stage's MBean from those of other 
+	 * 				servers in the same JVM
+	 */
+	public WorkerStage(String name, int workerThreads, int queueCapacity) {
+		this(name, Executors.newFixedThreadPool(checkAtLeastOne("Worker threads", workerThreads), new WorkerThreadFactory()), 
+				workerThreads, workerThreads + checkAtLeastOne("Queue capacity", queueCapacity), false);
+	}
+
+	private WorkerStage(String name, ExecutorService workers, int workerThreads, int maxTasks, boolean isVirtualThreads) {
+		this.name = name;
+		this.workers = workers;
+		this.workerThreads = workerThreads;
+		this.maxTasks = maxTasks;
+		this.isVirtualThreads = isVirtualThreads;
+		this.admissions = new Semaphore(maxTasks);
+		registerSelfAsMBean();
+	}
+
+	/**
+	 * A stage which starts a virtual thread for each request, with at most 
+	 * <code>maxTasks</code> requests in progress at once
+	 */
+	static WorkerStage withVirtualThreads(String name, int maxTasks) {
+		return new WorkerStage(name, VirtualThreads.newThreadPerTaskExecutor("Worker-"), 0, checkAtLeastOne("Max tasks", maxTasks), true);
+	}
+
+	/**
+	 * Runs the task on a worker if the stage has room for it
+	 * 
+	 * @return	<code>true</code> if the task was admitted, otherwise the 
+	 * 			caller should stop reading and {@link #park(Runnable)}
+	 */
+	public boolean execute(final Runnable task) {
+		final long enqueuedAt = System.nanoTime();
+		Runnable timedTask = new Runnable() {
+			public void run() {
+				long startedAt = System.nanoTime();
+				recordQueueWait(startedAt - enqueuedAt);
+				runningTasks.incrementAndGet();
+				try {
+					task.run();
+				} finally {
+					runningTasks.decrementAndGet();
+					handlerNanos.addAndGet(System.nanoTime() - startedAt);
+					completedTasks.incrementAndGet();
+				}
+			}
+		};
+
+		if (! admissions.tryAcquire()) {
+			refusals.incrementAndGet();
+			return false;
+		}
+
+		try {
+			workers.execute(new Admitted(timedTask));
+			return true;
+		} catch (RejectedExecutionException e) {
+			// The stage is stopping
+			admissions.release();
+			refusals.incrementAndGet();
+			return false;
+		}
+	}
+
+	public void stop() {
+		workers.shutdownNow();
+		unregisterSelfAsMBean();
+	}
+
+	public boolean isVirtualThreads() {
+		return isVirtualThreads;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public int getActiveWorkers() {
+		return runningTasks.get();
+	}
+
+	public int getQueueCapacity() {
+		return maxTasks - workerThreads;
+	}
+
+	public int getQueueDepth() {
+		return Math.max(0, maxTasks - admissions.availablePermits() - runningTasks.get());
+	}
+
+	public long getCompletedTasks() {
+		return completedTasks.get();
+	}
+
+	public long getRefusals() {
+		return refusals.get();
+	}
+
+	public int getParkedConnections() {
+		return parked.size();
+	}
+
+	public double getAverageQueueWaitMicros() {
+		long tasks = completedTasks.get();
+		return tasks == 0 ? 0 : queueWaitNanos.get() / 1000.0 / tasks;
+	}
+
+	public long getMaxQueueWaitMicros() {
+		return maxQueueWaitNanos.get() / 1000;
+	}
+
+	public double getAverageHandlerMicros() {
+		long tasks = completedTasks.get();
+		return tasks == 0 ? 0 : handlerNanos.get() / 1000.0 / tasks;
+	}
+
+	public void resetStatistics() {
+		completedTasks.set(0);
+		refusals.set(0);
+		queueWaitNanos.set(0);
+		maxQueueWaitNanos.set(0);
+		handlerNanos.set(0);
+	}
+
+	/**
+	 * Runs <code>onRoom</code> once the stage may have room again, on the 
+	 * thread of the next request to finish.  Parked connections are resumed 
+	 * one per finished request, in the order they were refused.  A request 
+	 * that finished between the refusal and this call would not have seen 
+	 * the connection, so it is resumed straight away if a permit is free.
+	 */
+	public void park(Runnable onRoom) {
+		parked.offer(onRoom);
+		if (admissions.availablePermits() > 0) {
+			resumeParked();
+		}
+	}
+
+	private void resumeParked() {
+		Runnable onRoom = parked.poll();
+		if (onRoom != null) {
+			onRoom.run();
+		}
+	}
+
+	private void recordQueueWait(long waitNanos) {
+		queueWaitNanos.addAndGet(waitNanos);
+		long max;
+		while (waitNanos > (max = maxQueueWaitNanos.get())) {
+			if (maxQueueWaitNanos.compareAndSet(max, waitNanos)) {
+				return;
+			}
+		}
+	}
+
+	private static int checkAtLeastOne(String name, int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException(name + " must be at least 1 but was " + value);
+		}
+		return value;
+	}
+
+	private void registerSelfAsMBean() {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName(OBJECT_NAME + name);
+			mbs.registerMBean(this, objectName);
+		} catch (Exception e) {
+			objectName = null;
+			log.warn("Could not register MBean", e);
+		}
+	}
+
+	private void unregisterSelfAsMBean() {
+		try {
+			if (objectName != null) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			log.debug("Could not unregister MBean", e);
+		}
+	}
+
+	private class Admitted implements Runnable {
+		private final Runnable task;
+
+		Admitted(Runnable task) {
+			this.task = task;
+		}
+
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				admissions.release();
+				resumeParked();
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger workerCount = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Worker-" + workerCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.streamhub.nio;
+
+public interface WorkerStageMBean {
+	boolean isVirtualThreads();
+	int getWorkerThreads();
+	int getActiveWorkers();
+	int getQueueCapacity();
+	int getQueueDepth();
+	long getCompletedTasks();
+	long getRefusals();
+	int getParkedConnections();
+	double getAverageQueueWaitMicros();
+	long getMaxQueueWaitMicros();
+	double getAverageHandlerMicros();
+	void resetStatistics();
+}
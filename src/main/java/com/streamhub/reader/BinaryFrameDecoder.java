@@ -0,0 +1,152 @@
+package com.streamhub.reader;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.streamhub.util.BinaryFrames;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * Decodes the frames of the binary protocol described by
+ * {@link BinaryFrames} as they are read.  Only the bytes of a frame which
+ * has not fully arrived are kept between reads.  Topic frames are
+ * remembered rather than handed on, so the listener only ever sees topic
+ * names.
+ * <p>
+ * A malformed frame, a frame longer than the maximum or an undefined topic
+ * id closes the decoder and any further input is ignored.
+ */
+public class BinaryFrameDecoder {
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+	private static final int MAX_VARINT_LENGTH = 5;
+	private static final int INCOMPLETE = -1;
+	private static final int MALFORMED = -2;
+	private static final byte[] EMPTY = new byte[0];
+	private final Map<Integer, String> topics = new HashMap<Integer, String>();
+	private final int maxFrameLength;
+	private byte[] input = EMPTY;
+	private int inputLength;
+	private int varintEnd;
+	private boolean isClosed;
+
+	public BinaryFrameDecoder() {
+		this(DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public BinaryFrameDecoder(int maxFrameLength) {
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * Decodes every frame completed by the remaining bytes of
+	 * <code>source</code>, which are all consumed
+	 */
+	public void decode(ByteBuffer source, BinaryFrameListener listener) {
+		if (isClosed) {
+			source.position(source.limit());
+			return;
+		}
+
+		append(source);
+		int offset = 0;
+		int frameLength;
+		while (! isClosed && (frameLength = decodeFrame(offset, listener)) > 0) {
+			offset += frameLength;
+		}
+
+		if (isClosed) {
+			input = EMPTY;
+			inputLength = 0;
+		} else if (offset > 0) {
+			System.arraycopy(input, offset, input, 0, inputLength - offset);
+			inputLength -= offset;
+		}
+	}
+
+	/**
+	 * The number of bytes read but not yet decoded
+	 */
+	public int getPendingBytes() {
+		return inputLength;
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	private void append(ByteBuffer source) {
+		int count = source.remaining();
+		if (inputLength + count > input.length) {
+			byte[] grown = new byte[Math.max(inputLength + count, input.length * 2)];
+			System.arraycopy(input, 0, grown, 0, inputLength);
+			input = grown;
+		}
+		source.get(input, inputLength, count);
+		inputLength += count;
+	}
+
+	/**
+	 * Returns the length of the frame at <code>offset</code> once it has
+	 * been handled, or 0 if it has not all arrived
+	 */
+	private int decodeFrame(int offset, BinaryFrameListener listener) {
+		int length = readVarint(offset, inputLength);
+		if (length == INCOMPLETE) {
+			return 0;
+		}
+		if (length == MALFORMED || length < 2 || length > maxFrameLength) {
+			isClosed = true;
+			return 0;
+		}
+
+		int frameStart = varintEnd;
+		int frameEnd = frameStart + length;
+		if (frameEnd > inputLength) {
+			return 0;
+		}
+
+		int opcode = input[frameStart] & 0xff;
+		int topicId = readVarint(frameStart + 1, frameEnd);
+		if (topicId < 0) {
+			isClosed = true;
+			return 0;
+		}
+
+		String body = WebSocketUtils.fromUtf8(input, varintEnd, frameEnd - varintEnd);
+		if (opcode == BinaryFrames.OPCODE_TOPIC) {
+			topics.put(topicId, body);
+		} else if (topicId == BinaryFrames.NO_TOPIC) {
+			listener.onFrame(opcode, null, body);
+		} else {
+			String topic = topics.get(topicId);
+			if (topic == null) {
+				isClosed = true;
+				return 0;
+			}
+			listener.onFrame(opcode, topic, body);
+		}
+
+		return frameEnd - offset;
+	}
+
+	/**
+	 * Reads the varint at <code>offset</code>, leaving the offset after it
+	 * in <code>varintEnd</code>
+	 */
+	private int readVarint(int offset, int limit) {
+		int value = 0;
+		for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+			if (offset + i >= limit) {
+				return limit == inputLength ? INCOMPLETE : MALFORMED;
+			}
+			int b = input[offset + i] & 0xff;
+			value |= (b & 0x7f) << (7 * i);
+			if ((b & 0x80) == 0) {
+				varintEnd = offset + i + 1;
+				return value < 0 ? MALFORMED : value;
+			}
+		}
+		return MALFORMED;
+	}
+}
@@ -0,0 +1,14 @@
+package com.streamhub.reader;
+
+/**
+ * Receives the frames of the binary protocol described by
+ * {@link com.streamhub.util.BinaryFrames}, with topic ids already resolved
+ * to names
+ */
+public interface BinaryFrameListener {
+	/**
+	 * @param topic	the topic the frame refers to, or <code>null</code> if none
+	 * @param body	the UTF-8 decoded body, empty if there was none
+	 */
+	void onFrame(int opcode, String topic, String body);
+}
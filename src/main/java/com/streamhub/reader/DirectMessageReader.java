@@ -1,39 +1,74 @@
 package com.streamhub.reader;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import com.streamhub.DirectHandler;
+import com.streamhub.util.ArrayUtils;
 
+/**
+ * Reads the <code>@@message@@</code> text protocol of Direct clients and 
+ * streaming adapters.  Messages are found by scanning for the separator 
+ * from where the previous message ended, so no input is searched twice.
+ */
 public class DirectMessageReader {
-	private static final int GROUP = 1;
-	private static final String MESSAGE_REGEX = DirectHandler.DIRECT_MESSAGE_SEPARATOR + "(.+?)" + DirectHandler.DIRECT_MESSAGE_SEPARATOR;
-	private static final Pattern MESSAGE_PATTERN = Pattern.compile(MESSAGE_REGEX);
+	private static final String SEP = DirectHandler.DIRECT_MESSAGE_SEPARATOR;
+	private static final byte[] BINARY_NEGOTIATION_BYTES = DirectHandler.BINARY_NEGOTIATION.getBytes();
 	
+	/**
+	 * Hands on the messages in <code>inputSoFar</code> after the first 
+	 * <code>offset</code>, returning how many were handed on
+	 */
 	public static int readDirectMessages(MessageListener listener, String inputSoFar, int offset) {
 		int messagesRead = 0;
-		List<String> messages = new ArrayList<String>();
-		Matcher matcher = MESSAGE_PATTERN.matcher(inputSoFar);
-		
-		while(matcher.find()) {
-			messages.add(matcher.group(GROUP));
-		}
+		int messageIndex = 0;
+		int index = 0;
+		int start;
+		int end;
 		
-		for (int i = offset; i < messages.size(); i++) {
-			messagesRead++;
-			listener.onMessage(messages.get(i));
+		while ((start = inputSoFar.indexOf(SEP, index)) >= 0 && (end = inputSoFar.indexOf(SEP, start + SEP.length() + 1)) >= 0) {
+			if (messageIndex++ >= offset) {
+				messagesRead++;
+				listener.onMessage(inputSoFar.substring(start + SEP.length(), end));
+			}
+			index = end + SEP.length();
 		}
 		
 		return messagesRead;
 	}
 	
 	public static void readDirectMessages(MessageListener listener, String inputSoFar) {
-		Matcher matcher = MESSAGE_PATTERN.matcher(inputSoFar);
+		readDirectMessagesFrom(listener, inputSoFar, 0);
+	}
+
+	/**
+	 * Hands on the messages which start at or after <code>fromIndex</code>, 
+	 * returning the index just past the last of them
+	 */
+	public static int readDirectMessagesFrom(MessageListener listener, String inputSoFar, int fromIndex) {
+		int index = fromIndex;
+		int start;
+		int end;
 		
-		while(matcher.find()) {
-			listener.onMessage(matcher.group(GROUP));
+		while ((start = inputSoFar.indexOf(SEP, index)) >= 0 && (end = inputSoFar.indexOf(SEP, start + SEP.length() + 1)) >= 0) {
+			listener.onMessage(inputSoFar.substring(start + SEP.length(), end));
+			index = end + SEP.length();
 		}
+		
+		return index;
+	}
+
+	/**
+	 * Hands on the text messages sent before a 
+	 * {@link DirectHandler#BINARY_NEGOTIATION} and returns the offset just 
+	 * past it, where binary frames begin.  Returns -1 if <code>input</code> 
+	 * holds no negotiation, in which case it has all been read as text.
+	 */
+	public static int readUntilBinaryNegotiation(MessageListener listener, byte[] input) {
+		int negotiation = ArrayUtils.indexOf(BINARY_NEGOTIATION_BYTES, input);
+		if (negotiation < 0) {
+			readDirectMessages(listener, new String(input));
+			return -1;
+		}
+		
+		readDirectMessages(listener, new String(input, 0, negotiation));
+		return negotiation + BINARY_NEGOTIATION_BYTES.length;
 	}
-}
\ No newline at end of file
+}
@@ -5,7 +5,7 @@ import java.io.InputStream;
 
 public class DirectStreamReader extends StreamReader {
 	private MessageListener listener;
-	private int messagesRead;
+	private int readUpTo;
 
 	public DirectStreamReader(InputStream inputStream) {
 		super(inputStream);
@@ -15,10 +15,15 @@ public class DirectStreamReader extends StreamReader {
 		this.listener = listener;
 	}
 
+	/**
+	 * Only the input after the last message read is scanned
+	 */
 	@Override
 	protected void receivedData() {
-		String inputSoFar = getInputSoFar();
-		int offset = messagesRead;
-		messagesRead += DirectMessageReader.readDirectMessages(listener, inputSoFar, offset);
+		String unread;
+		synchronized (stringBuffer) {
+			unread = stringBuffer.substring(readUpTo);
+		}
+		readUpTo += DirectMessageReader.readDirectMessagesFrom(listener, unread, 0);
 	}
 }
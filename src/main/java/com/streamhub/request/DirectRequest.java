@@ -2,6 +2,7 @@ package com.streamhub.request;
 
 import com.streamhub.Connection;
 import com.streamhub.api.Payload;
+import com.streamhub.util.BinaryFrames;
 import com.streamhub.util.Browser;
 
 public class DirectRequest implements Request {
@@ -44,6 +45,41 @@ public class DirectRequest implements Request {
 		return directRequest;
 	}
 
+	/**
+	 * Creates a request from a frame of the binary protocol sent by a client 
+	 * which connected as <code>uid</code>, or has not connected yet if 
+	 * <code>uid</code> is <code>null</code>
+	 */
+	public static Request createFrom(int opcode, String topic, String body, String uid) {
+		DirectRequest directRequest = new DirectRequest();
+		directRequest.uid = uid;
+
+		switch (opcode) {
+		case BinaryFrames.OPCODE_CONNECT:
+			directRequest.uid = body;
+			directRequest.isResponseConnection = true;
+			break;
+		case BinaryFrames.OPCODE_DISCONNECT:
+			directRequest.isDisconnection = true;
+			break;
+		case BinaryFrames.OPCODE_SUBSCRIBE:
+			directRequest.isSubscription = topic != null;
+			directRequest.subscriptionTopics = new String[] { topic };
+			break;
+		case BinaryFrames.OPCODE_UNSUBSCRIBE:
+			directRequest.isUnSubscribe = topic != null;
+			directRequest.subscriptionTopics = new String[] { topic };
+			break;
+		case BinaryFrames.OPCODE_PUBLISH:
+			directRequest.isPublish = topic != null;
+			directRequest.publishTopic = topic;
+			directRequest.publishPayload = UrlEncodedJsonPayload.createFromJson(body);
+			break;
+		}
+
+		return directRequest;
+	}
+
 	public static Request createFrom(String message, String uid) {
 		Request directRequest = createFrom(message);
 		((DirectRequest) directRequest).uid = uid;
@@ -89,6 +125,10 @@ public class DirectRequest implements Request {
 		return false;
 	}
 
+	public boolean isPersistentConnection() {
+		return false;
+	}
+
 	public boolean isRequestIFrameConnection() {
 		return false;
 	}
@@ -1,7 +1,6 @@
 package com.streamhub.request;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 import com.streamhub.Connection;
@@ -14,6 +13,8 @@ public class HttpRequest implements Request {
 	private static final String WEB_SOCKET = "WebSocket";
 	private static final String CONNECTION = "Connection";
 	private static final String CLOSE = "close";
+	private static final String KEEP_ALIVE = "keep-alive";
+	private static final String HTTP_1_1 = "HTTP/1.1";
 	private static final String IFRAME_HTML = "/iframe.html";
 	private static final String USER_AGENT = "User-Agent";
 	private static final String RESPONSE = "/response/";
@@ -48,6 +49,7 @@ public class HttpRequest implements Request {
 	private final String processedUrl;
 	private Connection connection;
 	private boolean isWebSocket;
+	private boolean allowsPersistentConnection;
 
 	private HttpRequest(String uid, String domain, String[] subscriptionTopics, String publishTopic, Payload publishPayload, RequestType type, String url, Browser browser, boolean isSubscription,
 			boolean isDisconnection, boolean isRequestIFrameConnection, boolean isResponseConnection, boolean isPublish, boolean isUnSubscribe, boolean isPoll, boolean isCloseResponse, String processedUrl, String context, boolean isWebSocket) {
@@ -73,15 +75,43 @@ public class HttpRequest implements Request {
 	}
 
 	public static Request createFrom(Connection connection) throws IOException {
-		String httpRequest = new String(connection.readBytes());
-		HttpRequest httpRequestObject = createFrom(httpRequest);
+		return createFrom(connection, HttpRequestHead.parse(connection.readBytes()));
+	}
+
+	/**
+	 * Uses a head already parsed from the connection's input rather than 
+	 * parsing it again
+	 */
+	public static Request createFrom(Connection connection, HttpRequestHead head) {
+		HttpRequest httpRequestObject = createFrom(head);
 		httpRequestObject.connection = connection;
 		return httpRequestObject;
 	}
 
 	public static HttpRequest createFrom(String httpRequest) {
-		char[] requestAsCharArray = httpRequest.toCharArray();
-		String requestUrl = UrlUtils.getRequestUrl(httpRequest, requestAsCharArray);
+		return createFrom(HttpRequestHead.parse(httpRequest.getBytes()));
+	}
+
+	public static HttpRequest createFrom(HttpRequestHead head) {
+		HttpRequest request = createFromHead(head);
+		request.allowsPersistentConnection = allowsPersistentConnection(head);
+		return request;
+	}
+
+	/**
+	 * HTTP/1.1 connections are persistent unless the client asks for them to 
+	 * be closed, and HTTP/1.0 clients must ask for keep-alive
+	 */
+	private static boolean allowsPersistentConnection(HttpRequestHead head) {
+		String connectionHeader = head.getHeader(CONNECTION);
+		if (connectionHeader != null && connectionHeader.toLowerCase().contains(CLOSE)) {
+			return false;
+		}
+		return HTTP_1_1.equals(head.getVersion()) || (connectionHeader != null && connectionHeader.toLowerCase().contains(KEEP_ALIVE));
+	}
+
+	private static HttpRequest createFromHead(HttpRequestHead head) {
+		String requestUrl = head.getUrl();
 		String context = UrlUtils.getContext(requestUrl);
 		String processedUrl = UrlUtils.stripContext(context, requestUrl);
 
@@ -89,16 +119,15 @@ public class HttpRequest implements Request {
 			return new HttpRequest(null, null, null, null, null, null, requestUrl, null, false, false, false, false, false, false, false, false, processedUrl, context, false);
 		}
 
-		Map<String, String> httpHeaders = UrlUtils.getHttpHeaders(httpRequest, requestAsCharArray);
-		Map<String, String> queryParams = UrlUtils.getQueryParams(requestUrl);
+		Map<String, String> queryParams = head.getQueryParams();
 		String uid = queryParams.get(UID);
 		String domain = queryParams.get(DOMAIN);
-		Browser browser = Browser.fromUserAgent(httpHeaders.get(USER_AGENT));
+		Browser browser = Browser.fromUserAgent(head.getHeader(USER_AGENT));
 
-		boolean isWebSocket = WEB_SOCKET.equals(httpHeaders.get(UPGRADE));
+		boolean isWebSocket = WEB_SOCKET.equalsIgnoreCase(head.getHeader(UPGRADE));
 		boolean isRequestIFrameConnection = processedUrl.startsWith(REQUEST);
 		boolean isResponseIFrameConnection = processedUrl.startsWith(RESPONSE);
-		boolean isConnectionClose = CLOSE.equals(httpHeaders.get(CONNECTION));
+		boolean isConnectionClose = CLOSE.equals(head.getHeader(CONNECTION));
 		RequestType requestType = RequestType.fromHttpRequest(isRequestIFrameConnection, isResponseIFrameConnection, isConnectionClose);
 
 		if (isRequestIFrameConnection || isResponseIFrameConnection) {
@@ -128,140 +157,6 @@ public class HttpRequest implements Request {
 		return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false, false, false, processedUrl, context, isWebSocket);
 	}
 
-	enum RequestPoint {
-		READING_HEADER_VAL, READING_URL, AWAITING_URL, READING_HEADER_PARAM, READING_QUERY_PARAM_KEY, READING_QUERY_PARAM_VAL, READING_HTTP_PART
-	}
-
-	public static HttpRequest newCreateFrom(String httpRequest) {
-		char[] buf = httpRequest.toCharArray();
-		char[] tmpBuff = new char[buf.length];
-		int tmpPos = 0;
-		int pos = 0;
-		String headerKey = "";
-		String headerVal = "";
-		String queryKey = "";
-		String queryVal = "";
-		String requestUrl = "";
-		Map<String,String> headers = new HashMap<String,String>();
-		Map<String,String> queryParams = new HashMap<String,String>();
-
-		RequestPoint currPoint = RequestPoint.AWAITING_URL;
-
-		while (pos < buf.length) {
-			if (buf[pos] == '\r' || buf[pos] == '\n') {
-				if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					headerVal = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					headers.put(headerKey, headerVal);
-					currPoint = RequestPoint.READING_HEADER_PARAM;
-				} else if (currPoint == RequestPoint.READING_QUERY_PARAM_VAL) {
-					queryVal = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					queryParams.put(queryKey, queryVal);
-					currPoint = RequestPoint.READING_HEADER_PARAM;
-				} else if (currPoint == RequestPoint.READING_URL) {
-					requestUrl = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_HEADER_PARAM;
-				} else if (currPoint == RequestPoint.READING_HTTP_PART) {
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_HEADER_PARAM;
-				}
-			} else if (buf[pos] == ' ') {
-				if (currPoint == RequestPoint.AWAITING_URL) {
-					currPoint = RequestPoint.READING_URL;
-				} else if (currPoint == RequestPoint.READING_QUERY_PARAM_VAL) {
-					queryVal = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					queryParams.put(queryKey, queryVal);
-					currPoint = RequestPoint.READING_HTTP_PART;
-				} else if (currPoint == RequestPoint.READING_URL) {
-					requestUrl = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_HTTP_PART;
-				} else if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			} else if (buf[pos] == ':') {
-				if (currPoint == RequestPoint.READING_HEADER_PARAM) {
-					headerKey = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_HEADER_VAL;
-				} else if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			} else if (buf[pos] == '?') {
-				if (currPoint == RequestPoint.READING_URL) {
-					requestUrl = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_QUERY_PARAM_KEY;
-				} else if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			} else if (buf[pos] == '=') {
-				if (currPoint == RequestPoint.READING_QUERY_PARAM_KEY) {
-					queryKey = new String(tmpBuff, 0, tmpPos);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_QUERY_PARAM_VAL;
-				} else if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			} else if (buf[pos] == '&') {
-				if (currPoint == RequestPoint.READING_QUERY_PARAM_VAL) {
-					queryVal = new String(tmpBuff, 0, tmpPos);
-					queryParams.put(queryKey, queryVal);
-					tmpPos = 0;
-					currPoint = RequestPoint.READING_QUERY_PARAM_KEY;
-				} else if (currPoint == RequestPoint.READING_HEADER_VAL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			} else {
-				if (currPoint != RequestPoint.AWAITING_URL) {
-					tmpBuff[tmpPos++] = buf[pos];
-				}
-			}
-
-			pos++;
-		}
-
-		String uid = queryParams.get(UID);
-		String domain = queryParams.get(DOMAIN);
-		Browser browser = Browser.fromUserAgent(headers.get(USER_AGENT));
-		boolean isRequestIFrameConnection = requestUrl.equals(REQUEST);
-		boolean isResponseIFrameConnection = requestUrl.equals(RESPONSE);
-		boolean isConnectionClose = CLOSE.equals(headers.get(CONNECTION));
-		RequestType requestType = RequestType.fromHttpRequest(isRequestIFrameConnection, isResponseIFrameConnection, isConnectionClose);
-		String context = UrlUtils.getContext(requestUrl);
-		String processedUrl = UrlUtils.stripContext(context, requestUrl);
-		
-		if (isRequestIFrameConnection || isResponseIFrameConnection) {
-			return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false, false, false, processedUrl, context, false);
-		} else if (requestUrl.equals(PUBLISH)) {
-			String publishTopic = queryParams.get(TOPIC);
-			String payload = queryParams.get(PAYLOAD);
-			Payload publishPayload = UrlEncodedJsonPayload.createFrom(payload);
-			return new HttpRequest(uid, domain, null, publishTopic, publishPayload, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, true, false,
-					false, false, processedUrl, context, false);
-		} else if (requestUrl.equals(SUBSCRIBE_REQUEST)) {
-			String[] subscriptionTopics = UrlUtils.queryValueToArray(queryParams.get(TOPIC));
-			return new HttpRequest(uid, domain, subscriptionTopics, null, null, requestType, requestUrl, browser, true, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false,
-					false, false, processedUrl, context, false);
-		} else if (requestUrl.equals(UN_SUBSCRIBE_REQUEST)) {
-			String[] subscriptionTopics = UrlUtils.queryValueToArray(queryParams.get(TOPIC));
-			return new HttpRequest(uid, domain, subscriptionTopics, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, true,
-					false, false, processedUrl, context, false);
-		} else if (requestUrl.equals(DISCONNECT)) {
-			return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, true, isRequestIFrameConnection, isResponseIFrameConnection, false, false, false, false, processedUrl, context, false);
-		} else if (requestUrl.equals(POLL)) {
-			return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false, true, false, processedUrl, context, false);
-		} else if (requestUrl.equals(CLOSE_RESPONSE)) {
-			return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false, false, true, processedUrl, context, false);
-		}
-
-		return new HttpRequest(uid, domain, null, null, null, requestType, requestUrl, browser, false, false, isRequestIFrameConnection, isResponseIFrameConnection, false, false, false, false, processedUrl, context, false);
-	
-	}
-
 	public String getUid() {
 		return uid;
 	}
@@ -298,6 +193,15 @@ public class HttpRequest implements Request {
 		return type == RequestType.KEEP_ALIVE;
 	}
 
+	/**
+	 * Whether this is a short control request whose connection the client 
+	 * will reuse for its next request.  Forever frame responses and pages 
+	 * are always sent on connections of their own.
+	 */
+	public boolean isPersistentConnection() {
+		return allowsPersistentConnection && (isSubscription || isUnSubscribe || isPublish || isPoll || isDisconnection || isCloseResponse);
+	}
+
 	public Browser getBrowser() {
 		return browser;
 	}
@@ -0,0 +1,199 @@
+package com.streamhub.request;
+
+import java.util.Map;
+
+import com.streamhub.util.UrlUtils;
+
+/**
+ * A view over the request line and headers of a raw HTTP request.  Parsing
+ * only records where each part starts and ends; the URL, query parameters
+ * and individual header values are decoded into Strings the first time they
+ * are asked for.
+ */
+public class HttpRequestHead {
+	private static final byte SPACE = ' ';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final byte COLON = ':';
+	private static final int INITIAL_HEADERS = 16;
+	private final byte[] bytes;
+	private final int length;
+	private int[] headerOffsets = new int[INITIAL_HEADERS * 4];
+	private int headerCount;
+	private int methodEnd;
+	private int urlStart;
+	private int urlEnd;
+	private int headEnd;
+	private String method;
+	private String url;
+	private String version;
+	private Map<String, String> queryParams;
+
+	private HttpRequestHead(byte[] bytes, int length) {
+		this.bytes = bytes;
+		this.length = length;
+	}
+
+	public static HttpRequestHead parse(byte[] bytes) {
+		return parse(bytes, bytes.length);
+	}
+
+	public static HttpRequestHead parse(byte[] bytes, int length) {
+		HttpRequestHead head = new HttpRequestHead(bytes, length);
+		head.parseRequestLine();
+		head.parseHeaders();
+		return head;
+	}
+
+	public String getMethod() {
+		if (method == null) {
+			method = new String(bytes, 0, methodEnd);
+		}
+		return method;
+	}
+
+	public String getUrl() {
+		if (url == null) {
+			url = new String(bytes, urlStart, urlEnd - urlStart);
+		}
+		return url;
+	}
+
+	/**
+	 * The protocol version at the end of the request line, such as 
+	 * <code>HTTP/1.1</code>, or an empty string if there is none
+	 */
+	public String getVersion() {
+		if (version == null) {
+			int versionStart = Math.min(urlEnd + 1, length);
+			int versionEnd = versionStart;
+			while (versionEnd < length && bytes[versionEnd] != CR && bytes[versionEnd] != LF) {
+				versionEnd++;
+			}
+			version = new String(bytes, versionStart, versionEnd - versionStart);
+		}
+		return version;
+	}
+
+	public Map<String, String> getQueryParams() {
+		if (queryParams == null) {
+			queryParams = UrlUtils.getQueryParams(getUrl());
+		}
+		return queryParams;
+	}
+
+	/**
+	 * Returns the value of the last header with the given name, ignoring
+	 * case, or <code>null</code> if there is no such header
+	 */
+	public String getHeader(String name) {
+		for (int i = headerCount - 1; i >= 0; i--) {
+			int offset = i * 4;
+			if (nameEquals(name, headerOffsets[offset], headerOffsets[offset + 1])) {
+				int valueStart = headerOffsets[offset + 2];
+				return new String(bytes, valueStart, headerOffsets[offset + 3] - valueStart);
+			}
+		}
+		return null;
+	}
+
+	public int getHeaderCount() {
+		return headerCount;
+	}
+
+	/**
+	 * The offset of the first byte after the blank line ending the headers,
+	 * or the length of the input if it has no blank line
+	 */
+	public int getHeadEnd() {
+		return headEnd;
+	}
+
+	private void parseRequestLine() {
+		int delimiters = 0;
+
+		for (int i = 0; i < length; i++) {
+			if (isDelimiter(bytes[i])) {
+				delimiters++;
+				if (delimiters == 1) {
+					methodEnd = i;
+					urlStart = i + 1;
+				} else {
+					urlEnd = i;
+					return;
+				}
+			}
+		}
+
+		urlStart = 0;
+		urlEnd = length;
+	}
+
+	private void parseHeaders() {
+		int lineStart = nextLine(urlEnd);
+
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && bytes[lineEnd] != CR && bytes[lineEnd] != LF) {
+				lineEnd++;
+			}
+
+			if (lineEnd == lineStart) {
+				headEnd = Math.min(nextLine(lineEnd), length);
+				return;
+			}
+
+			addHeader(lineStart, lineEnd);
+			lineStart = nextLine(lineEnd);
+		}
+
+		headEnd = length;
+	}
+
+	private void addHeader(int lineStart, int lineEnd) {
+		for (int colon = lineStart; colon < lineEnd; colon++) {
+			if (bytes[colon] == COLON) {
+				int valueStart = colon + 1;
+				while (valueStart < lineEnd && bytes[valueStart] == SPACE) {
+					valueStart++;
+				}
+				int offset = headerCount * 4;
+				if (offset == headerOffsets.length) {
+					int[] grown = new int[headerOffsets.length * 2];
+					System.arraycopy(headerOffsets, 0, grown, 0, headerOffsets.length);
+					headerOffsets = grown;
+				}
+				headerOffsets[offset] = lineStart;
+				headerOffsets[offset + 1] = colon;
+				headerOffsets[offset + 2] = valueStart;
+				headerOffsets[offset + 3] = lineEnd;
+				headerCount++;
+				return;
+			}
+		}
+	}
+
+	private int nextLine(int from) {
+		int index = from;
+		while (index < length && bytes[index] != LF) {
+			index++;
+		}
+		return index + 1;
+	}
+
+	private boolean nameEquals(String name, int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (Character.toLowerCase(name.charAt(i)) != Character.toLowerCase((char) bytes[start + i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDelimiter(byte b) {
+		return b == SPACE || b == CR || b == LF;
+	}
+}
@@ -0,0 +1,51 @@
+package com.streamhub.request;
+
+/**
+ * Finds the end of an HTTP request head in input which arrives a piece at a
+ * time.  Each call only scans the bytes added since the previous call, and
+ * a partially matched <code>\r\n\r\n</code> is remembered across calls.
+ */
+public class HttpRequestParser {
+	private static final byte[] END_OF_HEAD = { '\r', '\n', '\r', '\n' };
+	private int scanned;
+	private int matched;
+	private int headEnd = -1;
+
+	/**
+	 * Scans <code>input</code> up to <code>length</code>, which must start 
+	 * with the same bytes as on previous calls.
+	 * 
+	 * @return <code>true</code> once the end of the request head has been found
+	 */
+	public boolean parse(byte[] input, int length) {
+		while (headEnd < 0 && scanned < length) {
+			byte b = input[scanned++];
+
+			if (b == END_OF_HEAD[matched]) {
+				matched++;
+			} else {
+				matched = b == END_OF_HEAD[0] ? 1 : 0;
+			}
+
+			if (matched == END_OF_HEAD.length) {
+				headEnd = scanned;
+			}
+		}
+
+		return headEnd >= 0;
+	}
+
+	/**
+	 * The offset just after the <code>\r\n\r\n</code> ending the request 
+	 * head, or <code>-1</code> if it has not been found yet
+	 */
+	public int getHeadEnd() {
+		return headEnd;
+	}
+
+	public void reset() {
+		scanned = 0;
+		matched = 0;
+		headEnd = -1;
+	}
+}
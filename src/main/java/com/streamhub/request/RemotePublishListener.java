@@ -9,6 +9,8 @@ import com.streamhub.DirectHandler;
 import com.streamhub.api.Client;
 import com.streamhub.api.Payload;
 import com.streamhub.api.PublishListener;
+import com.streamhub.handler.BinaryConnection;
+import com.streamhub.util.BinaryFrames;
 
 class RemotePublishListener implements PublishListener {
 	private static final Logger log = Logger.getLogger(RemotePublishListener.class);
@@ -23,7 +25,11 @@ class RemotePublishListener implements PublishListener {
 
 	public void onMessageReceived(Client client, String topic, Payload payload) {
 		try {
-			connection.write(SEP + "onMessageReceived(" + client.getUid() + "," + topic + "," + payload.toString() + ")" + SEP);
+			if (connection instanceof BinaryConnection) {
+				((BinaryConnection) connection).writeFrame(BinaryFrames.OPCODE_ON_MESSAGE_RECEIVED, topic, client.getUid() + "," + payload.toString());
+			} else {
+				connection.write(SEP + "onMessageReceived(" + client.getUid() + "," + topic + "," + payload.toString() + ")" + SEP);
+			}
 		} catch (IOException e) {
 			log.error("Error writing to connection", e);
 			connection.close();
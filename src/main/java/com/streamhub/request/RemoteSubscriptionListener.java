@@ -8,6 +8,8 @@ import com.streamhub.Connection;
 import com.streamhub.DirectHandler;
 import com.streamhub.api.Client;
 import com.streamhub.api.SubscriptionListener;
+import com.streamhub.handler.BinaryConnection;
+import com.streamhub.util.BinaryFrames;
 
 class RemoteSubscriptionListener implements SubscriptionListener {
 	private static final Logger log = Logger.getLogger(RemoteSubscriptionListener.class);
@@ -23,16 +25,20 @@ class RemoteSubscriptionListener implements SubscriptionListener {
 	}
 
 	public void onSubscribe(String topic, Client client) {
-		sendEvent(topic, client, ON_SUBSCRIBE);
+		sendEvent(topic, client, ON_SUBSCRIBE, BinaryFrames.OPCODE_ON_SUBSCRIBE);
 	}
 
 	public void onUnSubscribe(String topic, Client client) {
-		sendEvent(topic, client, ON_UN_SUBSCRIBE);
+		sendEvent(topic, client, ON_UN_SUBSCRIBE, BinaryFrames.OPCODE_ON_UNSUBSCRIBE);
 	}
 
-	private void sendEvent(String topic, Client client, String event) {
+	private void sendEvent(String topic, Client client, String event, int opcode) {
 		try {
-			connection.write(SEP + event + "(" + topic + "," + client.getUid() + ")" + SEP);
+			if (connection instanceof BinaryConnection) {
+				((BinaryConnection) connection).writeFrame(opcode, topic, client.getUid());
+			} else {
+				connection.write(SEP + event + "(" + topic + "," + client.getUid() + ")" + SEP);
+			}
 		} catch (IOException e) {
 			log.error("Error writing to connection - closing", e);
 			connection.close();
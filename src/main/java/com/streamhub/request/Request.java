@@ -18,6 +18,7 @@ public interface Request {
 	boolean isRequestIFrameConnection();
 	boolean isResponseConnection();
 	boolean isKeepAliveConnection();
+	boolean isPersistentConnection();
 	boolean isDisconnection();
 	boolean isIframeHtmlRequest();
 	boolean isPublish();
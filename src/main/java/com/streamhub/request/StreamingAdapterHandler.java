@@ -5,15 +5,19 @@ import java.io.IOException;
 import org.apache.log4j.Logger;
 
 import com.streamhub.Connection;
+import com.streamhub.DirectHandler;
 import com.streamhub.StreamingSubscriptionManager;
 import com.streamhub.api.Payload;
 import com.streamhub.api.PublishListener;
 import com.streamhub.api.SubscriptionListener;
 import com.streamhub.api.SubscriptionManager;
 import com.streamhub.client.IStreamingClient;
+import com.streamhub.handler.BinaryConnection;
 import com.streamhub.handler.Handler;
+import com.streamhub.reader.BinaryFrameListener;
 import com.streamhub.reader.DirectMessageReader;
 import com.streamhub.reader.MessageListener;
+import com.streamhub.util.BinaryFrames;
 
 public class StreamingAdapterHandler implements Handler, MessageListener {
 	private static final String ADD_SUBSCRIPTION_LISTENER = "addSubscriptionListener";
@@ -40,7 +44,14 @@ public class StreamingAdapterHandler implements Handler, MessageListener {
 		this.uid = connection.getAttachment();
 		MessageListener listener = this;
 		try {
-			DirectMessageReader.readDirectMessages(listener, new String(connection.readBytes()));
+			byte[] input = connection.readBytes();
+			int binaryStart = DirectMessageReader.readUntilBinaryNegotiation(listener, input);
+			if (binaryStart >= 0 && connection.isSecure()) {
+				log.warn("Binary frames are not supported over TLS, StreamingAdapter-" + uid + " carries on with text");
+				DirectMessageReader.readDirectMessages(listener, new String(input, binaryStart, input.length - binaryStart));
+			} else if (binaryStart >= 0) {
+				switchToBinary(connection, input, binaryStart);
+			}
 		} catch (IOException e) {
 			log.error("Error reading connection", e);
 			connection.close();
@@ -49,55 +60,135 @@ public class StreamingAdapterHandler implements Handler, MessageListener {
 
 	public void onMessage(String message) {
 		if (message.startsWith(PUBLISH)) {
-			publish(message);
+			int firstCommaIndex = message.indexOf(',');
+			int endIndex = message.length() - 1;
+			publish(message.substring(PUBLISH_TOPIC_START, firstCommaIndex), message.substring(firstCommaIndex + 1, endIndex));
 		} else if (message.startsWith(SEND)) {
-			send(message);
+			int firstCommaIndex = message.indexOf(',');
+			int secondCommaIndex = message.indexOf(',', firstCommaIndex+1);
+			int endIndex = message.length() - 1;
+			String clientUid = message.substring(SEND_UID_START, firstCommaIndex);
+			String topic = message.substring(firstCommaIndex + 1 , secondCommaIndex);
+			send(clientUid, topic, message.substring(secondCommaIndex + 1, endIndex));
 		} else if (message.startsWith("uid=")) {
 			String[] split = message.split("=");
 			uid = split[1];
-			connection.setAttachment(uid);
-			log.info("Connecting StreamingAdapter-" + uid);
+			connect(uid, connection);
 		} else if (ADD_SUBSCRIPTION_LISTENER.equals(message)) {
-			log.info("Adding StreamingAdapter-" + uid + " as RemoteSubscriptionListener");
-			SubscriptionListener subscriptionListener = remoteAdapterRepo.findOrCreateSubscriptionListener(uid, connection);
-			subscriptionManager.addSubscriptionListener(subscriptionListener);
+			addSubscriptionListener(uid, connection);
 		} else if (ADD_PUBLISH_LISTENER.equals(message)) {
-			log.info("Adding StreamingAdapter-" + uid + " as RemotePublishListener");
-			PublishListener publishListener = remoteAdapterRepo.findOrCreatePublishListener(uid, connection);
-			subscriptionManager.addPublishListener(publishListener);
+			addPublishListener(uid, connection);
 		} else if (REMOVE_SUBSCRIPTION_LISTENER.equals(message)) {
-			log.info("Removing StreamingAdapter-" + uid + " as RemoteSubscriptionListener");
-			SubscriptionListener subscriptionListener = remoteAdapterRepo.findOrCreateSubscriptionListener(uid, connection);
-			subscriptionManager.removeSubscriptionListener(subscriptionListener);
+			removeSubscriptionListener(uid, connection);
 		} else if (REMOVE_PUBLISH_LISTENER.equals(message)) {
-			log.info("Removing StreamingAdapter-" + uid + " as RemotePublishListener");
-			PublishListener publishListener = remoteAdapterRepo.findOrCreatePublishListener(uid, connection);
-			subscriptionManager.removePublishListener(publishListener);
+			removePublishListener(uid, connection);
 		} else {
 			log.warn("Unknown message received '" + message + "'");
 		}
 	}
 
-	private void send(String message) {
-		int firstCommaIndex = message.indexOf(',');
-		int secondCommaIndex = message.indexOf(',', firstCommaIndex+1);
-		int endIndex = message.length() - 1;
-		String clientUid = message.substring(SEND_UID_START, firstCommaIndex);
-		String topic = message.substring(firstCommaIndex + 1 , secondCommaIndex);
-		String jsonString = message.substring(secondCommaIndex + 1, endIndex);
+	/**
+	 * Confirms the negotiation, then decodes the rest of the input and every 
+	 * later read as binary frames
+	 */
+	private void switchToBinary(Connection connection, byte[] input, int binaryStart) throws IOException {
+		BinaryAdapterListener listener = new BinaryAdapterListener(uid);
+		BinaryConnection binaryConnection = new BinaryConnection(connection, listener, subscriptionManager.getTopicDictionary());
+		listener.connection = binaryConnection;
+		connection.setReadableEventInterceptor(binaryConnection);
+		connection.write(DirectHandler.BINARY_NEGOTIATION);
+		binaryConnection.decode(input, binaryStart);
+	}
+
+	private void connect(String adapterUid, Connection connection) {
+		connection.setAttachment(adapterUid);
+		log.info("Connecting StreamingAdapter-" + adapterUid);
+	}
+
+	private synchronized void addSubscriptionListener(String adapterUid, Connection connection) {
+		log.info("Adding StreamingAdapter-" + adapterUid + " as RemoteSubscriptionListener");
+		SubscriptionListener subscriptionListener = remoteAdapterRepo.findOrCreateSubscriptionListener(adapterUid, connection);
+		subscriptionManager.addSubscriptionListener(subscriptionListener);
+	}
+
+	private synchronized void addPublishListener(String adapterUid, Connection connection) {
+		log.info("Adding StreamingAdapter-" + adapterUid + " as RemotePublishListener");
+		PublishListener publishListener = remoteAdapterRepo.findOrCreatePublishListener(adapterUid, connection);
+		subscriptionManager.addPublishListener(publishListener);
+	}
+
+	private synchronized void removeSubscriptionListener(String adapterUid, Connection connection) {
+		log.info("Removing StreamingAdapter-" + adapterUid + " as RemoteSubscriptionListener");
+		SubscriptionListener subscriptionListener = remoteAdapterRepo.findOrCreateSubscriptionListener(adapterUid, connection);
+		subscriptionManager.removeSubscriptionListener(subscriptionListener);
+	}
+
+	private synchronized void removePublishListener(String adapterUid, Connection connection) {
+		log.info("Removing StreamingAdapter-" + adapterUid + " as RemotePublishListener");
+		PublishListener publishListener = remoteAdapterRepo.findOrCreatePublishListener(adapterUid, connection);
+		subscriptionManager.removePublishListener(publishListener);
+	}
+
+	private void send(String clientUid, String topic, String jsonString) {
 		log.debug("StreamingAdapter-" + uid + " sending to Client-" + clientUid + " topic '" + topic + "', payload '" + jsonString + "'" );
 		Payload payload = ImmutableJsonPayload.createFrom(jsonString);
 		IStreamingClient client = subscriptionManager.getClientManager().find(clientUid);
 		client.send(topic, payload);
 	}
 
-	private void publish(String message) {
-		int firstCommaIndex = message.indexOf(',');
-		int endIndex = message.length() - 1;
-		String topic = message.substring(PUBLISH_TOPIC_START, firstCommaIndex);
-		String jsonString = message.substring(firstCommaIndex + 1, endIndex);
+	private void publish(String topic, String jsonString) {
 		log.debug("StreamingAdapter-" + uid + " publishing topic '" + topic + "', payload '" + jsonString + "'" );
 		Payload payload = ImmutableJsonPayload.createFrom(jsonString);
 		subscriptionManager.send(topic, payload);
 	}
+
+	/**
+	 * Handles the frames of one binary adapter connection, which are read 
+	 * outside {@link StreamingAdapterHandler#handle(Connection)} and so keep 
+	 * their own state
+	 */
+	private class BinaryAdapterListener implements BinaryFrameListener {
+		private Connection connection;
+		private String uid;
+
+		BinaryAdapterListener(String uid) {
+			this.uid = uid;
+		}
+
+		public void onFrame(int opcode, String topic, String body) {
+			boolean needsTopic = opcode == BinaryFrames.OPCODE_PUBLISH || opcode == BinaryFrames.OPCODE_SEND;
+			int commaIndex = body.indexOf(',');
+			if (needsTopic && (topic == null || (opcode == BinaryFrames.OPCODE_SEND && commaIndex < 0))) {
+				log.warn("Malformed binary frame received. Opcode: " + opcode + ", topic: '" + topic + "'");
+				return;
+			}
+
+			switch (opcode) {
+			case BinaryFrames.OPCODE_PUBLISH:
+				publish(topic, body);
+				break;
+			case BinaryFrames.OPCODE_SEND:
+				send(body.substring(0, commaIndex), topic, body.substring(commaIndex + 1));
+				break;
+			case BinaryFrames.OPCODE_CONNECT:
+				uid = body;
+				connect(uid, connection);
+				break;
+			case BinaryFrames.OPCODE_ADD_SUBSCRIPTION_LISTENER:
+				addSubscriptionListener(uid, connection);
+				break;
+			case BinaryFrames.OPCODE_ADD_PUBLISH_LISTENER:
+				addPublishListener(uid, connection);
+				break;
+			case BinaryFrames.OPCODE_REMOVE_SUBSCRIPTION_LISTENER:
+				removeSubscriptionListener(uid, connection);
+				break;
+			case BinaryFrames.OPCODE_REMOVE_PUBLISH_LISTENER:
+				removePublishListener(uid, connection);
+				break;
+			default:
+				log.warn("Unknown binary frame received. Opcode: " + opcode);
+			}
+		}
+	}
 }
@@ -18,9 +18,11 @@ class UrlEncodedJsonPayload implements Payload {
 	private byte[] bytes = new byte[0];
 	private boolean isTimestampingEnabled; 
 	
-	private UrlEncodedJsonPayload(String jsonSource) {
+	private UrlEncodedJsonPayload(String jsonSource, boolean isUrlEncoded) {
 		try {
-			jsonSource = decode(jsonSource);
+			if (isUrlEncoded) {
+				jsonSource = decode(jsonSource);
+			}
 			json = new JSONObject(jsonSource);
 			bytes = ("<script>x(" + json.toString() + ");</script>").getBytes();
 		} catch (JSONException e) {
@@ -84,7 +86,14 @@ class UrlEncodedJsonPayload implements Payload {
 	}
 
 	public static Payload createFrom(String jsonSource) {
-		return new UrlEncodedJsonPayload(jsonSource);
+		return new UrlEncodedJsonPayload(jsonSource, true);
+	}
+
+	/**
+	 * For JSON which was not URL encoded, as sent by binary Direct clients
+	 */
+	public static Payload createFromJson(String jsonSource) {
+		return new UrlEncodedJsonPayload(jsonSource, false);
 	}
 	
 	@Override
@@ -96,6 +96,9 @@ public class WebSocketRequest implements Request {
 	public boolean isKeepAliveConnection() {
 		return false;
 	}
+	public boolean isPersistentConnection() {
+		return false;
+	}
 	public boolean isPoll() {
 		return false;
 	}
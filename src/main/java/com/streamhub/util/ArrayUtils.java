@@ -10,11 +10,18 @@ public class ArrayUtils {
 	}
 	
 	public static int indexOf(byte[] pattern, byte[] input) {
+		return indexOf(pattern, input, input.length);
+	}
+
+	/**
+	 * Searches only the first <code>length</code> bytes of <code>input</code>
+	 */
+	public static int indexOf(byte[] pattern, byte[] input, int length) {
 		outer:
-		for (int i = 0; i < input.length; i++) {
+		for (int i = 0; i < length; i++) {
 			if (input[i] == pattern[0]) {
 				for (int j = 1; j < pattern.length; j++) {
-					if (i+j+1 > input.length || input[i+j] != pattern[j]) {
+					if (i+j+1 > length || input[i+j] != pattern[j]) {
 						continue outer;
 					}
 				}
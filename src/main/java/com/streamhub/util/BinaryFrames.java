@@ -0,0 +1,79 @@
+package com.streamhub.util;
+
+/**
+ * The binary protocol Direct clients and streaming adapters may switch to
+ * instead of <code>@@message@@</code> text.  A connection switches after
+ * sending the text message <code>@@binary@@</code>, which the server
+ * echoes back to confirm it understood.  Every frame after that is:
+ * <pre>
+ * varint length of the rest of the frame
+ * byte   opcode
+ * varint topic id, 0 for none
+ * bytes  UTF-8 body
+ * </pre>
+ * Varints are unsigned LEB128.  Topic names are sent once per connection
+ * and direction in a {@link #OPCODE_TOPIC} frame whose body is the name,
+ * and every later frame refers to the topic by that id until the id is
+ * defined again.  Clients choose the ids of the topics they send; the server
+ * sends the ids its {@link TopicDictionary} assigned, so a message frame
+ * encoded once per publish is correct for every subscriber, and redefines an
+ * id once it has been reclaimed and given to another topic.
+ * <p>
+ * Only plain connections switch.  Over TLS the negotiation goes unanswered 
+ * and the text protocol carries on.
+ */
+public class BinaryFrames {
+	public static final String NEGOTIATION = "binary";
+	public static final int NO_TOPIC = 0;
+	public static final int OPCODE_TOPIC = 1;
+	public static final int OPCODE_CONNECT = 2;
+	public static final int OPCODE_DISCONNECT = 3;
+	public static final int OPCODE_SUBSCRIBE = 4;
+	public static final int OPCODE_UNSUBSCRIBE = 5;
+	public static final int OPCODE_PUBLISH = 6;
+	public static final int OPCODE_MESSAGE = 7;
+	public static final int OPCODE_SEND = 8;
+	public static final int OPCODE_ADD_SUBSCRIPTION_LISTENER = 9;
+	public static final int OPCODE_REMOVE_SUBSCRIPTION_LISTENER = 10;
+	public static final int OPCODE_ADD_PUBLISH_LISTENER = 11;
+	public static final int OPCODE_REMOVE_PUBLISH_LISTENER = 12;
+	public static final int OPCODE_ON_SUBSCRIBE = 13;
+	public static final int OPCODE_ON_UNSUBSCRIBE = 14;
+	public static final int OPCODE_ON_MESSAGE_RECEIVED = 15;
+	private static final byte[] EMPTY = new byte[0];
+
+	public static byte[] createFrame(int opcode, int topicId, String body) {
+		return createFrame(opcode, topicId, body == null ? EMPTY : WebSocketUtils.toUtf8(body));
+	}
+
+	public static byte[] createFrame(int opcode, int topicId, byte[] body) {
+		int length = 1 + varintLength(topicId) + body.length;
+		byte[] frame = new byte[varintLength(length) + length];
+		int offset = putVarint(frame, 0, length);
+		frame[offset++] = (byte) opcode;
+		offset = putVarint(frame, offset, topicId);
+		System.arraycopy(body, 0, frame, offset, body.length);
+		return frame;
+	}
+
+	public static int varintLength(int value) {
+		int length = 1;
+		while ((value >>>= 7) != 0) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes <code>value</code> at <code>offset</code> and returns the
+	 * offset just after it
+	 */
+	public static int putVarint(byte[] dest, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			dest[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		dest[offset++] = (byte) value;
+		return offset;
+	}
+}
@@ -0,0 +1,99 @@
+package com.streamhub.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * A growable ring of buffers waiting to be written.  Draining hands as many
+ * queued buffers as possible to a single gathering write, so a burst of
+ * small messages costs one system call rather than one per message.
+ * <p>
+ * Not thread safe.
+ */
+public class ByteBufferQueue {
+	private static final int MAX_BUFFERS_PER_WRITE = 256;
+	private ByteBuffer[] buffers;
+	private int head;
+	private int size;
+
+	public ByteBufferQueue() {
+		this(16);
+	}
+
+	public ByteBufferQueue(int initialCapacity) {
+		buffers = new ByteBuffer[Math.max(1, initialCapacity)];
+	}
+
+	public void add(ByteBuffer buffer) {
+		if (size == buffers.length) {
+			grow();
+		}
+		buffers[(head + size) % buffers.length] = buffer;
+		size++;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		while (size > 0) {
+			removeHead();
+		}
+		head = 0;
+	}
+
+	/**
+	 * Writes queued buffers until the queue is empty or the channel will not
+	 * take any more.  Fully written buffers are removed from the queue.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long writeTo(GatheringByteChannel channel) throws IOException {
+		long totalWritten = 0;
+
+		while (size > 0) {
+			int length = Math.min(Math.min(size, buffers.length - head), MAX_BUFFERS_PER_WRITE);
+			totalWritten += channel.write(buffers, head, length);
+
+			if (removeWritten() < length) {
+				break;
+			}
+		}
+
+		return totalWritten;
+	}
+
+	private int removeWritten() {
+		int removed = 0;
+
+		while (size > 0 && ! buffers[head].hasRemaining()) {
+			removeHead();
+			removed++;
+		}
+
+		return removed;
+	}
+
+	private void removeHead() {
+		buffers[head] = null;
+		head = (head + 1) % buffers.length;
+		size--;
+	}
+
+	private void grow() {
+		ByteBuffer[] newBuffers = new ByteBuffer[buffers.length * 2];
+
+		for (int i = 0; i < size; i++) {
+			newBuffers[i] = buffers[(head + i) % buffers.length];
+		}
+
+		buffers = newBuffers;
+		head = 0;
+	}
+}
@@ -0,0 +1,19 @@
+package com.streamhub.util;
+
+/**
+ * HTTP/1.1 chunked transfer coding, used to stream a response whose length 
+ * is not known when its headers are written
+ */
+public class ChunkedUtils {
+	public static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes();
+	private static final byte[] CRLF_BYTES = "\r\n".getBytes();
+	
+	public static byte[] createChunk(byte[] data) {
+		byte[] sizeLine = (Integer.toHexString(data.length) + "\r\n").getBytes();
+		return ArrayUtils.concatAll(sizeLine, data, CRLF_BYTES);
+	}
+	
+	public static String createChunk(String data) {
+		return new String(createChunk(data.getBytes()));
+	}
+}
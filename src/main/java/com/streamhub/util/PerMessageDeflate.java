@@ -0,0 +1,215 @@
+package com.streamhub.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The permessage-deflate WebSocket extension (RFC 7692) as negotiated with 
+ * <code>server_no_context_takeover</code> and 
+ * <code>client_no_context_takeover</code>.  Every message is compressed on 
+ * its own, so a message published to many subscribers is compressed once 
+ * and the same frame is written to all of them.  The price is a worse ratio 
+ * on small messages than a per-connection sliding window would give.
+ * <p>
+ * Messages end with a final DEFLATE block followed by one empty block 
+ * header, as RFC 7692 allows for compressors without a sync flush.  The 
+ * compression ratio and the time spent compressing and inflating are 
+ * exported as <code>com.streamhub.util:type=PerMessageDeflate</code>.
+ */
+public class PerMessageDeflate implements PerMessageDeflateMBean {
+	private static final Logger log = Logger.getLogger(PerMessageDeflate.class);
+	public static final String EXTENSION = "permessage-deflate";
+	public static final String RESPONSE = EXTENSION + "; server_no_context_takeover; client_no_context_takeover";
+	private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+	private static final int MAX_WINDOW_BITS = 15;
+	private static final byte[] EMPTY_BLOCK_TAIL = new byte[] { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+	private static final PerMessageDeflate INSTANCE = new PerMessageDeflate();
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+	};
+	private final AtomicLong compressedMessages = new AtomicLong();
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong compressionNanos = new AtomicLong();
+	private final AtomicLong inflatedMessages = new AtomicLong();
+	private final AtomicLong inflationNanos = new AtomicLong();
+
+	static {
+		INSTANCE.registerAsMBean("com.streamhub.util:type=PerMessageDeflate");
+	}
+
+	public static PerMessageDeflate getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Whether a Sec-WebSocket-Extensions header offers permessage-deflate 
+	 * on terms this server can accept.  Offers limiting the server's 
+	 * window below 15 bits are declined, since the window size of a 
+	 * {@link Deflater} is fixed.
+	 */
+	public static boolean isAcceptableOffer(String extensions) {
+		if (extensions == null) {
+			return false;
+		}
+
+		for (String offer : extensions.split(",")) {
+			String[] parameters = offer.split(";");
+			if (EXTENSION.equalsIgnoreCase(parameters[0].trim()) && isFullWindow(parameters)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The raw DEFLATE encoding of <code>message</code> without the trailing 
+	 * <code>00 00 ff ff</code> of an empty block
+	 */
+	public byte[] compress(byte[] message) {
+		long start = System.nanoTime();
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(message);
+		deflater.finish();
+
+		byte[] output = new byte[message.length + 16];
+		int length = 0;
+		while (! deflater.finished()) {
+			if (length == output.length) {
+				output = ArrayUtils.copyOf(output, output.length * 2);
+			}
+			length += deflater.deflate(output, length, output.length - length);
+		}
+
+		byte[] compressed = new byte[length + 1];
+		System.arraycopy(output, 0, compressed, 0, length);
+		compressedMessages.incrementAndGet();
+		uncompressedBytes.addAndGet(message.length);
+		compressedBytes.addAndGet(compressed.length);
+		compressionNanos.addAndGet(System.nanoTime() - start);
+		return compressed;
+	}
+
+	/**
+	 * Inflates a compressed message, or returns null if it inflates to more 
+	 * than <code>maxLength</code> bytes
+	 * 
+	 * @throws DataFormatException if the message is not valid DEFLATE data
+	 */
+	public byte[] inflate(Inflater inflater, byte[] message, int offset, int length, int maxLength) throws DataFormatException {
+		long start = System.nanoTime();
+		byte[] input = new byte[length + EMPTY_BLOCK_TAIL.length];
+		System.arraycopy(message, offset, input, 0, length);
+		System.arraycopy(EMPTY_BLOCK_TAIL, 0, input, length, EMPTY_BLOCK_TAIL.length);
+		inflater.reset();
+		inflater.setInput(input);
+
+		byte[] output = new byte[Math.min(Math.max(length * 4, 64), maxLength + 1)];
+		int inflated = 0;
+		while (true) {
+			if (inflated == output.length) {
+				if (inflated > maxLength) {
+					return null;
+				}
+				output = ArrayUtils.copyOf(output, Math.min(output.length * 2, maxLength + 1));
+			}
+			int count = inflater.inflate(output, inflated, output.length - inflated);
+			inflated += count;
+			if (count == 0) {
+				if (inflater.needsDictionary()) {
+					throw new DataFormatException("Preset dictionaries are not supported");
+				}
+				if (inflater.finished() || inflater.needsInput()) {
+					break;
+				}
+			}
+		}
+
+		if (inflated > maxLength) {
+			return null;
+		}
+		inflatedMessages.incrementAndGet();
+		inflationNanos.addAndGet(System.nanoTime() - start);
+		return ArrayUtils.copyOf(output, inflated);
+	}
+
+	public long getCompressedMessages() {
+		return compressedMessages.get();
+	}
+
+	public long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	/**
+	 * Compressed bytes as a fraction of the bytes before compression
+	 */
+	public double getCompressionRatio() {
+		long uncompressed = uncompressedBytes.get();
+		return uncompressed == 0 ? 0 : (double) compressedBytes.get() / uncompressed;
+	}
+
+	public double getAverageCompressionMicros() {
+		long messages = compressedMessages.get();
+		return messages == 0 ? 0 : compressionNanos.get() / 1000.0 / messages;
+	}
+
+	public long getInflatedMessages() {
+		return inflatedMessages.get();
+	}
+
+	public double getAverageInflationMicros() {
+		long messages = inflatedMessages.get();
+		return messages == 0 ? 0 : inflationNanos.get() / 1000.0 / messages;
+	}
+
+	public void resetStatistics() {
+		compressedMessages.set(0);
+		uncompressedBytes.set(0);
+		compressedBytes.set(0);
+		compressionNanos.set(0);
+		inflatedMessages.set(0);
+		inflationNanos.set(0);
+	}
+
+	private static boolean isFullWindow(String[] parameters) {
+		for (int i = 1; i < parameters.length; i++) {
+			String[] parameter = parameters[i].split("=");
+			if (SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(parameter[0].trim()) && parameter.length > 1) {
+				try {
+					if (Integer.parseInt(parameter[1].trim().replace("\"", "")) < MAX_WINDOW_BITS) {
+						return false;
+					}
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void registerAsMBean(String name) {
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			mbs.registerMBean(this, new ObjectName(name));
+		} catch (Exception e) {
+			log.warn("Could not register MBean", e);
+		}
+	}
+}
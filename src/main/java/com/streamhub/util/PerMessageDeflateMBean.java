@@ -0,0 +1,12 @@
+package com.streamhub.util;
+
+public interface PerMessageDeflateMBean {
+	long getCompressedMessages();
+	long getUncompressedBytes();
+	long getCompressedBytes();
+	double getCompressionRatio();
+	double getAverageCompressionMicros();
+	long getInflatedMessages();
+	double getAverageInflationMicros();
+	void resetStatistics();
+}
@@ -0,0 +1,100 @@
+package com.streamhub.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives topics compact ids, so the subscription registry and binary frames
+ * can refer to topics by int instead of hashing or sending the name each
+ * time.  Each server has its own dictionary.
+ * <p>
+ * Ids are reference counted: {@link #acquire(String)} assigns an id or adds
+ * a reference to the existing one, and once {@link #release(int)} has been
+ * called as many times the id is reclaimed and may be given to another
+ * topic.  Anything which remembers an id without holding a reference must
+ * also remember the topic it was for.  Ids start at 1, since 0 is
+ * {@link BinaryFrames#NO_TOPIC}, and reclaimed ids are reused first, so
+ * they stay below the most topics ever referenced at once.
+ * <p>
+ * Finding an id never locks; acquiring and releasing do.
+ */
+public class TopicDictionary {
+	public static final int NO_TOPIC = BinaryFrames.NO_TOPIC;
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private String[] topics = new String[64];
+	private int[] references = new int[64];
+	private int[] freeIds = new int[16];
+	private int freeIdCount;
+	private int highestId;
+
+	/**
+	 * Returns the id of <code>topic</code>, assigning one if it does not have
+	 * one yet, and holds a reference to it until {@link #release(int)}
+	 */
+	public synchronized int acquire(String topic) {
+		Integer existing = ids.get(topic);
+		if (existing != null) {
+			references[existing]++;
+			return existing;
+		}
+
+		int id = freeIdCount > 0 ? freeIds[--freeIdCount] : nextId();
+		topics[id] = topic;
+		references[id] = 1;
+		ids.put(topic, id);
+		return id;
+	}
+
+	/**
+	 * Drops a reference taken by {@link #acquire(String)}, reclaiming the id
+	 * if it was the last
+	 */
+	public synchronized void release(int topicId) {
+		if (topicId <= NO_TOPIC || topicId > highestId || references[topicId] == 0) {
+			throw new IllegalArgumentException("Topic id " + topicId + " is not in use");
+		}
+
+		if (--references[topicId] == 0) {
+			ids.remove(topics[topicId]);
+			topics[topicId] = null;
+			if (freeIdCount == freeIds.length) {
+				freeIds = grow(freeIds);
+			}
+			freeIds[freeIdCount++] = topicId;
+		}
+	}
+
+	/**
+	 * Returns the id of <code>topic</code>, or {@link #NO_TOPIC} if nothing
+	 * holds a reference to it.  The id may be reclaimed as soon as this
+	 * returns.
+	 */
+	public int find(String topic) {
+		Integer id = ids.get(topic);
+		return id == null ? NO_TOPIC : id;
+	}
+
+	/**
+	 * The number of topics which currently have an id
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	private int nextId() {
+		int id = ++highestId;
+		if (id == topics.length) {
+			String[] grownTopics = new String[topics.length * 2];
+			System.arraycopy(topics, 0, grownTopics, 0, topics.length);
+			topics = grownTopics;
+			references = grow(references);
+		}
+		return id;
+	}
+
+	private static int[] grow(int[] values) {
+		int[] grown = new int[values.length * 2];
+		System.arraycopy(values, 0, grown, 0, values.length);
+		return grown;
+	}
+}
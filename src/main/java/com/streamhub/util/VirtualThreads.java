@@ -0,0 +1,62 @@
+package com.streamhub.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors which start a new virtual thread for every task.  
+ * Virtual threads only exist on Java 21 and later, so they are looked up 
+ * reflectively and the rest of the server still runs on older runtimes.
+ */
+public class VirtualThreads {
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+	private static final boolean IS_SUPPORTED = canCreateBuilder();
+
+	public static boolean isSupported() {
+		return IS_SUPPORTED;
+	}
+
+	/**
+	 * @param namePrefix	prefix for the thread names, which are numbered from 0
+	 * @throws UnsupportedOperationException if the runtime has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		if (! isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later but this is Java " + System.getProperty("java.version"));
+		}
+
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Could not create a virtual thread executor", e);
+		}
+	}
+
+	private static boolean canCreateBuilder() {
+		if (OF_VIRTUAL == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+			return false;
+		}
+		try {
+			// Preview releases have the methods but refuse to run them
+			OF_VIRTUAL.invoke(null);
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
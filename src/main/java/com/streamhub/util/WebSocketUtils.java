@@ -1,6 +1,8 @@
 package com.streamhub.util;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -11,12 +13,107 @@ public class WebSocketUtils {
 	private static final Logger log = Logger.getLogger(WebSocketUtils.class);
 	private static final byte[] START_BYTES = new byte[] { 0x00 };
 	private static final byte[] END_BYTES = new byte[] { (byte)0xff };	
+	private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	public static final int OPCODE_CONTINUATION = 0x0;
+	public static final int OPCODE_TEXT = 0x1;
+	public static final int OPCODE_BINARY = 0x2;
+	public static final int OPCODE_CLOSE = 0x8;
+	public static final int OPCODE_PING = 0x9;
+	public static final int OPCODE_PONG = 0xA;
+	private static final int FIN = 0x80;
+	private static final int RSV1 = 0x40;
 	
 	public static byte[] createMessage(String message) {
 		byte[] messageBytes = message.getBytes();
 		return ArrayUtils.concatAll(START_BYTES, messageBytes, END_BYTES);
 	}
 	
+	/**
+	 * An unmasked, unfragmented RFC 6455 text frame holding the UTF-8 
+	 * encoding of <code>message</code>
+	 */
+	public static byte[] createFrame(String message) {
+		return createFrame(OPCODE_TEXT, toUtf8(message));
+	}
+
+	/**
+	 * An unmasked, unfragmented RFC 6455 frame as sent by a server
+	 */
+	public static byte[] createFrame(int opcode, byte[] payload) {
+		return frame(FIN | opcode, payload);
+	}
+
+	/**
+	 * A text frame whose payload has been compressed by 
+	 * {@link PerMessageDeflate}, marked as such by the RSV1 bit
+	 */
+	public static byte[] createCompressedFrame(byte[] compressedMessage) {
+		return frame(FIN | RSV1 | OPCODE_TEXT, compressedMessage);
+	}
+
+	private static byte[] frame(int firstByte, byte[] payload) {
+		int headerLength = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+		ByteBuffer frame = ByteBuffer.allocate(headerLength + payload.length);
+		frame.put((byte) firstByte);
+		if (payload.length < 126) {
+			frame.put((byte) payload.length);
+		} else if (payload.length <= 0xFFFF) {
+			frame.put((byte) 126);
+			frame.putShort((short) payload.length);
+		} else {
+			frame.put((byte) 127);
+			frame.putLong(payload.length);
+		}
+		frame.put(payload);
+		return frame.array();
+	}
+
+	/**
+	 * The Sec-WebSocket-Accept value proving the server read the client's 
+	 * Sec-WebSocket-Key
+	 */
+	public static String getAcceptKey(String key) {
+		MessageDigest md = null;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			log.error("SHA-1 algorithm not found", e);
+		}
+		return toBase64(md.digest((key.trim() + ACCEPT_GUID).getBytes()));
+	}
+
+	public static byte[] toUtf8(String text) {
+		ByteBuffer encoded = UTF_8.encode(text);
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		return bytes;
+	}
+
+	public static String fromUtf8(byte[] bytes, int offset, int length) {
+		return UTF_8.decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+	}
+
+	public static String toBase64(byte[] bytes) {
+		StringBuilder result = new StringBuilder((bytes.length + 2) / 3 * 4);
+		for (int i = 0; i < bytes.length; i += 3) {
+			int remaining = bytes.length - i;
+			int chunk = (bytes[i] & 0xff) << 16;
+			if (remaining > 1) {
+				chunk |= (bytes[i + 1] & 0xff) << 8;
+			}
+			if (remaining > 2) {
+				chunk |= bytes[i + 2] & 0xff;
+			}
+			result.append(BASE64[(chunk >> 18) & 0x3f]);
+			result.append(BASE64[(chunk >> 12) & 0x3f]);
+			result.append(remaining > 1 ? BASE64[(chunk >> 6) & 0x3f] : '=');
+			result.append(remaining > 2 ? BASE64[chunk & 0x3f] : '=');
+		}
+		return result.toString();
+	}
+
 	public static long extractDigits(String key) {
 		if (key == null) {
 			return 0;
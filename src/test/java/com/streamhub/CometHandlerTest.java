@@ -1,5 +1,7 @@
 package com.streamhub;
 
+import java.nio.ByteBuffer;
+
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.integration.junit4.JMock;
@@ -39,6 +41,8 @@ public class CometHandlerTest {
 			allowing(request).getContext();
 				will(returnValue("/streamhub"));
 			ignoring(request).isWebSocket();				
+			ignoring(request).isPersistentConnection();
+			ignoring(connection).isKeptAlive();
 		}});
 	}
 	
@@ -87,7 +91,7 @@ public class CometHandlerTest {
 				will(returnValue(false));				
 			one(subscriptionManager).findOrCreateClient(request);
 				will(returnValue(client));
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(connection).close();
 			one(client).disconnect();
 		}});		
@@ -117,7 +121,7 @@ public class CometHandlerTest {
 				will(returnValue(false));
 			allowing(connection).isSelfClosing();
 				will(returnValue(false));				
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(connection).close();
 			one(subscriptionManager).addSubscription(request);
 		}});		
@@ -194,7 +198,7 @@ public class CometHandlerTest {
 				will(returnValue(client));
 			one(client).getUid();
 			one(client).disconnect();
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(connection).close();
 		}});		
 		
@@ -227,7 +231,7 @@ public class CometHandlerTest {
 				will(returnValue(false));
 			allowing(connection).isSelfClosing();
 				will(returnValue(false));				
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(connection).close();
 			one(subscriptionManager).removeSubscription(request);
 		}});		
@@ -257,10 +261,11 @@ public class CometHandlerTest {
 				will(returnValue(true));
 			one(request).isKeepAliveConnection();
 				will(returnValue(true));
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(subscriptionManager).findOrCreateClient(request);
 				will(returnValue(client));
 			allowing(client).getUid();
+			((IStreamingClient) one(client)).setResponseLength(IStreamingClient.CHUNKED_RESPONSE);
 			((IStreamingClient) one(client)).onConnect();
 			never(connection).close();
 		}});		
@@ -326,7 +331,7 @@ public class CometHandlerTest {
 				will(returnValue(false));				
 			one(subscriptionManager).findOrCreateClient(request);
 				will(returnValue(client));				
-			one(connection).write(expectedResponse);
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
 			one(connection).close();
 			one(subscriptionManager).notifyPublishListeners(client, topic, payload);
 		}});		
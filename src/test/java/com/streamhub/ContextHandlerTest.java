@@ -44,6 +44,7 @@ public class ContextHandlerTest {
 			allowing(request).getUrl();
 			ignoring(connection).close();
 			ignoring(request).isWebSocket();
+			ignoring(connection).isKeptAlive();
 		}});
 	}
 	
@@ -10,8 +10,12 @@ import org.junit.runner.RunWith;
 
 import com.streamhub.api.Payload;
 import com.streamhub.client.IStreamingClient;
+import com.streamhub.handler.BinaryConnection;
 import com.streamhub.handler.Handler;
 import com.streamhub.request.DirectRequest;
+import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.BinaryFrames;
+import com.streamhub.util.TopicDictionary;
 
 @RunWith(JMock.class)
 public class DirectHandlerTest {
@@ -156,5 +160,30 @@ public class DirectHandlerTest {
 		}});
 		
 		handler.handle(connection);
-	}	
+	}
+	
+	@Test
+	public void switchesToBinaryFramesAfterNegotiating() throws Exception {
+		final byte[] input = ArrayUtils.concatAll(DirectHandler.BINARY_NEGOTIATION.getBytes(),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_CONNECT, BinaryFrames.NO_TOPIC, "3423423"),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_TOPIC, 1, "AAPL"),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_SUBSCRIBE, 1, ""));
+		context.checking(new Expectations() {{
+			one(connection).readBytes();
+				will(returnValue(input));
+			one(connection).isSecure();
+				will(returnValue(false));
+			allowing(subscriptionManager).getTopicDictionary();
+				will(returnValue(new TopicDictionary()));
+			one(connection).setReadableEventInterceptor(with(any(BinaryConnection.class)));
+			one(connection).write(DirectHandler.BINARY_NEGOTIATION);
+			one(subscriptionManager).findOrCreateClient(with(any(DirectRequest.class)));
+				will(returnValue(client));
+			one(client).setConnection(with(any(BinaryConnection.class)));
+			one(client).onConnect();
+			one(subscriptionManager).addSubscription(with(any(DirectRequest.class)));
+		}});
+		
+		handler.handle(connection);
+	}
 }
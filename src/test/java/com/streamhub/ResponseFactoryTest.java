@@ -2,8 +2,12 @@ package com.streamhub;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 
+import com.streamhub.ResponseFactory.ResponseType;
+import com.streamhub.client.IStreamingClient;
 import com.streamhub.util.Browser;
 
 public class ResponseFactoryTest {
@@ -31,13 +35,104 @@ public class ResponseFactoryTest {
 	}
 	
 	@Test
-	public void responseChannelContainsContentLength() throws Exception {
+	public void responseChannelIsChunkedByDefault() throws Exception {
 		String responseChannelFF = ResponseFactory.foreverFramePageHeader("bob.com", Browser.FF3);
 		String responseChannelIE = ResponseFactory.foreverFramePageHeader("bob.com", Browser.IE);
 		String responseChannelSafari = ResponseFactory.foreverFramePageHeader("bob.com", Browser.SAFARI);
 		
-		assertTrue(responseChannelFF.contains("Content-Length"));
-		assertTrue(responseChannelIE.contains("Content-Length"));
-		assertTrue(responseChannelSafari.contains("Content-Length"));
+		assertTrue(responseChannelFF.contains("Transfer-Encoding: chunked"));
+		assertTrue(responseChannelIE.contains("Transfer-Encoding: chunked"));
+		assertTrue(responseChannelSafari.contains("Transfer-Encoding: chunked"));
+		assertFalse(responseChannelFF.contains("Content-Length"));
+		assertEquals(IStreamingClient.CHUNKED_RESPONSE, ResponseFactory.pushResponseLength());
+	}
+	
+	@Test
+	public void chunkedResponseChannelBodyIsOneChunk() throws Exception {
+		String responseChannel = ResponseFactory.foreverFramePageHeader("bob.com", Browser.SAFARI);
+		String body = responseChannel.substring(responseChannel.indexOf("\r\n\r\n") + 4);
+		int lineEnd = body.indexOf("\r\n");
+		int chunkSize = Integer.parseInt(body.substring(0, lineEnd), 16);
+		
+		assertEquals(body.length() - lineEnd - 4, chunkSize);
+		assertTrue(body.endsWith("\r\n"));
+	}
+	
+	@Test
+	public void responseChannelContainsContentLengthWhenSet() throws Exception {
+		ResponseFactory.setDefaultPushHeader("Content-Length", "300000");
+		try {
+			String responseChannel = ResponseFactory.foreverFramePageHeader("bob.com", Browser.FF3);
+			String headers = responseChannel.substring(0, responseChannel.indexOf("\r\n\r\n") + 4);
+			
+			assertTrue(headers.contains("Content-Length: 300000"));
+			assertFalse(headers.contains("Transfer-Encoding"));
+			assertEquals(headers.length() + 300000, ResponseFactory.pushResponseLength());
+		} finally {
+			ResponseFactory.setDefaultPushHeader("Content-Length", null);
+		}
+	}
+	
+	@Test
+	public void keptAliveResponsesAreDelimitedByContentLength() throws Exception {
+		String body = "<html>subscription OK</html>\u00e9";
+		String response = ResponseFactory.keepAlive(ResponseFactory.pollResponse("bob.com", Browser.FF3, body));
+		String headers = response.substring(0, response.indexOf("\r\n\r\n") + 4);
+		
+		assertTrue(headers.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(headers.contains("Connection: keep-alive\r\n"));
+		assertFalse(headers.contains("Connection: close"));
+		assertTrue(headers.contains("Content-Length: " + body.getBytes().length + "\r\n"));
+		assertTrue(response.endsWith("\r\n\r\n" + body));
+	}
+	
+	@Test
+	public void responsesAreNotKeptAliveWhenTheDefaultHeadersFrameTheBody() throws Exception {
+		ResponseFactory.setDefaultHeader("Content-Length", "10");
+		try {
+			assertNull(ResponseFactory.keepAlive(ResponseFactory.publishResponse("bob.com", Browser.FF3)));
+		} finally {
+			ResponseFactory.setDefaultHeader("Content-Length", null);
+		}
+		assertNotNull(ResponseFactory.keepAlive(ResponseFactory.publishResponse("bob.com", Browser.FF3)));
+	}
+	
+	@Test
+	public void templatesHoldTheBytesOfTheResponse() throws Exception {
+		ByteBuffer template = ResponseFactory.template(ResponseType.SUBSCRIPTION, "bob.com", Browser.IE7, false);
+		
+		assertTrue(template.isReadOnly());
+		assertEquals(ByteBuffer.wrap(ResponseFactory.subscriptionResponse("bob.com", Browser.IE7).getBytes()), template);
+		assertEquals(ByteBuffer.wrap(ResponseFactory.keepAlive(ResponseFactory.publishResponse("bob.com", Browser.FF3)).getBytes()), 
+				ResponseFactory.template(ResponseType.PUBLISH, "bob.com", Browser.FF3, true));
+	}
+	
+	@Test
+	public void eachTemplateHasItsOwnPosition() throws Exception {
+		ByteBuffer first = ResponseFactory.template(ResponseType.UNSUBSCRIBE, "bob.com", Browser.CHROME, false);
+		first.position(first.limit());
+		ByteBuffer second = ResponseFactory.template(ResponseType.UNSUBSCRIBE, "bob.com", Browser.CHROME, false);
+		
+		assertEquals(0, second.position());
+		assertEquals(first.limit(), second.remaining());
+	}
+	
+	@Test
+	public void templatesChangeWithTheDefaultHeaders() throws Exception {
+		ResponseFactory.template(ResponseType.CLOSE_RESPONSE, "bob.com", Browser.FF3, false);
+		ResponseFactory.setDefaultHeader("X-Test", "yes");
+		try {
+			String template = toString(ResponseFactory.template(ResponseType.CLOSE_RESPONSE, "bob.com", Browser.FF3, false));
+			assertTrue(template.contains("X-Test: yes"));
+		} finally {
+			ResponseFactory.setDefaultHeader("X-Test", null);
+		}
+		assertFalse(toString(ResponseFactory.template(ResponseType.CLOSE_RESPONSE, "bob.com", Browser.FF3, false)).contains("X-Test"));
+	}
+	
+	private static String toString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes);
 	}
 }
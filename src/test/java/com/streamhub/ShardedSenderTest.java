@@ -0,0 +1,161 @@
+package com.streamhub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.Sequence;
+import org.jmock.integration.junit4.JMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.streamhub.api.JsonPayload;
+import com.streamhub.client.ClientFactory;
+import com.streamhub.client.EncodedPayload;
+import com.streamhub.client.IStreamingClient;
+import com.streamhub.request.DirectRequest;
+import com.streamhub.util.Sleep;
+
+@RunWith(JMock.class)
+public class ShardedSenderTest {
+	private Mockery context;
+	private ShardedSender sender;
+	private IStreamingClient client;
+	private IStreamingClient clientTwo;
+	
+	@Before
+	public void setUp() {
+		context = new Mockery();
+		client = context.mock(IStreamingClient.class);
+		clientTwo = context.mock(IStreamingClient.class, "clientTwo");
+		sender = new ShardedSender(4);
+		sender.register(client);
+		sender.register(clientTwo);
+	}
+	
+	@After
+	public void tearDown() {
+		sender.stop();
+	}
+	
+	@Test
+	public void deliversMessagesToAClientInTheOrderTheyWereSent() throws Exception {
+		final EncodedPayload one = new EncodedPayload(new JsonPayload("one"));
+		final EncodedPayload two = new EncodedPayload(new JsonPayload("two"));
+		final EncodedPayload three = new EncodedPayload(new JsonPayload("three"));
+		final Sequence order = context.sequence("order");
+		context.checking(new Expectations() {{
+			one(client).send("topic", one); inSequence(order);
+			one(client).send("topic", two); inSequence(order);
+			one(client).send("topic", three); inSequence(order);
+		}});
+		
+		sender.send(client, "topic", one);
+		sender.send(client, "topic", two);
+		sender.send(client, "topic", three);
+		Sleep.millis(100);
+	}
+	
+	@Test
+	public void deliversToEveryClient() throws Exception {
+		final EncodedPayload payload = new EncodedPayload(new JsonPayload("topic"));
+		context.checking(new Expectations() {{
+			one(client).send("topic", payload);
+			one(clientTwo).send("topic", payload);
+		}});
+		
+		sender.send(client, "topic", payload);
+		sender.send(clientTwo, "topic", payload);
+		Sleep.millis(100);
+	}
+	
+	@Test
+	public void deliversMoreMessagesThanFitInOneBatch() throws Exception {
+		final EncodedPayload payload = new EncodedPayload(new JsonPayload("topic"));
+		context.checking(new Expectations() {{
+			exactly(500).of(client).send("topic", payload);
+		}});
+		
+		for (int i = 0; i < 500; i++) {
+			sender.send(client, "topic", payload);
+		}
+		Sleep.millis(200);
+	}
+	
+	@Test
+	public void keepsDeliveringAfterAClientThrows() throws Exception {
+		final EncodedPayload payload = new EncodedPayload(new JsonPayload("topic"));
+		context.checking(new Expectations() {{
+			allowing(client).getUid(); will(returnValue("1"));
+			exactly(2).of(client).send("topic", payload); 
+				will(throwException(new RuntimeException("Expected")));
+		}});
+		
+		sender.send(client, "topic", payload);
+		sender.send(client, "topic", payload);
+		Sleep.millis(100);
+	}
+	
+	@Test
+	public void dropsMessagesForRemovedClients() throws Exception {
+		final EncodedPayload payload = new EncodedPayload(new JsonPayload("topic"));
+		context.checking(new Expectations() {{
+			allowing(client).getUid(); will(returnValue("1"));
+			never(client).send("topic", payload);
+		}});
+		
+		sender.remove(client);
+		sender.send(client, "topic", payload);
+		Sleep.millis(100);
+	}
+	
+	@Test
+	public void takesRegisteredClientsFromThePreviousSender() throws Exception {
+		final EncodedPayload payload = new EncodedPayload(new JsonPayload("topic"));
+		ShardedSender next = new ShardedSender(2);
+		context.checking(new Expectations() {{
+			one(client).send("topic", payload);
+		}});
+		
+		try {
+			next.registerAll(sender);
+			next.send(client, "topic", payload);
+			Sleep.millis(100);
+		} finally {
+			next.stop();
+		}
+	}
+	
+	@Test
+	public void spreadsDirectClientsOverEveryShard() throws Exception {
+		ShardedSender eightShards = new ShardedSender(8);
+		ClientFactory clientFactory = new ClientFactory(null);
+		int[] clientsPerShard = new int[8];
+		
+		try {
+			for (int i = 0; i < 800; i++) {
+				IStreamingClient directClient = clientFactory.createFrom(DirectRequest.createFrom("uid=" + i));
+				clientsPerShard[eightShards.shardIndexFor(directClient)]++;
+			}
+		} finally {
+			eightShards.stop();
+		}
+		
+		for (int shard = 0; shard < clientsPerShard.length; shard++) {
+			assertTrue("Shard " + shard + " has " + clientsPerShard[shard] + " of 800 clients", clientsPerShard[shard] >= 50 && clientsPerShard[shard] <= 150);
+		}
+	}
+	
+	@Test
+	public void usesConfiguredNumberOfShards() throws Exception {
+		assertEquals(4, sender.getShardCount());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void rejectsLessThanOneShard() throws Exception {
+		new ShardedSender(0);
+	}
+}
@@ -39,7 +39,7 @@ public class StreamingServerTest extends StreamingServerTestCase {
 		server.setDefaultHeader("Content-Type", "text/html");
 		server.setDefaultPushHeader("Content-Type", "text/html");
 		server.setDefaultHeader("Content-Length", null);
-		server.setDefaultPushHeader("Content-Length", "300000");
+		server.setDefaultPushHeader("Content-Length", null);
 		server.addStaticContent(null, null);
 		server.stop();
 		super.tearDown();
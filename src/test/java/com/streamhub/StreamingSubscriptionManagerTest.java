@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
@@ -21,8 +22,12 @@ import org.junit.runner.RunWith;
 import com.streamhub.api.JsonPayload;
 import com.streamhub.api.PublishListener;
 import com.streamhub.api.SubscriptionListener;
+import com.streamhub.client.ClientFactory;
 import com.streamhub.client.ClientManager;
+import com.streamhub.client.EncodedPayload;
 import com.streamhub.client.IStreamingClient;
+import com.streamhub.handler.RawHandlerTest;
+import com.streamhub.request.HttpRequest;
 import com.streamhub.request.Request;
 import com.streamhub.util.Sleep;
 
@@ -365,6 +370,27 @@ public class StreamingSubscriptionManagerTest {
 		assertEquals(clientTwo, topicToClientsAfterUnSubscribe.get(topic)[0]);
 	}
 
+	@Test
+	public void testSendsPublishedMessagesToEverySubscriber() throws Exception {
+		context.checking(new Expectations() {{
+			allowing(clientManager).findOrCreate(request); will(returnValue(client));
+			allowing(clientManager).findOrCreate(requestTwo); will(returnValue(clientTwo));
+			one(client).send(with(equal(topic)), with(any(EncodedPayload.class)));
+			one(clientTwo).send(with(equal(topic)), with(any(EncodedPayload.class)));
+		}});
+		
+		subscriptionManager.addSubscription(request);
+		subscriptionManager.addSubscription(requestTwo);
+		subscriptionManager.send(topic, new JsonPayload(topic));
+		Sleep.millis(100);
+	}
+	
+	@Test
+	public void testSendShardsAreConfigurable() throws Exception {
+		subscriptionManager.setSendShards(3);
+		assertEquals(3, subscriptionManager.getSendShards());
+	}
+	
 	@Test
 	public void testNotifiesSubscriberWhenMessageReceived() throws Exception {
 		final PublishListener listener = context.mock(PublishListener.class);
@@ -639,6 +665,26 @@ public class StreamingSubscriptionManagerTest {
 		subscriptionManager.clientDisconnected(client);
 	}
 
+	@SuppressWarnings("serial")
+	@Test
+	public void testDisconnectRemovesClientFromTopicToClientsMap() throws Exception {
+		context.checking(new Expectations() {{
+			allowing(clientManager).findOrCreate(request); will(returnValue(client));
+			allowing(clientManager).findOrCreate(requestTwo); will(returnValue(clientTwo));
+			allowing(client).getSubscriptions(); will(returnValue(new HashSet<String>() {{ add(topic); }}));
+			one(client).isConnected(); will(returnValue(false));
+			one(clientManager).remove(client);
+			one(client).destroy();
+		}});
+		
+		subscriptionManager.addSubscription(request);
+		subscriptionManager.addSubscription(requestTwo);
+		subscriptionManager.clientDisconnected(client);
+		Map<String, IStreamingClient[]> topicToClientsAfterDisconnect = subscriptionManager.getTopicToClients();
+		assertEquals(1, topicToClientsAfterDisconnect.get(topic).length);
+		assertEquals(clientTwo, topicToClientsAfterDisconnect.get(topic)[0]);
+	}
+
 	@Test
 	public void testDisconnectDestroysClient() throws Exception {
 		context.checking(new Expectations() {{
@@ -680,4 +726,29 @@ public class StreamingSubscriptionManagerTest {
 		subscriptionManager.clientLostConnection(client);
 		subscriptionManager.clientConnected(client);
 	}
+	
+	@Test
+	public void removesCometClientWhoseResponseBudgetEndedAndNeverReconnected() throws Exception {
+		final Connection connection = context.mock(Connection.class);
+		ClientFactory clientFactory = new ClientFactory(subscriptionManager);
+		clientFactory.setResponseBudget(160);
+		final IStreamingClient cometClient = clientFactory.createFrom(HttpRequest.createFrom(RawHandlerTest.createCometRequest()));
+		context.checking(new Expectations() {{
+			ignoring(connection).isSecure();
+			ignoring(connection).getChannel();
+			allowing(connection).isWritable(); will(returnValue(true));
+			allowing(connection).getBytesWritten(); will(onConsecutiveCalls(returnValue(100L), returnValue(100L), returnValue(150L), returnValue(150L), returnValue(150L)));
+			exactly(2).of(connection).write(with(any(ByteBuffer.class)));
+			one(connection).setSelfClosing(true);
+			one(clientManager).remove(cometClient);
+		}});
+		
+		subscriptionManager.setReconnectionTimeout(20);
+		cometClient.setConnection(connection);
+		cometClient.setResponseLength(IStreamingClient.CHUNKED_RESPONSE);
+		cometClient.onConnect();
+		cometClient.send("first", new EncodedPayload(new JsonPayload("first")));
+		cometClient.send("second", new EncodedPayload(new JsonPayload("second")));
+		Sleep.millis(200);
+	}
 }
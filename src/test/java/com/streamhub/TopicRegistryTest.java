@@ -0,0 +1,160 @@
+package com.streamhub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.streamhub.client.IStreamingClient;
+import com.streamhub.tools.CountingClient;
+import com.streamhub.util.TopicDictionary;
+
+@RunWith(JMock.class)
+public class TopicRegistryTest {
+	private Mockery context;
+	private TopicDictionary topicDictionary;
+	private TopicRegistry registry;
+	private IStreamingClient client;
+	private IStreamingClient clientTwo;
+	
+	@Before
+	public void setUp() {
+		context = new Mockery();
+		client = context.mock(IStreamingClient.class);
+		clientTwo = context.mock(IStreamingClient.class, "clientTwo");
+		topicDictionary = new TopicDictionary();
+		registry = new TopicRegistry(topicDictionary);
+	}
+	
+	@Test
+	public void addsSubscribersInOrder() throws Exception {
+		registry.add("AAPL", client);
+		registry.add("AAPL", clientTwo);
+		IStreamingClient[] subscribers = registry.subscribers("AAPL");
+		assertEquals(2, subscribers.length);
+		assertSame(client, subscribers[0]);
+		assertSame(clientTwo, subscribers[1]);
+	}
+	
+	@Test
+	public void removingCompactsSubscribers() throws Exception {
+		registry.add("AAPL", client);
+		registry.add("AAPL", clientTwo);
+		registry.add("AAPL", client);
+		registry.remove("AAPL", client);
+		IStreamingClient[] subscribers = registry.subscribers("AAPL");
+		assertEquals(1, subscribers.length);
+		assertSame(clientTwo, subscribers[0]);
+	}
+	
+	@Test
+	public void removingLastSubscriberRemovesTopic() throws Exception {
+		registry.add("AAPL", client);
+		registry.remove("AAPL", client);
+		assertNull(registry.subscribers("AAPL"));
+		assertEquals(0, registry.getTopicCount());
+	}
+	
+	@Test
+	public void removingNonSubscriberLeavesSnapshotUntouched() throws Exception {
+		registry.add("AAPL", client);
+		IStreamingClient[] before = registry.subscribers("AAPL");
+		registry.remove("AAPL", clientTwo);
+		assertSame(before, registry.subscribers("AAPL"));
+	}
+	
+	@Test
+	public void snapshotsAreNotAffectedByLaterChanges() throws Exception {
+		registry.add("AAPL", client);
+		IStreamingClient[] snapshot = registry.subscribers("AAPL");
+		registry.add("AAPL", clientTwo);
+		registry.remove("AAPL", client);
+		assertEquals(1, snapshot.length);
+		assertSame(client, snapshot[0]);
+	}
+	
+	@Test
+	public void lookingUpATopicWithoutSubscribersDoesNotGiveItAnId() throws Exception {
+		assertNull(registry.subscribers("NeverSubscribed"));
+		assertEquals(TopicDictionary.NO_TOPIC, topicDictionary.find("NeverSubscribed"));
+	}
+	
+	@Test
+	public void findsSubscribersByTopicId() throws Exception {
+		registry.add("AAPL", client);
+		int topicId = topicDictionary.find("AAPL");
+		assertSame(client, registry.subscribers(topicId, "AAPL")[0]);
+	}
+	
+	@Test
+	public void givesUpTheIdOfATopicOnceItHasNoSubscribers() throws Exception {
+		registry.add("AAPL", client);
+		registry.add("AAPL", clientTwo);
+		registry.remove("AAPL", client);
+		assertEquals(1, topicDictionary.size());
+		registry.remove("AAPL", clientTwo);
+		assertEquals(0, topicDictionary.size());
+	}
+	
+	@Test
+	public void doesNotFindSubscribersOfAnotherTopicGivenTheSameId() throws Exception {
+		registry.add("AAPL", client);
+		int topicId = topicDictionary.find("AAPL");
+		registry.remove("AAPL", client);
+		registry.add("MSFT", clientTwo);
+		assertEquals(topicId, topicDictionary.find("MSFT"));
+		assertNull(registry.subscribers(topicId, "AAPL"));
+		registry.remove("AAPL", clientTwo);
+		assertSame(clientTwo, registry.subscribers("MSFT")[0]);
+	}
+	
+	@Test
+	public void keepsTopicsInDifferentChunksApart() throws Exception {
+		for (int i = 0; i < 3000; i++) {
+			registry.add("Chunked" + i, i % 2 == 0 ? client : clientTwo);
+		}
+		assertEquals(3000, registry.getTopicCount());
+		assertSame(client, registry.subscribers("Chunked2998")[0]);
+		assertSame(clientTwo, registry.subscribers("Chunked2999")[0]);
+		assertEquals(3000, registry.asMap().size());
+	}
+	
+	@Test
+	public void concurrentSubscribesAreNotLost() throws Exception {
+		final int threads = 8;
+		final int subscribesPerThread = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < subscribesPerThread; i++) {
+						registry.add("EURUSD", new CountingClient(thread + "-" + i, null));
+					}
+				}
+			});
+		}
+		
+		start.countDown();
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+		assertEquals(threads * subscribesPerThread, registry.subscribers("EURUSD").length);
+	}
+}
@@ -4,7 +4,9 @@ import java.nio.ByteBuffer;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
 import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.Before;
 import org.junit.Test;
@@ -102,6 +104,176 @@ public class WebSocketHandlerTest {
 		
 		cometHandler.handle(connection);
 	}
-
 	
+	@Test
+	public void handlesRfc6455WebSocketConnection() throws Exception {
+		final String rawHttpRequest = "GET /streamhubws/ HTTP/1.1\r\n"+
+								"Upgrade: websocket\r\n"+
+								"Connection: Upgrade\r\n"+
+								"Host: localhost:7979\r\n"+
+								"Origin: http://localhost:7979\r\n"+
+								"Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"+
+								"Sec-WebSocket-Protocol: StreamHubWS\r\n"+
+								"Sec-WebSocket-Version: 13\r\n\r\n";
+		final String expectedResponse = "HTTP/1.1 101 Switching Protocols\r\n" +
+								"Upgrade: websocket\r\n" +
+								"Connection: Upgrade\r\n" +
+								"Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n" +
+								"Sec-WebSocket-Protocol: StreamHubWS\r\n" +
+								"Server: StreamHub\r\n\r\n";
+		context.checking(new Expectations() {{
+			allowing(connection).getRequest();
+				will(returnValue(request));
+			one(request).getContext();
+				will(returnValue("/streamhubws"));
+			one(request).getUrl();
+				will(returnValue("/streamhubws/"));
+			allowing(connection).readBytes();
+				will(returnValue(rawHttpRequest.getBytes()));
+			one(connection).setReadableEventInterceptor(with(any(Connection.class)));
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
+			one(request).isKeepAliveConnection();
+				will(returnValue(true));
+		}});		
+		
+		cometHandler.handle(connection);
+	}
+
+	@Test
+	public void decodesFramesReadWithTheRfc6455Handshake() throws Exception {
+		final String rawHttpRequest = "GET /streamhubws/ HTTP/1.1\r\n"+
+								"Upgrade: websocket\r\n"+
+								"Connection: Upgrade\r\n"+
+								"Host: localhost:7979\r\n"+
+								"Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"+
+								"Sec-WebSocket-Version: 13\r\n\r\n";
+		final String expectedResponse = "HTTP/1.1 101 Switching Protocols\r\n" +
+								"Upgrade: websocket\r\n" +
+								"Connection: Upgrade\r\n" +
+								"Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n" +
+								"Server: StreamHub\r\n\r\n";
+		byte[] handshake = rawHttpRequest.getBytes();
+		byte[] maskedPing = new byte[] { (byte) 0x89, (byte) 0x80, 0x01, 0x02, 0x03, 0x04 };
+		final byte[] input = new byte[handshake.length + maskedPing.length];
+		System.arraycopy(handshake, 0, input, 0, handshake.length);
+		System.arraycopy(maskedPing, 0, input, handshake.length, maskedPing.length);
+		context.checking(new Expectations() {{
+			allowing(connection).getRequest();
+				will(returnValue(request));
+			one(request).getContext();
+				will(returnValue("/streamhubws"));
+			one(request).getUrl();
+				will(returnValue("/streamhubws/"));
+			allowing(connection).readBytes();
+				will(returnValue(input));
+			one(connection).setReadableEventInterceptor(with(any(Connection.class)));
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
+			one(connection).write(ByteBuffer.wrap(new byte[] { (byte) 0x8A, 0x00 }));
+			one(request).isKeepAliveConnection();
+				will(returnValue(true));
+		}});		
+		
+		cometHandler.handle(connection);
+	}
+
+	@Test
+	public void upgradesTwoConnectionsAtOnce() throws Exception {
+		final String rawHttpRequest = "GET /streamhubws/ HTTP/1.1\r\n"+
+								"Upgrade: websocket\r\n"+
+								"Connection: Upgrade\r\n"+
+								"Host: localhost:7979\r\n"+
+								"Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"+
+								"Sec-WebSocket-Version: 13\r\n\r\n";
+		final String expectedResponse = "HTTP/1.1 101 Switching Protocols\r\n" +
+								"Upgrade: websocket\r\n" +
+								"Connection: Upgrade\r\n" +
+								"Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n" +
+								"Server: StreamHub\r\n\r\n";
+		byte[] handshake = rawHttpRequest.getBytes();
+		byte[] maskedPing = new byte[] { (byte) 0x89, (byte) 0x80, 0x01, 0x02, 0x03, 0x04 };
+		final byte[] input = new byte[handshake.length + maskedPing.length];
+		System.arraycopy(handshake, 0, input, 0, handshake.length);
+		System.arraycopy(maskedPing, 0, input, handshake.length, maskedPing.length);
+		final Connection connectionTwo = context.mock(Connection.class, "connectionTwo");
+		final Request requestTwo = context.mock(Request.class, "requestTwo");
+		context.checking(new Expectations() {{
+			allowing(connection).getRequest();
+				will(returnValue(request));
+			allowing(connectionTwo).getRequest();
+				will(returnValue(requestTwo));
+			allowing(connectionTwo).getChannel();
+			allowing(request).getContext();
+				will(returnValue("/streamhubws"));
+			allowing(requestTwo).getContext();
+				will(returnValue("/streamhubws"));
+			allowing(request).getUrl();
+				will(returnValue("/streamhubws/"));
+			allowing(requestTwo).getUrl();
+				will(returnValue("/streamhubws/"));
+			allowing(request).isKeepAliveConnection();
+				will(returnValue(true));
+			allowing(requestTwo).isKeepAliveConnection();
+				will(returnValue(true));
+			allowing(connection).readBytes();
+				will(returnValue(input));
+			allowing(connectionTwo).readBytes();
+				will(returnValue(input));
+			one(connection).setReadableEventInterceptor(with(any(Connection.class)));
+			one(connectionTwo).setReadableEventInterceptor(with(any(Connection.class)));
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
+				will(upgrade(connectionTwo));
+			one(connectionTwo).write(ByteBuffer.wrap(expectedResponse.getBytes()));
+			one(connection).write(ByteBuffer.wrap(new byte[] { (byte) 0x8A, 0x00 }));
+			one(connectionTwo).write(ByteBuffer.wrap(new byte[] { (byte) 0x8A, 0x00 }));
+		}});		
+		
+		cometHandler.handle(connection);
+	}
+
+	@Test
+	public void acceptsPermessageDeflateWhenCompressionIsEnabled() throws Exception {
+		final String rawHttpRequest = "GET /streamhubws/ HTTP/1.1\r\n"+
+								"Upgrade: websocket\r\n"+
+								"Connection: Upgrade\r\n"+
+								"Host: localhost:7979\r\n"+
+								"Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"+
+								"Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"+
+								"Sec-WebSocket-Version: 13\r\n\r\n";
+		final String expectedResponse = "HTTP/1.1 101 Switching Protocols\r\n" +
+								"Upgrade: websocket\r\n" +
+								"Connection: Upgrade\r\n" +
+								"Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n" +
+								"Sec-WebSocket-Extensions: permessage-deflate; server_no_context_takeover; client_no_context_takeover\r\n" +
+								"Server: StreamHub\r\n\r\n";
+		context.checking(new Expectations() {{
+			allowing(connection).getRequest();
+				will(returnValue(request));
+			one(request).getContext();
+				will(returnValue("/streamhubws"));
+			one(request).getUrl();
+				will(returnValue("/streamhubws/"));
+			allowing(connection).readBytes();
+				will(returnValue(rawHttpRequest.getBytes()));
+			one(connection).setReadableEventInterceptor(with(any(Connection.class)));
+			one(connection).write(ByteBuffer.wrap(expectedResponse.getBytes()));
+			one(request).isKeepAliveConnection();
+				will(returnValue(true));
+		}});		
+		
+		cometHandler.setWebSocketCompression(true);
+		cometHandler.handle(connection);
+	}
+
+	/**
+	 * Upgrades <code>other</code> while the first connection's upgrade is 
+	 * writing its handshake response
+	 */
+	private CustomAction upgrade(final Connection other) {
+		return new CustomAction("upgrade another connection") {
+			public Object invoke(Invocation invocation) throws Throwable {
+				cometHandler.handle(other);
+				return null;
+			}
+		};
+	}
 }
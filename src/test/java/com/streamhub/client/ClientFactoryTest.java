@@ -88,6 +88,9 @@ public class ClientFactoryTest {
 			public boolean isKeepAliveConnection() {
 				return false;
 			}
+			public boolean isPersistentConnection() {
+				return false;
+			}
 			public boolean isRequestIFrameConnection() {
 				return false;
 			}
@@ -23,6 +23,7 @@ import com.streamhub.api.JsonPayload;
 import com.streamhub.api.Payload;
 import com.streamhub.request.Request;
 import com.streamhub.tools.NullPayload;
+import com.streamhub.util.ChunkedUtils;
 
 @RunWith(JMock.class)
 public class CometClientTest {
@@ -43,6 +44,7 @@ public class CometClientTest {
 		channel = context.mock(SocketChannel.class);
 		context.checking(new Expectations() {{
 			ignoring(connection).isSecure();
+			allowing(connection).isWritable(); will(returnValue(true));
 		}});
 	}
 	
@@ -157,6 +159,42 @@ public class CometClientTest {
 	    assertEquals("[{\"topic\":\"A\",\"B\":\"C\"},{\"D\":\"E\",\"topic\":\"B\"}]", queuedMessages);
 	}
 	
+	@Test
+	public void testConflatingClientOnlyQueuesLatestMessagePerTopic() throws Exception {
+		context.checking(new Expectations() {{
+			exactly(1).of(request).getUid(); will(returnValue("1"));
+		}});
+		
+		IStreamingClient client = CometClient.createFrom(request, clientListener, true);
+		client.send("A", new JsonPayload("A") {{ addField("B", "C"); }});
+		client.send("B", new JsonPayload("B") {{ addField("D", "E"); }});
+		client.send("A", new JsonPayload("A") {{ addField("B", "F"); }});
+		String queuedMessages = getQueuedMessagesAsString(client);
+		assertEquals("[{\"topic\":\"A\",\"B\":\"F\"},{\"D\":\"E\",\"topic\":\"B\"}]", queuedMessages);
+	}
+	
+	@Test
+	public void testReportsQueuedBytes() throws Exception {
+		context.checking(new Expectations() {{
+			exactly(2).of(request).getUid(); will(returnValue("1"));
+		}});
+		
+		JsonPayload payload = new JsonPayload("A") {{ addField("B", "C"); }};
+		int messageSize = payload.toCometBytes().length;
+		IStreamingClient fifoClient = CometClient.createFrom(request, clientListener);
+		IStreamingClient conflatingClient = CometClient.createFrom(request, clientListener, true);
+		
+		for (int i = 0; i < 3; i++) {
+			fifoClient.send("A", payload);
+			conflatingClient.send("A", payload);
+		}
+		
+		assertEquals(3 * messageSize, fifoClient.getQueuedBytes());
+		assertEquals(messageSize, conflatingClient.getQueuedBytes());
+		fifoClient.getQueuedMessages();
+		assertEquals(0, fifoClient.getQueuedBytes());
+	}
+	
 	@Test
 	public void testClearsQueuedMessagesWhenDestroyed() throws Exception {
 		context.checking(new Expectations() {{
@@ -323,6 +361,31 @@ public class CometClientTest {
 		assertFalse(postUnsubscribeSubscriptions.contains("AAPL"));
 	}
 
+	@Test
+	public void endsChunkedResponseWhenBudgetIsSpent() throws Exception {
+		context.checking(new Expectations() {{
+			one(request).getUid(); will(returnValue("1"));
+			allowing(connection).getBytesWritten(); will(onConsecutiveCalls(returnValue(100L), returnValue(100L), returnValue(150L), returnValue(150L), returnValue(150L)));
+			one(clientListener).clientConnected(with(any(IStreamingClient.class)));
+			one(connection).write(with(any(ByteBuffer.class)));
+			one(connection).setSelfClosing(true);
+			one(connection).write(ByteBuffer.wrap(ChunkedUtils.LAST_CHUNK));
+			one(clientListener).clientLostConnection(with(any(IStreamingClient.class)));
+			ignoring(connection).getChannel();
+		}});
+		
+		CometClient client = (CometClient) CometClient.createFrom(request, clientListener);
+		client.setResponseBudget(160);
+		client.setConnection(connection);
+		client.setResponseLength(IStreamingClient.CHUNKED_RESPONSE);
+		client.onConnect();
+		client.send("first", new JsonPayload("first"));
+		client.send("second", new JsonPayload("second"));
+		
+		assertFalse(client.isConnected());
+		assertTrue(getQueuedMessagesAsString(client).contains("second"));
+	}
+
 	private static String getQueuedMessagesAsString(IStreamingClient client) {
 		return client.getQueuedMessages();
 	}
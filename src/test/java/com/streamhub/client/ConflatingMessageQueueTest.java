@@ -0,0 +1,50 @@
+package com.streamhub.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.streamhub.api.JsonPayload;
+import com.streamhub.api.Payload;
+
+public class ConflatingMessageQueueTest {
+	@Test
+	public void testReplacesQueuedMessageForSameTopicInPlace() throws Exception {
+		MessageQueue queue = new ConflatingMessageQueue();
+		Payload firstA = new JsonPayload("A");
+		Payload b = new JsonPayload("B");
+		Payload secondA = new JsonPayload("A") {{ addField("Price", "101"); }};
+		
+		queue.add(message("A", firstA));
+		queue.add(message("B", b));
+		queue.add(message("A", secondA));
+		
+		assertEquals(2, queue.size());
+		Iterator<Message> messages = queue.iterator();
+		assertSame(secondA, messages.next().payload);
+		assertSame(b, messages.next().payload);
+	}
+	
+	@Test
+	public void testQueuedBytesOnlyCountsLatestMessagePerTopic() throws Exception {
+		MessageQueue queue = new ConflatingMessageQueue();
+		Payload small = new JsonPayload("A");
+		Payload large = new JsonPayload("A") {{ addField("Description", "A much longer field value"); }};
+		
+		queue.add(message("A", small));
+		queue.add(message("A", large));
+		
+		assertEquals(large.toCometBytes().length, queue.getQueuedBytes());
+		queue.clear();
+		assertEquals(0, queue.getQueuedBytes());
+		assertEquals(0, queue.size());
+	}
+	
+	private static Message message(String topic, Payload payload) {
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		return new Message(topic, encodedPayload, encodedPayload.cometFrame().remaining());
+	}
+}
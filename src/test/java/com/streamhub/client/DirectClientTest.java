@@ -5,6 +5,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 import org.jmock.Expectations;
@@ -38,6 +39,9 @@ public class DirectClientTest {
 		requestWithDifferentUid = context.mock(Request.class, "RequestTwo");
 		clientListener = context.mock(ClientConnectionListener.class);
 		connection = context.mock(Connection.class);
+		context.checking(new Expectations() {{
+			allowing(connection).isWritable(); will(returnValue(true));
+		}});
 	}
 	
 	@Test
@@ -107,7 +111,7 @@ public class DirectClientTest {
 	public void losesConnectionIfSendThrowsException() throws Exception {
 		context.checking(new Expectations() {{
 			one(request).getUid(); will(returnValue("1"));
-			one(connection).write(with(any(String.class))); 
+			one(connection).write(with(any(ByteBuffer.class))); 
 				will(throwException(new IOException("")));
 			one(clientListener).clientConnected(with(any(IStreamingClient.class)));
 			one(clientListener).clientLostConnection(with(any(IStreamingClient.class)));
@@ -163,7 +167,7 @@ public class DirectClientTest {
 		final String expectedMessage = DirectHandler.DIRECT_MESSAGE_SEPARATOR + expectedJson + DirectHandler.DIRECT_MESSAGE_SEPARATOR;
 		context.checking(new Expectations() {{
 			one(request).getUid(); will(returnValue("1"));
-			one(connection).write(expectedMessage);
+			one(connection).write(ByteBuffer.wrap(expectedMessage.getBytes()));
 			one(clientListener).clientConnected(with(any(IStreamingClient.class)));
 			ignoring(connection).getChannel();
 		}});
@@ -196,7 +200,7 @@ public class DirectClientTest {
 		final String expectedMessage = DirectHandler.DIRECT_MESSAGE_SEPARATOR + expectedJson + DirectHandler.DIRECT_MESSAGE_SEPARATOR;
 		context.checking(new Expectations() {{
 			one(request).getUid(); will(returnValue("1"));
-			one(connection).write(expectedMessage);
+			one(connection).write(ByteBuffer.wrap(expectedMessage.getBytes()));
 			ignoring(connection).getChannel();
 		}});
 		
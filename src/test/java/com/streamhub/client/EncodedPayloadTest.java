@@ -0,0 +1,90 @@
+package com.streamhub.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.streamhub.api.JsonPayload;
+import com.streamhub.util.BinaryFrames;
+import com.streamhub.util.ChunkedUtils;
+import com.streamhub.util.WebSocketUtils;
+
+public class EncodedPayloadTest {
+	@Test
+	public void encodesCometFrameFromCometBytes() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		assertEquals(ByteBuffer.wrap(payload.toCometBytes()), encodedPayload.cometFrame());
+	}
+	
+	@Test
+	public void encodesChunkedCometFrame() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		assertEquals(ByteBuffer.wrap(ChunkedUtils.createChunk(payload.toCometBytes())), encodedPayload.chunkedCometFrame());
+	}
+	
+	@Test
+	public void encodesWebSocketFrame() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		assertEquals(ByteBuffer.wrap(WebSocketUtils.createMessage(payload.toString())), encodedPayload.webSocketFrame());
+	}
+	
+	@Test
+	public void encodesDirectFrame() throws Exception {
+		EncodedPayload encodedPayload = new EncodedPayload(new JsonPayload("TOPIC"));
+		assertEquals(ByteBuffer.wrap("@@{\"topic\":\"TOPIC\"}@@".getBytes()), encodedPayload.directFrame());
+	}
+	
+	@Test
+	public void handsOutIndependentReadOnlyDuplicates() throws Exception {
+		EncodedPayload encodedPayload = new EncodedPayload(new JsonPayload("TOPIC"));
+		ByteBuffer first = encodedPayload.directFrame();
+		ByteBuffer second = encodedPayload.directFrame();
+		assertNotSame(first, second);
+		assertTrue(first.isReadOnly());
+		first.get(new byte[first.remaining()]);
+		assertEquals(0, first.remaining());
+		assertEquals(first.limit(), second.remaining());
+	}
+	
+	@Test
+	public void encodesRfc6455Frame() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		assertEquals(ByteBuffer.wrap(WebSocketUtils.createFrame(payload.toString())), encodedPayload.rfc6455Frame());
+	}
+
+	@Test
+	public void encodesBinaryFrame() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(payload);
+		assertEquals(ByteBuffer.wrap(BinaryFrames.createFrame(BinaryFrames.OPCODE_MESSAGE, BinaryFrames.NO_TOPIC, payload.toString())), encodedPayload.binaryFrame());
+	}
+
+	@Test
+	public void sendsTopicIdInBinaryFrame() throws Exception {
+		JsonPayload payload = new JsonPayload("TOPIC");
+		EncodedPayload encodedPayload = new EncodedPayload(300, payload);
+		assertEquals(ByteBuffer.wrap(BinaryFrames.createFrame(BinaryFrames.OPCODE_MESSAGE, 300, payload.toString())), encodedPayload.binaryFrame());
+	}
+
+	@Test
+	public void sendsDeflatedFrameOnlyWhenCompressionHelps() throws Exception {
+		JsonPayload small = new JsonPayload("A");
+		assertEquals(ByteBuffer.wrap(WebSocketUtils.createFrame(small.toString())), new EncodedPayload(small).deflatedRfc6455Frame());
+
+		JsonPayload large = new JsonPayload("TOPIC");
+		for (int i = 0; i < 20; i++) {
+			large.addField("Field" + i, "1.2345");
+		}
+		ByteBuffer frame = new EncodedPayload(large).deflatedRfc6455Frame();
+		assertEquals((byte) 0xc1, frame.get(0));
+		assertTrue(frame.remaining() < large.toString().length());
+	}
+}
@@ -1,5 +1,7 @@
 package com.streamhub.client;
 
+import static org.junit.Assert.assertEquals;
+
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.integration.junit4.JMock;
@@ -8,7 +10,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.nio.ByteBuffer;
+
 import com.streamhub.Connection;
+import com.streamhub.api.JsonPayload;
+import com.streamhub.api.SlowConsumerPolicy;
 import com.streamhub.request.Request;
 
 
@@ -54,4 +60,58 @@ public class StreamingClientTest {
 		client.setConnection(connection);
 		client.disconnect();
 	}
+	
+	@Test
+	public void disconnectsSlowConsumerByDefault() throws Exception {
+		context.checking(new Expectations() {{
+			allowing(connection).isWritable(); will(returnValue(false));
+			never(connection).write(with(any(ByteBuffer.class)));
+			one(clientListener).clientLostConnection(client);
+			one(connection).close();
+			ignoring(connection).getChannel();
+		}});
+		
+		client.setConnection(connection);
+		client.send("AAPL", new JsonPayload("AAPL"));
+	}
+	
+	@Test
+	public void dropsMessagesForSlowConsumer() throws Exception {
+		context.checking(new Expectations() {{
+			allowing(connection).isWritable(); will(returnValue(false));
+			never(connection).write(with(any(ByteBuffer.class)));
+			ignoring(connection).getChannel();
+		}});
+		
+		client.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+		client.setConnection(connection);
+		client.send("AAPL", new JsonPayload("AAPL"));
+	}
+	
+	@Test
+	public void conflatesMessagesForSlowConsumerUntilWritable() throws Exception {
+		final JsonPayload latest = new JsonPayload("AAPL") {{ addField("price", "2"); }};
+		context.checking(new Expectations() {{
+			exactly(2).of(connection).isWritable(); will(returnValue(false));
+			exactly(2).of(connection).setWritabilityListener(client);
+			allowing(connection).getQueuedBytes(); will(returnValue(0L));
+			ignoring(connection).getChannel();
+		}});
+		
+		client.setSlowConsumerPolicy(SlowConsumerPolicy.CONFLATE);
+		client.setConnection(connection);
+		client.send("AAPL", new JsonPayload("AAPL") {{ addField("price", "1"); }});
+		client.send("AAPL", latest);
+		assertEquals(latest.toCometBytes().length, client.getQueuedBytes());
+		
+		context.checking(new Expectations() {{
+			allowing(connection).isWritable(); will(returnValue(true));
+			one(clientListener).clientConnected(client);
+			one(connection).write(with(any(ByteBuffer.class)));
+		}});
+		
+		client.onConnect();
+		client.onWritable();
+		assertEquals(0, client.getQueuedBytes());
+	}
 }
@@ -0,0 +1,93 @@
+package com.streamhub.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.streamhub.reader.MessageListener;
+import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.WebSocketUtils;
+
+public class HixieFrameDecoderTest {
+	private final HixieFrameDecoder decoder = new HixieFrameDecoder(64);
+	private final List<String> messages = new ArrayList<String>();
+	private final MessageListener listener = new MessageListener() {
+		public void onMessage(String message) {
+			messages.add(message);
+		}
+	};
+
+	@Test
+	public void decodesSingleWellFormedMessage() throws Exception {
+		decode(WebSocketUtils.createMessage("Hello World"));
+		assertEquals("[Hello World]", messages.toString());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void decodesMultipleWellFormedMessages() throws Exception {
+		decode(ArrayUtils.concat(WebSocketUtils.createMessage("Hello World"), WebSocketUtils.createMessage("Bye Now")));
+		assertEquals("[Hello World, Bye Now]", messages.toString());
+	}
+
+	@Test
+	public void skipsBytesOutsideFrames() throws Exception {
+		decode(ArrayUtils.concatAll("aiofiashof".getBytes(), WebSocketUtils.createMessage("Hello World"), "aiofiashof".getBytes(), new byte[] { 0x00 }, "sadfsf".getBytes()));
+		assertEquals("[Hello World]", messages.toString());
+		assertEquals("sadfsf".length(), decoder.getPendingBytes());
+	}
+
+	@Test
+	public void decodesBlankMessages() throws Exception {
+		decode(WebSocketUtils.createMessage(""));
+		assertEquals("[]", messages.toString());
+		assertEquals(1, messages.size());
+	}
+
+	@Test
+	public void handsOnEachMessageAsSoonAsItEnds() throws Exception {
+		byte[] input = ArrayUtils.concat(WebSocketUtils.createMessage("uid=1"), WebSocketUtils.createMessage("subscribe=A"));
+		decode(slice(input, 0, 10));
+		assertEquals("[uid=1]", messages.toString());
+		assertEquals(2, decoder.getPendingBytes());
+
+		decode(slice(input, 10, input.length));
+		assertEquals("[uid=1, subscribe=A]", messages.toString());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void decodesUtf8Text() throws Exception {
+		decode(ArrayUtils.concatAll(new byte[] { 0x00 }, WebSocketUtils.toUtf8("caf\u00e9"), new byte[] { (byte) 0xff }));
+		assertEquals("[caf\u00e9]", messages.toString());
+	}
+
+	@Test
+	public void closesOnClosingHandshake() throws Exception {
+		decode(ArrayUtils.concat(new byte[] { (byte) 0xff, 0x00 }, WebSocketUtils.createMessage("ignored")));
+		assertTrue(decoder.isClosed());
+		assertEquals(0, messages.size());
+	}
+
+	@Test
+	public void closesWhenAMessageIsLongerThanTheMaximum() throws Exception {
+		decode(new byte[] { 0x00 });
+		decode(new byte[65]);
+		assertTrue(decoder.isClosed());
+	}
+
+	private void decode(byte[] input) {
+		decoder.decode(ByteBuffer.wrap(input), listener);
+	}
+
+	private static byte[] slice(byte[] bytes, int from, int to) {
+		byte[] slice = new byte[to - from];
+		System.arraycopy(bytes, from, slice, 0, slice.length);
+		return slice;
+	}
+}
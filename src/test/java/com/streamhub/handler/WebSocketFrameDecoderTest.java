@@ -0,0 +1,153 @@
+package com.streamhub.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.PerMessageDeflate;
+import com.streamhub.util.WebSocketUtils;
+
+public class WebSocketFrameDecoderTest {
+	private final WebSocketFrameDecoder decoder = new WebSocketFrameDecoder(1024);
+	private final List<String> events = new ArrayList<String>();
+	private final WebSocketFrameListener listener = new WebSocketFrameListener() {
+		public void onMessage(String message) {
+			events.add("message:" + message);
+		}
+
+		public void onPing(byte[] payload) {
+			events.add("ping:" + new String(payload));
+		}
+
+		public void onPong(byte[] payload) {
+			events.add("pong:" + new String(payload));
+		}
+
+		public void onClose(int statusCode) {
+			events.add("close:" + statusCode);
+		}
+	};
+
+	@Test
+	public void decodesMaskedTextFrame() throws Exception {
+		decode(clientFrame(0x81, "subscribe=A,B"));
+		assertEquals("[message:subscribe=A,B]", events.toString());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void keepsOnlyTheIncompleteFrameBetweenReads() throws Exception {
+		byte[] frames = ArrayUtils.concat(clientFrame(0x81, "first"), clientFrame(0x81, "second"));
+		int split = frames.length - 3;
+		decode(slice(frames, 0, split));
+
+		assertEquals("[message:first]", events.toString());
+		assertEquals(split - clientFrame(0x81, "first").length, decoder.getPendingBytes());
+
+		decode(slice(frames, split, frames.length));
+		assertEquals("[message:first, message:second]", events.toString());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void decodesExtendedPayloadLength() throws Exception {
+		String message = new String(new char[300]).replace('\0', 'x');
+		decode(clientFrame(0x81, message));
+		assertEquals("[message:" + message + "]", events.toString());
+	}
+
+	@Test
+	public void reassemblesFragmentedMessagesAroundControlFrames() throws Exception {
+		decode(ArrayUtils.concatAll(clientFrame(0x01, "publish(A,"), clientFrame(0x89, "hi"), clientFrame(0x80, "{})")));
+		assertEquals("[ping:hi, message:publish(A,{})]", events.toString());
+	}
+
+	@Test
+	public void decodesUtf8Text() throws Exception {
+		decode(clientFrame(0x81, "caf\u00e9"));
+		assertEquals("[message:caf\u00e9]", events.toString());
+	}
+
+	@Test
+	public void reportsCloseStatusAndIgnoresLaterInput() throws Exception {
+		decode(ArrayUtils.concat(clientFrame(0x88, new byte[] { 0x03, (byte) 0xe9 }), clientFrame(0x81, "ignored")));
+		assertEquals("[close:1001]", events.toString());
+		assertTrue(decoder.isClosed());
+	}
+
+	@Test
+	public void rejectsUnmaskedFrames() throws Exception {
+		decode(WebSocketUtils.createFrame("unmasked"));
+		assertEquals("[close:" + WebSocketFrameDecoder.CLOSE_PROTOCOL_ERROR + "]", events.toString());
+	}
+
+	@Test
+	public void rejectsMessagesLongerThanTheMaximum() throws Exception {
+		decode(clientFrame(0x01, new byte[1000]));
+		decode(clientFrame(0x80, new byte[100]));
+		assertEquals("[close:" + WebSocketFrameDecoder.CLOSE_MESSAGE_TOO_BIG + "]", events.toString());
+	}
+
+	@Test
+	public void inflatesCompressedMessagesWhenDeflating() throws Exception {
+		WebSocketFrameDecoder deflatingDecoder = new WebSocketFrameDecoder(1024, true);
+		byte[] compressed = compress("publish(A,{\"Bid\":\"1.2345\",\"Ask\":\"1.2346\"})");
+		int split = compressed.length / 2;
+		byte[] frames = ArrayUtils.concatAll(clientFrame(0xc1, compress("caf\u00e9")),
+				clientFrame(0x41, slice(compressed, 0, split)), clientFrame(0x80, slice(compressed, split, compressed.length)));
+
+		deflatingDecoder.decode(ByteBuffer.wrap(frames), listener);
+		assertEquals("[message:caf\u00e9, message:publish(A,{\"Bid\":\"1.2345\",\"Ask\":\"1.2346\"})]", events.toString());
+	}
+
+	@Test
+	public void rejectsCompressedFramesUnlessDeflating() throws Exception {
+		decode(clientFrame(0xc1, compress("compressed")));
+		assertEquals("[close:" + WebSocketFrameDecoder.CLOSE_PROTOCOL_ERROR + "]", events.toString());
+	}
+
+	@Test
+	public void rejectsInvalidCompressedData() throws Exception {
+		new WebSocketFrameDecoder(1024, true).decode(ByteBuffer.wrap(clientFrame(0xc1, new byte[] { (byte) 0xff, (byte) 0xff })), listener);
+		assertEquals("[close:" + WebSocketFrameDecoder.CLOSE_INVALID_DATA + "]", events.toString());
+	}
+
+	private void decode(byte[] input) {
+		decoder.decode(ByteBuffer.wrap(input), listener);
+	}
+
+	private static byte[] compress(String message) {
+		return PerMessageDeflate.getInstance().compress(WebSocketUtils.toUtf8(message));
+	}
+
+	private static byte[] slice(byte[] bytes, int from, int to) {
+		byte[] slice = new byte[to - from];
+		System.arraycopy(bytes, from, slice, 0, slice.length);
+		return slice;
+	}
+
+	private static byte[] clientFrame(int firstByte, String payload) {
+		return clientFrame(firstByte, WebSocketUtils.toUtf8(payload));
+	}
+
+	private static byte[] clientFrame(int firstByte, byte[] payload) {
+		byte[] mask = new byte[] { 0x37, (byte) 0xfa, 0x21, 0x3d };
+		byte[] serverFrame = WebSocketUtils.createFrame(firstByte & 0x0f, payload);
+		int headerLength = serverFrame.length - payload.length;
+		ByteBuffer frame = ByteBuffer.allocate(serverFrame.length + mask.length);
+		frame.put((byte) firstByte);
+		frame.put((byte) (serverFrame[1] | 0x80));
+		frame.put(serverFrame, 2, headerLength - 2);
+		frame.put(mask);
+		for (int i = 0; i < payload.length; i++) {
+			frame.put((byte) (payload[i] ^ mask[i & 3]));
+		}
+		return frame.array();
+	}
+}
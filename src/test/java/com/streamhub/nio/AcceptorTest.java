@@ -1,6 +1,11 @@
 package com.streamhub.nio;
 
+import static org.junit.Assert.assertEquals;
+
+import java.net.Socket;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -10,6 +15,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.streamhub.util.Sleep;
+import com.streamhub.util.SocketUtils;
+
 @RunWith(JMock.class)
 public class AcceptorTest {
 	private Mockery context;
@@ -33,4 +41,42 @@ public class AcceptorTest {
 		
 		acceptor.createConnection(channel);
 	}
+
+	@Test
+	public void acceptsEveryConnectionInABurst() throws Exception {
+		final Acceptor acceptor = new Acceptor(0, null, new NIOConnectionFactory());
+		acceptor.setAcceptorThreads(2);
+		acceptor.setBacklog(128);
+		new Thread(acceptor).start();
+		waitUntilRunning(acceptor);
+		List<Socket> sockets = new ArrayList<Socket>();
+
+		try {
+			int port = acceptor.serverChannel.socket().getLocalPort();
+			for (int i = 0; i < 50; i++) {
+				sockets.add(new Socket("localhost", port));
+			}
+
+			for (int i = 0; i < 50 && acceptor.dispatcherPool.getConnectionCount() < 50; i++) {
+				Sleep.millis(20);
+			}
+			assertEquals(50, acceptor.dispatcherPool.getConnectionCount());
+		} finally {
+			acceptor.stop();
+			for (Socket socket : sockets) {
+				SocketUtils.closeQuietly(socket);
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void acceptorThreadsMustBePositive() throws Exception {
+		new Acceptor(0, null, factory).setAcceptorThreads(0);
+	}
+
+	private void waitUntilRunning(Acceptor acceptor) {
+		for (int i = 0; i < 50 && ! acceptor.isRunning; i++) {
+			Sleep.millis(20);
+		}
+	}
 }
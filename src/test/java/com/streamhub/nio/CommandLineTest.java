@@ -50,6 +50,22 @@ public class CommandLineTest {
 		assertEquals(new URL("http://localhost:232/conf/log4j.xml"), options.loggingUrl);
 	}
 	
+	@Test
+	public void testParsesDispatchersOption() throws Exception {
+		String[] args = { "--dispatchers=32", "7979", "6969" };
+		Options options = CommandLine.parse(args);
+		assertEquals(32, options.dispatchers);
+		assertEquals(new InetSocketAddress(7979), options.serverAddress);
+		assertEquals(new InetSocketAddress(6969), options.streamingAdapterAddress);
+	}
+	
+	@Test
+	public void testDispatchersDefaultToAvailableProcessors() throws Exception {
+		String[] args = { "7979" };
+		Options options = CommandLine.parse(args);
+		assertEquals(Runtime.getRuntime().availableProcessors(), options.dispatchers);
+	}
+	
 	@Test
 	public void testPrintUsage() throws Exception {
 		System.out.println(CommandLine.usage());
@@ -0,0 +1,49 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DirectBufferPoolTest {
+	@Test
+	public void reusesReleasedBuffers() throws Exception {
+		DirectBufferPool pool = new DirectBufferPool(16, 2);
+		ByteBuffer buffer = pool.borrow();
+		assertTrue(buffer.isDirect());
+		assertEquals(16, buffer.capacity());
+		assertEquals(1, pool.getBuffersInUse());
+		buffer.put((byte) 1);
+		pool.release(buffer);
+		
+		ByteBuffer reused = pool.borrow();
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(2, pool.getBorrows());
+		assertEquals(1, pool.getMisses());
+	}
+	
+	@Test
+	public void doesNotPoolMoreThanTheMaximum() throws Exception {
+		DirectBufferPool pool = new DirectBufferPool(16, 1);
+		ByteBuffer first = pool.borrow();
+		ByteBuffer second = pool.borrow();
+		assertEquals(2, pool.getMisses());
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.getPooledBuffers());
+		assertEquals(0, pool.getBuffersInUse());
+	}
+
+	@Test
+	public void engineBuffersArePooledBySize() throws Exception {
+		DirectBufferPool pool = DirectBufferPool.engineBuffers(16709);
+		assertSame(pool, DirectBufferPool.engineBuffers(16709));
+		assertNotSame(pool, DirectBufferPool.engineBuffers(16704));
+		assertEquals(16709, pool.getBufferSize());
+	}
+}
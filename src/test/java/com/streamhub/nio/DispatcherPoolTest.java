@@ -0,0 +1,82 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.streamhub.Connection;
+import com.streamhub.util.SocketUtils;
+
+public class DispatcherPoolTest {
+	private final List<SocketChannel> channels = new ArrayList<SocketChannel>();
+	private ServerSocketChannel serverChannel;
+	private DispatcherPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+		pool = new DispatcherPool(null, 3);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.stop();
+		for (SocketChannel channel : channels) {
+			SocketUtils.closeQuietly(channel);
+		}
+		SocketUtils.closeQuietly(serverChannel);
+	}
+
+	@Test
+	public void nextDispatcherIsTheLeastLoaded() throws Exception {
+		Dispatcher busy = pool.nextDispatcher();
+		busy.register(newConnection());
+		busy.register(newConnection());
+
+		Dispatcher first = pool.nextDispatcher();
+		first.register(newConnection());
+		Dispatcher second = pool.nextDispatcher();
+		second.register(newConnection());
+
+		assertNotSame(busy, first);
+		assertNotSame(busy, second);
+		assertNotSame(first, second);
+		assertEquals(2, busy.getRegisteredChannels());
+		assertEquals(4, pool.getConnectionCount());
+	}
+
+	@Test
+	public void dispatchersAreRegisteredAsMBeansUntilStopped() throws Exception {
+		Dispatcher dispatcher = pool.nextDispatcher();
+		ObjectName name = new ObjectName("com.streamhub.nio:type=Dispatcher,name=" + dispatcher.getName());
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		
+		pool.stop();
+		
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	private Connection newConnection() throws Exception {
+		SocketChannel client = SocketChannel.open(serverChannel.socket().getLocalSocketAddress());
+		SocketChannel accepted = serverChannel.accept();
+		channels.add(client);
+		channels.add(accepted);
+		return new NIOConnection(accepted);
+	}
+}
@@ -0,0 +1,73 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.streamhub.util.SocketUtils;
+
+public class DispatcherTest {
+	private static final int LARGE_MESSAGE = 8 * 1024 * 1024;
+	private ServerSocketChannel serverChannel;
+	private SocketChannel client;
+	private SocketChannel accepted;
+	private Dispatcher dispatcher;
+
+	@Before
+	public void setUp() throws Exception {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+		client = SocketChannel.open(serverChannel.socket().getLocalSocketAddress());
+		accepted = serverChannel.accept();
+		dispatcher = new Dispatcher(null);
+		new Thread(dispatcher).start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		dispatcher.stop();
+		SocketUtils.closeQuietly(client);
+		SocketUtils.closeQuietly(accepted);
+		SocketUtils.closeQuietly(serverChannel);
+	}
+
+	@Test
+	public void writeInterestRegisteredFromAnotherThreadIsApplied() throws Exception {
+		NIOConnection connection = new NIOConnection(accepted);
+		dispatcher.register(connection);
+
+		connection.write(ByteBuffer.wrap(new byte[LARGE_MESSAGE]));
+
+		assertEquals(LARGE_MESSAGE, readFully(client));
+	}
+
+	@Test
+	public void registrationsAreCountedStraightAway() throws Exception {
+		dispatcher.register(new NIOConnection(accepted));
+
+		assertEquals(1, dispatcher.getRegisteredChannels());
+	}
+
+	private int readFully(SocketChannel channel) throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(65536);
+		int total = 0;
+
+		while (total < LARGE_MESSAGE) {
+			int read = channel.read(buffer);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+			buffer.clear();
+		}
+
+		return total;
+	}
+}
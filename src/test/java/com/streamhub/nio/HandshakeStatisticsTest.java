@@ -0,0 +1,56 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HandshakeStatisticsTest {
+	private HandshakeStatistics statistics;
+
+	@Before
+	public void setUp() throws Exception {
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(null, null, null);
+		statistics = new HandshakeStatistics(sslContext.getServerSessionContext());
+	}
+
+	@Test
+	public void countsFullAndResumedHandshakesSeparately() throws Exception {
+		statistics.recordHandshake(false, 40000000);
+		statistics.recordHandshake(true, 10000000);
+		statistics.recordHandshake(true, 10000000);
+
+		assertEquals(1, statistics.getFullHandshakes());
+		assertEquals(2, statistics.getResumedHandshakes());
+		assertEquals(20.0, statistics.getAverageHandshakeMillis(), 0.001);
+		assertEquals(40, statistics.getMaxHandshakeMillis());
+	}
+
+	@Test
+	public void histogramCountsEachHandshakeInTheFirstBucketAboveIt() throws Exception {
+		long[] buckets = statistics.getHandshakeMillisBuckets();
+		statistics.recordHandshake(false, 0);
+		statistics.recordHandshake(false, buckets[2] * 1000000);
+		statistics.recordHandshake(false, buckets[buckets.length - 1] * 1000000);
+
+		long[] histogram = statistics.getHandshakeMillisHistogram();
+		assertEquals(buckets.length + 1, histogram.length);
+		assertEquals(1, histogram[0]);
+		assertEquals(1, histogram[3]);
+		assertEquals(1, histogram[buckets.length]);
+	}
+
+	@Test
+	public void resetClearsCountsAndHistogram() throws Exception {
+		statistics.recordHandshake(false, 1000000);
+		statistics.recordFailure();
+		statistics.resetStatistics();
+
+		assertEquals(0, statistics.getFullHandshakes());
+		assertEquals(0, statistics.getFailedHandshakes());
+		assertEquals(0, statistics.getHandshakeMillisHistogram()[1]);
+	}
+}
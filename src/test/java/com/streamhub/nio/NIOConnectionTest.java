@@ -1,7 +1,9 @@
 package com.streamhub.nio;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -9,7 +11,10 @@ import java.nio.channels.SocketChannel;
 import org.apache.commons.lang.StringUtils;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
 import org.jmock.integration.junit4.JMock;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,6 +22,8 @@ import org.junit.runner.RunWith;
 
 import com.streamhub.Connection;
 import com.streamhub.DirectHandler;
+import com.streamhub.WritabilityListener;
+import com.streamhub.WriteRegister;
 import com.streamhub.handler.Handler;
 import com.streamhub.request.Request;
 
@@ -106,6 +113,27 @@ public class NIOConnectionTest {
 		assertEquals(DirectHandler.MAGIC_DIRECT_CONNECTION_STRING, read);
 	}
 	
+	@Test
+	public void handlesHttpRequestOnlyOnceItHasAllArrived() throws Exception {
+		final String request = "GET /streamhub/poll/?uid=1 HTTP/1.1\r\nHost: localhost\r\n\r\n";
+		final int split = request.indexOf("\r\n\r\n") + 2;
+		final StringBuilder handled = new StringBuilder();
+		Handler handler = new Handler() {
+			public void handle(Connection connection) throws Exception {
+				handled.append(new String(connection.readBytes()));
+			}
+		};
+		context.checking(new Expectations() {{
+			exactly(4).of(channel).read(with(any(ByteBuffer.class)));
+				will(onConsecutiveCalls(readBytes(request.substring(0, split)), returnValue(0), readBytes(request.substring(split)), returnValue(0)));
+		}});
+		
+		connection.onReadableEvent(handler);
+		assertEquals("", handled.toString());
+		connection.onReadableEvent(handler);
+		assertEquals(request, handled.toString());
+	}
+	
 	@Test
 	public void writingNullDoesNotWriteToChannel() throws Exception {
 		context.checking(new Expectations() {{
@@ -130,6 +158,68 @@ public class NIOConnectionTest {
 		assertNotNull(request);
 	}
 	
+	@Test
+	public void becomesUnwritableAboveHighWatermarkUntilDrainedToLowWatermark() throws Exception {
+		final WriteRegister writeRegister = context.mock(WriteRegister.class);
+		final WritabilityListener listener = context.mock(WritabilityListener.class);
+		connection.setWriteRegister(writeRegister);
+		connection.setWritabilityListener(listener);
+		connection.setWriteWatermarks(4, 8);
+		context.checking(new Expectations() {{
+			one(channel).write(with(any(ByteBuffer[].class)), with(equal(0)), with(equal(1))); will(returnValue(0L));
+			one(writeRegister).registerForWrite(connection);
+		}});
+		
+		connection.write(ByteBuffer.wrap("0123456789".getBytes()));
+		assertFalse(connection.isWritable());
+		assertEquals(10, connection.getQueuedBytes());
+		
+		context.checking(new Expectations() {{
+			one(channel).write(with(any(ByteBuffer[].class)), with(equal(0)), with(equal(1))); will(writeAllRemaining());
+			one(writeRegister).deregisterForWrite(connection);
+			one(listener).onWritable();
+		}});
+		
+		connection.onWriteableEvent();
+		assertTrue(connection.isWritable());
+		assertEquals(0, connection.getQueuedBytes());
+	}
+	
+	@Test
+	public void keepsWriteInterestUntilTheListenerHearsAWriterDrainedTheQueue() throws Exception {
+		final WriteRegister writeRegister = context.mock(WriteRegister.class);
+		final WritabilityListener listener = context.mock(WritabilityListener.class);
+		connection.setWriteRegister(writeRegister);
+		connection.setWritabilityListener(listener);
+		connection.setWriteWatermarks(4, 8);
+		context.checking(new Expectations() {{
+			one(channel).write(with(any(ByteBuffer[].class)), with(equal(0)), with(equal(1))); will(returnValue(0L));
+			one(writeRegister).registerForWrite(connection);
+		}});
+		
+		connection.write(ByteBuffer.wrap("0123456789".getBytes()));
+		
+		context.checking(new Expectations() {{
+			one(channel).write(with(any(ByteBuffer[].class)), with(any(Integer.class)), with(any(Integer.class))); will(writeAllRemaining());
+		}});
+		
+		connection.write(ByteBuffer.wrap("!".getBytes()));
+		assertTrue(connection.isWritable());
+		assertEquals(0, connection.getQueuedBytes());
+		
+		context.checking(new Expectations() {{
+			one(listener).onWritable();
+			one(writeRegister).deregisterForWrite(connection);
+		}});
+		
+		connection.onWriteableEvent();
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void lowWatermarkMustNotExceedHighWatermark() throws Exception {
+		connection.setWriteWatermarks(8, 4);
+	}
+	
 	@Test
 	public void closing() {
 		connection.close();
@@ -142,6 +232,32 @@ public class NIOConnectionTest {
 		return readBuffer;
 	}
 	
+	private static Action readBytes(final String input) {
+		return new CustomAction("read '" + input + "'") {
+			public Object invoke(Invocation invocation) throws Throwable {
+				ByteBuffer buffer = (ByteBuffer) invocation.getParameter(0);
+				buffer.put(input.getBytes());
+				return input.length();
+			}
+		};
+	}
+	
+	private static Action writeAllRemaining() {
+		return new CustomAction("write all remaining bytes") {
+			public Object invoke(Invocation invocation) throws Throwable {
+				ByteBuffer[] buffers = (ByteBuffer[]) invocation.getParameter(0);
+				int offset = (Integer) invocation.getParameter(1);
+				int length = (Integer) invocation.getParameter(2);
+				long written = 0;
+				for (int i = offset; i < offset + length; i++) {
+					written += buffers[i].remaining();
+					buffers[i].position(buffers[i].limit());
+				}
+				return written;
+			}
+		};
+	}
+	
 	private void fireReadableEvent() {
 		connection.onReadableEvent(new Handler() {
 			public void handle(Connection connection) {
@@ -0,0 +1,129 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.streamhub.request.HttpRequestHead;
+
+public class ReadAccumulatorTest {
+	private static final String SUBSCRIBE = "GET /streamhub/subscribe/?uid=1&topic=A HTTP/1.1\r\nHost: localhost\r\n\r\n";
+	private static final String POLL = "GET /streamhub/poll/?uid=1 HTTP/1.1\r\nHost: localhost\r\n\r\n";
+	private final ReadAccumulator input = new ReadAccumulator();
+
+	@Test
+	public void takesPipelinedRequestsOneAtATime() throws Exception {
+		append(SUBSCRIBE + POLL + "GET /str");
+
+		assertTrue(input.isComplete());
+		assertEquals(SUBSCRIBE, new String(input.take()));
+		assertTrue(input.isComplete());
+		assertEquals(POLL, new String(input.take()));
+		assertFalse(input.isComplete());
+		assertEquals("GET /str".length(), input.length());
+	}
+
+	@Test
+	public void keepsTheBodyWithItsRequest() throws Exception {
+		String publish = "POST /streamhub/publish/ HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello";
+		append(publish + POLL);
+
+		assertEquals(publish, new String(input.take()));
+		assertEquals(POLL, new String(input.take()));
+		assertEquals(0, input.length());
+	}
+
+	@Test
+	public void waitsForABodySplitAcrossReads() throws Exception {
+		String head = "POST /streamhub/publish/ HTTP/1.1\r\nContent-Length: 11\r\n\r\n";
+		append(head + "hello");
+
+		assertFalse(input.isComplete());
+		append(" world" + POLL);
+
+		assertTrue(input.isComplete());
+		assertEquals(head + "hello world", new String(input.take()));
+		assertEquals(POLL, new String(input.take()));
+	}
+
+	@Test
+	public void takesEverythingAfterAnUpgradeRequest() throws Exception {
+		String upgrade = "GET /streamhubws/ HTTP/1.1\r\nUpgrade: WebSocket\r\nConnection: Upgrade\r\n\r\n";
+		append(upgrade + "\u0000frame\u00ff");
+
+		assertTrue(input.isUpgradeRequest());
+		assertEquals(upgrade + "\u0000frame\u00ff", new String(input.take(), "ISO-8859-1"));
+	}
+
+	@Test
+	public void treatsBinaryNegotiationAsAnUpgrade() throws Exception {
+		append("@@uid=1@@@@binary@@\u0003\u0004\u0001");
+
+		assertTrue(input.isComplete());
+		assertTrue(input.isUpgradeRequest());
+		assertEquals(22, input.take().length);
+	}
+
+	@Test
+	public void parsesTheHeadOnceWhileTheBodyArrives() throws Exception {
+		String head = "POST /streamhub/publish/ HTTP/1.1\r\nContent-Length: 11\r\n\r\n";
+		append(head + "hello");
+
+		assertFalse(input.isComplete());
+		HttpRequestHead parsed = input.getHead();
+		append(" world");
+
+		assertTrue(input.isComplete());
+		assertSame(parsed, input.getHead());
+		assertEquals("/streamhub/publish/", parsed.getUrl());
+		input.take();
+		assertNull(input.getHead());
+	}
+
+	@Test
+	public void exceedsMaxHeadLengthWithoutTheEndOfTheHead() throws Exception {
+		ReadAccumulator limited = new ReadAccumulator(16, ReadAccumulator.DEFAULT_MAX_BODY_LENGTH);
+		byte[] bytes = "GET /streamhub/poll/?uid=1".getBytes("ISO-8859-1");
+		limited.append(ByteBuffer.wrap(bytes), bytes.length);
+
+		assertTrue(limited.exceedsMaxHeadLength());
+	}
+
+	@Test
+	public void exceedsMaxBodyLengthWithoutWaitingForTheBody() throws Exception {
+		ReadAccumulator limited = new ReadAccumulator(ReadAccumulator.DEFAULT_MAX_HEAD_LENGTH, 16);
+		byte[] bytes = "POST /publish/ HTTP/1.1\r\nContent-Length: 17\r\n\r\n".getBytes("ISO-8859-1");
+		limited.append(ByteBuffer.wrap(bytes), bytes.length);
+
+		assertTrue(limited.exceedsMaxBodyLength());
+		assertFalse(limited.isComplete());
+	}
+
+	@Test
+	public void neverCompletesARequestWhoseContentLengthWouldOverflow() throws Exception {
+		append("POST /publish/ HTTP/1.1\r\nContent-Length: " + Long.MAX_VALUE + "\r\n\r\nbody");
+
+		assertTrue(input.exceedsMaxBodyLength());
+		assertFalse(input.isComplete());
+	}
+
+	@Test
+	public void allowsLongDirectInput() throws Exception {
+		ReadAccumulator limited = new ReadAccumulator(16, ReadAccumulator.DEFAULT_MAX_BODY_LENGTH);
+		byte[] bytes = "@@uid=1@@@@a long streaming adapter message".getBytes("ISO-8859-1");
+		limited.append(ByteBuffer.wrap(bytes), bytes.length);
+
+		assertFalse(limited.exceedsMaxHeadLength());
+	}
+
+	private void append(String data) throws Exception {
+		byte[] bytes = data.getBytes("ISO-8859-1");
+		input.append(ByteBuffer.wrap(bytes), bytes.length);
+	}
+}
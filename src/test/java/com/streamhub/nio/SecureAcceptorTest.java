@@ -0,0 +1,75 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.streamhub.util.Sleep;
+import com.streamhub.util.SocketUtils;
+
+public class SecureAcceptorTest {
+	private SSLContext sslContext;
+
+	@Before
+	public void setUp() throws Exception {
+		sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(null, null, null);
+	}
+
+	@Test
+	public void spreadsConnectionsAcrossSelectorThreads() throws Exception {
+		SecureAcceptor acceptor = new SecureAcceptor(null, 0, null, new SecureNIOConnectionFactory(), sslContext);
+		acceptor.setDispatchers(3);
+		new Thread(acceptor).start();
+		waitUntilRunning(acceptor);
+		List<Socket> sockets = new ArrayList<Socket>();
+
+		try {
+			int port = acceptor.serverChannel.socket().getLocalPort();
+			for (int i = 0; i < 30; i++) {
+				sockets.add(new Socket("localhost", port));
+			}
+
+			for (int i = 0; i < 50 && registeredChannels(acceptor) < 30; i++) {
+				Sleep.millis(20);
+			}
+
+			assertEquals(30, registeredChannels(acceptor));
+			for (SelectorThread selectorThread : acceptor.selectorThreads) {
+				assertTrue(selectorThread.getRegisteredChannels() > 0);
+			}
+		} finally {
+			acceptor.stop();
+			for (Socket socket : sockets) {
+				SocketUtils.closeQuietly(socket);
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void handshakeThreadsMustBePositive() throws Exception {
+		new SecureAcceptor(null, 0, null, new SecureNIOConnectionFactory(), sslContext).setHandshakeThreads(0);
+	}
+
+	private int registeredChannels(SecureAcceptor acceptor) {
+		int channels = 0;
+		for (SelectorThread selectorThread : acceptor.selectorThreads) {
+			channels += selectorThread.getRegisteredChannels();
+		}
+		return channels;
+	}
+
+	private void waitUntilRunning(Acceptor acceptor) {
+		for (int i = 0; i < 50 && ! acceptor.isRunning; i++) {
+			Sleep.millis(20);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.streamhub.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WorkerStageTest {
+	private WorkerStage stage;
+
+	@After
+	public void tearDown() {
+		if (stage != null) {
+			stage.stop();
+		}
+	}
+
+	@Test
+	public void tasksRunOnWorkerThreads() throws Exception {
+		stage = new WorkerStage("test", 2, 10);
+		final String[] threadName = new String[1];
+		final CountDownLatch done = new CountDownLatch(1);
+
+		stage.execute(new Runnable() {
+			public void run() {
+				threadName[0] = Thread.currentThread().getName();
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertTrue(threadName[0].startsWith("Worker-"));
+	}
+
+	@Test
+	public void refusesTasksWhenFullAndResumesParkedCallersAsTasksFinish() throws Exception {
+		stage = new WorkerStage("test", 1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable blocker = new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		assertTrue(stage.execute(blocker));
+		assertTrue(stage.execute(blocker));
+		final CountDownLatch resumed = new CountDownLatch(1);
+		final Thread[] resumedOn = new Thread[1];
+
+		assertFalse(stage.execute(blocker));
+		stage.park(new Runnable() {
+			public void run() {
+				resumedOn[0] = Thread.currentThread();
+				resumed.countDown();
+			}
+		});
+
+		assertEquals(1, stage.getRefusals());
+		assertEquals(1, stage.getParkedConnections());
+		release.countDown();
+		assertTrue(resumed.await(1, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), resumedOn[0]);
+		assertEquals(0, stage.getParkedConnections());
+	}
+
+	@Test
+	public void eachStageHasItsOwnMBean() throws Exception {
+		stage = new WorkerStage("1", 1, 1);
+		WorkerStage other = new WorkerStage("2", 1, 1);
+		try {
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			assertTrue(mbs.isRegistered(new ObjectName("com.streamhub.nio:type=WorkerStage,name=1")));
+			assertTrue(mbs.isRegistered(new ObjectName("com.streamhub.nio:type=WorkerStage,name=2")));
+		} finally {
+			other.stop();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void queueMustHoldAtLeastOneTask() throws Exception {
+		new WorkerStage("test", 1, 0);
+	}
+}
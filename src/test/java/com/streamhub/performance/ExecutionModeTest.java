@@ -0,0 +1,137 @@
+package com.streamhub.performance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.streamhub.Connection;
+import com.streamhub.api.ExecutionMode;
+import com.streamhub.handler.Handler;
+import com.streamhub.nio.NIOServer;
+import com.streamhub.util.Sleep;
+import com.streamhub.util.VirtualThreads;
+
+/**
+ * Compares a fixed pool of platform worker threads with a virtual thread 
+ * per request when 10,000 clients each make a request to a handler which 
+ * blocks for a while, as a handler calling out to another server would.
+ */
+public class ExecutionModeTest {
+	private static final int CLIENTS = 10000;
+	private static final int MAX_OPEN_CONNECTIONS = 4000;
+	private static final int PLATFORM_WORKERS = 200;
+	private static final long HANDLER_BLOCKS_MILLIS = 20;
+	private static final byte[] REQUEST = "GET /slow/ HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+	private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\nOK".getBytes();
+
+	@Test
+	public void platformThreadsAgainstVirtualThreads() throws Exception {
+		NIOServer platform = new NIOServer(8988);
+		platform.setWorkerStage(PLATFORM_WORKERS, CLIENTS);
+		run("Platform threads (" + PLATFORM_WORKERS + " workers)", platform, 8988);
+
+		if (! VirtualThreads.isSupported()) {
+			System.out.println("Virtual threads not supported by Java " + System.getProperty("java.version") + ", skipping");
+			return;
+		}
+
+		NIOServer virtual = new NIOServer(8989);
+		virtual.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+		run("Virtual threads", virtual, 8989);
+	}
+
+	private void run(String name, NIOServer server, int port) throws Exception {
+		server.setAcceptBacklog(MAX_OPEN_CONNECTIONS);
+		server.addContext("/slow", new Handler() {
+			public void handle(Connection connection) throws Exception {
+				Sleep.millis(HANDLER_BLOCKS_MILLIS);
+				connection.write(ByteBuffer.wrap(RESPONSE));
+			}
+		});
+		server.start();
+		Sleep.millis(500);
+
+		try {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			threads.resetPeakThreadCount();
+			long startTime = System.nanoTime();
+			int responses = makeRequests(new InetSocketAddress("localhost", port));
+			long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+			System.out.println(name + ": " + responses + " responses in " + elapsedMillis + "ms, " 
+					+ (responses * 1000L / Math.max(1, elapsedMillis)) + " requests/s, peak platform threads " 
+					+ threads.getPeakThreadCount());
+			assertEquals(CLIENTS, responses);
+		} finally {
+			server.stop();
+			Sleep.millis(500);
+		}
+	}
+
+	private int makeRequests(InetSocketAddress address) throws IOException {
+		Selector selector = Selector.open();
+		int started = 0;
+		int open = 0;
+		int responses = 0;
+
+		try {
+			while (responses < CLIENTS) {
+				while (started < CLIENTS && open < MAX_OPEN_CONNECTIONS) {
+					SocketChannel channel = SocketChannel.open();
+					channel.configureBlocking(false);
+					channel.connect(address);
+					channel.register(selector, SelectionKey.OP_CONNECT, ByteBuffer.wrap(REQUEST));
+					started++;
+					open++;
+				}
+
+				selector.select(1000);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel channel = (SocketChannel) key.channel();
+
+					if (key.isConnectable() && channel.finishConnect()) {
+						key.interestOps(SelectionKey.OP_WRITE);
+					} else if (key.isWritable()) {
+						ByteBuffer request = (ByteBuffer) key.attachment();
+						channel.write(request);
+						if (! request.hasRemaining()) {
+							key.attach(ByteBuffer.allocate(RESPONSE.length));
+							key.interestOps(SelectionKey.OP_READ);
+						}
+					} else if (key.isReadable()) {
+						ByteBuffer response = (ByteBuffer) key.attachment();
+						if (channel.read(response) < 0 || ! response.hasRemaining()) {
+							if (! response.hasRemaining()) {
+								responses++;
+							}
+							key.cancel();
+							channel.close();
+							open--;
+						}
+					}
+				}
+			}
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		}
+
+		return responses;
+	}
+}
@@ -0,0 +1,132 @@
+package com.streamhub.performance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.streamhub.StreamingSubscriptionManager;
+import com.streamhub.api.JsonPayload;
+import com.streamhub.api.Payload;
+import com.streamhub.client.ClientManager;
+import com.streamhub.client.IStreamingClient;
+import com.streamhub.request.Request;
+import com.streamhub.request.WebSocketRequest;
+import com.streamhub.tools.CountingClient;
+import com.streamhub.util.Sleep;
+
+/**
+ * Compares the sharded fan-out in {@link StreamingSubscriptionManager} with 
+ * the previous approach of submitting one Runnable per subscriber to a 
+ * single threaded executor.
+ */
+public class FanOutThroughputTest {
+	private static final String TOPIC = "EURUSD";
+	private static final int SUBSCRIBERS = 10000;
+	private static final int PUBLISHES = 100;
+	private static final long EXPECTED_DELIVERIES = (long) SUBSCRIBERS * PUBLISHES;
+	private final AtomicLong deliveries = new AtomicLong();
+	private final Map<String, IStreamingClient> clients = new HashMap<String, IStreamingClient>();
+	private StreamingSubscriptionManager subscriptionManager;
+
+	@Before
+	public void setUp() throws Exception {
+		subscriptionManager = new StreamingSubscriptionManager();
+		subscriptionManager.start(new ClientManager() {
+			public IStreamingClient findOrCreate(Request request) {
+				IStreamingClient client = clients.get(request.getUid());
+				if (client == null) {
+					client = new CountingClient(request.getUid(), deliveries);
+					clients.put(request.getUid(), client);
+				}
+				return client;
+			}
+
+			public IStreamingClient find(String uid) {
+				return clients.get(uid);
+			}
+
+			public void remove(IStreamingClient client) {
+				clients.remove(client.getUid());
+			}
+		});
+
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			WebSocketRequest request = new WebSocketRequest();
+			request.uid = String.valueOf(i);
+			request.isSubscription = true;
+			request.subscriptionTopics = new String[] { TOPIC };
+			subscriptionManager.addSubscription(request);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		subscriptionManager.stop();
+	}
+
+	@Test
+	public void shardedFanOut() throws Exception {
+		for (int shards : new int[] { 1, 2, 4, Runtime.getRuntime().availableProcessors() }) {
+			subscriptionManager.setSendShards(shards);
+			deliveries.set(0);
+			long startTime = System.nanoTime();
+
+			for (int i = 0; i < PUBLISHES; i++) {
+				subscriptionManager.send(TOPIC, payload(i));
+			}
+
+			waitForAllDeliveries();
+			report("Sharded fan-out (" + shards + " shards)", System.nanoTime() - startTime);
+		}
+	}
+
+	@Test
+	public void runnablePerSubscriberFanOut() throws Exception {
+		ExecutorService sendPool = Executors.newSingleThreadExecutor();
+		final IStreamingClient[] subscribers = clients.values().toArray(new IStreamingClient[clients.size()]);
+		long startTime = System.nanoTime();
+
+		for (int i = 0; i < PUBLISHES; i++) {
+			final Payload payload = payload(i);
+			for (final IStreamingClient client : subscribers) {
+				sendPool.execute(new Runnable() {
+					public void run() {
+						client.send(TOPIC, payload);
+					}
+				});
+			}
+		}
+
+		waitForAllDeliveries();
+		report("Runnable per subscriber", System.nanoTime() - startTime);
+		sendPool.shutdownNow();
+	}
+
+	private void waitForAllDeliveries() {
+		long endTime = System.currentTimeMillis() + 60000;
+		while (deliveries.get() < EXPECTED_DELIVERIES && System.currentTimeMillis() < endTime) {
+			Sleep.millis(1);
+		}
+		assertEquals(EXPECTED_DELIVERIES, deliveries.get());
+	}
+
+	private Payload payload(int i) {
+		JsonPayload payload = new JsonPayload(TOPIC);
+		payload.addField("Bid", String.valueOf(1.2345 + i));
+		return payload;
+	}
+
+	private void report(String name, long elapsedNanos) {
+		double elapsedMillis = elapsedNanos / 1000000.0;
+		System.out.println(name + ": " + EXPECTED_DELIVERIES + " deliveries in " + elapsedMillis + "ms (" 
+				+ (long) (EXPECTED_DELIVERIES / (elapsedMillis / 1000.0)) + " deliveries/s)");
+	}
+}
@@ -0,0 +1,162 @@
+package com.streamhub.performance;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.streamhub.util.ByteBufferQueue;
+import com.streamhub.util.Sleep;
+
+/**
+ * Compares draining a burst of forever-frame messages with one
+ * <code>write</code> per buffer against a single gathering write over a
+ * {@link ByteBufferQueue}, counting system calls and throughput per burst.
+ */
+public class GatheringWriteTest {
+	private static final int BURSTS = 2000;
+	private static final int MESSAGES_PER_BURST = 200;
+	private final AtomicLong bytesRead = new AtomicLong();
+	private ServerSocketChannel serverChannel;
+	private SocketChannel channel;
+	private Socket reader;
+
+	@Before
+	public void setUp() throws Exception {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+		reader = new Socket("localhost", serverChannel.socket().getLocalPort());
+		channel = serverChannel.accept();
+		channel.configureBlocking(false);
+		Thread drainer = new Thread(new Runnable() {
+			public void run() {
+				byte[] bytes = new byte[65536];
+				try {
+					InputStream in = reader.getInputStream();
+					int read;
+					while ((read = in.read(bytes)) > 0) {
+						bytesRead.addAndGet(read);
+					}
+				} catch (IOException e) {
+					// Closed
+				}
+			}
+		}, "GatheringWriteTest-Reader");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		channel.close();
+		reader.close();
+		serverChannel.close();
+	}
+
+	@Test
+	public void gatheringWritesUseFewerSystemCallsPerBurst() throws Exception {
+		ByteBuffer[] burst = burst();
+
+		// Warm up
+		writeOneAtATime(burst, new CountingChannel(channel));
+		writeGathering(burst, new CountingChannel(channel));
+
+		CountingChannel oneAtATime = new CountingChannel(channel);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < BURSTS; i++) {
+			writeOneAtATime(burst, oneAtATime);
+		}
+		report("One write per buffer", oneAtATime, System.nanoTime() - startTime);
+
+		CountingChannel gathering = new CountingChannel(channel);
+		startTime = System.nanoTime();
+		for (int i = 0; i < BURSTS; i++) {
+			writeGathering(burst, gathering);
+		}
+		report("Gathering write", gathering, System.nanoTime() - startTime);
+
+		assertTrue(gathering.writes < oneAtATime.writes);
+	}
+
+	private void writeOneAtATime(ByteBuffer[] burst, CountingChannel counter) throws IOException {
+		for (ByteBuffer message : burst) {
+			ByteBuffer buffer = message.duplicate();
+			while (buffer.hasRemaining()) {
+				counter.write(buffer);
+			}
+		}
+	}
+
+	private void writeGathering(ByteBuffer[] burst, CountingChannel counter) throws IOException {
+		ByteBufferQueue queue = new ByteBufferQueue();
+		for (ByteBuffer message : burst) {
+			queue.add(message.duplicate());
+		}
+		while (! queue.isEmpty()) {
+			queue.writeTo(counter);
+		}
+	}
+
+	private ByteBuffer[] burst() {
+		ByteBuffer[] burst = new ByteBuffer[MESSAGES_PER_BURST];
+		for (int i = 0; i < MESSAGES_PER_BURST; i++) {
+			String message = "<script>x({\"topic\":\"EURUSD\",\"Bid\":\"" + (1.2345 + i) + "\"});</script>";
+			burst[i] = ByteBuffer.wrap(message.getBytes()).asReadOnlyBuffer();
+		}
+		return burst;
+	}
+
+	private void report(String name, CountingChannel counter, long elapsedNanos) {
+		double elapsedMillis = elapsedNanos / 1000000.0;
+		System.out.println(name + ": " + ((double) counter.writes / BURSTS) + " writes per burst of " + MESSAGES_PER_BURST
+				+ ", " + (long) (counter.bytes / 1048576.0 / (elapsedMillis / 1000.0)) + "MB/s");
+		Sleep.millis(100);
+	}
+
+	private static class CountingChannel implements GatheringByteChannel {
+		private final SocketChannel channel;
+		private long writes;
+		private long bytes;
+
+		CountingChannel(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		public int write(ByteBuffer src) throws IOException {
+			writes++;
+			int written = channel.write(src);
+			bytes += written;
+			return written;
+		}
+
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			writes++;
+			long written = channel.write(srcs, offset, length);
+			bytes += written;
+			return written;
+		}
+
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return write(srcs, 0, srcs.length);
+		}
+
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
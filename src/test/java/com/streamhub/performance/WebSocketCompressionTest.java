@@ -0,0 +1,95 @@
+package com.streamhub.performance;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.streamhub.api.JsonPayload;
+import com.streamhub.api.Payload;
+import com.streamhub.client.EncodedPayload;
+import com.streamhub.util.PerMessageDeflate;
+import com.streamhub.util.WebSocketUtils;
+
+/**
+ * Compares the bytes written and the time spent framing when publishing to
+ * RFC 6455 subscribers uncompressed, with one permessage-deflate frame
+ * shared by every subscriber and with each subscriber compressing its own
+ * copy.
+ */
+public class WebSocketCompressionTest {
+	private static final String TOPIC = "EURUSD";
+	private static final int SUBSCRIBERS = 1000;
+	private static final int PUBLISHES = 200;
+
+	@Test
+	public void quotes() throws Exception {
+		compare("quote", new QuoteFactory() {
+			public Payload create(int i) {
+				JsonPayload payload = new JsonPayload(TOPIC);
+				payload.addField("Bid", String.valueOf(1.2345 + i / 10000.0));
+				payload.addField("Ask", String.valueOf(1.2347 + i / 10000.0));
+				return payload;
+			}
+		});
+	}
+
+	@Test
+	public void snapshots() throws Exception {
+		compare("snapshot", new QuoteFactory() {
+			public Payload create(int i) {
+				JsonPayload payload = new JsonPayload(TOPIC);
+				for (int field = 0; field < 20; field++) {
+					payload.addField("Field" + field, String.valueOf(1.2345 + (i + field) / 10000.0));
+				}
+				return payload;
+			}
+		});
+	}
+
+	private void compare(String name, QuoteFactory factory) {
+		long uncompressedBytes = 0;
+		long startTime = System.nanoTime();
+		for (int i = 0; i < PUBLISHES; i++) {
+			EncodedPayload encodedPayload = new EncodedPayload(factory.create(i));
+			for (int subscriber = 0; subscriber < SUBSCRIBERS; subscriber++) {
+				uncompressedBytes += encodedPayload.rfc6455Frame().remaining();
+			}
+		}
+		report(name + " uncompressed", uncompressedBytes, uncompressedBytes, System.nanoTime() - startTime);
+
+		long sharedBytes = 0;
+		startTime = System.nanoTime();
+		for (int i = 0; i < PUBLISHES; i++) {
+			EncodedPayload encodedPayload = new EncodedPayload(factory.create(i));
+			for (int subscriber = 0; subscriber < SUBSCRIBERS; subscriber++) {
+				sharedBytes += encodedPayload.deflatedRfc6455Frame().remaining();
+			}
+		}
+		report(name + " shared deflate", sharedBytes, uncompressedBytes, System.nanoTime() - startTime);
+
+		long perSubscriberBytes = 0;
+		startTime = System.nanoTime();
+		for (int i = 0; i < PUBLISHES; i++) {
+			byte[] message = WebSocketUtils.toUtf8(factory.create(i).toString());
+			for (int subscriber = 0; subscriber < SUBSCRIBERS; subscriber++) {
+				ByteBuffer frame = ByteBuffer.wrap(WebSocketUtils.createCompressedFrame(PerMessageDeflate.getInstance().compress(message)));
+				perSubscriberBytes += frame.remaining();
+			}
+		}
+		report(name + " per subscriber deflate", perSubscriberBytes, uncompressedBytes, System.nanoTime() - startTime);
+
+		assertTrue(sharedBytes <= uncompressedBytes);
+	}
+
+	private void report(String name, long bytes, long uncompressedBytes, long elapsedNanos) {
+		double elapsedMillis = elapsedNanos / 1000000.0;
+		System.out.println(name + ": " + bytes + " bytes to " + SUBSCRIBERS + " subscribers (ratio "
+				+ ((double) bytes / uncompressedBytes) + ") in " + elapsedMillis + "ms");
+	}
+
+	private interface QuoteFactory {
+		Payload create(int i);
+	}
+}
@@ -0,0 +1,83 @@
+package com.streamhub.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.streamhub.util.ArrayUtils;
+import com.streamhub.util.BinaryFrames;
+
+public class BinaryFrameDecoderTest {
+	private final BinaryFrameDecoder decoder = new BinaryFrameDecoder(256);
+	private final List<String> frames = new ArrayList<String>();
+	private final BinaryFrameListener listener = new BinaryFrameListener() {
+		public void onFrame(int opcode, String topic, String body) {
+			frames.add(opcode + ":" + topic + ":" + body);
+		}
+	};
+
+	@Test
+	public void resolvesTopicIdsDefinedEarlierOnTheConnection() throws Exception {
+		decode(ArrayUtils.concatAll(
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_CONNECT, BinaryFrames.NO_TOPIC, "42"),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_TOPIC, 7, "EURUSD"),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_PUBLISH, 7, "{\"Bid\":\"1.2\"}")));
+
+		assertEquals("[2:null:42, 6:EURUSD:{\"Bid\":\"1.2\"}]", frames.toString());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void keepsOnlyTheIncompleteFrameBetweenReads() throws Exception {
+		byte[] input = ArrayUtils.concat(
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_DISCONNECT, BinaryFrames.NO_TOPIC, ""),
+				BinaryFrames.createFrame(BinaryFrames.OPCODE_CONNECT, BinaryFrames.NO_TOPIC, new String(new char[200]).replace('\0', 'x')));
+		decode(slice(input, 0, 4));
+		assertEquals(1, frames.size());
+		assertEquals(1, decoder.getPendingBytes());
+
+		decode(slice(input, 4, input.length));
+		assertEquals(2, frames.size());
+		assertEquals(0, decoder.getPendingBytes());
+	}
+
+	@Test
+	public void decodesBodiesAsUtf8() throws Exception {
+		decode(BinaryFrames.createFrame(BinaryFrames.OPCODE_CONNECT, BinaryFrames.NO_TOPIC, "caf\u00e9"));
+		assertEquals("[2:null:caf\u00e9]", frames.toString());
+	}
+
+	@Test
+	public void closesOnAnUndefinedTopic() throws Exception {
+		decode(ArrayUtils.concat(BinaryFrames.createFrame(BinaryFrames.OPCODE_SUBSCRIBE, 3, ""), BinaryFrames.createFrame(BinaryFrames.OPCODE_DISCONNECT, BinaryFrames.NO_TOPIC, "")));
+		assertTrue(decoder.isClosed());
+		assertEquals(0, frames.size());
+	}
+
+	@Test
+	public void closesOnFramesLongerThanTheMaximum() throws Exception {
+		decode(new byte[] { (byte) 0x81, 0x02 });
+		assertTrue(decoder.isClosed());
+	}
+
+	@Test
+	public void closesOnOverlongVarints() throws Exception {
+		decode(new byte[] { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01 });
+		assertTrue(decoder.isClosed());
+	}
+
+	private void decode(byte[] input) {
+		decoder.decode(ByteBuffer.wrap(input), listener);
+	}
+
+	private static byte[] slice(byte[] bytes, int from, int to) {
+		byte[] slice = new byte[to - from];
+		System.arraycopy(bytes, from, slice, 0, slice.length);
+		return slice;
+	}
+}
@@ -0,0 +1,50 @@
+package com.streamhub.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DirectMessageReaderTest {
+	private final List<String> messages = new ArrayList<String>();
+	private final MessageListener listener = new MessageListener() {
+		public void onMessage(String message) {
+			messages.add(message);
+		}
+	};
+
+	@Test
+	public void readsEveryCompleteMessage() throws Exception {
+		DirectMessageReader.readDirectMessages(listener, "@@uid=1@@@@subscribe=A,B@@@@publ");
+		assertEquals("[uid=1, subscribe=A,B]", messages.toString());
+	}
+
+	@Test
+	public void skipsMessagesAlreadyRead() throws Exception {
+		assertEquals(1, DirectMessageReader.readDirectMessages(listener, "@@first@@@@second@@", 1));
+		assertEquals("[second]", messages.toString());
+	}
+
+	@Test
+	public void returnsWhereTheLastMessageEnded() throws Exception {
+		String input = "@@first@@@@sec";
+		assertEquals(9, DirectMessageReader.readDirectMessagesFrom(listener, input, 0));
+		assertEquals(9, DirectMessageReader.readDirectMessagesFrom(listener, input, 9));
+		assertEquals("[first]", messages.toString());
+	}
+
+	@Test
+	public void stopsReadingTextAtTheBinaryNegotiation() throws Exception {
+		byte[] input = "@@uid=1@@@@binary@@\u0001\u0003@@".getBytes("ISO-8859-1");
+		assertEquals(19, DirectMessageReader.readUntilBinaryNegotiation(listener, input));
+		assertEquals("[uid=1]", messages.toString());
+	}
+
+	@Test
+	public void readsAllTextWithoutANegotiation() throws Exception {
+		assertEquals(-1, DirectMessageReader.readUntilBinaryNegotiation(listener, "@@uid=1@@".getBytes()));
+		assertEquals("[uid=1]", messages.toString());
+	}
+}
@@ -0,0 +1,74 @@
+package com.streamhub.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class HttpRequestHeadTest {
+	private static final String REQUEST = "GET /streamhub/subscribe/?uid=1&topic=AAPL HTTP/1.1\r\n" +
+		"Host: localhost:8888\r\n" +
+		"User-Agent: Mozilla/5.0\r\n" +
+		"Connection: close\r\n" +
+		"\r\n";
+	
+	@Test
+	public void parsesRequestLine() throws Exception {
+		HttpRequestHead head = HttpRequestHead.parse(REQUEST.getBytes());
+		assertEquals("GET", head.getMethod());
+		assertEquals("/streamhub/subscribe/?uid=1&topic=AAPL", head.getUrl());
+		assertEquals("1", head.getQueryParams().get("uid"));
+		assertEquals("AAPL", head.getQueryParams().get("topic"));
+		assertEquals("HTTP/1.1", head.getVersion());
+	}
+	
+	@Test
+	public void headerNamesAreCaseInsensitive() throws Exception {
+		HttpRequestHead head = HttpRequestHead.parse(REQUEST.getBytes());
+		assertEquals(3, head.getHeaderCount());
+		assertEquals("localhost:8888", head.getHeader("Host"));
+		assertEquals("close", head.getHeader("connection"));
+		assertEquals("Mozilla/5.0", head.getHeader("USER-AGENT"));
+		assertNull(head.getHeader("Upgrade"));
+	}
+	
+	@Test
+	public void keepsEveryHeaderHoweverManyThereAre() throws Exception {
+		StringBuilder request = new StringBuilder("GET /streamhubws/ HTTP/1.1\r\n");
+		for (int i = 0; i < 40; i++) {
+			request.append("X-Proxy-" + i + ": " + i + "\r\n");
+		}
+		request.append("Upgrade: WebSocket\r\n\r\n");
+		HttpRequestHead head = HttpRequestHead.parse(request.toString().getBytes());
+		assertEquals(41, head.getHeaderCount());
+		assertEquals("WebSocket", head.getHeader("Upgrade"));
+		assertEquals("0", head.getHeader("X-Proxy-0"));
+	}
+	
+	@Test
+	public void lastOfRepeatedHeadersWins() throws Exception {
+		HttpRequestHead head = HttpRequestHead.parse("GET / HTTP/1.1\r\nCookie: a=1\r\nCookie: b=2\r\n\r\n".getBytes());
+		assertEquals("b=2", head.getHeader("Cookie"));
+	}
+	
+	@Test
+	public void headEndsAfterBlankLine() throws Exception {
+		byte[] withChallenge = (REQUEST + "12345678").getBytes();
+		HttpRequestHead head = HttpRequestHead.parse(withChallenge);
+		assertEquals(REQUEST.length(), head.getHeadEnd());
+	}
+	
+	@Test
+	public void acceptsBareLineFeeds() throws Exception {
+		HttpRequestHead head = HttpRequestHead.parse("GET /poll/?uid=2 HTTP/1.0\nHost: h\n\n".getBytes());
+		assertEquals("/poll/?uid=2", head.getUrl());
+		assertEquals("h", head.getHeader("Host"));
+	}
+	
+	@Test
+	public void doesNotBlowUpOnIncompleteInput() throws Exception {
+		assertEquals("", HttpRequestHead.parse(new byte[0]).getUrl());
+		assertEquals("GET /x", HttpRequestHead.parse("GET /x".getBytes()).getUrl());
+		assertNull(HttpRequestHead.parse("GET /x HTTP/1.1\r\nHo".getBytes()).getHeader("Host"));
+	}
+}
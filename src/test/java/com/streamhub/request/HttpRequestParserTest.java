@@ -0,0 +1,39 @@
+package com.streamhub.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpRequestParserTest {
+	@Test
+	public void findsEndOfHeadSplitAcrossReads() throws Exception {
+		byte[] input = "GET / HTTP/1.1\r\nHost: h\r\n\r\n".getBytes();
+		HttpRequestParser parser = new HttpRequestParser();
+		
+		for (int length = 0; length < input.length; length++) {
+			assertFalse(parser.parse(input, length));
+		}
+		
+		assertTrue(parser.parse(input, input.length));
+		assertEquals(input.length, parser.getHeadEnd());
+	}
+	
+	@Test
+	public void doesNotMistakeSingleLineBreaksForEndOfHead() throws Exception {
+		byte[] input = "GET / HTTP/1.1\r\n\r\r\nHost: h\r\n".getBytes();
+		HttpRequestParser parser = new HttpRequestParser();
+		assertFalse(parser.parse(input, input.length));
+		assertEquals(-1, parser.getHeadEnd());
+	}
+	
+	@Test
+	public void resetStartsAgain() throws Exception {
+		byte[] input = "GET / HTTP/1.1\r\n\r\n".getBytes();
+		HttpRequestParser parser = new HttpRequestParser();
+		assertTrue(parser.parse(input, input.length));
+		parser.reset();
+		assertFalse(parser.parse(input, 4));
+	}
+}
@@ -1,6 +1,7 @@
 package com.streamhub.request;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -233,6 +234,15 @@ public class HttpRequestTest {
 		assertEquals("127.0.0.1", request.getDomain());
 	}
 	
+	@Test
+	public void controlRequestsAreOnPersistentConnectionsUnlessClosed() throws Exception {
+		assertTrue(HttpRequest.createFrom("GET /streamhub/subscribe/?uid=1&topic=A HTTP/1.1\r\nHost: localhost\r\n\r\n").isPersistentConnection());
+		assertFalse(HttpRequest.createFrom("GET /streamhub/subscribe/?uid=1&topic=A HTTP/1.1\r\nConnection: close\r\n\r\n").isPersistentConnection());
+		assertFalse(HttpRequest.createFrom("GET /streamhub/publish/?uid=1&topic=A HTTP/1.0\r\nHost: localhost\r\n\r\n").isPersistentConnection());
+		assertTrue(HttpRequest.createFrom("GET /streamhub/publish/?uid=1&topic=A HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n").isPersistentConnection());
+		assertFalse(HttpRequest.createFrom("GET /streamhub/response/?uid=1 HTTP/1.1\r\nHost: localhost\r\n\r\n").isPersistentConnection());
+	}
+
 	private Request buildRequest(String url) throws IOException {
 		final String httpRequest = buildHttpRequest(url);
 		context.checking(new Expectations() {{
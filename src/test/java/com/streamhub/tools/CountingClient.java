@@ -0,0 +1,71 @@
+package com.streamhub.tools;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.streamhub.Connection;
+import com.streamhub.api.Payload;
+import com.streamhub.client.EncodedPayload;
+import com.streamhub.client.IStreamingClient;
+
+public class CountingClient implements IStreamingClient {
+	private final String uid;
+	private final AtomicLong deliveries;
+	private final Set<String> subscriptions = new HashSet<String>();
+
+	public CountingClient(String uid, AtomicLong deliveries) {
+		this.uid = uid;
+		this.deliveries = deliveries;
+	}
+
+	public void send(String topic, Payload payload) {
+		deliveries.incrementAndGet();
+	}
+
+	public void send(String topic, EncodedPayload encodedPayload) {
+		deliveries.incrementAndGet();
+	}
+
+	public synchronized void addSubscription(String topic) {
+		subscriptions.add(topic);
+	}
+
+	public synchronized void removeSubscription(String topic) {
+		subscriptions.remove(topic);
+	}
+
+	public synchronized Set<String> getSubscriptions() {
+		return subscriptions;
+	}
+
+	public String getUid() {
+		return uid;
+	}
+
+	public boolean isConnected() {
+		return true;
+	}
+
+	public void disconnect() {}
+
+	public void onConnect() {}
+
+	public void setConnection(Connection connection) {}
+
+	public void setResponseLength(long responseLength) {}
+
+	public String getQueuedMessages() {
+		return "";
+	}
+
+	public long getQueuedBytes() {
+		return 0;
+	}
+
+	public boolean isWritable() {
+		return true;
+	}
+
+	public void destroy() {}
+}
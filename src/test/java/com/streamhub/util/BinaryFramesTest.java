@@ -0,0 +1,33 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BinaryFramesTest {
+	@Test
+	public void encodesVarintsSevenBitsAtATime() throws Exception {
+		byte[] bytes = new byte[5];
+		assertEquals(1, BinaryFrames.putVarint(bytes, 0, 127));
+		assertEquals(127, bytes[0]);
+		assertEquals(2, BinaryFrames.putVarint(bytes, 0, 300));
+		assertEquals((byte) 0xac, bytes[0]);
+		assertEquals(0x02, bytes[1]);
+		assertEquals(5, BinaryFrames.varintLength(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void prefixesFramesWithTheirLength() throws Exception {
+		byte[] frame = BinaryFrames.createFrame(BinaryFrames.OPCODE_PUBLISH, 2, "{}");
+		assertEquals(Arrays.toString(new byte[] { 4, BinaryFrames.OPCODE_PUBLISH, 2, '{', '}' }), Arrays.toString(frame));
+	}
+
+	@Test
+	public void encodesBodiesAsUtf8() throws Exception {
+		byte[] frame = BinaryFrames.createFrame(BinaryFrames.OPCODE_CONNECT, BinaryFrames.NO_TOPIC, "\u00e9");
+		assertEquals(4, frame[0]);
+		assertEquals(5, frame.length);
+	}
+}
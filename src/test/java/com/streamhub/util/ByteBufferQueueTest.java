@@ -0,0 +1,103 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import org.junit.Test;
+
+public class ByteBufferQueueTest {
+	@Test
+	public void writesAllQueuedBuffersInOneGatheringWrite() throws Exception {
+		ByteBufferQueue queue = new ByteBufferQueue();
+		LimitedChannel channel = new LimitedChannel(Integer.MAX_VALUE);
+		queue.add(ByteBuffer.wrap("one".getBytes()));
+		queue.add(ByteBuffer.wrap("two".getBytes()));
+		queue.add(ByteBuffer.wrap("three".getBytes()));
+		
+		assertEquals(11, queue.writeTo(channel));
+		assertEquals("onetwothree", channel.written());
+		assertEquals(1, channel.writes);
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	public void keepsPartiallyWrittenBuffersQueued() throws Exception {
+		ByteBufferQueue queue = new ByteBufferQueue();
+		LimitedChannel channel = new LimitedChannel(4);
+		queue.add(ByteBuffer.wrap("one".getBytes()));
+		queue.add(ByteBuffer.wrap("two".getBytes()));
+		
+		assertEquals(4, queue.writeTo(channel));
+		assertEquals(1, queue.size());
+		assertEquals(2, queue.writeTo(channel));
+		assertEquals("onetwo", channel.written());
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	public void preservesOrderWhenTheRingWrapsAndGrows() throws Exception {
+		ByteBufferQueue queue = new ByteBufferQueue(2);
+		LimitedChannel channel = new LimitedChannel(5);
+		StringBuilder expected = new StringBuilder();
+		
+		for (int i = 0; i < 20; i++) {
+			String message = "m" + i + ";";
+			expected.append(message);
+			queue.add(ByteBuffer.wrap(message.getBytes()));
+			if (i % 3 == 0) {
+				queue.writeTo(channel);
+			}
+		}
+		
+		while (! queue.isEmpty()) {
+			queue.writeTo(channel);
+		}
+		
+		assertEquals(expected.toString(), channel.written());
+	}
+	
+	private static class LimitedChannel implements GatheringByteChannel {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final int bytesPerWrite;
+		private int writes;
+		
+		LimitedChannel(int bytesPerWrite) {
+			this.bytesPerWrite = bytesPerWrite;
+		}
+
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			writes++;
+			long written = 0;
+			for (int i = offset; i < offset + length; i++) {
+				while (srcs[i].hasRemaining() && written < bytesPerWrite) {
+					out.write(srcs[i].get());
+					written++;
+				}
+			}
+			return written;
+		}
+
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		public int write(ByteBuffer src) {
+			return (int) write(new ByteBuffer[] { src });
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void close() {
+		}
+		
+		String written() {
+			return new String(out.toByteArray());
+		}
+	}
+}
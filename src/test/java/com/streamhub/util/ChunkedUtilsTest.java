@@ -0,0 +1,17 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ChunkedUtilsTest {
+	@Test
+	public void prefixesChunkWithHexLength() throws Exception {
+		assertEquals("1a\r\nabcdefghijklmnopqrstuvwxyz\r\n", ChunkedUtils.createChunk("abcdefghijklmnopqrstuvwxyz"));
+	}
+
+	@Test
+	public void lastChunkIsEmpty() throws Exception {
+		assertEquals("0\r\n\r\n", new String(ChunkedUtils.LAST_CHUNK));
+	}
+}
@@ -0,0 +1,58 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class PerMessageDeflateTest {
+	private final PerMessageDeflate deflate = PerMessageDeflate.getInstance();
+
+	@Test
+	public void inflatesWhatItCompresses() throws Exception {
+		byte[] message = WebSocketUtils.toUtf8("{\"topic\":\"EURUSD\",\"Bid\":\"1.2345\",\"Ask\":\"1.2346\"}");
+		byte[] compressed = deflate.compress(message);
+		byte[] inflated = deflate.inflate(new Inflater(true), compressed, 0, compressed.length, 1024);
+		assertEquals(new String(message, "UTF-8"), new String(inflated, "UTF-8"));
+	}
+
+	@Test
+	public void compressesEachMessageIndependently() throws Exception {
+		byte[] message = WebSocketUtils.toUtf8("{\"topic\":\"EURUSD\",\"Bid\":\"1.2345\"}");
+		byte[] first = deflate.compress(message);
+		byte[] second = deflate.compress(message);
+		assertEquals(Arrays.toString(first), Arrays.toString(second));
+	}
+
+	@Test
+	public void refusesToInflateBeyondTheMaximum() throws Exception {
+		byte[] compressed = deflate.compress(new byte[2000]);
+		assertNull(deflate.inflate(new Inflater(true), compressed, 0, compressed.length, 1000));
+	}
+
+	@Test
+	public void acceptsOffersWithAFullServerWindow() throws Exception {
+		assertTrue(PerMessageDeflate.isAcceptableOffer("permessage-deflate; client_max_window_bits"));
+		assertTrue(PerMessageDeflate.isAcceptableOffer("x-webkit-deflate-frame, permessage-deflate"));
+		assertTrue(PerMessageDeflate.isAcceptableOffer("permessage-deflate; server_max_window_bits=15"));
+		assertFalse(PerMessageDeflate.isAcceptableOffer("permessage-deflate; server_max_window_bits=10"));
+		assertFalse(PerMessageDeflate.isAcceptableOffer("x-webkit-deflate-frame"));
+		assertFalse(PerMessageDeflate.isAcceptableOffer(null));
+	}
+
+	@Test
+	public void countsCompressedAndUncompressedBytes() throws Exception {
+		deflate.resetStatistics();
+		byte[] compressed = deflate.compress(new byte[1000]);
+
+		assertEquals(1, deflate.getCompressedMessages());
+		assertEquals(1000, deflate.getUncompressedBytes());
+		assertEquals(compressed.length, deflate.getCompressedBytes());
+		assertEquals(compressed.length / 1000.0, deflate.getCompressionRatio(), 0.0001);
+	}
+}
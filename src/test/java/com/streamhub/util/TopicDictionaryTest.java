@@ -0,0 +1,61 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TopicDictionaryTest {
+	private final TopicDictionary dictionary = new TopicDictionary();
+
+	@Test
+	public void assignsIdsFromOneInTheOrderTopicsAreAcquired() throws Exception {
+		assertEquals(1, dictionary.acquire("AAPL"));
+		assertEquals(2, dictionary.acquire("MSFT"));
+		assertEquals(1, dictionary.acquire("AAPL"));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void findingATopicDoesNotGiveItAnId() throws Exception {
+		assertEquals(TopicDictionary.NO_TOPIC, dictionary.find("AAPL"));
+		assertEquals(0, dictionary.size());
+		dictionary.acquire("AAPL");
+		assertEquals(1, dictionary.find("AAPL"));
+	}
+
+	@Test
+	public void keepsAnIdUntilTheLastReferenceIsReleased() throws Exception {
+		int topicId = dictionary.acquire("AAPL");
+		dictionary.acquire("AAPL");
+		dictionary.release(topicId);
+		assertEquals(topicId, dictionary.find("AAPL"));
+		dictionary.release(topicId);
+		assertEquals(TopicDictionary.NO_TOPIC, dictionary.find("AAPL"));
+		assertEquals(0, dictionary.size());
+	}
+
+	@Test
+	public void reusesReclaimedIds() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			dictionary.release(dictionary.acquire("Topic" + i));
+		}
+		assertEquals(1, dictionary.acquire("AAPL"));
+		assertEquals(2, dictionary.acquire("MSFT"));
+	}
+
+	@Test
+	public void growsPastItsInitialCapacity() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			dictionary.acquire("Topic" + i);
+		}
+		assertEquals(1000, dictionary.find("Topic999"));
+		dictionary.release(500);
+		assertEquals(500, dictionary.acquire("AAPL"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cannotReleaseAnIdNotInUse() throws Exception {
+		dictionary.release(dictionary.acquire("AAPL"));
+		dictionary.release(1);
+	}
+}
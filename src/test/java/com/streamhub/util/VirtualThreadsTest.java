@@ -0,0 +1,42 @@
+package com.streamhub.util;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+	@Test
+	public void tasksRunOnNamedThreadsWhenVirtualThreadsAreSupported() throws Exception {
+		if (! VirtualThreads.isSupported()) {
+			return;
+		}
+
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("Test-");
+		Future<String> name = executor.submit(new Callable<String>() {
+			public String call() {
+				return Thread.currentThread().getName();
+			}
+		});
+
+		assertTrue(name.get().startsWith("Test-"));
+		executor.shutdown();
+	}
+
+	@Test
+	public void creatingAnExecutorFailsWhenVirtualThreadsAreNotSupported() throws Exception {
+		if (VirtualThreads.isSupported()) {
+			return;
+		}
+
+		try {
+			VirtualThreads.newThreadPerTaskExecutor("Test-");
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+}
@@ -329,4 +329,45 @@ public class WebSocketUtilsTest {
 //		
 //		System.out.println("REsponse as String = [" + new String(response, 0, count) + " response = [" + WebSocketUtils.getHexString(response) + "]");
 //	}
+
+	@Test
+	public void computesAcceptKey() throws Exception {
+		assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketUtils.getAcceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+	}
+
+	@Test
+	public void encodesBase64WithPadding() throws Exception {
+		assertEquals("", WebSocketUtils.toBase64(new byte[0]));
+		assertEquals("Zg==", WebSocketUtils.toBase64("f".getBytes()));
+		assertEquals("Zm8=", WebSocketUtils.toBase64("fo".getBytes()));
+		assertEquals("Zm9v", WebSocketUtils.toBase64("foo".getBytes()));
+	}
+
+	@Test
+	public void createsUnmaskedTextFrame() throws Exception {
+		byte[] frame = WebSocketUtils.createFrame("Hello");
+		assertEquals((byte) 0x81, frame[0]);
+		assertEquals(5, frame[1]);
+		assertEquals("Hello", new String(frame, 2, 5));
+	}
+
+	@Test
+	public void marksCompressedFramesWithRsv1() throws Exception {
+		byte[] frame = WebSocketUtils.createCompressedFrame(new byte[] { 1, 2, 3 });
+		assertEquals((byte) 0xc1, frame[0]);
+		assertEquals(3, frame[1]);
+	}
+
+	@Test
+	public void createsFramesWithExtendedLengths() throws Exception {
+		byte[] medium = WebSocketUtils.createFrame(WebSocketUtils.OPCODE_BINARY, new byte[300]);
+		assertEquals(304, medium.length);
+		assertEquals(126, medium[1]);
+		assertEquals(300, ByteBuffer.wrap(medium, 2, 2).getShort());
+
+		byte[] large = WebSocketUtils.createFrame(WebSocketUtils.OPCODE_BINARY, new byte[70000]);
+		assertEquals(70010, large.length);
+		assertEquals(127, large[1]);
+		assertEquals(70000, ByteBuffer.wrap(large, 2, 8).getLong());
+	}
 }